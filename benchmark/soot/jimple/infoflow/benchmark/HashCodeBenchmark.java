@@ -0,0 +1,108 @@
+package soot.jimple.infoflow.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import soot.IntType;
+import soot.Local;
+import soot.jimple.Jimple;
+import soot.jimple.Stmt;
+import soot.jimple.infoflow.InfoflowConfiguration;
+import soot.jimple.infoflow.data.Abstraction;
+import soot.jimple.infoflow.data.AccessPath;
+import soot.jimple.infoflow.data.AccessPathFactory;
+import soot.jimple.infoflow.data.SourceContextAndPath;
+
+/**
+ * Benchmark for the cost of hashing abstractions and propagation paths at
+ * the end of long chains. Every operation derives a new object from the end
+ * of a chain of the given depth, which is what the solver and the path
+ * builders do before they put new objects into hash-based collections.
+ * extendPath measures the extension alone, so the difference to
+ * extendPathAndHash is the cost of hashing the new path.
+ *
+ * Run with "ant runbenchmarks -Dbenchmark.args=HashCodeBenchmark".
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class HashCodeBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	public int depth;
+
+	private Abstraction last;
+	private Abstraction next;
+	private AccessPath[] accessPaths;
+	private Stmt stmt;
+	private SourceContextAndPath path;
+	private int counter = 0;
+
+	@Setup
+	public void setUp() {
+		// Otherwise, the path is not part of the hash code
+		InfoflowConfiguration.setPathAgnosticResults(false);
+
+		// Build a chain in which every abstraction has a different access
+		// path and statement
+		Abstraction[] chain = new Abstraction[depth + 1];
+		chain[0] = new Abstraction(createAccessPath(0), Jimple.v().newNopStmt(),
+				null, false, false);
+		for (int i = 1; i <= depth; i++)
+			chain[i] = chain[i - 1].deriveNewAbstraction(createAccessPath(i),
+					Jimple.v().newNopStmt());
+
+		// Make sure that the hash codes along the chain are known, just as
+		// they are for abstractions that have passed through the solver
+		for (Abstraction abs : chain)
+			abs.hashCode();
+		last = chain[depth - 1];
+		next = chain[depth];
+
+		accessPaths = new AccessPath[] { createAccessPath(depth + 1),
+				createAccessPath(depth + 2) };
+		stmt = Jimple.v().newNopStmt();
+
+		path = new SourceContextAndPath(chain[0].getAccessPath(),
+				chain[0].getCurrentStmt());
+		for (int i = 0; i < depth; i++)
+			path = path.extendPath(chain[i]);
+		path.hashCode();
+	}
+
+	private static AccessPath createAccessPath(int idx) {
+		Local local = Jimple.v().newLocal("l" + idx, IntType.v());
+		return AccessPathFactory.v().createAccessPath(local, true);
+	}
+
+	@Benchmark
+	public int deriveAbstractionAndHash() {
+		Abstraction abs = last.deriveNewAbstraction(accessPaths[counter++ & 1], stmt);
+		return abs.hashCode();
+	}
+
+	@Benchmark
+	public SourceContextAndPath extendPath() {
+		return path.extendPath(next);
+	}
+
+	@Benchmark
+	public int extendPathAndHash() {
+		return path.extendPath(next).hashCode();
+	}
+
+}
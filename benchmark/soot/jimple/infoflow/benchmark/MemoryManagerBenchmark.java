@@ -0,0 +1,87 @@
+package soot.jimple.infoflow.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import soot.IntType;
+import soot.Local;
+import soot.jimple.Jimple;
+import soot.jimple.Stmt;
+import soot.jimple.infoflow.data.Abstraction;
+import soot.jimple.infoflow.data.AccessPath;
+import soot.jimple.infoflow.data.AccessPathFactory;
+import soot.jimple.infoflow.data.FlowDroidMemoryManager;
+import soot.jimple.infoflow.data.FlowDroidMemoryManager.PathDataErasureMode;
+
+/**
+ * Benchmark for the cost of the memory manager on deep chains of
+ * abstractions without neighbors. Every operation derives a new abstraction
+ * from the end of a chain of the given depth and passes it to the memory
+ * manager, just like the solver does for every new fact. The new abstraction
+ * has not been compacted yet, so the memory manager walks the neighbor-free
+ * part of the chain.
+ *
+ * Run with "ant runbenchmarks -Dbenchmark.args=MemoryManagerBenchmark".
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MemoryManagerBenchmark {
+
+	@Param({ "10", "100", "1000", "10000" })
+	public int depth;
+
+	@Param({ "EraseNothing", "KeepOnlyContextData" })
+	public PathDataErasureMode erasePathData;
+
+	private FlowDroidMemoryManager memoryManager;
+	private Abstraction last;
+	private AccessPath[] accessPaths;
+	private Stmt stmt;
+	private int counter = 0;
+
+	@Setup
+	public void setUp() {
+		memoryManager = new FlowDroidMemoryManager(false, erasePathData);
+
+		// Build a chain in which every abstraction has a different access
+		// path and statement and has passed through the memory manager
+		Abstraction abs = new Abstraction(createAccessPath(0), Jimple.v().newNopStmt(),
+				null, false, false);
+		abs = memoryManager.handleMemoryObject(abs);
+		for (int i = 1; i < depth; i++)
+			abs = memoryManager.handleMemoryObject(abs.deriveNewAbstraction(
+					createAccessPath(i), Jimple.v().newNopStmt()));
+		last = abs;
+
+		accessPaths = new AccessPath[] { createAccessPath(depth),
+				createAccessPath(depth + 1) };
+		stmt = Jimple.v().newNopStmt();
+	}
+
+	private static AccessPath createAccessPath(int idx) {
+		Local local = Jimple.v().newLocal("l" + idx, IntType.v());
+		return AccessPathFactory.v().createAccessPath(local, true);
+	}
+
+	@Benchmark
+	public Abstraction handleNewAbstraction() {
+		return memoryManager.handleMemoryObject(last.deriveNewAbstraction(
+				accessPaths[counter++ & 1], stmt));
+	}
+
+}
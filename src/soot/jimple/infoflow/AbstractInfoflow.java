@@ -13,8 +13,10 @@ import org.slf4j.LoggerFactory;
 import soot.PackManager;
 import soot.Scene;
 import soot.SootClass;
+import soot.jimple.infoflow.InfoflowConfiguration.AliasingAlgorithm;
 import soot.jimple.infoflow.InfoflowConfiguration.CallgraphAlgorithm;
 import soot.jimple.infoflow.cfg.BiDirICFGFactory;
+import soot.jimple.infoflow.cfg.CallgraphSnapshot;
 import soot.jimple.infoflow.cfg.DefaultBiDiICFGFactory;
 import soot.jimple.infoflow.cfg.LibraryClassPatcher;
 import soot.jimple.infoflow.config.IInfoflowConfig;
@@ -325,8 +327,19 @@ public abstract class AbstractInfoflow implements IInfoflow {
         // application already provides us with a CG.
 		if (config.getCallgraphAlgorithm() != CallgraphAlgorithm.OnDemand
 				&& !Scene.v().hasCallGraph()) {
-	        PackManager.v().getPack("wjpp").apply();
-	        PackManager.v().getPack("cg").apply();
+			// Reuse the callgraph from an earlier run on the same inputs if
+			// we can. The points-to based aliasing needs Spark's results.
+			CallgraphSnapshot snapshot = null;
+			if (config.getCallgraphSnapshotDirectory() != null
+					&& config.getAliasingAlgorithm() != AliasingAlgorithm.PtsBased)
+				snapshot = new CallgraphSnapshot(new File(config.getCallgraphSnapshotDirectory()));
+			
+			if (snapshot == null || !snapshot.load()) {
+		        PackManager.v().getPack("wjpp").apply();
+		        PackManager.v().getPack("cg").apply();
+		        if (snapshot != null)
+		        	snapshot.save();
+			}
 		}
 		
 		// Run the preprocessors
@@ -9,8 +9,9 @@
  ******************************************************************************/
 package soot.jimple.infoflow;
 
-import heros.solver.CountingThreadPoolExecutor;
-
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -49,7 +50,9 @@ import soot.jimple.infoflow.data.FlowDroidMemoryManager.PathDataErasureMode;
 import soot.jimple.infoflow.data.pathBuilders.DefaultPathBuilderFactory;
 import soot.jimple.infoflow.data.pathBuilders.IAbstractionPathBuilder;
 import soot.jimple.infoflow.data.pathBuilders.IPathBuilderFactory;
+import soot.jimple.infoflow.data.pathBuilders.IncrementalSourceFinder;
 import soot.jimple.infoflow.entryPointCreators.IEntryPointCreator;
+import soot.jimple.infoflow.handlers.IncrementalResultsHandler;
 import soot.jimple.infoflow.handlers.ResultsAvailableHandler;
 import soot.jimple.infoflow.handlers.TaintPropagationHandler;
 import soot.jimple.infoflow.problems.BackwardsInfoflowProblem;
@@ -57,12 +60,19 @@ import soot.jimple.infoflow.problems.InfoflowProblem;
 import soot.jimple.infoflow.problems.conditions.BreadthFirstSearch;
 import soot.jimple.infoflow.problems.conditions.ConditionSet;
 import soot.jimple.infoflow.results.InfoflowResults;
+import soot.jimple.infoflow.results.InfoflowResults.TerminationReason;
 import soot.jimple.infoflow.results.ResultSinkInfo;
 import soot.jimple.infoflow.results.ResultSourceInfo;
-import soot.jimple.infoflow.solver.IMemoryManager;
 import soot.jimple.infoflow.solver.cfg.BackwardsInfoflowCFG;
+import soot.jimple.infoflow.solver.cfg.FrozenInfoflowCFG;
 import soot.jimple.infoflow.solver.cfg.IInfoflowCFG;
+import soot.jimple.infoflow.solver.cfg.InfoflowCFG;
+import soot.jimple.infoflow.solver.fastSolver.CompactJumpFunctions;
 import soot.jimple.infoflow.solver.fastSolver.InfoflowSolver;
+import soot.jimple.infoflow.solver.fastSolver.InterruptableExecutor;
+import soot.jimple.infoflow.solver.fastSolver.MethodAffineExecutor;
+import soot.jimple.infoflow.solver.fastSolver.SolverWatchdog;
+import soot.jimple.infoflow.solver.fastSolver.SpillingSolverStore;
 import soot.jimple.infoflow.source.ISourceSinkManager;
 import soot.jimple.infoflow.util.SootMethodRepresentationParser;
 import soot.jimple.infoflow.util.SystemClassHandler;
@@ -80,10 +90,17 @@ public class Infoflow extends AbstractInfoflow {
     private IInfoflowCFG iCfg;
     
     private Set<ResultsAvailableHandler> onResultsAvailable = new HashSet<ResultsAvailableHandler>();
+    private Set<IncrementalResultsHandler> onResultAvailable = new HashSet<IncrementalResultsHandler>();
     private TaintPropagationHandler taintPropagationHandler = null;
     private TaintPropagationHandler backwardsPropagationHandler = null;
     
     private long maxMemoryConsumption = -1;
+    private long solverEdgeCount = -1;
+    private long solverTaskCount = -1;
+    private long solverSpillCount = -1;
+    private long solverReloadCount = -1;
+    private long compactedSummaryCount = -1;
+    private long revivedSummaryCount = -1;
     
     private Set<Stmt> collectedSources = null;
     private Set<Stmt> collectedSinks = null;
@@ -198,6 +215,12 @@ public class Infoflow extends AbstractInfoflow {
 	private void runAnalysis(final ISourceSinkManager sourcesSinks, final Set<String> additionalSeeds) {
 		// Clear the data from previous runs
 		maxMemoryConsumption = -1;
+		solverEdgeCount = -1;
+		solverTaskCount = -1;
+		solverSpillCount = -1;
+		solverReloadCount = -1;
+		compactedSummaryCount = -1;
+		revivedSummaryCount = -1;
 		results = null;
 				
 		// Some configuration options do not really make sense in combination
@@ -226,12 +249,17 @@ public class Infoflow extends AbstractInfoflow {
         	logger.info("Callgraph has {} edges", Scene.v().getCallGraph().size());
         iCfg = icfgFactory.buildBiDirICFG(config.getCallgraphAlgorithm(),
         		config.getEnableExceptionTracking());
+        if (config.getFreezeICFG() && config.getCallgraphAlgorithm() != CallgraphAlgorithm.OnDemand)
+        	iCfg = new FrozenInfoflowCFG(iCfg);
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        if (iCfg instanceof InfoflowCFG)
+        	((InfoflowCFG) iCfg).setMaxThreadNum(config.getMaxThreadNum() == -1 ? numThreads
+        			: Math.min(config.getMaxThreadNum(), numThreads));
         
         // Sets the shared CFG
         SharedCfg.setCfg(iCfg);
 		        
-        int numThreads = Runtime.getRuntime().availableProcessors();
-		CountingThreadPoolExecutor executor = createExecutor(numThreads);
+		InterruptableExecutor executor = createExecutor(numThreads);
 		
 		// Initialize the memory manager
 		PathDataErasureMode erasureMode = PathDataErasureMode.EraseAll;
@@ -239,9 +267,13 @@ public class Infoflow extends AbstractInfoflow {
 			erasureMode = PathDataErasureMode.KeepOnlyContextData;
 		if (pathBuilderFactory.supportsPathReconstruction())
 			erasureMode = PathDataErasureMode.EraseNothing;
-		IMemoryManager<Abstraction> memoryManager = new FlowDroidMemoryManager(false,
+		FlowDroidMemoryManager memoryManager = new FlowDroidMemoryManager(false,
 				erasureMode);
 		
+		// Neighbors can only be limited if we don't need them for the paths
+		Abstraction.setMaxNeighbors(pathBuilderFactory.supportsPathReconstruction()
+				? -1 : config.getMaxNeighbors());
+		
 		// Initialize the data flow manager
 		InfoflowManager manager = new InfoflowManager(config, null, iCfg, sourcesSinks,
 				taintWrapper);
@@ -249,6 +281,7 @@ public class Infoflow extends AbstractInfoflow {
 		BackwardsInfoflowProblem backProblem = null;
 		InfoflowManager backwardsManager = null;
 		InfoflowSolver backSolver = null;
+		SpillingSolverStore<Unit, Abstraction, SootMethod> backSpillingStore = null;
 		final IAliasingStrategy aliasingStrategy;
 		switch (getConfig().getAliasingAlgorithm()) {
 			case FlowSensitive:
@@ -257,6 +290,20 @@ public class Infoflow extends AbstractInfoflow {
 				backProblem = new BackwardsInfoflowProblem(backwardsManager);
 				backSolver = new InfoflowSolver(backProblem, executor);
 				backSolver.setMemoryManager(memoryManager);
+				backSolver.setMaxEdgeBatchSize(config.getMaxEdgeBatchSize());
+				backSolver.setMeasureQueueWaitTime(config.getMeasureQueueWaitTime());
+				if (config.getSpillSolverData()) {
+					backSpillingStore = new SpillingSolverStore<Unit, Abstraction, SootMethod>(
+							backwardsManager.getICFG(), config.getSolverSpillDirectory(),
+							config.getMaxResidentSolverEntries());
+					backSolver.setSpillingStore(backSpillingStore);
+				}
+				else if (config.getUseCompactJumpFunctions())
+					backSolver.setJumpFunctions(new CompactJumpFunctions<Unit, Abstraction>());
+				if (!config.getSpillSolverData()) {
+					backSolver.setEnableSummaryCompaction(config.getEnableSummaryCompaction());
+					backSolver.setSummaryCompactionInterval(config.getSummaryCompactionInterval());
+				}
 				backSolver.setJumpPredecessors(!pathBuilderFactory.supportsPathReconstruction());
 //				backSolver.setEnableMergePointChecking(true);
 				
@@ -285,6 +332,21 @@ public class Infoflow extends AbstractInfoflow {
 			backwardsManager.setForwardSolver(forwardSolver);
 		
 		forwardSolver.setMemoryManager(memoryManager);
+		forwardSolver.setMaxEdgeBatchSize(config.getMaxEdgeBatchSize());
+		forwardSolver.setMeasureQueueWaitTime(config.getMeasureQueueWaitTime());
+		SpillingSolverStore<Unit, Abstraction, SootMethod> forwardSpillingStore = null;
+		if (config.getSpillSolverData()) {
+			forwardSpillingStore = new SpillingSolverStore<Unit, Abstraction, SootMethod>(
+					iCfg, config.getSolverSpillDirectory(),
+					config.getMaxResidentSolverEntries());
+			forwardSolver.setSpillingStore(forwardSpillingStore);
+		}
+		else if (config.getUseCompactJumpFunctions())
+			forwardSolver.setJumpFunctions(new CompactJumpFunctions<Unit, Abstraction>());
+		if (!config.getSpillSolverData()) {
+			forwardSolver.setEnableSummaryCompaction(config.getEnableSummaryCompaction());
+			forwardSolver.setSummaryCompactionInterval(config.getSummaryCompactionInterval());
+		}
 		forwardSolver.setJumpPredecessors(!pathBuilderFactory.supportsPathReconstruction());
 //		forwardSolver.setEnableMergePointChecking(true);
 		
@@ -357,7 +419,48 @@ public class Infoflow extends AbstractInfoflow {
 				forwardSolver.setConditions(config.getConditions());
 			}
 		}
-		forwardSolver.solve();
+		// Stream the results to the incremental handlers while the solver
+		// is still running
+		IncrementalSourceFinder incrementalSourceFinder = null;
+		if (!onResultAvailable.isEmpty()) {
+			incrementalSourceFinder = new IncrementalSourceFinder(iCfg, onResultAvailable);
+			forwardProblem.getTaintPropagationResults().addResultAvailableHandler(
+					incrementalSourceFinder);
+		}
+		
+		// Stop the solvers if they exceed their budgets
+		SolverWatchdog watchdog = null;
+		if (config.getDataFlowTimeout() > 0 || config.getMaxMemoryUsage() > 0) {
+			watchdog = new SolverWatchdog(executor, config.getDataFlowTimeout(),
+					config.getMaxMemoryUsage());
+			watchdog.addSolver(forwardSolver);
+			if (backSolver != null)
+				watchdog.addSolver(backSolver);
+			watchdog.start();
+		}
+		
+		long beforeSolve = System.nanoTime();
+		boolean solved = false;
+		try {
+			forwardSolver.solve();
+			solved = true;
+		}
+		finally {
+			// Do not leave any threads behind if the solver or a handler
+			// has failed
+			if (watchdog != null)
+				watchdog.stop();
+			if (!solved && incrementalSourceFinder != null)
+				incrementalSourceFinder.shutdownNow();
+		}
+		long solveTime = System.nanoTime() - beforeSolve;
+		TerminationReason terminationReason = TerminationReason.Completed;
+		if (watchdog != null) {
+			terminationReason = watchdog.getTerminationReason();
+			if (terminationReason != TerminationReason.Completed)
+				logger.warn("Data flow analysis was aborted ({}), the results will be incomplete",
+						terminationReason);
+		}
 		maxMemoryConsumption = Math.max(maxMemoryConsumption, getUsedMemory());
 		
 		// Not really nice, but sometimes Heros returns before all
@@ -379,6 +482,10 @@ public class Infoflow extends AbstractInfoflow {
 		}
 		if (executor.getActiveCount() != 0 || !executor.isTerminated())
 			logger.error("Executor did not terminate gracefully");
+		
+		// Deliver the remaining incremental results
+		if (incrementalSourceFinder != null)
+			incrementalSourceFinder.shutdown();
 
 		// Print taint wrapper statistics
 		if (taintWrapper != null) {
@@ -386,27 +493,49 @@ public class Infoflow extends AbstractInfoflow {
 			logger.info("Taint wrapper misses: " + taintWrapper.getWrapperMisses());
 		}
 		
-		Set<AbstractionAtSink> res = forwardProblem.getResults();
-		
 		// We need to prune access paths that are entailed by another one
-		for (Iterator<AbstractionAtSink> absAtSinkIt = res.iterator(); absAtSinkIt.hasNext(); ) {
-			AbstractionAtSink curAbs = absAtSinkIt.next();
-			for (AbstractionAtSink checkAbs : res)
-				if (checkAbs != curAbs
-						&& checkAbs.getSinkStmt() == curAbs.getSinkStmt()
-						&& checkAbs.getAbstraction().isImplicit() == curAbs.getAbstraction().isImplicit()
-						&& checkAbs.getAbstraction().getSourceContext() == curAbs.getAbstraction().getSourceContext())
-					if (checkAbs.getAbstraction().getAccessPath().entails(
-							curAbs.getAbstraction().getAccessPath())) {
-						absAtSinkIt.remove();
-						break;
-					}
-		}
+		int prunedCount = forwardProblem.getTaintPropagationResults().removeEntailedResults(
+				config.getMaxThreadNum() == -1 ? numThreads
+						: Math.min(config.getMaxThreadNum(), numThreads));
+		if (prunedCount > 0)
+			logger.info("Removed {} results that were entailed by other results", prunedCount);
+		Set<AbstractionAtSink> res = forwardProblem.getResults();
 		
 		logger.info("IFDS problem with {} forward and {} backward edges solved, "
 				+ "processing {} results...", forwardSolver.propagationCount,
 				backSolver == null ? 0 : backSolver.propagationCount,
 				res == null ? 0 : res.size());
+		if (config.getMeasureQueueWaitTime())
+			logger.info("Edges spent {} seconds (forward) and {} seconds (backward) "
+					+ "waiting for a worker thread", forwardSolver.getQueueWaitTime() / 1E9,
+					backSolver == null ? 0 : backSolver.getQueueWaitTime() / 1E9);
+		solverEdgeCount = forwardSolver.propagationCount
+				+ (backSolver == null ? 0 : backSolver.propagationCount);
+		solverTaskCount = forwardSolver.getTaskCount()
+				+ (backSolver == null ? 0 : backSolver.getTaskCount());
+		logger.info("Solvers ran {} tasks in {} seconds ({} tasks per second)",
+				solverTaskCount, solveTime / 1E9,
+				solveTime == 0 ? 0 : (long) (solverTaskCount / (solveTime / 1E9)));
+		if (config.getEnableSummaryCompaction()) {
+			compactedSummaryCount = forwardSolver.getCompactedSummaryCount()
+					+ (backSolver == null ? 0 : backSolver.getCompactedSummaryCount());
+			revivedSummaryCount = forwardSolver.getRevivedSummaryCount()
+					+ (backSolver == null ? 0 : backSolver.getRevivedSummaryCount());
+			logger.info("Solvers compacted {} summary sets of finished methods, "
+					+ "{} of which had to be copied back", compactedSummaryCount,
+					revivedSummaryCount);
+		}
+		if (forwardSpillingStore != null) {
+			solverSpillCount = forwardSpillingStore.getSpillCount()
+					+ (backSpillingStore == null ? 0 : backSpillingStore.getSpillCount());
+			solverReloadCount = forwardSpillingStore.getReloadCount()
+					+ (backSpillingStore == null ? 0 : backSpillingStore.getReloadCount());
+			logger.info("Solvers spilled {} method partitions to disk and reloaded {} partitions",
+					solverSpillCount, solverReloadCount);
+		}
+		logger.info("Memory manager cache had {} hits and {} misses, {} entries were evicted",
+				memoryManager.getCacheHitCount(), memoryManager.getCacheMissCount(),
+				memoryManager.getCacheEvictionCount());
 		
 		// Force a cleanup. Everything we need is reachable through the
 		// results set, the other abstractions can be killed now.
@@ -422,6 +551,11 @@ public class Infoflow extends AbstractInfoflow {
 		Runtime.getRuntime().gc();
 		
 		computeTaintPaths(res);
+		if (terminationReason != TerminationReason.Completed) {
+			if (results == null)
+				results = new InfoflowResults();
+			results.setTerminationReason(terminationReason);
+		}
 		
 		if (results == null || results.getResults().isEmpty())
 			logger.warn("No results found.");
@@ -430,7 +564,8 @@ public class Infoflow extends AbstractInfoflow {
                     sink, iCfg.getMethodOf(sink.getSink()).getSignature() );
 			for (ResultSourceInfo source : results.getResults().get(sink)) {
 				logger.info("- {} in method {}",source, iCfg.getMethodOf(source.getSource()).getSignature());
-				if (source.getPath() != null) {
+				// Do not force paths that are only computed on demand
+				if (!source.hasPendingPath() && source.getPath() != null) {
 					logger.info("\ton Path: ");
 					for (Unit p : source.getPath()) {
 						logger.info("\t -> " + iCfg.getMethodOf(p));
@@ -500,6 +635,44 @@ public class Infoflow extends AbstractInfoflow {
 		return runtime.totalMemory() - runtime.freeMemory();
 	}
 
+	/**
+	 * Resets the peak usage of all heap memory pools, so that we can measure
+	 * the peak memory consumption of a single phase
+	 */
+	private static void resetPeakHeapUsage() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if (pool.getType() == MemoryType.HEAP)
+				pool.resetPeakUsage();
+	}
+
+	/**
+	 * Gets the peak heap usage since the last call to resetPeakHeapUsage().
+	 * This is an upper bound, because the pools need not peak at the same time.
+	 * @return The peak heap usage in bytes
+	 */
+	private static long getPeakHeapUsage() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null)
+				peak += pool.getPeakUsage().getUsed();
+		return peak;
+	}
+
+	/**
+	 * Logs the throughput and the peak memory consumption of a path builder
+	 * @param builder The path builder that has finished
+	 * @param nanos The time the path builder took in nanoseconds
+	 */
+	private void reportPathBuilderStatistics(IAbstractionPathBuilder builder, long nanos) {
+		long peakMemory = getPeakHeapUsage();
+		int numPaths = builder.getResults() == null ? 0 : builder.getResults().numConnections();
+		double seconds = nanos / 1E9;
+		logger.info("{} found {} source-to-sink connections in {} seconds ({} paths per second), "
+				+ "peak heap usage was {} MB", builder.getClass().getSimpleName(), numPaths,
+				seconds, seconds > 0 ? (long) (numPaths / seconds) : numPaths,
+				peakMemory / (1024 * 1024));
+	}
+
 	/**
 	 * Runs all code optimizers 
 	 * @param sourcesSinks The SourceSinkManager
@@ -515,12 +688,19 @@ public class Infoflow extends AbstractInfoflow {
 	 * @param numThreads The number of threads to use
 	 * @return The generated executor
 	 */
-	private CountingThreadPoolExecutor createExecutor(int numThreads) {
-		return new CountingThreadPoolExecutor
-				(config.getMaxThreadNum() == -1 ? numThreads
-						: Math.min(config.getMaxThreadNum(), numThreads),
-				Integer.MAX_VALUE, 30, TimeUnit.SECONDS,
-				new LinkedBlockingQueue<Runnable>());
+	private InterruptableExecutor createExecutor(int numThreads) {
+		int threadNum = config.getMaxThreadNum() == -1 ? numThreads
+				: Math.min(config.getMaxThreadNum(), numThreads);
+		switch (config.getEdgeSchedulingStrategy()) {
+			case SharedQueue:
+				return new InterruptableExecutor(threadNum,
+						Integer.MAX_VALUE, 30, TimeUnit.SECONDS,
+						new LinkedBlockingQueue<Runnable>());
+			case MethodAffine:
+				return new MethodAffineExecutor(threadNum);
+			default:
+				throw new RuntimeException("Unsupported edge scheduling strategy");
+		}
 	}
 	
 	/**
@@ -530,7 +710,10 @@ public class Infoflow extends AbstractInfoflow {
 	protected void computeTaintPaths(final Set<AbstractionAtSink> res) {
 		IAbstractionPathBuilder builder = this.pathBuilderFactory.createPathBuilder
 				(config.getMaxThreadNum(), iCfg);
+		long beforePathBuilding = System.nanoTime();
+		resetPeakHeapUsage();
    		builder.computeTaintPaths(res);
+   		reportPathBuilderStatistics(builder, System.nanoTime() - beforePathBuilding);
    		if (this.results == null)
    			this.results = builder.getResults();
    		else
@@ -645,6 +828,24 @@ public class Infoflow extends AbstractInfoflow {
 		this.onResultsAvailable.add(handler);
 	}
 	
+	/**
+	 * Adds a handler that is called for every new result while the data flow
+	 * analysis is still running
+	 * @param handler The handler to add
+	 */
+	public void addIncrementalResultsHandler(IncrementalResultsHandler handler) {
+		this.onResultAvailable.add(handler);
+	}
+	
+	/**
+	 * Removes a handler that is called for every new result while the data
+	 * flow analysis is still running
+	 * @param handler The handler to remove
+	 */
+	public void removeIncrementalResultsHandler(IncrementalResultsHandler handler) {
+		this.onResultAvailable.remove(handler);
+	}
+	
 	/**
 	 * Sets a handler which is invoked whenever a taint is propagated
 	 * @param handler The handler to be invoked when propagating taints
@@ -678,6 +879,68 @@ public class Infoflow extends AbstractInfoflow {
 		return this.maxMemoryConsumption;
 	}
 	
+	/**
+	 * Gets the number of path edges that the solvers have propagated during
+	 * the last analysis run
+	 * @return The number of path edges propagated during the last analysis
+	 * run if available, otherwise -1
+	 */
+	public long getSolverEdgeCount() {
+		return this.solverEdgeCount;
+	}
+	
+	/**
+	 * Gets the number of executor tasks that the solvers have run during the
+	 * last analysis run. With edge batching, one task can process multiple
+	 * edges.
+	 * @return The number of tasks run during the last analysis run if
+	 * available, otherwise -1
+	 */
+	public long getSolverTaskCount() {
+		return this.solverTaskCount;
+	}
+	
+	/**
+	 * Gets the number of times the solvers have written the data of a method
+	 * to disk during the last analysis run
+	 * @return The number of spilled method partitions if spilling was
+	 * enabled during the last analysis run, otherwise -1
+	 */
+	public long getSolverSpillCount() {
+		return this.solverSpillCount;
+	}
+	
+	/**
+	 * Gets the number of times the solvers have loaded the data of a method
+	 * from disk during the last analysis run
+	 * @return The number of reloaded method partitions if spilling was
+	 * enabled during the last analysis run, otherwise -1
+	 */
+	public long getSolverReloadCount() {
+		return this.solverReloadCount;
+	}
+	
+	/**
+	 * Gets the number of end summary and incoming edge sets that the solvers
+	 * have compacted during the last analysis run
+	 * @return The number of compacted summary sets if summary compaction was
+	 * enabled during the last analysis run, otherwise -1
+	 */
+	public long getCompactedSummaryCount() {
+		return this.compactedSummaryCount;
+	}
+	
+	/**
+	 * Gets the number of compacted summary sets that the solvers had to copy
+	 * back, because their method received new edges after it had been
+	 * considered finished
+	 * @return The number of revived summary sets if summary compaction was
+	 * enabled during the last analysis run, otherwise -1
+	 */
+	public long getRevivedSummaryCount() {
+		return this.revivedSummaryCount;
+	}
+	
 	/**
 	 * Gets the concrete set of sources that have been collected in preparation
 	 * for the taint analysis. This method will return null if source and sink
@@ -59,6 +59,22 @@ public class InfoflowConfiguration {
 		RemoveSideEffectFreeCode
 	}
 
+	/**
+	 * Enumeration containing the strategies for distributing the solver's
+	 * path edges over the worker threads
+	 */
+	public enum EdgeSchedulingStrategy {
+		/**
+		 * All worker threads take their edges from one shared queue
+		 */
+		SharedQueue,
+		/**
+		 * Every worker thread has its own deque. All edges of the same method
+		 * are routed to the same worker, idle workers steal from the others.
+		 */
+		MethodAffine
+	}
+
 	private static int accessPathLength = 5;
 	private static boolean useRecursiveAccessPaths = true;
 	private static boolean useThisChainReduction = true;
@@ -66,6 +82,7 @@ public class InfoflowConfiguration {
 	private static boolean oneResultPerAccessPath = false;
 	private static boolean mergeNeighbors = false;
 	private static boolean useTypeTightening = true;
+	private static boolean useCanonicalAccessPaths = true;
 
 	private boolean stopAfterFirstFlow = false;
 	private boolean enableImplicitFlows = false;
@@ -76,6 +93,18 @@ public class InfoflowConfiguration {
 	private boolean enableTypeChecking = true;
 	private boolean ignoreFlowsInSystemPackages = true;
 	private int maxThreadNum = -1;
+	private int maxEdgeBatchSize = 0;
+	private boolean useCompactJumpFunctions = false;
+	private boolean spillSolverData = false;
+	private String solverSpillDirectory = null;
+	private long maxResidentSolverEntries = 10000000;
+	private boolean enableSummaryCompaction = false;
+	private long summaryCompactionInterval = 10000;
+	private int maxNeighbors = -1;
+	private long dataFlowTimeout = 0;
+	private long maxMemoryUsage = 0;
+	private boolean freezeICFG = false;
+	private String callgraphSnapshotDirectory = null;
 	private boolean writeOutputFiles = false;
 	private boolean logSourcesAndSinks = false;
 
@@ -87,6 +116,8 @@ public class InfoflowConfiguration {
 	private CallgraphAlgorithm callgraphAlgorithm = CallgraphAlgorithm.AutomaticSelection;
 	private AliasingAlgorithm aliasingAlgorithm = AliasingAlgorithm.FlowSensitive;
 	private CodeEliminationMode codeEliminationMode = CodeEliminationMode.PropagateConstants;
+	private EdgeSchedulingStrategy edgeSchedulingStrategy = EdgeSchedulingStrategy.SharedQueue;
+	private boolean measureQueueWaitTime = false;
 
 	/**
 	 * Merges the given configuration options into this configuration object
@@ -104,12 +135,26 @@ public class InfoflowConfiguration {
 		this.enableTypeChecking = config.enableTypeChecking;
 		this.ignoreFlowsInSystemPackages = config.ignoreFlowsInSystemPackages;
 		this.maxThreadNum = config.maxThreadNum;
+		this.maxEdgeBatchSize = config.maxEdgeBatchSize;
+		this.useCompactJumpFunctions = config.useCompactJumpFunctions;
+		this.spillSolverData = config.spillSolverData;
+		this.solverSpillDirectory = config.solverSpillDirectory;
+		this.maxResidentSolverEntries = config.maxResidentSolverEntries;
+		this.enableSummaryCompaction = config.enableSummaryCompaction;
+		this.summaryCompactionInterval = config.summaryCompactionInterval;
+		this.maxNeighbors = config.maxNeighbors;
+		this.dataFlowTimeout = config.dataFlowTimeout;
+		this.maxMemoryUsage = config.maxMemoryUsage;
+		this.freezeICFG = config.freezeICFG;
+		this.callgraphSnapshotDirectory = config.callgraphSnapshotDirectory;
 		this.inspectSources = config.inspectSources;
 		this.inspectSinks = config.inspectSinks;
 		this.callgraphAlgorithm = config.callgraphAlgorithm;
 		this.aliasingAlgorithm = config.aliasingAlgorithm;
 		this.codeEliminationMode = config.codeEliminationMode;
 		this.logSourcesAndSinks = config.logSourcesAndSinks;
+		this.edgeSchedulingStrategy = config.edgeSchedulingStrategy;
+		this.measureQueueWaitTime = config.measureQueueWaitTime;
 	}
 
 	/**
@@ -228,6 +273,29 @@ public class InfoflowConfiguration {
 		InfoflowConfiguration.useTypeTightening = useTypeTightening;
 	}
 
+	/**
+	 * Gets whether access paths shall be hash-consed, i.e., whether the
+	 * AccessPathFactory shall return one canonical instance for all equal
+	 * access paths
+	 * 
+	 * @return True if canonical access paths shall be used, otherwise false
+	 */
+	public static boolean getUseCanonicalAccessPaths() {
+		return InfoflowConfiguration.useCanonicalAccessPaths;
+	}
+
+	/**
+	 * Sets whether access paths shall be hash-consed, i.e., whether the
+	 * AccessPathFactory shall return one canonical instance for all equal
+	 * access paths
+	 * 
+	 * @param useCanonicalAccessPaths
+	 *            True if canonical access paths shall be used, otherwise false
+	 */
+	public static void setUseCanonicalAccessPaths(boolean useCanonicalAccessPaths) {
+		InfoflowConfiguration.useCanonicalAccessPaths = useCanonicalAccessPaths;
+	}
+
 	/**
 	 * Gets whether recursive access paths shall be reduced, e.g. whether we
 	 * shall propagate a.[next].data instead of a.next.next.data.
@@ -541,6 +609,287 @@ public class InfoflowConfiguration {
 		return this.maxThreadNum;
 	}
 
+	/**
+	 * Sets the maximum number of intra-procedural edges that a solver thread
+	 * processes in one batch before handing new edges to the shared executor.
+	 * A value of one or less disables batching, i.e., every edge becomes a
+	 * task of its own. Batching is disabled by default.
+	 * 
+	 * @param maxEdgeBatchSize
+	 *            The maximum number of edges per batch
+	 */
+	public void setMaxEdgeBatchSize(int maxEdgeBatchSize) {
+		this.maxEdgeBatchSize = maxEdgeBatchSize;
+	}
+
+	/**
+	 * Gets the maximum number of intra-procedural edges that a solver thread
+	 * processes in one batch before handing new edges to the shared executor.
+	 * A value of one or less indicates that batching is disabled.
+	 * 
+	 * @return The maximum number of edges per batch
+	 */
+	public int getMaxEdgeBatchSize() {
+		return this.maxEdgeBatchSize;
+	}
+
+	/**
+	 * Sets whether the solvers shall store their jump functions in a compact
+	 * table of integer IDs instead of a hash map of path edges. This reduces
+	 * the memory consumption on large apps at the cost of some lookup speed.
+	 * 
+	 * @param useCompactJumpFunctions
+	 *            True if the compact jump function store shall be used,
+	 *            otherwise false
+	 */
+	public void setUseCompactJumpFunctions(boolean useCompactJumpFunctions) {
+		this.useCompactJumpFunctions = useCompactJumpFunctions;
+	}
+
+	/**
+	 * Gets whether the solvers shall store their jump functions in a compact
+	 * table of integer IDs instead of a hash map of path edges
+	 * 
+	 * @return True if the compact jump function store shall be used,
+	 *         otherwise false
+	 */
+	public boolean getUseCompactJumpFunctions() {
+		return this.useCompactJumpFunctions;
+	}
+
+	/**
+	 * Sets whether the solvers may move the jump functions, end summaries and
+	 * incoming edges of methods that have not been used for a while to disk.
+	 * This allows for analyzing very large apps at the cost of speed.
+	 * 
+	 * @param spillSolverData
+	 *            True if the solvers may spill data to disk, otherwise false
+	 */
+	public void setSpillSolverData(boolean spillSolverData) {
+		this.spillSolverData = spillSolverData;
+	}
+
+	/**
+	 * Gets whether the solvers may move the jump functions, end summaries and
+	 * incoming edges of methods that have not been used for a while to disk
+	 * 
+	 * @return True if the solvers may spill data to disk, otherwise false
+	 */
+	public boolean getSpillSolverData() {
+		return this.spillSolverData;
+	}
+
+	/**
+	 * Sets the directory in which the solvers create their spill files
+	 * 
+	 * @param solverSpillDirectory
+	 *            The directory for the spill files, or null to use the
+	 *            system's temporary directory
+	 */
+	public void setSolverSpillDirectory(String solverSpillDirectory) {
+		this.solverSpillDirectory = solverSpillDirectory;
+	}
+
+	/**
+	 * Gets the directory in which the solvers create their spill files
+	 * 
+	 * @return The directory for the spill files, or null if the system's
+	 *         temporary directory shall be used
+	 */
+	public String getSolverSpillDirectory() {
+		return this.solverSpillDirectory;
+	}
+
+	/**
+	 * Sets the maximum number of jump functions, end summaries and incoming
+	 * edges a solver keeps on the heap before it starts spilling data to disk
+	 * 
+	 * @param maxResidentSolverEntries
+	 *            The maximum number of solver entries on the heap
+	 */
+	public void setMaxResidentSolverEntries(long maxResidentSolverEntries) {
+		this.maxResidentSolverEntries = maxResidentSolverEntries;
+	}
+
+	/**
+	 * Gets the maximum number of jump functions, end summaries and incoming
+	 * edges a solver keeps on the heap before it starts spilling data to disk
+	 * 
+	 * @return The maximum number of solver entries on the heap
+	 */
+	public long getMaxResidentSolverEntries() {
+		return this.maxResidentSolverEntries;
+	}
+
+	/**
+	 * Sets whether the solvers shall compact the end summaries and incoming
+	 * edges of methods for which no more work is outstanding. This reduces
+	 * the peak memory consumption without changing the results, but requires
+	 * the solvers to keep track of the number of pending edges per method.
+	 * 
+	 * @param enableSummaryCompaction
+	 *            True if the summaries of finished methods shall be
+	 *            compacted, otherwise false
+	 */
+	public void setEnableSummaryCompaction(boolean enableSummaryCompaction) {
+		this.enableSummaryCompaction = enableSummaryCompaction;
+	}
+
+	/**
+	 * Gets whether the solvers shall compact the end summaries and incoming
+	 * edges of methods for which no more work is outstanding
+	 * 
+	 * @return True if the summaries of finished methods shall be compacted,
+	 *         otherwise false
+	 */
+	public boolean getEnableSummaryCompaction() {
+		return this.enableSummaryCompaction;
+	}
+
+	/**
+	 * Sets the minimum number of edges that the solvers process between two
+	 * compactions of the summaries of finished methods. Smaller values free
+	 * memory earlier, but spend more time on looking for finished methods.
+	 * 
+	 * @param summaryCompactionInterval
+	 *            The minimum number of edges between two compactions
+	 */
+	public void setSummaryCompactionInterval(long summaryCompactionInterval) {
+		this.summaryCompactionInterval = summaryCompactionInterval;
+	}
+
+	/**
+	 * Gets the minimum number of edges that the solvers process between two
+	 * compactions of the summaries of finished methods
+	 * 
+	 * @return The minimum number of edges between two compactions
+	 */
+	public long getSummaryCompactionInterval() {
+		return this.summaryCompactionInterval;
+	}
+
+	/**
+	 * Sets the maximum number of neighbors that are recorded per abstraction
+	 * when no paths are reconstructed. Neighbors beyond this limit are
+	 * dropped, which saves memory at join points, but may cause sources to be
+	 * missing from the results. When paths are reconstructed, the limit is
+	 * ignored.
+	 * 
+	 * @param maxNeighbors
+	 *            The maximum number of neighbors per abstraction, or -1 for
+	 *            no limit
+	 */
+	public void setMaxNeighbors(int maxNeighbors) {
+		this.maxNeighbors = maxNeighbors;
+	}
+
+	/**
+	 * Gets the maximum number of neighbors that are recorded per abstraction
+	 * when no paths are reconstructed
+	 * 
+	 * @return The maximum number of neighbors per abstraction, or -1 for no
+	 *         limit
+	 */
+	public int getMaxNeighbors() {
+		return this.maxNeighbors;
+	}
+
+	/**
+	 * Sets the maximum time the data flow solvers may run. When this time is
+	 * exceeded, the solvers are stopped and the paths are reconstructed for
+	 * the results found so far. The results are then marked as partial.
+	 * 
+	 * @param dataFlowTimeout
+	 *            The maximum time of the data flow analysis in seconds, or 0
+	 *            for no limit
+	 */
+	public void setDataFlowTimeout(long dataFlowTimeout) {
+		this.dataFlowTimeout = dataFlowTimeout;
+	}
+
+	/**
+	 * Gets the maximum time the data flow solvers may run
+	 * 
+	 * @return The maximum time of the data flow analysis in seconds, or 0 for
+	 *         no limit
+	 */
+	public long getDataFlowTimeout() {
+		return this.dataFlowTimeout;
+	}
+
+	/**
+	 * Sets the maximum amount of heap memory the data flow analysis may use.
+	 * When the used heap exceeds this amount even after a garbage collection,
+	 * the solvers are stopped and the paths are reconstructed for the results
+	 * found so far. The results are then marked as partial.
+	 * 
+	 * @param maxMemoryUsage
+	 *            The maximum heap usage in megabytes, or 0 for no limit
+	 */
+	public void setMaxMemoryUsage(long maxMemoryUsage) {
+		this.maxMemoryUsage = maxMemoryUsage;
+	}
+
+	/**
+	 * Gets the maximum amount of heap memory the data flow analysis may use
+	 * 
+	 * @return The maximum heap usage in megabytes, or 0 for no limit
+	 */
+	public long getMaxMemoryUsage() {
+		return this.maxMemoryUsage;
+	}
+
+	/**
+	 * Sets whether the interprocedural control flow graph shall be frozen
+	 * into flat arrays after it has been built. This makes the control flow
+	 * queries of the solvers cheaper, but the graph must no longer change
+	 * afterwards. This option has no effect if the callgraph is built on
+	 * demand.
+	 * 
+	 * @param freezeICFG
+	 *            True if the interprocedural control flow graph shall be
+	 *            frozen, otherwise false
+	 */
+	public void setFreezeICFG(boolean freezeICFG) {
+		this.freezeICFG = freezeICFG;
+	}
+
+	/**
+	 * Gets whether the interprocedural control flow graph shall be frozen into
+	 * flat arrays after it has been built
+	 * 
+	 * @return True if the interprocedural control flow graph shall be frozen,
+	 *         otherwise false
+	 */
+	public boolean getFreezeICFG() {
+		return this.freezeICFG;
+	}
+
+	/**
+	 * Sets the directory in which snapshots of the callgraph are stored. If a
+	 * snapshot for the same classpath, options and entry points exists from an
+	 * earlier run, the callgraph is loaded from it instead of being
+	 * constructed. Snapshots are not used with the points-to based aliasing
+	 * algorithm, which requires Spark's points-to sets.
+	 * 
+	 * @param callgraphSnapshotDirectory
+	 *            The directory for the callgraph snapshots, or null to always
+	 *            construct the callgraph
+	 */
+	public void setCallgraphSnapshotDirectory(String callgraphSnapshotDirectory) {
+		this.callgraphSnapshotDirectory = callgraphSnapshotDirectory;
+	}
+
+	/**
+	 * Gets the directory in which snapshots of the callgraph are stored
+	 * 
+	 * @return The directory for the callgraph snapshots, or null if the
+	 *         callgraph shall always be constructed
+	 */
+	public String getCallgraphSnapshotDirectory() {
+		return this.callgraphSnapshotDirectory;
+	}
+
 	/**
 	 * Gets whether FlowDroid shall write the Jimple files to disk after the
 	 * data flow analysis
@@ -585,6 +934,50 @@ public class InfoflowConfiguration {
 		return codeEliminationMode;
 	}
 
+	/**
+	 * Sets the strategy for distributing the solver's path edges over the
+	 * worker threads
+	 * 
+	 * @param strategy
+	 *            The edge scheduling strategy to be used by the solvers
+	 */
+	public void setEdgeSchedulingStrategy(EdgeSchedulingStrategy strategy) {
+		this.edgeSchedulingStrategy = strategy;
+	}
+
+	/**
+	 * Gets the strategy for distributing the solver's path edges over the
+	 * worker threads
+	 * 
+	 * @return The edge scheduling strategy to be used by the solvers
+	 */
+	public EdgeSchedulingStrategy getEdgeSchedulingStrategy() {
+		return edgeSchedulingStrategy;
+	}
+
+	/**
+	 * Sets whether the solvers shall measure how long their path edges wait
+	 * for a worker thread. This costs two timer calls per executor task.
+	 * 
+	 * @param measureQueueWaitTime
+	 *            True if the queue waiting time shall be measured, otherwise
+	 *            false
+	 */
+	public void setMeasureQueueWaitTime(boolean measureQueueWaitTime) {
+		this.measureQueueWaitTime = measureQueueWaitTime;
+	}
+
+	/**
+	 * Gets whether the solvers shall measure how long their path edges wait
+	 * for a worker thread
+	 * 
+	 * @return True if the queue waiting time shall be measured, otherwise
+	 *         false
+	 */
+	public boolean getMeasureQueueWaitTime() {
+		return this.measureQueueWaitTime;
+	}
+
 	/**
 	 * Gets whether the discovered sources and sinks shall be logged
 	 * 
@@ -649,6 +1042,21 @@ public class InfoflowConfiguration {
 			logger.info("Recursive access path shortening is enabled");
 		else
 			logger.info("Recursive access path shortening is NOT enabled");
+		if (dataFlowTimeout > 0)
+			logger.info("Data flow analysis will be aborted after {} seconds",
+					dataFlowTimeout);
+		if (maxMemoryUsage > 0)
+			logger.info("Data flow analysis will be aborted when using more than {} MB",
+					maxMemoryUsage);
+		if (freezeICFG)
+			logger.info("The interprocedural CFG will be frozen after it has been built");
+		if (callgraphSnapshotDirectory != null)
+			logger.info("Callgraph snapshots are stored in {}", callgraphSnapshotDirectory);
+		if (measureQueueWaitTime)
+			logger.info("The solvers measure how long edges wait for a worker thread");
+		if (enableSummaryCompaction)
+			logger.info("Summaries of finished methods are compacted at least {} edges apart",
+					summaryCompactionInterval);
 	}
 
 }
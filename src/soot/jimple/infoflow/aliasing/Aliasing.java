@@ -137,6 +137,17 @@ public class Aliasing {
 			if (!referencedAP.isStaticFieldRef())
 				return null;
 		
+		// Shortcut: If one field sequence is a prefix of the other one, there
+		// is no mismatch that would require base matching
+		if (taintedAP.isFieldPrefixOf(referencedAP)) {
+			if (referencedAP.getFieldCount() > taintedAP.getFieldCount()
+					&& !taintedAP.getTaintSubFields())
+				return null;
+			return taintedAP;
+		}
+		if (referencedAP.isFieldPrefixOf(taintedAP))
+			return taintedAP;
+		
 		// Match the bases
 		return getReferencedAPBase(taintedAP, referencedAP.getFields());
 	}
@@ -0,0 +1,541 @@
+package soot.jimple.infoflow.cfg;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import soot.Kind;
+import soot.MethodOrMethodContext;
+import soot.Pack;
+import soot.PackManager;
+import soot.PhaseOptions;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Transform;
+import soot.Unit;
+import soot.jimple.Stmt;
+import soot.jimple.infoflow.config.IInfoflowConfig;
+import soot.jimple.toolkits.callgraph.CallGraph;
+import soot.jimple.toolkits.callgraph.Edge;
+import soot.options.Options;
+
+/**
+ * Snapshot of the callgraph on disk, so that later runs on the same inputs can
+ * skip callgraph construction. The interprocedural control flow graph is
+ * derived from the callgraph and the method bodies on demand, so restoring the
+ * callgraph and the bodies of all reachable methods is sufficient.
+ *
+ * Snapshots are stored in a binary file whose name is a hash over the Soot
+ * classpath, the files on it, the Soot options, the options of the body and
+ * callgraph phases, and the entry points. Call sites are identified by their
+ * index in the body of their method and are checked against a hash of their
+ * text when the snapshot is loaded. A snapshot that does not fit the current
+ * Scene is ignored and overwritten.
+ *
+ * The snapshot assumes that the Scene is built deterministically from these
+ * inputs. Preprocessors or whole-program transformers that change the Scene
+ * differently between runs must not be combined with snapshots.
+ */
+public class CallgraphSnapshot {
+
+	private static final Logger logger = LoggerFactory.getLogger(CallgraphSnapshot.class);
+
+	private static final int MAGIC = 0x46444347;
+	private static final int FORMAT_VERSION = 2;
+	private static final int EDGE_STRIDE = 5;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File snapshotFile;
+	private final byte[] key;
+
+	/**
+	 * Creates a new snapshot for the current Scene. The Scene must be fully
+	 * initialized, including the entry points.
+	 * @param snapshotDirectory The directory in which the snapshots are stored
+	 */
+	public CallgraphSnapshot(File snapshotDirectory) {
+		this.key = computeKey();
+		StringBuilder sb = new StringBuilder();
+		for (byte b : key)
+			sb.append(String.format("%02x", b));
+		this.snapshotFile = new File(snapshotDirectory, sb.toString() + ".cgs");
+	}
+
+	/**
+	 * Gets the file in which this snapshot is stored
+	 * @return The file in which this snapshot is stored
+	 */
+	public File getSnapshotFile() {
+		return this.snapshotFile;
+	}
+
+	/**
+	 * Computes the hash that identifies the inputs of the callgraph
+	 * construction
+	 * @return The hash over the inputs of the callgraph construction
+	 */
+	private static byte[] computeKey() {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new RuntimeException("SHA-256 is not supported", ex);
+		}
+
+		update(digest, "v" + FORMAT_VERSION);
+		update(digest, Options.v().soot_classpath());
+		for (String entry : Options.v().soot_classpath().split(File.pathSeparator))
+			updateWithFiles(digest, new File(entry));
+		for (String dir : Options.v().process_dir()) {
+			update(digest, dir);
+			updateWithFiles(digest, new File(dir));
+		}
+		updateWithOptions(digest);
+
+		// The body creation and the callgraph construction can be configured
+		// through phase options
+		for (String packName : new String[] { "jb", "wjpp", "cg" }) {
+			Pack pack = PackManager.v().getPack(packName);
+			if (pack == null)
+				continue;
+			update(digest, packName + "=" + new TreeMap<Object, Object>(
+					PhaseOptions.v().getPhaseOptions(packName)));
+			for (Transform transform : pack)
+				update(digest, transform.getPhaseName() + "=" + new TreeMap<Object, Object>(
+						PhaseOptions.v().getPhaseOptions(transform.getPhaseName())));
+		}
+
+		// Entry points such as the dummy main method are often generated, so
+		// we also need their code
+		for (SootMethod ep : Scene.v().getEntryPoints()) {
+			update(digest, ep.getSignature());
+			if (ep.hasActiveBody())
+				for (Unit u : ep.getActiveBody().getUnits())
+					update(digest, u.toString());
+		}
+		return digest.digest();
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		digest.update(String.valueOf(value).getBytes(UTF8));
+		digest.update((byte) 0);
+	}
+
+	/**
+	 * Adds all global Soot options to the given digest. These include the
+	 * options that control which classes are loaded and which methods get
+	 * bodies, as well as everything that an {@link IInfoflowConfig} may have
+	 * changed. The options are read through reflection, because the set of
+	 * options differs between Soot versions.
+	 * @param digest The digest to update
+	 */
+	private static void updateWithOptions(MessageDigest digest) {
+		List<Method> getters = new ArrayList<Method>();
+		for (Method method : Options.class.getDeclaredMethods()) {
+			if (!Modifier.isPublic(method.getModifiers())
+					|| Modifier.isStatic(method.getModifiers())
+					|| method.getParameterTypes().length > 0
+					|| method.getName().startsWith("get")
+					|| method.getName().endsWith("_help"))
+				continue;
+			Class<?> type = method.getReturnType();
+			if (type == boolean.class || type == int.class || type == String.class
+					|| List.class.isAssignableFrom(type))
+				getters.add(method);
+		}
+		Collections.sort(getters, new Comparator<Method>() {
+
+			@Override
+			public int compare(Method o1, Method o2) {
+				return o1.getName().compareTo(o2.getName());
+			}
+
+		});
+		for (Method getter : getters) {
+			try {
+				update(digest, getter.getName() + "=" + getter.invoke(Options.v()));
+			}
+			catch (IllegalAccessException ex) {
+				throw new RuntimeException("Could not read Soot option " + getter.getName(), ex);
+			}
+			catch (InvocationTargetException ex) {
+				throw new RuntimeException("Could not read Soot option " + getter.getName(),
+						ex.getCause());
+			}
+		}
+	}
+
+	private static void updateWithFiles(MessageDigest digest, File file) {
+		if (file.isDirectory()) {
+			File[] children = file.listFiles();
+			if (children != null) {
+				Arrays.sort(children);
+				for (File child : children)
+					updateWithFiles(digest, child);
+			}
+		}
+		else if (file.exists())
+			update(digest, file.getPath() + ":" + file.length() + ":" + file.lastModified());
+	}
+
+	/**
+	 * Writes the callgraph of the current Scene into this snapshot
+	 * @return True if the snapshot has been written, otherwise false
+	 */
+	public boolean save() {
+		if (!Scene.v().hasCallGraph())
+			return false;
+		long beforeSave = System.nanoTime();
+
+		// Collect the reachable methods, the callees and the edges
+		List<SootMethod> methods = new ArrayList<SootMethod>();
+		Map<SootMethod, Integer> methodIds = new HashMap<SootMethod, Integer>();
+		List<Integer> reachableIds = new ArrayList<Integer>();
+		for (Iterator<MethodOrMethodContext> methodIt = Scene.v().getReachableMethods().listener();
+				methodIt.hasNext(); )
+			reachableIds.add(getMethodId(methodIt.next().method(), methods, methodIds));
+
+		List<String> kinds = new ArrayList<String>();
+		Map<Kind, Integer> kindIds = new HashMap<Kind, Integer>();
+		Map<SootMethod, Map<Unit, Integer>> unitIndices = new HashMap<SootMethod, Map<Unit, Integer>>();
+		Map<Unit, Integer> unitHashes = new IdentityHashMap<Unit, Integer>();
+		CallGraph cg = Scene.v().getCallGraph();
+		int[] edges = new int[cg.size() * EDGE_STRIDE];
+		int numEdges = 0;
+		for (Edge edge : cg) {
+			SootMethod src = edge.src();
+			int unitIndex = -1;
+			if (edge.srcUnit() != null) {
+				Integer idx = getUnitIndices(src, unitIndices).get(edge.srcUnit());
+				if (idx == null) {
+					logger.warn("Call site {} is not part of the body of {}, not saving the "
+							+ "callgraph snapshot", edge.srcUnit(), src);
+					return false;
+				}
+				unitIndex = idx;
+			}
+			Integer kindId = kindIds.get(edge.kind());
+			if (kindId == null) {
+				kindId = kinds.size();
+				kindIds.put(edge.kind(), kindId);
+				kinds.add(edge.kind().name());
+			}
+
+			if (numEdges * EDGE_STRIDE == edges.length)
+				edges = Arrays.copyOf(edges, Math.max(16 * EDGE_STRIDE, edges.length * 2));
+			int pos = numEdges * EDGE_STRIDE;
+			edges[pos] = getMethodId(src, methods, methodIds);
+			edges[pos + 1] = unitIndex;
+			edges[pos + 2] = getMethodId(edge.tgt(), methods, methodIds);
+			edges[pos + 3] = kindId;
+			edges[pos + 4] = edge.srcUnit() == null ? 0 : getUnitHash(edge.srcUnit(), unitHashes);
+			numEdges++;
+		}
+
+		// Write to a temporary file first, so that concurrent runs never see
+		// a partial snapshot
+		File tempFile = null;
+		try {
+			File dir = snapshotFile.getAbsoluteFile().getParentFile();
+			if (!dir.exists() && !dir.mkdirs())
+				throw new IOException("Could not create directory " + dir);
+			tempFile = File.createTempFile("callgraph", ".tmp", dir);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(tempFile)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				writeBytes(out, key);
+				out.writeInt(methods.size());
+				for (SootMethod m : methods)
+					writeBytes(out, m.getSignature().getBytes(UTF8));
+				out.writeInt(kinds.size());
+				for (String kind : kinds)
+					writeBytes(out, kind.getBytes(UTF8));
+				out.writeInt(reachableIds.size());
+				for (int id : reachableIds)
+					out.writeInt(id);
+				out.writeInt(numEdges);
+				for (int i = 0; i < numEdges * EDGE_STRIDE; i++)
+					out.writeInt(edges[i]);
+			}
+			finally {
+				out.close();
+			}
+			if (snapshotFile.exists() && !snapshotFile.delete())
+				throw new IOException("Could not replace " + snapshotFile);
+			if (!tempFile.renameTo(snapshotFile))
+				throw new IOException("Could not rename " + tempFile + " to " + snapshotFile);
+		}
+		catch (IOException ex) {
+			logger.error("Could not write the callgraph snapshot", ex);
+			if (tempFile != null && !tempFile.delete())
+				tempFile.deleteOnExit();
+			return false;
+		}
+
+		logger.info("Saved callgraph snapshot with {} edges to {} in {} seconds", numEdges,
+				snapshotFile, (System.nanoTime() - beforeSave) / 1E9);
+		return true;
+	}
+
+	private static int getMethodId(SootMethod method, List<SootMethod> methods,
+			Map<SootMethod, Integer> methodIds) {
+		Integer id = methodIds.get(method);
+		if (id == null) {
+			id = methods.size();
+			methodIds.put(method, id);
+			methods.add(method);
+		}
+		return id;
+	}
+
+	private static Map<Unit, Integer> getUnitIndices(SootMethod method,
+			Map<SootMethod, Map<Unit, Integer>> unitIndices) {
+		Map<Unit, Integer> indices = unitIndices.get(method);
+		if (indices == null) {
+			indices = new HashMap<Unit, Integer>();
+			if (method.hasActiveBody())
+				for (Unit u : method.getActiveBody().getUnits())
+					indices.put(u, indices.size());
+			unitIndices.put(method, indices);
+		}
+		return indices;
+	}
+
+	/**
+	 * Gets a hash over the textual representation of the given unit. Call
+	 * sites with multiple targets are hashed only once.
+	 * @param u The unit for which to get the hash
+	 * @param unitHashes The hashes computed so far
+	 * @return The hash of the given unit
+	 */
+	private static int getUnitHash(Unit u, Map<Unit, Integer> unitHashes) {
+		Integer hash = unitHashes.get(u);
+		if (hash == null) {
+			hash = u.toString().hashCode();
+			unitHashes.put(u, hash);
+		}
+		return hash;
+	}
+
+	private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Loads this snapshot into the current Scene if it exists and fits the
+	 * Scene. On success, the Scene has a callgraph and all reachable concrete
+	 * methods have active bodies.
+	 * @return True if the snapshot has been loaded, false if the callgraph
+	 * needs to be constructed
+	 */
+	public boolean load() {
+		if (!snapshotFile.exists())
+			return false;
+		long beforeLoad = System.nanoTime();
+
+		try {
+			RandomAccessFile raf = new RandomAccessFile(snapshotFile, "r");
+			try {
+				FileChannel channel = raf.getChannel();
+				MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+				CallGraph cg = read(buffer);
+				if (cg == null)
+					return false;
+				Scene.v().setCallGraph(cg);
+				logger.info("Loaded callgraph snapshot with {} edges from {} in {} seconds",
+						cg.size(), snapshotFile, (System.nanoTime() - beforeLoad) / 1E9);
+				return true;
+			}
+			finally {
+				raf.close();
+			}
+		}
+		catch (IOException ex) {
+			logger.error("Could not read the callgraph snapshot " + snapshotFile, ex);
+		}
+		catch (BufferUnderflowException ex) {
+			logger.warn("Callgraph snapshot {} is truncated", snapshotFile);
+		}
+		catch (RuntimeException ex) {
+			logger.warn("Callgraph snapshot {} does not fit the Scene: {}", snapshotFile,
+					ex.getMessage());
+		}
+		return false;
+	}
+
+	/**
+	 * Reads the callgraph from the given buffer
+	 * @param buffer The buffer containing the snapshot
+	 * @return The callgraph, or null if the snapshot does not fit
+	 */
+	private CallGraph read(MappedByteBuffer buffer) {
+		if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION
+				|| !Arrays.equals(readBytes(buffer), key)) {
+			logger.warn("Ignoring outdated callgraph snapshot {}", snapshotFile);
+			return null;
+		}
+
+		SootMethod[] methods = new SootMethod[buffer.getInt()];
+		for (int i = 0; i < methods.length; i++) {
+			String signature = new String(readBytes(buffer), UTF8);
+			methods[i] = resolveMethod(signature);
+			if (methods[i] == null) {
+				logger.warn("Method {} from the callgraph snapshot does not exist", signature);
+				return null;
+			}
+		}
+
+		Map<String, Kind> kindsByName = getKinds();
+		Kind[] kinds = new Kind[buffer.getInt()];
+		for (int i = 0; i < kinds.length; i++) {
+			String name = new String(readBytes(buffer), UTF8);
+			kinds[i] = kindsByName.get(name);
+			if (kinds[i] == null) {
+				logger.warn("Unknown edge kind {} in the callgraph snapshot", name);
+				return null;
+			}
+		}
+
+		// The bodies are normally created during callgraph construction
+		int numReachable = buffer.getInt();
+		for (int i = 0; i < numReachable; i++) {
+			SootMethod m = methods[buffer.getInt()];
+			if (m.isConcrete() && !m.hasActiveBody())
+				m.retrieveActiveBody();
+		}
+
+		Map<SootMethod, Unit[]> methodUnits = new HashMap<SootMethod, Unit[]>();
+		Map<Unit, Integer> unitHashes = new IdentityHashMap<Unit, Integer>();
+		CallGraph cg = new CallGraph();
+		int numEdges = buffer.getInt();
+		for (int i = 0; i < numEdges; i++) {
+			SootMethod src = methods[buffer.getInt()];
+			int unitIndex = buffer.getInt();
+			SootMethod tgt = methods[buffer.getInt()];
+			Kind kind = kinds[buffer.getInt()];
+			int unitHash = buffer.getInt();
+
+			Unit srcUnit = null;
+			if (unitIndex >= 0) {
+				Unit[] units = methodUnits.get(src);
+				if (units == null) {
+					if (!src.hasActiveBody())
+						return null;
+					units = src.getActiveBody().getUnits().toArray(new Unit[0]);
+					methodUnits.put(src, units);
+				}
+				if (unitIndex >= units.length) {
+					logger.warn("Call site {} of {} from the callgraph snapshot does not exist",
+							unitIndex, src);
+					return null;
+				}
+				srcUnit = units[unitIndex];
+				if (getUnitHash(srcUnit, unitHashes) != unitHash) {
+					logger.warn("Call site {} of {} from the callgraph snapshot has changed",
+							unitIndex, src);
+					return null;
+				}
+			}
+
+			Edge edge = new Edge(src, srcUnit, tgt, kind);
+			if (edge.isExplicit() && !isCallTo((Stmt) srcUnit, tgt)) {
+				logger.warn("Call site {} of {} from the callgraph snapshot does not call {}",
+						srcUnit, src, tgt);
+				return null;
+			}
+			cg.addEdge(edge);
+		}
+		return cg;
+	}
+
+	/**
+	 * Checks whether the given statement is an invocation that can dispatch
+	 * to the given method
+	 * @param stmt The statement to check
+	 * @param callee The expected callee
+	 * @return True if the given statement invokes a method with the same
+	 * sub-signature as the given callee, otherwise false
+	 */
+	private static boolean isCallTo(Stmt stmt, SootMethod callee) {
+		return stmt != null && stmt.containsInvokeExpr()
+				&& stmt.getInvokeExpr().getMethodRef().getSubSignature().getString()
+						.equals(callee.getSubSignature());
+	}
+
+	private static byte[] readBytes(MappedByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Finds the method with the given signature, resolving its class if
+	 * necessary
+	 * @param signature The signature of the method
+	 * @return The method with the given signature, or null if it does not
+	 * exist
+	 */
+	private static SootMethod resolveMethod(String signature) {
+		SootMethod method = Scene.v().grabMethod(signature);
+		if (method == null) {
+			SootClass sc = Scene.v().forceResolve(Scene.v().signatureToClass(signature),
+					SootClass.BODIES);
+			String subSignature = Scene.v().signatureToSubsignature(signature);
+			if (sc != null && sc.declaresMethod(subSignature))
+				method = sc.getMethod(subSignature);
+		}
+		return method;
+	}
+
+	/**
+	 * Gets the edge kinds supported by the current version of Soot
+	 * @return The edge kinds by name
+	 */
+	private static Map<String, Kind> getKinds() {
+		Map<String, Kind> kinds = new HashMap<String, Kind>();
+		for (Field field : Kind.class.getFields())
+			if (Modifier.isStatic(field.getModifiers()) && field.getType() == Kind.class) {
+				try {
+					Kind kind = (Kind) field.get(null);
+					kinds.put(kind.name(), kind);
+				}
+				catch (IllegalAccessException ex) {
+					// Public fields are always accessible
+				}
+			}
+		return kinds;
+	}
+
+}
@@ -2,8 +2,18 @@ package soot.jimple.infoflow.codeOptimization;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import soot.BodyTransformer;
 import soot.MethodOrMethodContext;
 import soot.Scene;
 import soot.SootMethod;
@@ -16,6 +26,7 @@ import soot.jimple.infoflow.solver.cfg.InfoflowCFG;
 import soot.jimple.infoflow.source.ISourceSinkManager;
 import soot.jimple.infoflow.taintWrappers.ITaintPropagationWrapper;
 import soot.jimple.infoflow.util.SystemClassHandler;
+import soot.jimple.toolkits.callgraph.CallGraph;
 import soot.jimple.toolkits.scalar.ConditionalBranchFolder;
 import soot.jimple.toolkits.scalar.ConstantPropagatorAndFolder;
 import soot.jimple.toolkits.scalar.DeadAssignmentEliminator;
@@ -44,34 +55,29 @@ public class DeadCodeEliminator implements ICodeOptimizer {
 			ISourceSinkManager sourcesSinks,
 			ITaintPropagationWrapper taintWrapper) {
 		// Perform an intra-procedural constant propagation to prepare for the
-		// inter-procedural one
+		// inter-procedural one. We exclude the dummy main method.
+		Set<SootMethod> excludedMethods = Collections.newSetFromMap(
+				new IdentityHashMap<SootMethod, Boolean>());
+		excludedMethods.addAll(Scene.v().getEntryPoints());
+		List<SootMethod> methods = new ArrayList<SootMethod>();
 		for (QueueReader<MethodOrMethodContext> rdr =
 				Scene.v().getReachableMethods().listener(); rdr.hasNext(); ) {
 			MethodOrMethodContext sm = rdr.next();
 			if (sm.method() == null || !sm.method().hasActiveBody())
 				continue;
-			
-			// Exclude the dummy main method
-			if (Scene.v().getEntryPoints().contains(sm.method()))
+			if (excludedMethods.contains(sm.method()))
 				continue;
-			
-			List<Unit> callSites = getCallsInMethod(sm.method());
-			
-			ConstantPropagatorAndFolder.v().transform(sm.method().getActiveBody());
-			DeadAssignmentEliminator.v().transform(sm.method().getActiveBody());
-			
-			// Remove the dead callgraph edges
-			List<Unit> newCallSites = getCallsInMethod(sm.method());
-			if (callSites != null)
-				for (Unit u : callSites)
-					if (newCallSites == null ||  !newCallSites.contains(u))
-						Scene.v().getCallGraph().removeAllEdgesOutOf(u);
+			methods.add(sm.method());
 		}
+		transformBodies(methods, ConstantPropagatorAndFolder.v(),
+				DeadAssignmentEliminator.v());
 		
 		// Perform an inter-procedural constant propagation and code cleanup
+		InfoflowCFG propagationCfg = new InfoflowCFG();
+		propagationCfg.setMaxThreadNum(config.getMaxThreadNum());
 		InterproceduralConstantValuePropagator ipcvp =
 				new InterproceduralConstantValuePropagator(
-						new InfoflowCFG(),
+						propagationCfg,
 						Scene.v().getEntryPoints(),
 						sourcesSinks,
 						taintWrapper);
@@ -81,6 +87,7 @@ public class DeadCodeEliminator implements ICodeOptimizer {
 		ipcvp.transform();
 		
 		// Get rid of all dead code
+		methods.clear();
 		for (QueueReader<MethodOrMethodContext> rdr =
 				Scene.v().getReachableMethods().listener(); rdr.hasNext(); ) {
 			MethodOrMethodContext sm = rdr.next();
@@ -91,33 +98,115 @@ public class DeadCodeEliminator implements ICodeOptimizer {
 					&& SystemClassHandler.isClassInSystemPackage(sm.method()
 							.getDeclaringClass().getName()))
 				continue;
-			
-			ConditionalBranchFolder.v().transform(sm.method().getActiveBody());
-			
-			// Delete all dead code. We need to be careful and patch the cfg so
-			// that it does not retain edges for call statements we have deleted
-			List<Unit> callSites = getCallsInMethod(sm.method());
-			UnreachableCodeEliminator.v().transform(sm.method().getActiveBody());
-			List<Unit> newCallSites = getCallsInMethod(sm.method());
-			if (callSites != null)
-				for (Unit u : callSites)
-					if (newCallSites == null ||  !newCallSites.contains(u))
-						Scene.v().getCallGraph().removeAllEdgesOutOf(u);
+			methods.add(sm.method());
+		}
+		transformBodies(methods, ConditionalBranchFolder.v(),
+				UnreachableCodeEliminator.v());
+	}
+	
+	/**
+	 * Applies the given transformers to the bodies of the given methods. The
+	 * bodies are transformed in parallel. The callgraph edges of all call
+	 * sites that the transformers have deleted are removed afterwards in one
+	 * batch, because the callgraph is not thread-safe.
+	 * @param methods The methods whose bodies shall be transformed
+	 * @param transformers The transformers to apply to every body, in order
+	 */
+	private void transformBodies(List<SootMethod> methods, BodyTransformer... transformers) {
+		if (methods.isEmpty())
+			return;
+		
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		if (config.getMaxThreadNum() != -1)
+			numThreads = Math.min(config.getMaxThreadNum(), numThreads);
+		int threadNum = Math.max(1, Math.min(numThreads, methods.size()));
+		
+		AtomicInteger nextMethod = new AtomicInteger();
+		List<Unit> deadCallSites = new ArrayList<Unit>();
+		if (threadNum == 1)
+			deadCallSites.addAll(new BodyWorker(methods, nextMethod, transformers).call());
+		else {
+			ExecutorService executor = Executors.newFixedThreadPool(threadNum);
+			try {
+				List<Future<List<Unit>>> futures = new ArrayList<Future<List<Unit>>>(threadNum);
+				for (int i = 0; i < threadNum; i++)
+					futures.add(executor.submit(new BodyWorker(methods, nextMethod, transformers)));
+				for (Future<List<Unit>> future : futures)
+					deadCallSites.addAll(future.get());
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			catch (ExecutionException e) {
+				throw new RuntimeException("Could not eliminate dead code", e.getCause());
+			}
+			finally {
+				executor.shutdownNow();
+			}
+		}
+		
+		// Remove the dead callgraph edges
+		CallGraph cg = Scene.v().getCallGraph();
+		synchronized (cg) {
+			for (Unit u : deadCallSites)
+				cg.removeAllEdgesOutOf(u);
 		}
 	}
 	
 	/**
-	 * Gets a list of all units that invoke other methods in the given method
+	 * Worker that takes methods from a shared counter until all methods have
+	 * been transformed. Every worker collects the call sites that have been
+	 * deleted from the bodies it has transformed.
+	 */
+	private class BodyWorker implements Callable<List<Unit>> {
+		
+		private final List<SootMethod> methods;
+		private final AtomicInteger nextMethod;
+		private final BodyTransformer[] transformers;
+		
+		public BodyWorker(List<SootMethod> methods, AtomicInteger nextMethod,
+				BodyTransformer[] transformers) {
+			this.methods = methods;
+			this.nextMethod = nextMethod;
+			this.transformers = transformers;
+		}
+		
+		@Override
+		public List<Unit> call() {
+			List<Unit> deadCallSites = new ArrayList<Unit>();
+			int idx;
+			while ((idx = nextMethod.getAndIncrement()) < methods.size()) {
+				SootMethod method = methods.get(idx);
+				
+				// We need to be careful and patch the cfg so that it does not
+				// retain edges for call statements we have deleted
+				Set<Unit> callSites = getCallsInMethod(method);
+				for (BodyTransformer transformer : transformers)
+					transformer.transform(method.getActiveBody());
+				if (callSites != null) {
+					Set<Unit> newCallSites = getCallsInMethod(method);
+					for (Unit u : callSites)
+						if (newCallSites == null || !newCallSites.contains(u))
+							deadCallSites.add(u);
+				}
+			}
+			return deadCallSites;
+		}
+		
+	}
+	
+	/**
+	 * Gets the set of all units that invoke other methods in the given method
 	 * @param method The method from which to get all invocations
-	 * @return The list of units calling other methods in the given method if
-	 * there is at least one such unit. Otherwise null.
+	 * @return The identity set of units calling other methods in the given
+	 * method if there is at least one such unit. Otherwise null.
 	 */
-	private List<Unit> getCallsInMethod(SootMethod method) {
-		List<Unit> callSites = null;
+	private Set<Unit> getCallsInMethod(SootMethod method) {
+		Set<Unit> callSites = null;
 		for (Unit u : method.getActiveBody().getUnits())
 			if (((Stmt) u).containsInvokeExpr()) {
 				if (callSites == null)
-					callSites = new ArrayList<Unit>();
+					callSites = Collections.newSetFromMap(new IdentityHashMap<Unit, Boolean>());
 				callSites.add(u);
 			}
 		return callSites;
@@ -0,0 +1,301 @@
+package soot.jimple.infoflow.collect;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Lock-free set that compares its elements by identity and only supports
+ * adding elements. The first two elements are stored inline in the set
+ * object. Further elements go into chunks that double in size, so existing
+ * elements never need to be copied. Removal is not supported.
+ *
+ * Slots are filled strictly in order, so the slots form a log of all
+ * elements. Once the set grows beyond a few elements, a hash index over a
+ * prefix of this log is maintained. Lookups only need to scan the part of
+ * the log that is not indexed yet. The index is extended by whichever thread
+ * notices that the unindexed part has grown too long, unless another thread
+ * is already extending it.
+ *
+ * @param <E> The type of the elements in this set
+ */
+public class ConcurrentAppendOnlyIdentitySet<E> extends AbstractSet<E> {
+
+	private static final int INLINE_SLOTS = 2;
+	private static final int FIRST_CHUNK_SIZE = 4;
+	private static final int MAX_CHUNKS = 30;
+	private static final int MAX_UNINDEXED = 8;
+
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<ConcurrentAppendOnlyIdentitySet, Object> SLOT0
+			= AtomicReferenceFieldUpdater.newUpdater(ConcurrentAppendOnlyIdentitySet.class, Object.class, "slot0");
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<ConcurrentAppendOnlyIdentitySet, Object> SLOT1
+			= AtomicReferenceFieldUpdater.newUpdater(ConcurrentAppendOnlyIdentitySet.class, Object.class, "slot1");
+
+	private volatile Object slot0 = null;
+	private volatile Object slot1 = null;
+	private volatile AtomicReferenceArray<AtomicReferenceArray<Object>> chunks = null;
+
+	private final AtomicInteger size = new AtomicInteger(0);
+	private final AtomicBoolean indexing = new AtomicBoolean(false);
+	private volatile Index index = null;
+
+	/**
+	 * Open-addressing hash table over the first elements of the log. Only the
+	 * thread that extends the index writes to it. All elements below
+	 * {@link #covered} are visible to every thread that has read this field.
+	 */
+	private static class Index {
+
+		private final Object[] table;
+		private volatile int covered = 0;
+
+		public Index(int capacity) {
+			this.table = new Object[capacity];
+		}
+
+		public boolean contains(Object o) {
+			int mask = table.length - 1;
+			for (int idx = hash(o) & mask; ; idx = (idx + 1) & mask) {
+				Object cur = table[idx];
+				if (cur == null)
+					return false;
+				if (cur == o)
+					return true;
+			}
+		}
+
+		public void insert(Object o) {
+			int mask = table.length - 1;
+			int idx = hash(o) & mask;
+			while (table[idx] != null)
+				idx = (idx + 1) & mask;
+			table[idx] = o;
+		}
+
+		private static int hash(Object o) {
+			int h = System.identityHashCode(o) * 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+
+	}
+
+	/**
+	 * Gets the element at the given index
+	 * @param idx The index of the element
+	 * @return The element at the given index, or null if the slot has not been
+	 * filled yet
+	 */
+	private Object getSlot(int idx) {
+		if (idx == 0)
+			return slot0;
+		if (idx == 1)
+			return slot1;
+
+		AtomicReferenceArray<AtomicReferenceArray<Object>> chunks = this.chunks;
+		if (chunks == null)
+			return null;
+		int chunkIdx = getChunkIndex(idx);
+		AtomicReferenceArray<Object> chunk = chunks.get(chunkIdx);
+		return chunk == null ? null : chunk.get(getIndexInChunk(idx, chunkIdx));
+	}
+
+	/**
+	 * Tries to fill the slot with the given index
+	 * @param idx The index of the slot
+	 * @param element The element to put into the slot
+	 * @return True if the slot was empty and now contains the given element,
+	 * false if another element got there first
+	 */
+	private boolean casSlot(int idx, Object element) {
+		if (idx == 0)
+			return SLOT0.compareAndSet(this, null, element);
+		if (idx == 1)
+			return SLOT1.compareAndSet(this, null, element);
+
+		AtomicReferenceArray<AtomicReferenceArray<Object>> chunks = this.chunks;
+		if (chunks == null) {
+			synchronized (this) {
+				chunks = this.chunks;
+				if (chunks == null) {
+					chunks = new AtomicReferenceArray<AtomicReferenceArray<Object>>(MAX_CHUNKS);
+					this.chunks = chunks;
+				}
+			}
+		}
+
+		int chunkIdx = getChunkIndex(idx);
+		AtomicReferenceArray<Object> chunk = chunks.get(chunkIdx);
+		if (chunk == null) {
+			chunks.compareAndSet(chunkIdx, null,
+					new AtomicReferenceArray<Object>(FIRST_CHUNK_SIZE << chunkIdx));
+			chunk = chunks.get(chunkIdx);
+		}
+		return chunk.compareAndSet(getIndexInChunk(idx, chunkIdx), null, element);
+	}
+
+	private static int getChunkIndex(int idx) {
+		// Chunk k starts at INLINE_SLOTS + FIRST_CHUNK_SIZE * (2^k - 1)
+		int offset = (idx - INLINE_SLOTS) / FIRST_CHUNK_SIZE + 1;
+		return 31 - Integer.numberOfLeadingZeros(offset);
+	}
+
+	private static int getIndexInChunk(int idx, int chunkIdx) {
+		return idx - INLINE_SLOTS - FIRST_CHUNK_SIZE * ((1 << chunkIdx) - 1);
+	}
+
+	/**
+	 * Adds the given element to this set unless the very same object is
+	 * already contained
+	 * @param element The element to add
+	 * @return True if the element was added, false if it was already contained
+	 * in the set
+	 */
+	@Override
+	public boolean add(E element) {
+		if (element == null)
+			throw new NullPointerException();
+
+		// Everything in the index is a member of this set. Beyond the indexed
+		// prefix, we need to scan the log.
+		Index index = this.index;
+		int idx = 0;
+		if (index != null) {
+			idx = index.covered;
+			if (index.contains(element))
+				return false;
+		}
+
+		// Slots are filled strictly in order. If we lose a race for a slot,
+		// we check the winner and try the next one.
+		while (true) {
+			Object cur = getSlot(idx);
+			if (cur == null) {
+				if (casSlot(idx, element)) {
+					size.incrementAndGet();
+					if (idx - (index == null ? 0 : index.covered) >= MAX_UNINDEXED)
+						extendIndex();
+					return true;
+				}
+				cur = getSlot(idx);
+			}
+			if (cur == element)
+				return false;
+			idx++;
+		}
+	}
+
+	/**
+	 * Adds the elements that are not indexed yet to the index. If another
+	 * thread is already extending the index, this method returns
+	 * immediately.
+	 */
+	private void extendIndex() {
+		if (!indexing.compareAndSet(false, true))
+			return;
+		try {
+			// Only index slots that are filled, so that the indexed part of
+			// the log has no gaps
+			int end = 0;
+			Index index = this.index;
+			if (index != null)
+				end = index.covered;
+			while (getSlot(end) != null)
+				end++;
+
+			// Keep the load factor below one half. A new table is filled
+			// before it is published, so readers always see a complete one.
+			if (index == null || end * 2 > index.table.length) {
+				int capacity = 32;
+				while (end * 2 > capacity)
+					capacity *= 2;
+				Index newIndex = new Index(capacity * 2);
+				for (int i = 0; i < end; i++)
+					newIndex.insert(getSlot(i));
+				newIndex.covered = end;
+				this.index = newIndex;
+			}
+			else {
+				for (int i = index.covered; i < end; i++)
+					index.insert(getSlot(i));
+				index.covered = end;
+			}
+		}
+		finally {
+			indexing.set(false);
+		}
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		Index index = this.index;
+		int idx = 0;
+		if (index != null) {
+			idx = index.covered;
+			if (index.contains(o))
+				return true;
+		}
+		for (; ; idx++) {
+			Object cur = getSlot(idx);
+			if (cur == null)
+				return false;
+			if (cur == o)
+				return true;
+		}
+	}
+
+	@Override
+	public int size() {
+		return size.get();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return slot0 == null;
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return new Iterator<E>() {
+
+			private int idx = 0;
+
+			@Override
+			public boolean hasNext() {
+				return getSlot(idx) != null;
+			}
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public E next() {
+				Object cur = getSlot(idx);
+				if (cur == null)
+					throw new NoSuchElementException();
+				idx++;
+				return (E) cur;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+
+		};
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException();
+	}
+
+}
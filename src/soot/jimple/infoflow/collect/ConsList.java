@@ -0,0 +1,211 @@
+package soot.jimple.infoflow.collect;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable singly-linked list that can only be extended at its head. Lists
+ * share their tails, so prepending an element or dropping the first one takes
+ * constant time and does not copy anything. The hash code is maintained
+ * incrementally and is the same as for any other {@link List} with the same
+ * elements. Every list additionally carries a small Bloom filter over the hash
+ * codes of its elements for quick negative membership tests.
+ *
+ * Indexed access is linear in the index, so this list should be traversed
+ * using its iterator.
+ *
+ * @param <E> The type of the elements in this list
+ */
+public class ConsList<E> extends AbstractList<E> {
+
+	private static final ConsList<Object> EMPTY = new ConsList<Object>(null, null);
+
+	private final E head;
+	private final ConsList<E> tail;
+	private final int size;
+	private final int hashCode;
+
+	/**
+	 * 31 to the power of the size of this list, used for updating the hash
+	 * code when prepending an element
+	 */
+	private final int sizePower;
+	private final long bloomFilter;
+
+	private ConsList(E head, ConsList<E> tail) {
+		this.head = head;
+		this.tail = tail;
+		if (tail == null) {
+			this.size = 0;
+			this.hashCode = 1;
+			this.sizePower = 1;
+			this.bloomFilter = 0;
+		}
+		else {
+			// Prepending e to a list with n elements adds 31^n * (30 + hash(e))
+			// to the hash code defined in List.hashCode()
+			this.size = tail.size + 1;
+			this.hashCode = tail.hashCode + tail.sizePower * (30 + hash(head));
+			this.sizePower = tail.sizePower * 31;
+			this.bloomFilter = tail.bloomFilter | getBloomBits(head);
+		}
+	}
+
+	/**
+	 * Gets the empty list
+	 * @return The empty list
+	 */
+	@SuppressWarnings("unchecked")
+	public static <E> ConsList<E> empty() {
+		return (ConsList<E>) EMPTY;
+	}
+
+	private static int hash(Object o) {
+		return o == null ? 0 : o.hashCode();
+	}
+
+	private static long getBloomBits(Object o) {
+		int h = hash(o);
+		return (1L << (h & 63)) | (1L << ((h * 0x9E3779B9) >>> 26));
+	}
+
+	/**
+	 * Creates a new list that consists of the given element followed by the
+	 * elements of this list
+	 * @param element The element to put in front of this list
+	 * @return The new list
+	 */
+	public ConsList<E> prepend(E element) {
+		return new ConsList<E>(element, this);
+	}
+
+	/**
+	 * Gets the first element of this list
+	 * @return The first element of this list
+	 */
+	public E getHead() {
+		if (tail == null)
+			throw new NoSuchElementException();
+		return head;
+	}
+
+	/**
+	 * Gets the list of all elements except for the first one
+	 * @return The tail of this list
+	 */
+	public ConsList<E> getTail() {
+		if (tail == null)
+			throw new NoSuchElementException();
+		return tail;
+	}
+
+	/**
+	 * Checks whether this list may contain an element that is equal to the
+	 * given object. If this method returns false, the list definitely does not
+	 * contain such an element. If it returns true, the caller has to check the
+	 * elements.
+	 * @param o The object to look for
+	 * @return False if this list does not contain the given object, true if it
+	 * may contain it
+	 */
+	public boolean mightContain(Object o) {
+		long bits = getBloomBits(o);
+		return (bloomFilter & bits) == bits;
+	}
+
+	@Override
+	public E get(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		ConsList<E> cur = this;
+		for (int i = 0; i < index; i++)
+			cur = cur.tail;
+		return cur.head;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return mightContain(o) && super.contains(o);
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return new Iterator<E>() {
+
+			private ConsList<E> cur = ConsList.this;
+
+			@Override
+			public boolean hasNext() {
+				return cur.tail != null;
+			}
+
+			@Override
+			public E next() {
+				if (cur.tail == null)
+					throw new NoSuchElementException();
+				E element = cur.head;
+				cur = cur.tail;
+				return element;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+
+		};
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o == this)
+			return true;
+		if (!(o instanceof List))
+			return false;
+
+		if (o instanceof ConsList) {
+			ConsList<?> other = (ConsList<?>) o;
+			if (this.size != other.size || this.hashCode != other.hashCode)
+				return false;
+
+			// Stop as soon as both lists share the same tail
+			ConsList<?> a = this;
+			while (a != other) {
+				if (a.head == null ? other.head != null : !a.head.equals(other.head))
+					return false;
+				a = a.tail;
+				other = other.tail;
+			}
+			return true;
+		}
+
+		List<?> other = (List<?>) o;
+		if (this.size != other.size())
+			return false;
+		Iterator<?> otherIt = other.iterator();
+		for (E element : this) {
+			Object otherElement = otherIt.next();
+			if (element == null ? otherElement != null : !element.equals(otherElement))
+				return false;
+		}
+		return true;
+	}
+
+}
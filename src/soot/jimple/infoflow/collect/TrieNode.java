@@ -0,0 +1,223 @@
+package soot.jimple.infoflow.collect;
+
+import java.lang.reflect.Array;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Node in a trie of element sequences. Every node represents the sequence of
+ * elements on the path from the root to the node. Nodes are unique, i.e.,
+ * there is exactly one node per sequence below a given root, so sequences can
+ * be compared by reference. Child nodes are only weakly referenced by their
+ * parents and are collected once no sequence below them is in use anymore.
+ *
+ * @param <T> The type of the elements in the sequences
+ */
+public class TrieNode<T> {
+
+	/**
+	 * Key under which the child for a null element is stored
+	 */
+	private static final Object NULL_KEY = new Object();
+
+	private final Class<T> elementClass;
+	private final TrieNode<T> parent;
+	private final T element;
+	private final int depth;
+	private final int hashCode;
+
+	private volatile ConcurrentMap<Object, TrieNode<T>> children = null;
+	private volatile T[] elements = null;
+
+	private TrieNode(Class<T> elementClass, TrieNode<T> parent, T element) {
+		this.elementClass = elementClass;
+		this.parent = parent;
+		this.element = element;
+		this.depth = parent == null ? 0 : parent.depth + 1;
+
+		// Same as Arrays.hashCode() on the element sequence
+		this.hashCode = parent == null ? 1
+				: 31 * parent.hashCode + (element == null ? 0 : element.hashCode());
+	}
+
+	/**
+	 * Creates the root node of a new trie. The root node represents the empty
+	 * sequence.
+	 * @param elementClass The class of the elements in the sequences
+	 * @return The root node of the new trie
+	 */
+	public static <T> TrieNode<T> createRoot(Class<T> elementClass) {
+		return new TrieNode<T>(elementClass, null, null);
+	}
+
+	/**
+	 * Gets the node for the sequence of this node extended by the given element
+	 * @param element The element to append
+	 * @return The node representing the extended sequence
+	 */
+	public TrieNode<T> getChild(T element) {
+		ConcurrentMap<Object, TrieNode<T>> childMap = children;
+		if (childMap == null) {
+			synchronized (this) {
+				childMap = children;
+				if (childMap == null) {
+					childMap = new MapMaker().concurrencyLevel(1).initialCapacity(2)
+							.weakValues().makeMap();
+					children = childMap;
+				}
+			}
+		}
+
+		Object key = element == null ? NULL_KEY : element;
+		TrieNode<T> child = childMap.get(key);
+		if (child == null) {
+			child = new TrieNode<T>(elementClass, this, element);
+			TrieNode<T> oldChild = childMap.putIfAbsent(key, child);
+			if (oldChild != null)
+				child = oldChild;
+		}
+		return child;
+	}
+
+	/**
+	 * Gets the node for the sequence of this node extended by the given
+	 * elements
+	 * @param elements The elements to append
+	 * @return The node representing the extended sequence
+	 */
+	public TrieNode<T> getDescendant(T[] elements) {
+		return getDescendant(elements, elements == null ? 0 : elements.length);
+	}
+
+	/**
+	 * Gets the node for the sequence of this node extended by the first
+	 * elements of the given array
+	 * @param elements The elements to append
+	 * @param length The number of elements to take from the given array
+	 * @return The node representing the extended sequence
+	 */
+	public TrieNode<T> getDescendant(T[] elements, int length) {
+		TrieNode<T> node = this;
+		for (int i = 0; i < length; i++)
+			node = node.getChild(elements[i]);
+		return node;
+	}
+
+	/**
+	 * Gets the node for the sequence of this node extended by the sequence of
+	 * the given node. Both nodes must belong to the same trie.
+	 * @param suffix The node whose sequence to append
+	 * @return The node representing the extended sequence
+	 */
+	public TrieNode<T> getDescendant(TrieNode<T> suffix) {
+		if (suffix.parent == null)
+			return this;
+		return getDescendant(suffix.parent).getChild(suffix.element);
+	}
+
+	/**
+	 * Gets the node for the sequence of this node without its first elements
+	 * @param count The number of elements to drop from the start of the
+	 * sequence
+	 * @return The node representing the shortened sequence, or the root node
+	 * if the sequence has no more than the given number of elements
+	 */
+	public TrieNode<T> dropFirst(int count) {
+		if (depth <= count)
+			return getAncestor(0);
+		return parent.dropFirst(count).getChild(element);
+	}
+
+	/**
+	 * Gets the node representing the sequence of this node without its last
+	 * element
+	 * @return The parent node, or null if this is the root node
+	 */
+	public TrieNode<T> getParent() {
+		return this.parent;
+	}
+
+	/**
+	 * Gets the last element of the sequence represented by this node
+	 * @return The last element of the sequence, or null if this is the root
+	 * node
+	 */
+	public T getElement() {
+		return this.element;
+	}
+
+	/**
+	 * Gets the length of the sequence represented by this node
+	 * @return The length of the sequence represented by this node
+	 */
+	public int getDepth() {
+		return this.depth;
+	}
+
+	/**
+	 * Gets the node at the given depth on the path from the root to this node
+	 * @param depth The depth of the requested ancestor
+	 * @return The ancestor at the given depth
+	 */
+	public TrieNode<T> getAncestor(int depth) {
+		TrieNode<T> node = this;
+		while (node.depth > depth)
+			node = node.parent;
+		return node;
+	}
+
+	/**
+	 * Checks whether the sequence of this node is a prefix of the sequence of
+	 * the given node. Every sequence is a prefix of itself.
+	 * @param other The node to check
+	 * @return True if this node is an ancestor of the given node or the node
+	 * itself
+	 */
+	public boolean isPrefixOf(TrieNode<T> other) {
+		return other.depth >= this.depth && other.getAncestor(this.depth) == this;
+	}
+
+	/**
+	 * Gets the sequence represented by this node as an array. The array is
+	 * cached and shared between all callers, so it must not be modified.
+	 * @return The elements of the sequence represented by this node
+	 */
+	public T[] toArray() {
+		T[] result = elements;
+		if (result == null) {
+			@SuppressWarnings("unchecked")
+			T[] newElements = (T[]) Array.newInstance(elementClass, depth);
+			TrieNode<T> node = this;
+			for (int i = depth - 1; i >= 0; i--) {
+				newElements[i] = node.element;
+				node = node.parent;
+			}
+			elements = result = newElements;
+		}
+		return result;
+	}
+
+	@Override
+	public int hashCode() {
+		return this.hashCode;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		// Nodes are unique
+		return this == obj;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (T e : toArray()) {
+			if (sb.length() > 0)
+				sb.append(".");
+			sb.append(e);
+		}
+		return sb.toString();
+	}
+
+}
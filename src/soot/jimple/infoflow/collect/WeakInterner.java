@@ -0,0 +1,222 @@
+package soot.jimple.infoflow.collect;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+
+import com.google.common.base.Equivalence;
+
+/**
+ * Interner that only holds weak references to the canonical instances, so
+ * that objects which are no longer referenced from anywhere else can be
+ * garbage-collected. The table is striped into a number of independently
+ * locked shards to reduce contention between the solver threads.
+ *
+ * @param <E> The type of objects to intern
+ */
+public class WeakInterner<E> {
+
+	/**
+	 * Weak reference to an interned object that also serves as the entry in
+	 * the hash chain of its shard
+	 */
+	private static class Ref<E> extends WeakReference<E> {
+
+		private final int hash;
+		private Ref<E> next;
+
+		public Ref(E referent, int hash, Ref<E> next, ReferenceQueue<E> queue) {
+			super(referent, queue);
+			this.hash = hash;
+			this.next = next;
+		}
+
+	}
+
+	/**
+	 * One independently locked part of the interner
+	 */
+	private class Shard {
+
+		private final ReferenceQueue<E> queue = new ReferenceQueue<E>();
+		private Ref<E>[] table = newTable(16);
+		private int size = 0;
+
+		private long hits = 0;
+		private long misses = 0;
+		private long evictions = 0;
+
+		synchronized E intern(E obj, int hash) {
+			expungeStaleEntries();
+
+			int idx = hash & (table.length - 1);
+			for (Ref<E> ref = table[idx]; ref != null; ref = ref.next) {
+				if (ref.hash != hash)
+					continue;
+				E cached = ref.get();
+				if (cached != null && equivalence.equivalent(cached, obj)) {
+					hits++;
+					return cached;
+				}
+			}
+
+			table[idx] = new Ref<E>(obj, hash, table[idx], queue);
+			misses++;
+			if (++size > table.length / 4 * 3)
+				resize();
+			return obj;
+		}
+
+		/**
+		 * Removes all entries whose referents have been garbage-collected
+		 */
+		private void expungeStaleEntries() {
+			Object stale;
+			while ((stale = queue.poll()) != null) {
+				@SuppressWarnings("unchecked")
+				Ref<E> staleRef = (Ref<E>) stale;
+				int idx = staleRef.hash & (table.length - 1);
+				Ref<E> prev = null;
+				for (Ref<E> ref = table[idx]; ref != null; ref = ref.next) {
+					if (ref == staleRef) {
+						if (prev == null)
+							table[idx] = ref.next;
+						else
+							prev.next = ref.next;
+						size--;
+						evictions++;
+						break;
+					}
+					prev = ref;
+				}
+			}
+		}
+
+		/**
+		 * Doubles the size of the hash table
+		 */
+		private void resize() {
+			Ref<E>[] newTable = newTable(table.length * 2);
+			for (Ref<E> head : table) {
+				Ref<E> ref = head;
+				while (ref != null) {
+					Ref<E> next = ref.next;
+					int idx = ref.hash & (newTable.length - 1);
+					ref.next = newTable[idx];
+					newTable[idx] = ref;
+					ref = next;
+				}
+			}
+			table = newTable;
+		}
+
+		synchronized int size() {
+			expungeStaleEntries();
+			return size;
+		}
+
+	}
+
+	private final Equivalence<? super E> equivalence;
+	private final Shard[] shards;
+	private final int shardShift;
+
+	/**
+	 * Creates a new interner that compares objects using their equals()
+	 * methods
+	 */
+	public WeakInterner() {
+		this(Equivalence.equals());
+	}
+
+	/**
+	 * Creates a new interner that compares objects using the given equivalence
+	 * @param equivalence The equivalence that decides whether two objects are
+	 * interchangeable
+	 */
+	@SuppressWarnings("unchecked")
+	public WeakInterner(Equivalence<? super E> equivalence) {
+		this.equivalence = equivalence;
+
+		// Use at least two shards per core, rounded up to a power of two
+		int numShards = 2;
+		while (numShards < Runtime.getRuntime().availableProcessors() * 2)
+			numShards <<= 1;
+		this.shards = (Shard[]) Array.newInstance(Shard.class, numShards);
+		for (int i = 0; i < numShards; i++)
+			this.shards[i] = new Shard();
+		this.shardShift = 32 - Integer.numberOfTrailingZeros(numShards);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <E> Ref<E>[] newTable(int size) {
+		return (Ref<E>[]) new Ref<?>[size];
+	}
+
+	/**
+	 * Gets the canonical instance that is equivalent to the given object. If
+	 * there is no such instance yet, the given object becomes the canonical
+	 * one.
+	 * @param obj The object to intern
+	 * @return The canonical instance equivalent to the given object
+	 */
+	public E intern(E obj) {
+		int hash = equivalence.hash(obj);
+		// Pick the shard from the high bits of a scrambled hash so that the
+		// low bits stay available for the table inside the shard
+		int shardIdx = (hash * 0x9E3779B9) >>> shardShift;
+		return shards[shardIdx].intern(obj, hash);
+	}
+
+	/**
+	 * Gets the number of lookups that returned an existing canonical instance
+	 * @return The number of cache hits
+	 */
+	public long getHitCount() {
+		long hits = 0;
+		for (Shard shard : shards)
+			synchronized (shard) {
+				hits += shard.hits;
+			}
+		return hits;
+	}
+
+	/**
+	 * Gets the number of lookups that registered a new canonical instance
+	 * @return The number of cache misses
+	 */
+	public long getMissCount() {
+		long misses = 0;
+		for (Shard shard : shards)
+			synchronized (shard) {
+				misses += shard.misses;
+			}
+		return misses;
+	}
+
+	/**
+	 * Gets the number of canonical instances that have been removed from the
+	 * interner after they were garbage-collected
+	 * @return The number of evicted entries
+	 */
+	public long getEvictionCount() {
+		long evictions = 0;
+		for (Shard shard : shards)
+			synchronized (shard) {
+				evictions += shard.evictions;
+			}
+		return evictions;
+	}
+
+	/**
+	 * Gets the number of canonical instances that are currently alive
+	 * @return The number of entries in this interner
+	 */
+	public int size() {
+		int size = 0;
+		for (Shard shard : shards)
+			size += shard.size();
+		return size;
+	}
+
+}
@@ -17,6 +17,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import soot.NullType;
 import soot.SootMethod;
@@ -26,14 +28,13 @@ import soot.Value;
 import soot.jimple.Stmt;
 import soot.jimple.infoflow.InfoflowConfiguration;
 import soot.jimple.infoflow.collect.AtomicBitSet;
+import soot.jimple.infoflow.collect.ConcurrentAppendOnlyIdentitySet;
 import soot.jimple.infoflow.collect.ConcurrentHashSet;
 import soot.jimple.infoflow.data.AccessPath.ArrayTaintType;
 import soot.jimple.infoflow.solver.cfg.IInfoflowCFG.UnitContainer;
 import soot.jimple.infoflow.solver.fastSolver.FastSolverLinkedNode;
 import soot.jimple.internal.JimpleLocal;
 
-import com.google.common.collect.Sets;
-
 /**
  * The abstraction class contains all information that is necessary to track the taint.
  * 
@@ -44,6 +45,81 @@ public class Abstraction implements Cloneable, FastSolverLinkedNode<Abstraction,
 		LinkedNode<Abstraction> {
 	
 	private static boolean flowSensitiveAliasing = true;
+	private static int maxNeighbors = -1;
+	
+	/**
+	 * Whether or not the conditions are satisfied
+	 */
+	private static final int FLAG_CONDITION_RESPECTED = 1;
+	/**
+	 * taint is thrown by an exception (is set to false when it reaches the catch-Stmt)
+	 */
+	private static final int FLAG_EXCEPTION_THROWN = 1 << 1;
+	private static final int FLAG_IMPLICIT = 1 << 2;
+	/**
+	 * Only valid for inactive abstractions. Specifies whether an access paths
+	 * has been cut during alias analysis.
+	 */
+	private static final int FLAG_DEPENDS_ON_CUT_AP = 1 << 3;
+	/**
+	 * Specifies whether the memory manager has already compacted the chain of
+	 * predecessors of this abstraction. Reset whenever the predecessor
+	 * changes. Not part of the abstraction's identity.
+	 */
+	private static final int FLAG_CHAIN_COMPACTED = 1 << 4;
+	/**
+	 * The flags that are compared in equals() and hashed in hashCode()
+	 */
+	private static final int IDENTITY_FLAGS = ~FLAG_CHAIN_COMPACTED;
+	
+	/**
+	 * Flags can change while other threads are already working on the
+	 * abstraction, e.g., the condition flag or the memory manager's marker on
+	 * shared predecessors, so they are only ever modified atomically. Since
+	 * every update is a CAS, setting the marker never loses an identity flag
+	 * that another thread sets at the same time.
+	 */
+	private static final AtomicIntegerFieldUpdater<Abstraction> FLAGS
+			= AtomicIntegerFieldUpdater.newUpdater(Abstraction.class, "flags");
+	
+	/**
+	 * Weights of the individual components in the hash code. The hash code is
+	 * the weighted sum of the component hashes, so that a derived abstraction
+	 * can obtain its hash code from the one of its parent by only replacing the
+	 * term of the component that has changed. The flags may still change after
+	 * the abstraction has been published, so their term is not cached.
+	 */
+	private static final int HASH_SOURCE_CONTEXT = 31 * 31 * 31 * 31 * 31;
+	private static final int HASH_ACCESS_PATH = 31 * 31 * 31 * 31;
+	private static final int HASH_ACTIVATION_UNIT = 31 * 31 * 31;
+	private static final int HASH_FLAGS = 31 * 31;
+	private static final int HASH_POSTDOMINATORS = 31;
+	
+	/**
+	 * Data that is only present on few abstractions. It is kept in a separate
+	 * object that is only created when needed to keep the abstractions small.
+	 */
+	private static class Extension {
+		
+		@SuppressWarnings("rawtypes")
+		private static final AtomicReferenceFieldUpdater<Extension, ConcurrentAppendOnlyIdentitySet> NEIGHBORS
+				= AtomicReferenceFieldUpdater.newUpdater(Extension.class,
+						ConcurrentAppendOnlyIdentitySet.class, "neighbors");
+		
+		private volatile ConcurrentAppendOnlyIdentitySet<Abstraction> neighbors = null;
+		
+		// only used in path generation
+		private Set<SourceContextAndPath> pathCache = null;
+		
+		/**
+		 * The postdominators we need to pass in order to leave the current conditional
+		 * branch. Do not use the synchronized Stack class here to avoid deadlocks.
+		 */
+		private List<UnitContainer> postdominators = null;
+		
+		private AtomicBitSet pathFlags = null;
+		
+	}
 	
 	/**
 	 * the access path contains the currently tainted variable or field
@@ -51,42 +127,37 @@ public class Abstraction implements Cloneable, FastSolverLinkedNode<Abstraction,
 	private AccessPath accessPath;
 	
 	private Abstraction predecessor = null;
-	private Set<Abstraction> neighbors = null;
 	private Stmt currentStmt = null;
 	private Stmt correspondingCallSite = null;
 	
 	private SourceContext sourceContext = null;
 	
-	// Whether or not the conditions are satisfied
-	private boolean conditionRespected = false; 
-
-	// only used in path generation
-	private Set<SourceContextAndPath> pathCache = null;
-	
 	/**
 	 * Unit/Stmt which activates the taint when the abstraction passes it
 	 */
 	private Unit activationUnit = null;
+	
 	/**
-	 * taint is thrown by an exception (is set to false when it reaches the catch-Stmt)
+	 * The extension is created lazily, also on abstractions that other
+	 * threads are already working on, e.g., when a neighbor is added. It is
+	 * volatile so that the double-checked creation publishes it safely.
 	 */
-	private boolean exceptionThrown = false;
-	private int hashCode = 0;
-
+	private volatile Extension extension = null;
+	
 	/**
-	 * The postdominators we need to pass in order to leave the current conditional
-	 * branch. Do not use the synchronized Stack class here to avoid deadlocks.
+	 * Cached hash code of all components except for the flags. These
+	 * components are only modified before the abstraction is published, so
+	 * every thread computes the same value. Just like for String.hashCode(),
+	 * a thread that does not see the cached value yet merely recomputes it,
+	 * so the field need not be volatile.
 	 */
-	private List<UnitContainer> postdominators = null;
-	private boolean isImplicit = false;
+	private int hashCode = 0;
 	
 	/**
-	 * Only valid for inactive abstractions. Specifies whether an access paths
-	 * has been cut during alias analysis.
+	 * Packed boolean flags, see the FLAG_ constants. Volatile for the atomic
+	 * updater.
 	 */
-	private boolean dependsOnCutAP = false;
-	
-	private AtomicBitSet pathFlags = null;
+	private volatile int flags = 0;
 	
 	public Abstraction(AccessPath sourceVal,
 			Stmt sourceStmt,
@@ -105,10 +176,8 @@ public class Abstraction implements Cloneable, FastSolverLinkedNode<Abstraction,
 		this.sourceContext = sourceContext;
 		this.accessPath = apToTaint;
 		this.activationUnit = null;
-		this.exceptionThrown = exceptionThrown;
-		
-		this.neighbors = null;
-		this.isImplicit = isImplicit;
+		setFlag(FLAG_EXCEPTION_THROWN, exceptionThrown);
+		setFlag(FLAG_IMPLICIT, isImplicit);
 		this.currentStmt = sourceContext == null ? null : sourceContext.getStmt();
 	}
 
@@ -121,27 +190,27 @@ public class Abstraction implements Cloneable, FastSolverLinkedNode<Abstraction,
 	protected Abstraction(AccessPath p, Abstraction original){
 		if (original == null) {
 			sourceContext = null;
-			exceptionThrown = false;
 			activationUnit = null;
-			isImplicit = false;
-			conditionRespected = false;
 		}
 		else {
 			sourceContext = original.sourceContext;
-			exceptionThrown = original.exceptionThrown;
 			activationUnit = original.activationUnit;
 			assert activationUnit == null || flowSensitiveAliasing;
 			
-			postdominators = original.postdominators == null ? null
-					: new ArrayList<UnitContainer>(original.postdominators);
+			List<UnitContainer> originalPostdominators = original.getPostdominators();
+			if (originalPostdominators != null)
+				setPostdominators(new ArrayList<UnitContainer>(originalPostdominators));
 			
-			dependsOnCutAP = original.dependsOnCutAP;
-			isImplicit = original.isImplicit;
+			// Copies the exception, implicit, cut-off and condition flags
+			flags = original.flags & IDENTITY_FLAGS;
 			
-			conditionRespected = original.conditionRespected;
+			// Everything except for the access path is the same as in the
+			// original, so we can derive our hash code from the original one
+			int originalHash = original.hashCode;
+			if (originalHash != 0)
+				hashCode = originalHash - accessPathTerm(original.accessPath) + accessPathTerm(p);
 		}
 		accessPath = p;
-		neighbors = null;
 		currentStmt = null;
 	}
 	
@@ -159,14 +228,15 @@ public class Abstraction implements Cloneable, FastSolverLinkedNode<Abstraction,
 		if (a == null)
 			return null;
 		
-		a.postdominators = null;
-		a.activationUnit = activationUnit;
-		a.dependsOnCutAP |= a.getAccessPath().isCutOffApproximation();
+		a.setPostdominators(null);
+		a.setActivationUnit(activationUnit);
+		if (a.getAccessPath().isCutOffApproximation())
+			a.setFlag(FLAG_DEPENDS_ON_CUT_AP, true);
 		return a;
 	}
 
 	public Abstraction deriveNewAbstraction(AccessPath p, Stmt currentStmt){
-		return deriveNewAbstraction(p, currentStmt, isImplicit);
+		return deriveNewAbstraction(p, currentStmt, isImplicit());
 	}
 	
 	public Abstraction deriveNewAbstraction(AccessPath p, Stmt currentStmt,
@@ -174,14 +244,14 @@ public class Abstraction implements Cloneable, FastSolverLinkedNode<Abstraction,
 		// If the new abstraction looks exactly like the current one, there is
 		// no need to create a new object
 		if (this.accessPath.equals(p) && this.currentStmt == currentStmt
-				&& this.isImplicit == isImplicit)
+				&& this.isImplicit() == isImplicit)
 			return this;
 		
 		Abstraction abs = deriveNewAbstractionMutable(p, currentStmt);
 		if (abs == null)
 			return null;
 		
-		abs.isImplicit = isImplicit;
+		abs.setFlag(FLAG_IMPLICIT, isImplicit);
 		return abs;
 	}
 	
@@ -201,11 +271,11 @@ public class Abstraction implements Cloneable, FastSolverLinkedNode<Abstraction,
 		abs.currentStmt = currentStmt;
 		
 		if (!abs.getAccessPath().isEmpty())
-			abs.postdominators = null;
-		if (!abs.isAbstractionActive())
-			abs.dependsOnCutAP = abs.dependsOnCutAP || p.isCutOffApproximation();
+			abs.setPostdominators(null);
+		if (!abs.isAbstractionActive() && p.isCutOffApproximation())
+			abs.setFlag(FLAG_DEPENDS_ON_CUT_AP, true);
 		
-		abs.sourceContext = null;
+		abs.setSourceContext(null);
 		return abs;
 	}
 	
@@ -233,12 +303,12 @@ public class Abstraction implements Cloneable, FastSolverLinkedNode<Abstraction,
 	 * @return The newly derived abstraction
 	 */
 	public final Abstraction deriveNewAbstractionOnThrow(Stmt throwStmt){
-		assert !this.exceptionThrown;
+		assert !this.getExceptionThrown();
 		Abstraction abs = clone();
 		
 		abs.currentStmt = throwStmt;
-		abs.sourceContext = null;
-		abs.exceptionThrown = true;
+		abs.setSourceContext(null);
+		abs.setFlag(FLAG_EXCEPTION_THROWN, true);
 		return abs;
 	}
 	
@@ -249,13 +319,13 @@ public class Abstraction implements Cloneable, FastSolverLinkedNode<Abstraction,
 	 * @return The newly derived abstraction
 	 */
 	public final Abstraction deriveNewAbstractionOnCatch(Value taint){
-		assert this.exceptionThrown;
+		assert this.getExceptionThrown();
 		Abstraction abs = deriveNewAbstractionMutable(
 				AccessPathFactory.v().createAccessPath(taint, true), null);
 		if (abs == null)
 			return null;
 		
-		abs.exceptionThrown = false;
+		abs.setFlag(FLAG_EXCEPTION_THROWN, false);
 		return abs;
 	}
 		
@@ -266,33 +336,131 @@ public class Abstraction implements Cloneable, FastSolverLinkedNode<Abstraction,
 	 * @return The path from the source to the current statement
 	 */
 	public Set<SourceContextAndPath> getPaths() {
+		Extension ext = this.extension;
+		Set<SourceContextAndPath> pathCache = ext == null ? null : ext.pathCache;
 		return pathCache == null ? null : Collections.unmodifiableSet(pathCache);
 	}
 	
 	public Set<SourceContextAndPath> getOrMakePathCache() {
+		return Collections.unmodifiableSet(getOrCreatePathCache());
+	}
+	
+	public boolean addPathElement(SourceContextAndPath scap) {
+		return getOrCreatePathCache().add(scap);
+	}
+	
+	/**
+	 * Gets the path cache of this abstraction, creating it if necessary
+	 * @return The path cache of this abstraction
+	 */
+	private Set<SourceContextAndPath> getOrCreatePathCache() {
 		// We're optimistic about having a path cache. If we definitely have one,
 		// we return it. Otherwise, we need to lock and create one.
-		if (this.pathCache == null)
+		Extension ext = getOrCreateExtension();
+		if (ext.pathCache == null)
 			synchronized (this) {
-				if (this.pathCache == null)
-					this.pathCache = new ConcurrentHashSet<SourceContextAndPath>();
+				if (ext.pathCache == null)
+					ext.pathCache = new ConcurrentHashSet<SourceContextAndPath>();
 			}
-		return Collections.unmodifiableSet(pathCache);
+		return ext.pathCache;
 	}
 	
-	public boolean addPathElement(SourceContextAndPath scap) {
-		if (this.pathCache == null) {
+	public void clearPathCache() {
+		Extension ext = this.extension;
+		if (ext != null)
+			ext.pathCache = null;
+	}
+	
+	/**
+	 * Gets the extension object with the rarely used data of this abstraction,
+	 * creating it if necessary
+	 * @return The extension object of this abstraction
+	 */
+	private Extension getOrCreateExtension() {
+		Extension ext = this.extension;
+		if (ext == null) {
 			synchronized (this) {
-				if (this.pathCache == null) {
-					this.pathCache = new ConcurrentHashSet<SourceContextAndPath>();
+				ext = this.extension;
+				if (ext == null) {
+					ext = new Extension();
+					this.extension = ext;
 				}
 			}
 		}
-		return this.pathCache.add(scap);
+		return ext;
 	}
 	
-	public void clearPathCache() {
-		this.pathCache = null;
+	private List<UnitContainer> getPostdominators() {
+		Extension ext = this.extension;
+		return ext == null ? null : ext.postdominators;
+	}
+	
+	private void setPostdominators(List<UnitContainer> postdominators) {
+		int oldTerm = postdominatorsTerm();
+		if (postdominators != null)
+			getOrCreateExtension().postdominators = postdominators;
+		else {
+			Extension ext = this.extension;
+			if (ext != null)
+				ext.postdominators = null;
+		}
+		updateHashCode(oldTerm, postdominatorsTerm());
+	}
+	
+	private void setActivationUnit(Unit activationUnit) {
+		int oldTerm = activationUnitTerm();
+		this.activationUnit = activationUnit;
+		updateHashCode(oldTerm, activationUnitTerm());
+	}
+	
+	private boolean getFlag(int flag) {
+		return (flags & flag) != 0;
+	}
+	
+	private void setFlag(int flag, boolean value) {
+		int oldFlags;
+		int newFlags;
+		do {
+			oldFlags = flags;
+			newFlags = value ? oldFlags | flag : oldFlags & ~flag;
+			if (oldFlags == newFlags)
+				return;
+		} while (!FLAGS.compareAndSet(this, oldFlags, newFlags));
+	}
+	
+	private int sourceContextTerm() {
+		return HASH_SOURCE_CONTEXT * (sourceContext == null ? 0 : sourceContext.hashCode());
+	}
+	
+	private static int accessPathTerm(AccessPath accessPath) {
+		return HASH_ACCESS_PATH * (accessPath == null ? 0 : accessPath.hashCode());
+	}
+	
+	private int activationUnitTerm() {
+		return HASH_ACTIVATION_UNIT * (activationUnit == null ? 0 : activationUnit.hashCode());
+	}
+	
+	private int flagsTerm() {
+		return HASH_FLAGS * (flags & IDENTITY_FLAGS);
+	}
+	
+	private int postdominatorsTerm() {
+		List<UnitContainer> postdominators = getPostdominators();
+		return HASH_POSTDOMINATORS * (postdominators == null ? 0 : postdominators.hashCode());
+	}
+	
+	/**
+	 * Replaces one term in the cached hash code after a component of this
+	 * abstraction has changed. If the hash code has not been computed yet,
+	 * there is nothing to update. This must only be used on abstractions that
+	 * have not been published to other threads yet, otherwise a concurrent
+	 * computation of the hash code could overwrite the update.
+	 * @param oldTerm The weighted hash of the component before the change
+	 * @param newTerm The weighted hash of the component after the change
+	 */
+	private void updateHashCode(int oldTerm, int newTerm) {
+		if (oldTerm != newTerm && this.hashCode != 0)
+			this.hashCode += newTerm - oldTerm;
 	}
 	
 	public boolean isAbstractionActive() {
@@ -300,7 +468,7 @@ public class Abstraction implements Cloneable, FastSolverLinkedNode<Abstraction,
 	}
 	
 	public boolean isImplicit() {
-		return isImplicit;
+		return getFlag(FLAG_IMPLICIT);
 	}
 	
 	@Override
@@ -320,8 +488,8 @@ public class Abstraction implements Cloneable, FastSolverLinkedNode<Abstraction,
 		assert !this.isAbstractionActive();
 		
 		Abstraction a = clone();
-		a.sourceContext = null;
-		a.activationUnit = null;
+		a.setSourceContext(null);
+		a.setActivationUnit(null);
 		return a;
 	}
 	
@@ -331,13 +499,14 @@ public class Abstraction implements Cloneable, FastSolverLinkedNode<Abstraction,
 	 * false
 	 */
 	public boolean getExceptionThrown() {
-		return this.exceptionThrown;
+		return getFlag(FLAG_EXCEPTION_THROWN);
 	}
 	
 	public final Abstraction deriveConditionalAbstractionEnter(UnitContainer postdom,
 			Stmt conditionalUnit) {
 		assert this.isAbstractionActive();
 		
+		List<UnitContainer> postdominators = getPostdominators();
 		if (postdominators != null && postdominators.contains(postdom))
 			return this;
 		
@@ -346,10 +515,14 @@ public class Abstraction implements Cloneable, FastSolverLinkedNode<Abstraction,
 		if (abs == null)
 			return null;
 		
-		if (abs.postdominators == null)
-			abs.postdominators = Collections.singletonList(postdom);
-		else
-			abs.postdominators.add(0, postdom);
+		List<UnitContainer> absPostdominators = abs.getPostdominators();
+		if (absPostdominators == null)
+			abs.setPostdominators(Collections.singletonList(postdom));
+		else {
+			int oldTerm = abs.postdominatorsTerm();
+			absPostdominators.add(0, postdom);
+			abs.updateHashCode(oldTerm, abs.postdominatorsTerm());
+		}
 		return abs;
 	}
 	
@@ -364,25 +537,29 @@ public class Abstraction implements Cloneable, FastSolverLinkedNode<Abstraction,
 		
 		// Postdominators are only kept intraprocedurally in order to not
 		// mess up the summary functions with caller-side information
-		abs.postdominators = null;
+		abs.setPostdominators(null);
 
 		return abs;
 	}
 	
 	public final Abstraction dropTopPostdominator() {
+		List<UnitContainer> postdominators = getPostdominators();
 		if (postdominators == null || postdominators.isEmpty())
 			return this;
 		
 		Abstraction abs = clone();
-		abs.sourceContext = null;
-		abs.postdominators.remove(0);
+		abs.setSourceContext(null);
+		int oldTerm = abs.postdominatorsTerm();
+		abs.getPostdominators().remove(0);
+		abs.updateHashCode(oldTerm, abs.postdominatorsTerm());
 		return abs;
 	}
 	
 	public UnitContainer getTopPostdominator() {
+		List<UnitContainer> postdominators = getPostdominators();
 		if (postdominators == null || postdominators.isEmpty())
 			return null;
-		return this.postdominators.get(0);
+		return postdominators.get(0);
 	}
 	
 	public boolean isTopPostdominator(Unit u) {
@@ -403,10 +580,8 @@ public class Abstraction implements Cloneable, FastSolverLinkedNode<Abstraction,
 	public Abstraction clone() {
 		Abstraction abs = new Abstraction(accessPath, this);
 		abs.predecessor = this;
-		abs.neighbors = null;
 		abs.currentStmt = null;
 		abs.correspondingCallSite = null;
-		abs.conditionRespected = this.conditionRespected;
 		
 		assert abs.equals(this);
 		return abs;
@@ -421,7 +596,7 @@ public class Abstraction implements Cloneable, FastSolverLinkedNode<Abstraction,
 		Abstraction other = (Abstraction) obj;
 		
 		// If we have already computed hash codes, we can use them for
-		// comparison
+		// comparison. The flags are compared separately.
 		if (this.hashCode != 0
 				&& other.hashCode != 0
 				&& this.hashCode != other.hashCode)
@@ -455,42 +630,31 @@ public class Abstraction implements Cloneable, FastSolverLinkedNode<Abstraction,
 				return false;
 		} else if (!activationUnit.equals(other.activationUnit))
 			return false;
-		if (this.exceptionThrown != other.exceptionThrown)
+		// Compares the exception, cut-off, implicit and condition flags
+		if ((this.flags & IDENTITY_FLAGS) != (other.flags & IDENTITY_FLAGS))
 			return false;
+		List<UnitContainer> postdominators = getPostdominators();
+		List<UnitContainer> otherPostdominators = other.getPostdominators();
 		if (postdominators == null) {
-			if (other.postdominators != null)
+			if (otherPostdominators != null)
 				return false;
-		} else if (!postdominators.equals(other.postdominators))
-			return false;
-		if(this.dependsOnCutAP != other.dependsOnCutAP)
-			return false;
-		if(this.isImplicit != other.isImplicit)
-			return false;
-		if (this.conditionRespected != other.conditionRespected)
+		} else if (!postdominators.equals(otherPostdominators))
 			return false;
 		return true;
 	}
 	
 	@Override
 	public int hashCode() {
-		if (this.hashCode != 0)
-			return hashCode;
-
-		final int prime = 31;
-		int result = 1;
-	
-		// deliberately ignore prevAbs
-		result = prime * result + ((sourceContext == null) ? 0 : sourceContext.hashCode());
-		result = prime * result + ((accessPath == null) ? 0 : accessPath.hashCode());
-		result = prime * result + ((activationUnit == null) ? 0 : activationUnit.hashCode());
-		result = prime * result + (exceptionThrown ? 1231 : 1237);
-		result = prime * result + ((postdominators == null) ? 0 : postdominators.hashCode());
-		result = prime * result + (dependsOnCutAP ? 1231 : 1237);
-		result = prime * result + (isImplicit ? 1231 : 1237);
-		result = prime * result + (conditionRespected ? 0 : 1);
-		this.hashCode = result;
-		
-		return this.hashCode;
+		int result = this.hashCode;
+		if (result == 0) {
+			// deliberately ignore prevAbs
+			result = sourceContextTerm()
+					+ accessPathTerm(accessPath)
+					+ activationUnitTerm()
+					+ postdominatorsTerm();
+			this.hashCode = result;
+		}
+		return result + flagsTerm();
 	}
 	
 	/**
@@ -518,7 +682,7 @@ public class Abstraction implements Cloneable, FastSolverLinkedNode<Abstraction,
 	}
 	
 	public boolean dependsOnCutAP() {
-		return dependsOnCutAP;
+		return getFlag(FLAG_DEPENDS_ON_CUT_AP);
 	}
 	
 	@Override
@@ -527,7 +691,8 @@ public class Abstraction implements Cloneable, FastSolverLinkedNode<Abstraction,
 	}
 	
 	public Set<Abstraction> getNeighbors() {
-		return this.neighbors;
+		Extension ext = this.extension;
+		return ext == null ? null : ext.neighbors;
 	}
 	
 	public Stmt getCurrentStmt() {
@@ -546,23 +711,43 @@ public class Abstraction implements Cloneable, FastSolverLinkedNode<Abstraction,
 				&& this.predecessor == originalAbstraction.predecessor)
 			return;
 		
-		synchronized (this) {
-			if (neighbors == null)
-				neighbors = Sets.newIdentityHashSet();
-			else if (InfoflowConfiguration.getMergeNeighbors()) {
-				// Check if we already have an identical neighbor
-				for (Abstraction nb : neighbors) {
-					if (nb == originalAbstraction)
-						return;
-					if (originalAbstraction.predecessor == nb.predecessor
-							&& originalAbstraction.currentStmt == nb.currentStmt
-							&& originalAbstraction.correspondingCallSite == nb.correspondingCallSite) {
-						return;
-					}
+		Extension ext = getOrCreateExtension();
+		ConcurrentAppendOnlyIdentitySet<Abstraction> neighbors = ext.neighbors;
+		if (neighbors == null) {
+			Extension.NEIGHBORS.compareAndSet(ext, null,
+					new ConcurrentAppendOnlyIdentitySet<Abstraction>());
+			neighbors = ext.neighbors;
+		}
+		else if (InfoflowConfiguration.getMergeNeighbors()) {
+			// Check if we already have an identical neighbor
+			for (Abstraction nb : neighbors) {
+				if (nb == originalAbstraction)
+					return;
+				if (originalAbstraction.predecessor == nb.predecessor
+						&& originalAbstraction.currentStmt == nb.currentStmt
+						&& originalAbstraction.correspondingCallSite == nb.correspondingCallSite) {
+					return;
 				}
 			}
-			this.neighbors.add(originalAbstraction);
 		}
+		
+		// Without path reconstruction, we may be limited in the number of
+		// neighbors we keep
+		if (maxNeighbors >= 0 && neighbors.size() >= maxNeighbors)
+			return;
+		neighbors.add(originalAbstraction);
+	}
+	
+	/**
+	 * Sets the maximum number of neighbors to keep per abstraction. Further
+	 * neighbors are silently dropped, so this must only be used if no paths
+	 * are reconstructed. Note that dropping neighbors can also lose sources
+	 * in the results.
+	 * @param maxNeighbors The maximum number of neighbors per abstraction, or
+	 * -1 for no limit
+	 */
+	public static void setMaxNeighbors(int maxNeighbors) {
+		Abstraction.maxNeighbors = maxNeighbors;
 	}
 	
 	public void setCorrespondingCallSite(Stmt callSite) {
@@ -586,6 +771,7 @@ public class Abstraction implements Cloneable, FastSolverLinkedNode<Abstraction,
 	@Override
 	public void setPredecessor(Abstraction predecessor) {
 		this.predecessor = predecessor;
+		setFlag(FLAG_CHAIN_COMPACTED, false);
 		assert this.predecessor != this;
 	}
 	
@@ -595,7 +781,9 @@ public class Abstraction implements Cloneable, FastSolverLinkedNode<Abstraction,
 	 * @param sourceContext The new source context
 	 */
 	public void setSourceContext(SourceContext sourceContext) {
+		int oldTerm = sourceContextTerm();
 		this.sourceContext = sourceContext;
+		updateHashCode(oldTerm, sourceContextTerm());
 	}
 	
 	/**
@@ -606,17 +794,18 @@ public class Abstraction implements Cloneable, FastSolverLinkedNode<Abstraction,
 	 * registered before, otherwise false
 	 */
 	public boolean registerPathFlag(int id, int maxSize) {
-		if (pathFlags == null) {
+		Extension ext = getOrCreateExtension();
+		if (ext.pathFlags == null) {
 			synchronized (this) {
-				if (pathFlags == null) {
+				if (ext.pathFlags == null) {
 					// Make sure that the field is set only after the constructor
 					// is done and the object is fully usable
 					AtomicBitSet pf = new AtomicBitSet(maxSize);
-					pathFlags = pf;
+					ext.pathFlags = pf;
 				}
 			}
 		}
-		return pathFlags.set(id);
+		return ext.pathFlags.set(id);
 	}
 	
 	public Abstraction injectSourceContext(SourceContext sourceContext) {
@@ -625,34 +814,52 @@ public class Abstraction implements Cloneable, FastSolverLinkedNode<Abstraction,
 		
 		Abstraction abs = clone();
 		abs.predecessor = null;
-		abs.neighbors = null;
-		abs.sourceContext = sourceContext;
+		abs.setSourceContext(sourceContext);
 		abs.currentStmt = this.currentStmt;
 		return abs;
 	}
 	
 	/**
 	 * For internal use by memory manager only. Setting a new access path will
-	 * not update any dependent data such as cached hashes. Handle with care!
+	 * not update any dependent data except for the cached hash code. Handle
+	 * with care!
 	 */
 	void setAccessPath(AccessPath accessPath) {
+		int oldTerm = accessPathTerm(this.accessPath);
 		this.accessPath = accessPath;
+		updateHashCode(oldTerm, accessPathTerm(accessPath));
 	}
 	
 	void setCurrentStmt(Stmt currentStmt) {
 		this.currentStmt = currentStmt;
 	}
 	
+	/**
+	 * For internal use by memory manager only. Gets whether the chain of
+	 * predecessors of this abstraction has already been compacted.
+	 */
+	boolean isChainCompacted() {
+		return getFlag(FLAG_CHAIN_COMPACTED);
+	}
+	
+	/**
+	 * For internal use by memory manager only. Sets whether the chain of
+	 * predecessors of this abstraction has already been compacted.
+	 */
+	void setChainCompacted(boolean chainCompacted) {
+		setFlag(FLAG_CHAIN_COMPACTED, chainCompacted);
+	}
+	
 	@Override
 	public void setCallingContext(Abstraction callingContext) {
 	}
 	
 	public void setConditionRespected(boolean doesRespectConditions) {
-		this.conditionRespected = doesRespectConditions;
+		setFlag(FLAG_CONDITION_RESPECTED, doesRespectConditions);
 	}
 	
 	public boolean isConditionRespected() {
-		return conditionRespected;
+		return getFlag(FLAG_CONDITION_RESPECTED);
 	}
 		
 }
@@ -10,8 +10,6 @@
  ******************************************************************************/
 package soot.jimple.infoflow.data;
 
-import java.util.Arrays;
-
 import soot.Local;
 import soot.SootField;
 import soot.Type;
@@ -19,6 +17,7 @@ import soot.Value;
 import soot.jimple.ArrayRef;
 import soot.jimple.InstanceFieldRef;
 import soot.jimple.StaticFieldRef;
+import soot.jimple.infoflow.collect.TrieNode;
 
 /**
  * This class represents the taint, containing a base value and a list of fields
@@ -38,12 +37,13 @@ public class AccessPath implements Cloneable {
 	 */
 	private final Local value;
 	/**
-	 * list of fields, either they are based on a concrete @value or they indicate a static field
+	 * list of fields, either they are based on a concrete @value or they indicate a static field.
+	 * Stored as a node in the field trie of the AccessPathFactory, null if there are no fields.
 	 */
-	private final SootField[] fields;
+	private final TrieNode<SootField> fields;
 	
 	private final Type baseType;
-	private final Type[] fieldTypes;
+	private final TrieNode<Type> fieldTypes;
 	
 	private final boolean taintSubFields;
 	private final boolean cutOffApproximation;
@@ -51,6 +51,13 @@ public class AccessPath implements Cloneable {
 	
 	private int hashCode = 0;
 	
+	/**
+	 * True if this access path has been registered as the canonical instance
+	 * in the AccessPathFactory. Two different canonical instances are only
+	 * equal if they differ in nothing but the cut-off flag.
+	 */
+	private boolean canonical = false;
+	
 	/**
 	 * The empty access path denotes a code region depending on a tainted
 	 * conditional. If a function is called inside the region, there is no
@@ -69,8 +76,8 @@ public class AccessPath implements Cloneable {
 		this.arrayTaintType = ArrayTaintType.ContentsAndLength;
 	}
 	
-	AccessPath(Local val, SootField[] appendingFields, Type valType,
-			Type[] appendingFieldTypes, boolean taintSubFields,
+	AccessPath(Local val, TrieNode<SootField> appendingFields, Type valType,
+			TrieNode<Type> appendingFieldTypes, boolean taintSubFields,
 			boolean isCutOffApproximation,
 			ArrayTaintType arrayTaintType) {		
 		this.value = val;
@@ -101,47 +108,47 @@ public class AccessPath implements Cloneable {
 	}
 	
 	public SootField getLastField() {
-		if (fields == null || fields.length == 0)
+		if (fields == null)
 			return null;
-		return fields[fields.length - 1];
+		return fields.getElement();
 	}
 	
 	public Type getLastFieldType() {
-		if (fieldTypes == null || fieldTypes.length == 0)
+		if (fieldTypes == null)
 			return baseType;
-		return fieldTypes[fieldTypes.length - 1];
+		return fieldTypes.getElement();
 	}
 	
 	public SootField getFirstField(){
-		if (fields == null || fields.length == 0)
+		if (fields == null)
 			return null;
-		return fields[0];
+		return fields.getAncestor(1).getElement();
 	}
 
 	public boolean firstFieldMatches(SootField field) {
-		if (fields == null || fields.length == 0)
+		if (fields == null)
 			return false;
-		if (field == fields[0])
+		if (field == getFirstField())
 			return true;
 		return false;
 	}
 	
 	public Type getFirstFieldType(){
-		if (fieldTypes == null || fieldTypes.length == 0)
+		if (fieldTypes == null)
 			return null;
-		return fieldTypes[0];
+		return fieldTypes.getAncestor(1).getElement();
 	}
 
 	public SootField[] getFields(){
-		return fields;
+		return fields == null ? null : fields.toArray();
 	}
 	
 	public Type[] getFieldTypes(){
-		return fieldTypes;
+		return fieldTypes == null ? null : fieldTypes.toArray();
 	}
 	
 	public int getFieldCount() {
-		return fields == null ? 0 : fields.length;
+		return fields == null ? 0 : fields.getDepth();
 	}
 	
 	@Override
@@ -151,8 +158,8 @@ public class AccessPath implements Cloneable {
 		
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + ((fields == null) ? 0 : Arrays.hashCode(fields));
-		result = prime * result + ((fieldTypes == null) ? 0 : Arrays.hashCode(fieldTypes));
+		result = prime * result + ((fields == null) ? 0 : fields.hashCode());
+		result = prime * result + ((fieldTypes == null) ? 0 : fieldTypes.hashCode());
 		result = prime * result + ((value == null) ? 0 : value.hashCode());
 		result = prime * result + ((baseType == null) ? 0 : baseType.hashCode());
 		result = prime * result + (this.taintSubFields ? 1 : 0);
@@ -171,14 +178,22 @@ public class AccessPath implements Cloneable {
 		
 		AccessPath other = (AccessPath) obj;
 		
+		// Canonical access paths are unique, so we can compare references.
+		// Only the cut-off flag, which we do not compare, may differ between
+		// two canonical instances with the same contents.
+		if (this.canonical && other.canonical
+				&& this.cutOffApproximation == other.cutOffApproximation)
+			return false;
+		
 		if (value == null) {
 			if (other.value != null)
 				return false;
 		} else if (!value.equals(other.value))
 			return false;
-		if (!Arrays.equals(fields, other.fields))
+		// Trie nodes are unique
+		if (fields != other.fields)
 			return false;
-		if (!Arrays.equals(fieldTypes, other.fieldTypes))
+		if (fieldTypes != other.fieldTypes)
 			return false;
 		
 		if (this.taintSubFields != other.taintSubFields)
@@ -197,19 +212,19 @@ public class AccessPath implements Cloneable {
 	}
 	
 	public boolean isStaticFieldRef(){
-		return value == null && fields != null && fields.length > 0;
+		return value == null && fields != null;
 	}
 	
 	public boolean isInstanceFieldRef(){
-		return value != null && fields != null && fields.length > 0;
+		return value != null && fields != null;
 	}
 	
 	public boolean isFieldRef() {
-		return fields != null && fields.length > 0;
+		return fields != null;
 	}
 	
 	public boolean isLocal(){
-		return value != null && value instanceof Local && (fields == null || fields.length == 0);
+		return value != null && value instanceof Local && fields == null;
 	}
 	
 	@Override
@@ -218,11 +233,11 @@ public class AccessPath implements Cloneable {
 		if(value != null)
 			str += value.toString() +"(" + value.getType() +")";
 		if (fields != null)
-			for (int i = 0; i < fields.length; i++)
-				if (fields[i] != null) {
+			for (SootField field : fields.toArray())
+				if (field != null) {
 					if (!str.isEmpty())
 						str += " ";
-					str += fields[i];
+					str += field;
 				}
 		if (taintSubFields)
 			str += " *";
@@ -278,8 +293,8 @@ public class AccessPath implements Cloneable {
 				&& this.arrayTaintType == arrayTaintType)
 			return this;
 		
-		return AccessPathFactory.v().createAccessPath(val, fields, newType,
-				fieldTypes, this.taintSubFields,
+		return AccessPathFactory.v().createAccessPath(val, getFields(), newType,
+				getFieldTypes(), this.taintSubFields,
 				cutFirstField, reduceBases, arrayTaintType);
 	}
 	
@@ -300,7 +315,7 @@ public class AccessPath implements Cloneable {
 	}
 	
 	public boolean isEmpty() {
-		return value == null && (fields == null || fields.length == 0);
+		return value == null && fields == null;
 	}
 
 	/**
@@ -325,19 +340,27 @@ public class AccessPath implements Cloneable {
 		if (this.value != null && !this.value.equals(a2.value))
 			return false;
 		
-		if (this.fields != null && a2.fields != null) {
-			// If this access path is deeper than the other one, it cannot entail it
-			if (this.fields.length > a2.fields.length)
-				return false;
-			
-			// Check the fields in detail
-			for (int i = 0; i < this.fields.length; i++)
-				if (!this.fields[i].equals(a2.fields[i]))
-					return false;
-		}
+		// The fields of this access path must be a prefix of the other one's
+		if (this.fields != null && a2.fields != null)
+			return this.fields.isPrefixOf(a2.fields);
 		return true;
 	}
 	
+	/**
+	 * Checks whether the fields of this access path are a prefix of the fields
+	 * of the given access path. The base values are not compared.
+	 * @param ap The other access path
+	 * @return True if the field sequence of this access path is a prefix of
+	 * the field sequence of the given one, otherwise false
+	 */
+	public boolean isFieldPrefixOf(AccessPath ap) {
+		if (this.fields == null)
+			return true;
+		if (ap.fields == null)
+			return false;
+		return this.fields.isPrefixOf(ap.fields);
+	}
+	
 	/**
 	 * Merges this access path with the given one, i.e., adds the fields of the
 	 * given access path to this one.
@@ -357,20 +380,37 @@ public class AccessPath implements Cloneable {
 	 * @return The new access path
 	 */
 	public AccessPath appendFields(SootField[] apFields, Type[] apFieldTypes, boolean taintSubFields) {
-		int offset = this.fields == null ? 0 : this.fields.length;
-		SootField[] fields = new SootField[offset + (apFields == null ? 0 : apFields.length)];
-		Type[] fieldTypes = new Type[offset + (apFields == null ? 0 : apFields.length)];
-		if (this.fields != null) {
-			System.arraycopy(this.fields, 0, fields, 0, this.fields.length);
-			System.arraycopy(this.fieldTypes, 0, fieldTypes, 0, this.fieldTypes.length);
-		}
-		if (apFields != null && apFields.length > 0) {
-			System.arraycopy(apFields, 0, fields, offset, apFields.length);
-			System.arraycopy(apFieldTypes, 0, fieldTypes, offset, apFieldTypes.length);
-		}
-		
-		return AccessPathFactory.v().createAccessPath(this.value, fields, baseType,
-				fieldTypes, taintSubFields, false, true, arrayTaintType);
+		// Walk down from our own node in the field trie
+		AccessPathFactory factory = AccessPathFactory.v();
+		TrieNode<SootField> newFields = (fields == null ? factory.getFieldTrie() : fields)
+				.getDescendant(apFields);
+		TrieNode<Type> newFieldTypes = (fieldTypes == null ? factory.getFieldTypeTrie() : fieldTypes)
+				.getDescendant(apFieldTypes);
+		return factory.createAccessPath(value, newFields, baseType, newFieldTypes,
+				taintSubFields, true, arrayTaintType);
+	}
+	
+	/**
+	 * Appends the fields of the given trie nodes to this access path
+	 * @param apFields The node of the field sequence to append, or null if
+	 * there are no fields to append
+	 * @param apFieldTypes The node of the field type sequence to append, or
+	 * null if there are no fields to append
+	 * @param taintSubFields True if the new access path shall taint all objects
+	 * reachable through it, false if it shall only point to precisely one object
+	 * @return The new access path
+	 */
+	private AccessPath appendFields(TrieNode<SootField> apFields, TrieNode<Type> apFieldTypes,
+			boolean taintSubFields) {
+		if (apFields == null)
+			return AccessPathFactory.v().createAccessPath(value, fields, baseType,
+					fieldTypes, taintSubFields, true, arrayTaintType);
+		if (fields == null)
+			return AccessPathFactory.v().createAccessPath(value, apFields, baseType,
+					apFieldTypes, taintSubFields, true, arrayTaintType);
+		return AccessPathFactory.v().createAccessPath(value, fields.getDescendant(apFields),
+				baseType, fieldTypes.getDescendant(apFieldTypes), taintSubFields, true,
+				arrayTaintType);
 	}
 	
 	/**
@@ -379,24 +419,13 @@ public class AccessPath implements Cloneable {
 	 * @return A copy of this access path with the first field being dropped.
 	 */
 	public AccessPath dropFirstField() {
-		if (fields == null || fields.length == 0)
+		if (fields == null)
 			return this;
 		
-		final SootField[] newFields;
-		final Type[] newTypes;
-		if (fields.length > 1) {
-			newFields = new SootField[fields.length - 1];
-			System.arraycopy(fields, 1, newFields, 0, fields.length - 1);
-
-			newTypes = new Type[fields.length - 1];
-			System.arraycopy(fieldTypes, 1, newTypes, 0, fields.length - 1);
-		}
-		else {
-			newFields = null;
-			newTypes = null;
-		}
-		return AccessPathFactory.v().createAccessPath(value, newFields, fieldTypes[0],
-				newTypes, taintSubFields, false, true, arrayTaintType);		
+		// The type of the first field becomes the new base type
+		return AccessPathFactory.v().createAccessPath(value, fields.dropFirst(1),
+				getFirstFieldType(), fieldTypes.dropFirst(1), taintSubFields, true,
+				arrayTaintType);
 	}
 	
 	/**
@@ -405,24 +434,14 @@ public class AccessPath implements Cloneable {
 	 * @return A copy of this access path with the last field being dropped.
 	 */
 	public AccessPath dropLastField() {
-		if (fields == null || fields.length == 0)
+		if (fields == null)
 			return this;
 		
-		final SootField[] newFields;
-		final Type[] newTypes;
-		if (fields.length > 1) {
-			newFields = new SootField[fields.length - 1];
-			System.arraycopy(fields, 0, newFields, 0, fields.length - 1);
-
-			newTypes = new Type[fields.length - 1];
-			System.arraycopy(fieldTypes, 0, newTypes, 0, fields.length - 1);
-		}
-		else {
-			newFields = null;
-			newTypes = null;
-		}
-		return new AccessPath(value, newFields, baseType, newTypes,
-				taintSubFields, cutOffApproximation, arrayTaintType);
+		// Dropping the last field is just a step up in the field trie
+		final TrieNode<SootField> newFields = fields.getDepth() > 1 ? fields.getParent() : null;
+		final TrieNode<Type> newTypes = fields.getDepth() > 1 ? fieldTypes.getParent() : null;
+		return AccessPathFactory.v().getCanonicalAccessPath(value, newFields,
+				baseType, newTypes, taintSubFields, cutOffApproximation, arrayTaintType);
 	}
 	
 	/**
@@ -463,4 +482,21 @@ public class AccessPath implements Cloneable {
 		return this.arrayTaintType;
 	}
 	
+	/**
+	 * Gets whether this access path is the canonical instance registered in
+	 * the AccessPathFactory
+	 * @return True if this access path is canonical, otherwise false
+	 */
+	boolean isCanonical() {
+		return this.canonical;
+	}
+	
+	/**
+	 * Marks this access path as the canonical instance. For internal use by
+	 * the AccessPathFactory only.
+	 */
+	void markCanonical() {
+		this.canonical = true;
+	}
+	
 }
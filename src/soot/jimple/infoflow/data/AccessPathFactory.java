@@ -17,11 +17,35 @@ import soot.jimple.StaticFieldRef;
 import soot.jimple.infoflow.InfoflowConfiguration;
 import soot.jimple.infoflow.collect.ConcurrentHashSet;
 import soot.jimple.infoflow.collect.MyConcurrentHashMap;
+import soot.jimple.infoflow.collect.TrieNode;
+import soot.jimple.infoflow.collect.WeakInterner;
 import soot.jimple.infoflow.data.AccessPath.ArrayTaintType;
 import soot.jimple.infoflow.util.TypeUtils;
 
+import com.google.common.base.Equivalence;
+
 public class AccessPathFactory {
 	
+	/**
+	 * Equivalence for canonical access paths. AccessPath.equals() ignores the
+	 * cut-off flag, but abstractions derived from a cut-off access path depend
+	 * on it, so access paths that only differ in this flag need different
+	 * canonical instances. Must be initialized before the singleton instance.
+	 */
+	private static final Equivalence<AccessPath> CANONICAL_EQUIVALENCE = new Equivalence<AccessPath>() {
+		
+		@Override
+		protected boolean doEquivalent(AccessPath a, AccessPath b) {
+			return a.equals(b) && a.isCutOffApproximation() == b.isCutOffApproximation();
+		}
+		
+		@Override
+		protected int doHash(AccessPath ap) {
+			return 31 * ap.hashCode() + (ap.isCutOffApproximation() ? 1 : 0);
+		}
+		
+	};
+	
 	private static AccessPathFactory instance = new AccessPathFactory();
 	
 	public static AccessPathFactory v() {
@@ -95,6 +119,11 @@ public class AccessPathFactory {
 	private MyConcurrentHashMap<Type, Set<BasePair>> baseRegister
 			= new MyConcurrentHashMap<Type, Set<BasePair>>();
 	
+	private final WeakInterner<AccessPath> accessPathCache = new WeakInterner<AccessPath>(
+			CANONICAL_EQUIVALENCE);
+	private final TrieNode<SootField> fieldTrie = TrieNode.createRoot(SootField.class);
+	private final TrieNode<Type> fieldTypeTrie = TrieNode.createRoot(Type.class);
+	
 	public AccessPath createAccessPath(Value val, boolean taintSubFields){
 		return createAccessPath(val, (SootField[]) null, null, (Type[]) null, taintSubFields,
 				false, true, ArrayTaintType.ContentsAndLength);
@@ -208,20 +237,32 @@ public class AccessPathFactory {
 				if (baseType == null)
 					return null;
 			}
-			if (fields != null)
+			if (fields != null) {
+				// The type array may be shared with other access paths, so we
+				// must not change it in place
+				boolean typesCopied = false;
 				for (int i = 0; i < fields.length; i++) {
-					fieldTypes[i] = TypeUtils.getMorePreciseType(fieldTypes[i], fields[i].getType());
-					if (fieldTypes[i] == null)
+					Type newType = TypeUtils.getMorePreciseType(fieldTypes[i], fields[i].getType());
+					if (newType == null)
 						return null;
 					
 					// If we have a more precise base type in the next field, we
 					// take that
-					if (fields.length > i + 1 && !(fieldTypes[i] instanceof ArrayType))
-						fieldTypes[i] = TypeUtils.getMorePreciseType(fieldTypes[i],
+					if (fields.length > i + 1 && !(newType instanceof ArrayType))
+						newType = TypeUtils.getMorePreciseType(newType,
 								fields[i + 1].getDeclaringClass().getType());
-					if (fieldTypes[i] == null)
+					if (newType == null)
 						return null;
+					
+					if (newType != fieldTypes[i]) {
+						if (!typesCopied) {
+							fieldTypes = fieldTypes.clone();
+							typesCopied = true;
+						}
+						fieldTypes[i] = newType;
+					}
 				}
+			}
 		}
 		
 		// Make sure that only heap objects may have fields
@@ -322,6 +363,8 @@ public class AccessPathFactory {
 		
 		// Cut the fields at the maximum access path length. If this happens,
 		// we must always add a star
+		TrieNode<SootField> fieldNode = null;
+		TrieNode<Type> fieldTypeNode = null;
 		if (fields != null) {
 			int fieldNum = Math.min(InfoflowConfiguration.getAccessPathLength(), fields.length);
 			if (fields.length > fieldNum) {
@@ -332,25 +375,15 @@ public class AccessPathFactory {
 				cutOffApproximation = false || recursiveCutOff;
 			}
 			
-			if (fieldNum == 0) {
-				fields = null;
-				fieldTypes = null;
-			}
-			else {
-				SootField[] newFields = new SootField[fieldNum];
-				Type[] newFieldTypes = new Type[fieldNum];
-				
-				System.arraycopy(fields, 0, newFields, 0, fieldNum);
-				System.arraycopy(fieldTypes, 0, newFieldTypes, 0, fieldNum);
-				
-				fields = newFields;
-				fieldTypes = newFieldTypes;
+			// Look up the shared field sequences. No copy is necessary for
+			// cutting the fields.
+			if (fieldNum > 0) {
+				fieldNode = fieldTrie.getDescendant(fields, fieldNum);
+				fieldTypeNode = fieldTypeTrie.getDescendant(fieldTypes, fieldNum);
 			}
 		}
 		else {
 			cutOffApproximation = false;
-			fields = null;
-			fieldTypes = null;
 		}
 		
 		// Type checks
@@ -362,8 +395,163 @@ public class AccessPathFactory {
 				&& !TypeUtils.isObjectLikeType(value.getType()))
 					: "Type mismatch. Type was " + baseType + ", value was: " + (value == null ? null : value.getType());
 		
-		return new AccessPath(value, fields, baseType, fieldTypes, taintSubFields,
+		return getCanonicalAccessPath(value, fieldNode, baseType, fieldTypeNode,
+				taintSubFields, cutOffApproximation, arrayTaintType);
+	}
+	
+	/**
+	 * Creates an access path from field sequences that are already in the
+	 * field tries. If the sequences need no further normalization, which is
+	 * the common case when fields are appended to or dropped from an existing
+	 * access path, no arrays are created. Otherwise, this method falls back to
+	 * the array-based normalization.
+	 * @param value The base value, or null for a static field reference
+	 * @param fields The node of the field sequence in the field trie, or null
+	 * if the access path has no fields
+	 * @param baseType The type of the base value
+	 * @param fieldTypes The node of the field type sequence in the field type
+	 * trie, or null if the access path has no fields
+	 * @param taintSubFields True if the access path shall taint all objects
+	 * reachable through it
+	 * @param reduceBases True if circular types shall be reduced to bases
+	 * @param arrayTaintType The way a tainted array shall be handled
+	 * @return The new access path, or null if the types became incompatible
+	 */
+	public AccessPath createAccessPath(Local value, TrieNode<SootField> fields,
+			Type baseType, TrieNode<Type> fieldTypes, boolean taintSubFields,
+			boolean reduceBases, ArrayTaintType arrayTaintType) {
+		if (fields != null && fields.getDepth() == 0)
+			fields = null;
+		if (fields == null || InfoflowConfiguration.getAccessPathLength() == 0) {
+			fields = null;
+			fieldTypes = null;
+		}
+		assert fields == null || fields.getDepth() == fieldTypes.getDepth();
+		
+		if (needsNormalization(value, fields, baseType, fieldTypes, reduceBases))
+			return createAccessPath(value, fields == null ? null : fields.toArray(),
+					baseType, fieldTypes == null ? null : fieldTypes.toArray(),
+					taintSubFields, false, reduceBases, arrayTaintType);
+		
+		// Cut the fields at the maximum access path length
+		boolean cutOffApproximation = false;
+		if (fields != null && fields.getDepth() > InfoflowConfiguration.getAccessPathLength()) {
+			fields = fields.getAncestor(InfoflowConfiguration.getAccessPathLength());
+			fieldTypes = fieldTypes.getAncestor(InfoflowConfiguration.getAccessPathLength());
+			taintSubFields = true;
+			cutOffApproximation = true;
+		}
+		return getCanonicalAccessPath(value, fields, baseType, fieldTypes,
+				taintSubFields, cutOffApproximation, arrayTaintType);
+	}
+	
+	/**
+	 * Checks whether the array-based normalization in
+	 * {@link #createAccessPath(Value, SootField[], Type, Type[], boolean, boolean, boolean, ArrayTaintType)}
+	 * would change the given access path apart from cutting it at the maximum
+	 * length
+	 * @param value The base value
+	 * @param fields The node of the field sequence, or null if there are no
+	 * fields
+	 * @param baseType The type of the base value
+	 * @param fieldTypes The node of the field type sequence, or null if there
+	 * are no fields
+	 * @param reduceBases True if circular types shall be reduced to bases
+	 * @return True if the access path must be normalized, otherwise false
+	 */
+	private boolean needsNormalization(Local value, TrieNode<SootField> fields,
+			Type baseType, TrieNode<Type> fieldTypes, boolean reduceBases) {
+		if (InfoflowConfiguration.getUseTypeTightening()) {
+			if (value != null && value.getType() != baseType)
+				return true;
+			
+			// Walk up from the last field, so the next field is the one we
+			// have seen before
+			SootField nextField = null;
+			TrieNode<Type> t = fieldTypes;
+			for (TrieNode<SootField> f = fields; f != null; f = f.getParent(), t = t.getParent()) {
+				if (f.getDepth() == 0)
+					break;
+				Type newType = TypeUtils.getMorePreciseType(t.getElement(), f.getElement().getType());
+				if (newType != null && nextField != null && !(newType instanceof ArrayType))
+					newType = TypeUtils.getMorePreciseType(newType,
+							nextField.getDeclaringClass().getType());
+				if (newType != t.getElement())
+					return true;
+				nextField = f.getElement();
+			}
+		}
+		if (fields == null || !reduceBases)
+			return false;
+		
+		if (InfoflowConfiguration.getUseThisChainReduction())
+			for (TrieNode<SootField> f = fields; f.getDepth() > 0; f = f.getParent())
+				if (f.getElement().getName().startsWith("this$"))
+					return true;
+		
+		// A field that maps back to the type of the base or of an earlier
+		// field makes the access path recursive
+		if (InfoflowConfiguration.getUseRecursiveAccessPaths()) {
+			TrieNode<Type> t = fieldTypes;
+			for (TrieNode<SootField> f = fields; f.getDepth() > 0; f = f.getParent(), t = t.getParent()) {
+				Type fieldType = f.getElement().getType();
+				if (t.getElement() == baseType || fieldType == baseType)
+					return true;
+				for (TrieNode<Type> prev = t.getParent(); prev.getDepth() > 0; prev = prev.getParent())
+					if (t.getElement() == prev.getElement() || fieldType == prev.getElement())
+						return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Gets the root of the trie in which the field sequences of all access
+	 * paths are stored
+	 * @return The root of the field trie
+	 */
+	TrieNode<SootField> getFieldTrie() {
+		return fieldTrie;
+	}
+	
+	/**
+	 * Gets the root of the trie in which the field type sequences of all
+	 * access paths are stored
+	 * @return The root of the field type trie
+	 */
+	TrieNode<Type> getFieldTypeTrie() {
+		return fieldTypeTrie;
+	}
+	
+	/**
+	 * Gets the canonical access path with the given contents. If no such
+	 * access path exists yet, a new one is created and registered.
+	 * @param value The base value
+	 * @param fields The node of the field sequence in the field trie, or null
+	 * if the access path has no fields
+	 * @param baseType The type of the base value
+	 * @param fieldTypes The node of the field type sequence in the field type
+	 * trie, or null if the access path has no fields
+	 * @param taintSubFields True if the access path shall taint all objects
+	 * reachable through it
+	 * @param cutOffApproximation True if the access path was cut off at the
+	 * maximum length
+	 * @param arrayTaintType The way a tainted array shall be handled
+	 * @return The canonical access path with the given contents
+	 */
+	AccessPath getCanonicalAccessPath(Local value, TrieNode<SootField> fields, Type baseType,
+			TrieNode<Type> fieldTypes, boolean taintSubFields, boolean cutOffApproximation,
+			ArrayTaintType arrayTaintType) {
+		if (!InfoflowConfiguration.getUseCanonicalAccessPaths())
+			return new AccessPath(value, fields, baseType, fieldTypes, taintSubFields,
+					cutOffApproximation, arrayTaintType);
+		
+		AccessPath ap = new AccessPath(value, fields, baseType, fieldTypes, taintSubFields,
 				cutOffApproximation, arrayTaintType);
+		AccessPath canonicalAP = accessPathCache.intern(ap);
+		if (canonicalAP == ap)
+			ap.markCanonical();
+		return canonicalAP;
 	}
 
 	private void registerBase(Type eiType, SootField[] base,
@@ -3,8 +3,6 @@ package soot.jimple.infoflow.data;
 import java.util.Collections;
 import java.util.IdentityHashMap;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
@@ -12,8 +10,11 @@ import org.slf4j.LoggerFactory;
 
 import soot.jimple.ReturnStmt;
 import soot.jimple.ReturnVoidStmt;
+import soot.jimple.infoflow.collect.WeakInterner;
 import soot.jimple.infoflow.solver.IMemoryManager;
 
+import com.google.common.base.Equivalence;
+
 /**
  * Memory manager implementation for FlowDroid
  * 
@@ -25,23 +26,13 @@ public class FlowDroidMemoryManager implements IMemoryManager<Abstraction> {
     private final Logger logger = LoggerFactory.getLogger(getClass());
     
     /**
-	 * Special class for encapsulating taint abstractions for a full equality
-	 * check including those fields (predecessor, etc.) that are normally left
-	 * out
-	 * 
-	 * @author Steven Arzt
-	 *
+	 * Equivalence for taint abstractions that performs a full equality check
+	 * including those fields (predecessor, etc.) that are normally left out
 	 */
-	private class AbstractionCacheKey {
-		
-		private final Abstraction abs;
-		
-		public AbstractionCacheKey(Abstraction abs) {
-			this.abs = abs;
-		}
+	private static final Equivalence<Abstraction> ABSTRACTION_EQUIVALENCE = new Equivalence<Abstraction>() {
 		
 		@Override
-		public int hashCode() {
+		protected int doHash(Abstraction abs) {
 			final int prime = 31;
 			int result = 1;
 			result = prime * abs.hashCode();
@@ -52,36 +43,29 @@ public class FlowDroidMemoryManager implements IMemoryManager<Abstraction> {
 		}
 		
 		@Override
-		public boolean equals(Object obj) {
-			if (this == obj)
-				return true;
-			if (obj == null)
-				return false;
-			if (getClass() != obj.getClass())
+		protected boolean doEquivalent(Abstraction abs, Abstraction other) {
+			if (!abs.equals(other))
 				return false;
-			AbstractionCacheKey other = (AbstractionCacheKey) obj;
-			
-			if (!abs.equals(other.abs))
+			if (abs.getPredecessor() != other.getPredecessor())
 				return false;
-			if (abs.getPredecessor() != other.abs.getPredecessor())
+			if (abs.getCurrentStmt() != other.getCurrentStmt())
 				return false;
-			if (abs.getCurrentStmt() != other.abs.getCurrentStmt())
-				return false;
-			if (abs.getCorrespondingCallSite() != other.abs.getCorrespondingCallSite())
+			if (abs.getCorrespondingCallSite() != other.getCorrespondingCallSite())
 				return false;
 			
 			return true;
-		}		
+		}
 		
-	}
+	};
 	
-	private ConcurrentMap<AccessPath, AccessPath> apCache = new ConcurrentHashMap<>();
-	private ConcurrentHashMap<AbstractionCacheKey, Abstraction> absCache = new ConcurrentHashMap<>();
+	private WeakInterner<AccessPath> apCache = new WeakInterner<>();
+	private WeakInterner<Abstraction> absCache = new WeakInterner<>(ABSTRACTION_EQUIVALENCE);
 	private AtomicInteger reuseCounter = new AtomicInteger();
 	
 	private final boolean tracingEnabled;
 	private final PathDataErasureMode erasePathData;
 	private boolean useAbstractionCache = false;
+	private boolean validateChains = false;
 	
 	/**
 	 * Supported modes that define which path tracking data shall be erased and
@@ -134,10 +118,12 @@ public class FlowDroidMemoryManager implements IMemoryManager<Abstraction> {
 	 * @return The cached equivalent of the given access path
 	 */
 	private AccessPath getCachedAccessPath(AccessPath ap) {
-		AccessPath oldAP = apCache.putIfAbsent(ap, ap);
-		if (oldAP == null)
+		// Canonical access paths are already unique
+		if (ap.isCanonical())
 			return ap;
 		
+		AccessPath oldAP = apCache.intern(ap);
+		
 		// We can re-use an old access path
 		if (tracingEnabled && oldAP != ap)
 			reuseCounter.incrementAndGet();
@@ -152,10 +138,11 @@ public class FlowDroidMemoryManager implements IMemoryManager<Abstraction> {
 	 * otherwise null
 	 */
 	private Abstraction getCachedAbstraction(Abstraction abs) {
-		Abstraction oldAbs = absCache.putIfAbsent(new AbstractionCacheKey(abs), abs);
-		if (oldAbs != null && oldAbs != abs)
-			if (tracingEnabled)
-				reuseCounter.incrementAndGet();
+		Abstraction oldAbs = absCache.intern(abs);
+		if (oldAbs == abs)
+			return null;
+		if (tracingEnabled)
+			reuseCounter.incrementAndGet();
 		return oldAbs;
 	}
 	
@@ -166,6 +153,33 @@ public class FlowDroidMemoryManager implements IMemoryManager<Abstraction> {
 	public int getReuseCount() {
 		return this.reuseCounter.get();
 	}
+	
+	/**
+	 * Gets the number of cache lookups for access paths and abstractions that
+	 * returned an existing instance
+	 * @return The number of cache hits
+	 */
+	public long getCacheHitCount() {
+		return apCache.getHitCount() + absCache.getHitCount();
+	}
+	
+	/**
+	 * Gets the number of cache lookups for access paths and abstractions that
+	 * added a new instance to the cache
+	 * @return The number of cache misses
+	 */
+	public long getCacheMissCount() {
+		return apCache.getMissCount() + absCache.getMissCount();
+	}
+	
+	/**
+	 * Gets the number of cached access paths and abstractions that have been
+	 * evicted from the cache after they were garbage-collected
+	 * @return The number of cache evictions
+	 */
+	public long getCacheEvictionCount() {
+		return apCache.getEvictionCount() + absCache.getEvictionCount();
+	}
 
 	@Override
 	public Abstraction handleMemoryObject(Abstraction obj) {
@@ -177,25 +191,23 @@ public class FlowDroidMemoryManager implements IMemoryManager<Abstraction> {
 		}
 		
 		// Sanity check: Abstractions shall not have circles. Really. Trust me.
-		{
-			Set<Abstraction> seenAbstractions = Collections.newSetFromMap(new IdentityHashMap<Abstraction,Boolean>());
-			seenAbstractions.add(obj);
-			Abstraction curAbs = obj;
-			while (curAbs.getPredecessor() != null) {
-				if (!seenAbstractions.add(curAbs.getPredecessor()))
-					System.out.println("ISSUE");
-				curAbs = curAbs.getPredecessor();
-			}
-		}
+		if (validateChains)
+			validateChain(obj);
 		
 		// We check for a cached version of the access path
 		AccessPath newAP = getCachedAccessPath(obj.getAccessPath());
 		obj.setAccessPath(newAP);
 		
-		// Erase path data if requested
+		// If we have already compacted this abstraction and its predecessor
+		// has not changed since, there is nothing left to do
+		if (obj.isChainCompacted())
+			return obj;
+		
+		// Erase path data if requested. All predecessors above an abstraction
+		// with a compacted chain have already been erased.
 		if (erasePathData != PathDataErasureMode.EraseNothing) {
 			Abstraction curAbs = obj;
-			while (curAbs != null) {
+			while (curAbs != null && (curAbs == obj || !curAbs.isChainCompacted())) {
 				boolean doErase = erasePathData == PathDataErasureMode.EraseAll;
 				if (erasePathData == PathDataErasureMode.KeepOnlyContextData
 						&& curAbs.getCorrespondingCallSite() == curAbs.getCurrentStmt())
@@ -216,23 +228,48 @@ public class FlowDroidMemoryManager implements IMemoryManager<Abstraction> {
 			}
 		}
 		
-		Abstraction pred = obj.getPredecessor();
+		// Compact the neighbor-free part of the chain. Once we have replaced
+		// our abstraction with an equal ancestor whose chain is already
+		// compacted, there is no further equal abstraction above it, so we
+		// can stop walking. Note that a new abstraction is never compacted,
+		// so without such an ancestor, we still walk the complete
+		// neighbor-free part of the chain, i.e., deep flows without neighbors
+		// remain quadratic in the length of the chain.
 		{
-			Abstraction curAbs = pred;
+			Abstraction curAbs = obj.getPredecessor();
 			while (curAbs != null && curAbs.getNeighbors() == null) {
 				Abstraction predPred = curAbs.getPredecessor();
-				if (predPred != null) {
-					if (predPred.equals(obj)) {
-						pred = predPred.getPredecessor();
-						obj = predPred;
-					}
+				if (predPred != null && predPred.equals(obj)) {
+					obj = predPred;
+					if (obj.isChainCompacted())
+						break;
 				}
 				curAbs = predPred;
 			}
 		}
 		
+		obj.setChainCompacted(true);
 		return obj;
 	}
+	
+	/**
+	 * Checks whether the chain of predecessors of the given abstraction
+	 * contains a cycle and logs an error if so
+	 * @param obj The abstraction to check
+	 */
+	private void validateChain(Abstraction obj) {
+		Set<Abstraction> seenAbstractions = Collections.newSetFromMap(new IdentityHashMap<Abstraction,Boolean>());
+		seenAbstractions.add(obj);
+		Abstraction curAbs = obj;
+		while (curAbs.getPredecessor() != null) {
+			if (!seenAbstractions.add(curAbs.getPredecessor())) {
+				logger.error("Predecessor chain of abstraction {} contains a cycle at {}",
+						obj, curAbs.getPredecessor());
+				return;
+			}
+			curAbs = curAbs.getPredecessor();
+		}
+	}
 
 	@Override
 	public Abstraction handleGeneratedMemoryObject(Abstraction input,
@@ -258,6 +295,9 @@ public class FlowDroidMemoryManager implements IMemoryManager<Abstraction> {
 					if (input.getCurrentStmt() == null) {
 						input.setCurrentStmt(output.getCurrentStmt());
 						input.setCorrespondingCallSite(output.getCorrespondingCallSite());
+						
+						// The path data must be checked for erasure again
+						input.setChainCompacted(false);
 						return input;
 					}
 				}
@@ -275,5 +315,18 @@ public class FlowDroidMemoryManager implements IMemoryManager<Abstraction> {
 	public void setUseAbstractionCache(boolean useAbstractionCache) {
 		this.useAbstractionCache = useAbstractionCache;
 	}
+	
+	/**
+	 * Sets whether the memory manager shall check every abstraction for cycles
+	 * in its chain of predecessors. This is a debugging aid that walks the
+	 * complete chain on every call and should not be enabled in production.
+	 * @param validateChains True if abstraction chains shall be validated,
+	 * otherwise false
+	 */
+	public void setValidateChains(boolean validateChains) {
+		this.validateChains = validateChains;
+		if (validateChains)
+			logger.info("FDMM: Abstraction chain validation enabled. This may negatively affect performance.");
+	}
 
 }
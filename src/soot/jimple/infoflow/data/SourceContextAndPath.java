@@ -8,6 +8,7 @@ import java.util.List;
 
 import soot.jimple.Stmt;
 import soot.jimple.infoflow.InfoflowConfiguration;
+import soot.jimple.infoflow.collect.ConsList;
 
 /**
  * Extension of {@link SourceContext} that also allows a paths from the source
@@ -16,8 +17,14 @@ import soot.jimple.infoflow.InfoflowConfiguration;
  * @author Steven Arzt
  */
 public class SourceContextAndPath extends SourceContext implements Cloneable {
-	protected List<Abstraction> path = null;
-	protected List<Stmt> callStack = null;
+	
+	/**
+	 * The path and the call stack only ever change at their heads. They are
+	 * stored as immutable lists that share their tails with the path objects
+	 * from which they were derived.
+	 */
+	protected ConsList<Abstraction> path = ConsList.empty();
+	protected ConsList<Stmt> callStack = ConsList.empty();
 	private int hashCode = 0;
 	
 	public SourceContextAndPath(AccessPath value, Stmt stmt) {
@@ -29,11 +36,19 @@ public class SourceContextAndPath extends SourceContext implements Cloneable {
 	}
 	
 	public List<Abstraction> getAbstractionPath() {
-		return path;
+		return path.isEmpty() ? null : path;
+	}
+	
+	/**
+	 * Gets the number of abstractions on the propagation path
+	 * @return The length of the propagation path
+	 */
+	public int getPathLength() {
+		return path.size();
 	}
 	
 	public List<Stmt> getPath() {
-		if (path == null)
+		if (path.isEmpty())
 			return Collections.<Stmt>emptyList();
 		List<Stmt> stmtPath = new ArrayList<Stmt>(this.path.size());
 		for (Abstraction abs : this.path)
@@ -77,32 +92,39 @@ public class SourceContextAndPath extends SourceContext implements Cloneable {
 		
 		SourceContextAndPath scap = null;
 		if (trackPath && abs.getCurrentStmt() != null) {
-			// Do not add the very same abstraction over and over again. We clone
-			// the data object first to ensure a stable state.
-			scap = this.clone();
-			if (this.path != null) {
-				for (Abstraction a : scap.path) {
-					if (a == abs)
-						return null;
+			if (!this.path.isEmpty()) {
+				// Do not add the very same abstraction over and over again.
+				// Neighbors are always equal to the abstraction they belong to,
+				// so all of the checks below require the two abstractions to be
+				// equal. We can thus first ask the path's Bloom filter and then
+				// skip all elements with different hash codes.
+				if (this.path.mightContain(abs)) {
+					int absHash = abs.hashCode();
+					for (Abstraction a : this.path) {
+						if (a.hashCode() != absHash)
+							continue;
+						if (a == abs)
+							return null;
 					
-					// Do not run into loops. If we come back to the same
-					// abstraction, we don't got on with a neighbor
-					if (a.getNeighbors() != null && a.getNeighbors().contains(abs))
-						return null;
-					if (abs.getNeighbors() != null && abs.getNeighbors().contains(a))
-						return null;
+						// Do not run into loops. If we come back to the same
+						// abstraction, we don't got on with a neighbor
+						if (a.getNeighbors() != null && a.getNeighbors().contains(abs))
+							return null;
+						if (abs.getNeighbors() != null && abs.getNeighbors().contains(a))
+							return null;
 					
-					// If this is exactly the same abstraction as one we have seen
-					// before, we skip it. Otherwise, we would run through loops
-					// infinitely.
-					if (a.equals(abs)
-							&& a.getCurrentStmt() == abs.getCurrentStmt()
-							&& a.getCorrespondingCallSite() == abs.getCorrespondingCallSite())
-						return null;
+						// If this is exactly the same abstraction as one we have seen
+						// before, we skip it. Otherwise, we would run through loops
+						// infinitely.
+						if (a.equals(abs)
+								&& a.getCurrentStmt() == abs.getCurrentStmt()
+								&& a.getCorrespondingCallSite() == abs.getCorrespondingCallSite())
+							return null;
+					}
 				}
 				
 				// We cannot leave the same method at two different sites
-				Abstraction topAbs = scap.path.get(0);
+				Abstraction topAbs = this.path.getHead();
 				if (topAbs.equals(abs)
 						&& topAbs.getCorrespondingCallSite() != null
 						&& topAbs.getCorrespondingCallSite() == abs.getCorrespondingCallSite()
@@ -111,9 +133,8 @@ public class SourceContextAndPath extends SourceContext implements Cloneable {
 			}
 			
 			// Extend the propagation path
-			if (scap.path == null)
-				scap.path = new ArrayList<Abstraction>();
-			scap.path.add(0, abs);
+			scap = this.clone();
+			scap.path = this.path.prepend(abs);
 		}
 		
 		// Extend the call stack
@@ -121,9 +142,7 @@ public class SourceContextAndPath extends SourceContext implements Cloneable {
 				&& abs.getCorrespondingCallSite() != abs.getCurrentStmt()) {
 			if (scap == null)
 				scap = this.clone();
-			if (scap.callStack == null)
-				scap.callStack = new ArrayList<Stmt>();
-			scap.callStack.add(0, abs.getCorrespondingCallSite());
+			scap.callStack = scap.callStack.prepend(abs.getCorrespondingCallSite());
 		}
 		
 		return scap == null ? this : scap;
@@ -136,11 +155,12 @@ public class SourceContextAndPath extends SourceContext implements Cloneable {
 	 * element. If there is no call stack, null is returned.
 	 */
 	public Pair<SourceContextAndPath, Stmt> popTopCallStackItem() {
-		if (callStack == null || callStack.isEmpty())
+		if (callStack.isEmpty())
 			return null;
 		
 		SourceContextAndPath scap = clone();
-		return new Pair<>(scap, scap.callStack.remove(0));
+		scap.callStack = callStack.getTail();
+		return new Pair<>(scap, callStack.getHead());
 	}
 	
 	/**
@@ -149,7 +169,7 @@ public class SourceContextAndPath extends SourceContext implements Cloneable {
 	 * @return True if the call stack is empty, otherwise false
 	 */
 	public boolean isCallStackEmpty() {
-		return this.callStack == null || this.callStack.isEmpty();
+		return this.callStack.isEmpty();
 	}
 	
 	@Override
@@ -163,11 +183,7 @@ public class SourceContextAndPath extends SourceContext implements Cloneable {
 		if (this.hashCode != 0 && scap.hashCode != 0 && this.hashCode != scap.hashCode)
 			return false;
 		
-		if (this.callStack == null) {
-			if (scap.callStack != null)
-				return false;
-		}
-		else if (!this.callStack.equals(scap.callStack))
+		if (!this.callStack.equals(scap.callStack))
 			return false;
 			
 		if (!InfoflowConfiguration.getPathAgnosticResults()) {	
@@ -183,21 +199,20 @@ public class SourceContextAndPath extends SourceContext implements Cloneable {
 		if (hashCode != 0)
 			return hashCode;
 		
-		synchronized(this) {
-			hashCode = (!InfoflowConfiguration.getPathAgnosticResults() ? 31 * (path == null ? 0 : path.hashCode()) : 0)
-					+ 31 * (callStack == null ? 0 : callStack.hashCode())
-					+ 31 * super.hashCode();
-		}
+		// Racing threads all compute the same value, so there is no need to
+		// synchronize here
+		hashCode = (!InfoflowConfiguration.getPathAgnosticResults() ? 31 * path.hashCode() : 0)
+				+ 31 * callStack.hashCode()
+				+ 31 * super.hashCode();
 		return hashCode;
 	}
 	
 	@Override
-	public synchronized SourceContextAndPath clone() {
+	public SourceContextAndPath clone() {
+		// The lists are immutable, so we can share them
 		final SourceContextAndPath scap = new SourceContextAndPath(getAccessPath(), getStmt(), getUserData());
-		if (path != null)
-			scap.path = new ArrayList<Abstraction>(this.path);
-		if (callStack != null)
-			scap.callStack = new ArrayList<Stmt>(callStack);
+		scap.path = this.path;
+		scap.callStack = this.callStack;
 		return scap;
 	}
 	
@@ -1,6 +1,10 @@
 package soot.jimple.infoflow.data.pathBuilders;
 
+import heros.solver.Pair;
+
+import soot.jimple.Stmt;
 import soot.jimple.infoflow.data.Abstraction;
+import soot.jimple.infoflow.data.SourceContextAndPath;
 import soot.jimple.infoflow.solver.cfg.IInfoflowCFG;
 
 /**
@@ -50,5 +54,44 @@ public abstract class AbstractAbstractionPathBuilder implements
 			}
 		}
 	}
+	
+	/**
+	 * Extends the given path with the given predecessor while keeping track
+	 * of the call stack. Paths that would leave a method at a different call
+	 * site than the one through which the method was entered are rejected.
+	 * @param scap The path leading up to the current abstraction
+	 * @param pred The predecessor with which to extend the path
+	 * @param reconstructPaths True if the predecessor shall be put on the
+	 * propagation path, false if only the call stack shall be tracked
+	 * @return The extended path, or null if the predecessor does not lead to
+	 * a valid path
+	 */
+	protected static SourceContextAndPath extendPathContextSensitive(
+			SourceContextAndPath scap, Abstraction pred, boolean reconstructPaths) {
+		SourceContextAndPath extendedScap = scap.extendPath(pred, reconstructPaths);
+		if (extendedScap == null)
+			return null;
+		
+		// Do we process a method return? If this a call-to-return node, we
+		// neither enter nor leave the callee.
+		if (pred.getCurrentStmt() != null
+				&& pred.getCurrentStmt() != pred.getCorrespondingCallSite()
+				&& pred.getCurrentStmt().containsInvokeExpr()) {
+			// Pop the top item off the call stack. This gives us the item
+			// and the new SCAP without the item we popped off.
+			Pair<SourceContextAndPath, Stmt> pathAndItem =
+					extendedScap.popTopCallStackItem();
+			if (pathAndItem != null) {
+				Stmt topCallStackItem = pathAndItem.getO2();
+				// Make sure that we don't follow an unrealizable path
+				if (topCallStackItem != pred.getCurrentStmt())
+					return null;
+				
+				// We have returned from a function
+				extendedScap = pathAndItem.getO1();
+			}
+		}
+		return extendedScap;
+	}
 
 }
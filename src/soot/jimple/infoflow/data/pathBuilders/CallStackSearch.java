@@ -0,0 +1,199 @@
+package soot.jimple.infoflow.data.pathBuilders;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import soot.jimple.Stmt;
+import soot.jimple.infoflow.collect.ConsList;
+import soot.jimple.infoflow.data.AccessPath;
+
+/**
+ * Breadth-first search from a sink back to the sources in a
+ * {@link FrozenAbstractionGraph} that only follows valid paths, i.e., paths on
+ * which every method is left through the call site through which it was
+ * entered. Abstractions are visited at most once per call stack. For every
+ * visited state, the search records the state from which it was reached, so
+ * that the shortest path to a source can be read off afterwards.
+ *
+ * The call stacks are extended in the same way as in
+ * {@link AbstractAbstractionPathBuilder#extendPathContextSensitive}, but on
+ * the statements and call sites stored in the frozen graph.
+ *
+ * A search object can be reused for any number of searches on the same graph,
+ * but must not be shared between threads.
+ */
+class CallStackSearch {
+
+	private final FrozenAbstractionGraph graph;
+
+	/**
+	 * Most states have an empty call stack, so we keep track of them in a bit
+	 * set indexed by the abstraction id
+	 */
+	private final BitSet visitedWithEmptyStack;
+	private final Map<Integer, Set<ConsList<Stmt>>> visitedWithStack =
+			new HashMap<Integer, Set<ConsList<Stmt>>>();
+	private final Map<Integer, Integer> sourceStates = new HashMap<Integer, Integer>();
+
+	private int[] stateNodes = new int[16];
+	private int[] stateParents = new int[16];
+	private final List<ConsList<Stmt>> stateStacks = new ArrayList<ConsList<Stmt>>();
+
+	/**
+	 * Creates a new instance of the {@link CallStackSearch} class
+	 * @param graph The graph in which to search
+	 */
+	public CallStackSearch(FrozenAbstractionGraph graph) {
+		this.graph = graph;
+		this.visitedWithEmptyStack = new BitSet(graph.size());
+	}
+
+	private int addState(int node, int parent, ConsList<Stmt> callStack) {
+		int state = stateStacks.size();
+		if (state == stateNodes.length) {
+			stateNodes = Arrays.copyOf(stateNodes, state * 2);
+			stateParents = Arrays.copyOf(stateParents, state * 2);
+		}
+		stateNodes[state] = node;
+		stateParents[state] = parent;
+		stateStacks.add(callStack);
+		return state;
+	}
+
+	/**
+	 * Searches for the sources from which the given abstraction at a sink can
+	 * be reached. The results of the previous search are discarded.
+	 * @param rootNode The id of the abstraction at the sink
+	 * @param targetSource The id of the source abstraction at which to stop,
+	 * or -1 to find all sources
+	 * @param foundSources The set to which to add the ids of all sources that
+	 * have been found
+	 * @return The state in which the target source has been reached, or -1 if
+	 * it has not been reached
+	 */
+	public int run(int rootNode, int targetSource, BitSet foundSources) {
+		visitedWithEmptyStack.clear();
+		visitedWithStack.clear();
+		sourceStates.clear();
+		stateStacks.clear();
+
+		addState(rootNode, -1, pushCallSite(ConsList.<Stmt>empty(), rootNode));
+
+		for (int state = 0; state < stateStacks.size(); state++) {
+			int node = stateNodes[state];
+			if (graph.isSource(node)) {
+				if (!foundSources.get(node)) {
+					foundSources.set(node);
+					sourceStates.put(node, state);
+				}
+				if (node == targetSource)
+					return state;
+				continue;
+			}
+
+			// We only need the call stack for extending the path once
+			ConsList<Stmt> callStack = stateStacks.get(state);
+			stateStacks.set(state, null);
+			for (int i = 0; i < graph.getSuccessorCount(node); i++) {
+				int succ = graph.getSuccessor(node, i);
+				ConsList<Stmt> extendedStack = extendCallStack(callStack, succ);
+				if (extendedStack == null)
+					continue;
+
+				if (extendedStack.isEmpty()) {
+					if (visitedWithEmptyStack.get(succ))
+						continue;
+					visitedWithEmptyStack.set(succ);
+				}
+				else {
+					Set<ConsList<Stmt>> succStacks = visitedWithStack.get(succ);
+					if (succStacks == null) {
+						succStacks = new HashSet<ConsList<Stmt>>();
+						visitedWithStack.put(succ, succStacks);
+					}
+					if (!succStacks.add(extendedStack))
+						continue;
+				}
+				addState(succ, state, extendedStack);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Pushes the call site of the given abstraction onto the call stack if
+	 * the abstraction entered a callee
+	 * @param callStack The current call stack
+	 * @param node The id of the abstraction
+	 * @return The new call stack
+	 */
+	private ConsList<Stmt> pushCallSite(ConsList<Stmt> callStack, int node) {
+		Stmt callSite = graph.getCallSite(node);
+		if (callSite != null && callSite != graph.getStmt(node))
+			return callStack.prepend(callSite);
+		return callStack;
+	}
+
+	/**
+	 * Extends the call stack with the given predecessor abstraction
+	 * @param callStack The current call stack
+	 * @param pred The id of the predecessor abstraction
+	 * @return The new call stack, or null if the predecessor would leave a
+	 * method through a call site other than the one through which the method
+	 * was entered
+	 */
+	private ConsList<Stmt> extendCallStack(ConsList<Stmt> callStack, int pred) {
+		ConsList<Stmt> extendedStack = pushCallSite(callStack, pred);
+
+		// Do we process a method return? If this a call-to-return node, we
+		// neither enter nor leave the callee.
+		Stmt stmt = graph.getStmt(pred);
+		if (stmt != null
+				&& stmt != graph.getCallSite(pred)
+				&& stmt.containsInvokeExpr()
+				&& !extendedStack.isEmpty()) {
+			// Make sure that we don't follow an unrealizable path
+			if (extendedStack.getHead() != stmt)
+				return null;
+			extendedStack = extendedStack.getTail();
+		}
+		return extendedStack;
+	}
+
+	/**
+	 * Gets the state in which the last search first reached the given source
+	 * @param sourceNode The id of the source abstraction
+	 * @return The state in which the source has been reached, or -1 if the
+	 * last search did not reach the source
+	 */
+	public int getSourceState(int sourceNode) {
+		Integer state = sourceStates.get(sourceNode);
+		return state == null ? -1 : state;
+	}
+
+	/**
+	 * Gets the path along which the last search reached the given state
+	 * @param state The state at the end of the path
+	 * @param path The list to which to add the statements on the path,
+	 * starting at the source
+	 * @param pathAPs The list to which to add the access paths at these
+	 * statements
+	 */
+	public void getPath(int state, List<Stmt> path, List<AccessPath> pathAPs) {
+		for (int s = state; s >= 0; s = stateParents[s]) {
+			int node = stateNodes[s];
+			Stmt stmt = graph.getStmt(node);
+			if (stmt != null) {
+				path.add(stmt);
+				pathAPs.add(graph.getAccessPath(node));
+			}
+		}
+	}
+
+}
@@ -4,8 +4,11 @@ import heros.solver.CountingThreadPoolExecutor;
 import heros.solver.Pair;
 
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,6 +19,8 @@ import soot.jimple.infoflow.data.AbstractionAtSink;
 import soot.jimple.infoflow.data.SourceContext;
 import soot.jimple.infoflow.data.SourceContextAndPath;
 import soot.jimple.infoflow.results.InfoflowResults;
+import soot.jimple.infoflow.results.ResultSinkInfo;
+import soot.jimple.infoflow.results.ResultSourceInfo;
 import soot.jimple.infoflow.solver.cfg.IInfoflowCFG;
 
 /**
@@ -31,6 +36,14 @@ public class ContextSensitivePathBuilder extends AbstractAbstractionPathBuilder
 
     private final InfoflowResults results = new InfoflowResults();
 	private final CountingThreadPoolExecutor executor;
+	
+	private int maxPathsPerSink = 0;
+	private int maxPathsPerSourceSinkPair = 0;
+	private int maxPathLength = 0;
+	private final ConcurrentMap<ResultSinkInfo, AtomicInteger> pathsPerSink =
+			new ConcurrentHashMap<ResultSinkInfo, AtomicInteger>();
+	private final ConcurrentMap<Pair<ResultSinkInfo, Stmt>, AtomicInteger> pathsPerSourceSinkPair =
+			new ConcurrentHashMap<Pair<ResultSinkInfo, Stmt>, AtomicInteger>();
 			
 	/**
 	 * Creates a new instance of the {@link ContextSensitivePathBuilder} class
@@ -47,6 +60,40 @@ public class ContextSensitivePathBuilder extends AbstractAbstractionPathBuilder
 				: Math.min(maxThreadNum, numThreads));
 	}
 	
+	/**
+	 * Sets the maximum number of distinct paths that shall be explored for a
+	 * single sink. Every partial path from the sink back to some abstraction
+	 * counts. Once this limit is reached, the path builder stops looking for
+	 * further sources of this sink.
+	 * @param maxPathsPerSink The maximum number of paths per sink, or 0 for
+	 * no limit
+	 */
+	public void setMaxPathsPerSink(int maxPathsPerSink) {
+		this.maxPathsPerSink = maxPathsPerSink;
+	}
+	
+	/**
+	 * Sets the maximum number of paths that shall be reported for a single
+	 * pair of source and sink
+	 * @param maxPathsPerSourceSinkPair The maximum number of paths per pair of
+	 * source and sink, or 0 for no limit
+	 */
+	public void setMaxPathsPerSourceSinkPair(int maxPathsPerSourceSinkPair) {
+		this.maxPathsPerSourceSinkPair = maxPathsPerSourceSinkPair;
+	}
+	
+	/**
+	 * Sets the maximum number of abstractions on a propagation path. Once a
+	 * path has reached this length, the path builder still looks for its
+	 * source, but does not record any further abstractions. The source is
+	 * then reported with the truncated path and the sink is marked as
+	 * truncated. This limit only applies if paths are reconstructed.
+	 * @param maxPathLength The maximum length of a path, or 0 for no limit
+	 */
+	public void setMaxPathLength(int maxPathLength) {
+		this.maxPathLength = maxPathLength;
+	}
+	
 	/**
 	 * Creates a new executor object for spawning worker threads
 	 * @param numThreads The number of threads to use
@@ -93,44 +140,22 @@ public class ContextSensitivePathBuilder extends AbstractAbstractionPathBuilder
 		}
 
 		private boolean processPredecessor(SourceContextAndPath scap, Abstraction pred) {
-			// Shortcut: If this a call-to-return node, we should not enter and
-			// immediately leave again for performance reasons.
-			if (pred.getCurrentStmt() != null
-					&& pred.getCurrentStmt() == pred.getCorrespondingCallSite()) {
-				SourceContextAndPath extendedScap = scap.extendPath(pred, reconstructPaths);
-				if (extendedScap == null)
-					return false;
-				
-				checkForSource(pred, extendedScap);
-				return pred.addPathElement(extendedScap);
-			}
-			
-			// If we enter a method, we put it on the stack
-			SourceContextAndPath extendedScap = scap.extendPath(pred, reconstructPaths);
+			// Paths that have reached the maximum length are not extended any
+			// further, but we still track the call stack to find the source
+			boolean trackPath = reconstructPaths
+					&& (maxPathLength <= 0 || scap.getPathLength() < maxPathLength);
+			SourceContextAndPath extendedScap = extendPathContextSensitive(scap,
+					pred, trackPath);
 			if (extendedScap == null)
 				return false;
+			if (reconstructPaths && !trackPath && pred.getCurrentStmt() != null)
+				results.markTruncated(getSinkInfo(extendedScap));
 			
-			// Do we process a method return?
-			if (pred.getCurrentStmt() != null 
-					&& pred.getCurrentStmt().containsInvokeExpr()) {
-				// Pop the top item off the call stack. This gives us the item
-				// and the new SCAP without the item we popped off.
-				Pair<SourceContextAndPath, Stmt> pathAndItem =
-						extendedScap.popTopCallStackItem();
-				if (pathAndItem != null) {
-					Stmt topCallStackItem = pathAndItem.getO2();
-					// Make sure that we don't follow an unrealizable path
-					if (topCallStackItem != pred.getCurrentStmt())
-						return false;
-					
-					// We have returned from a function
-					extendedScap = pathAndItem.getO1();
-				}
-			}
-			
-			// Add the new path
+			// Add the new path. Paths that are equal to ones we have already
+			// seen may still differ in their statements, so we need to check
+			// for sources anyway. Only new paths count towards the sink limit.
 			checkForSource(pred, extendedScap);
-			return pred.addPathElement(extendedScap);
+			return pred.addPathElement(extendedScap) && countSinkPath(extendedScap);
 		}
 		
 	}
@@ -152,15 +177,66 @@ public class ContextSensitivePathBuilder extends AbstractAbstractionPathBuilder
 		
 		// Register the source that we have found
 		SourceContext sourceContext = abs.getSourceContext();
-		results.addResult(scap.getAccessPath(),
-				scap.getStmt(),
+		ResultSinkInfo sink = getSinkInfo(scap);
+		ResultSourceInfo source = InfoflowResults.createSourceInfo(
 				sourceContext.getAccessPath(),
 				sourceContext.getStmt(),
 				sourceContext.getUserData(),
 				scap.getAbstractionPath());
+		if (maxPathsPerSourceSinkPair <= 0) {
+			results.addResult(sink, source);
+			return true;
+		}
+		
+		// Only count paths we have not reported before. All paths for the same
+		// pair use the same counter, so we can lock on it.
+		AtomicInteger counter = getCounter(pathsPerSourceSinkPair,
+				new Pair<ResultSinkInfo, Stmt>(sink, sourceContext.getStmt()));
+		synchronized (counter) {
+			if (results.getResults().contains(sink, source))
+				return true;
+			if (counter.get() >= maxPathsPerSourceSinkPair)
+				results.markTruncated(sink);
+			else {
+				results.addResult(sink, source);
+				counter.incrementAndGet();
+			}
+		}
 		return true;
 	}
 	
+	/**
+	 * Counts a new path for the sink at which the given path starts
+	 * @param scap The new path
+	 * @return True if the sink is still within its limit and the path shall
+	 * be followed, otherwise false
+	 */
+	private boolean countSinkPath(SourceContextAndPath scap) {
+		if (maxPathsPerSink <= 0)
+			return true;
+		ResultSinkInfo sink = getSinkInfo(scap);
+		if (getCounter(pathsPerSink, sink).incrementAndGet() <= maxPathsPerSink)
+			return true;
+		results.markTruncated(sink);
+		return false;
+	}
+	
+	private static ResultSinkInfo getSinkInfo(SourceContextAndPath scap) {
+		return new ResultSinkInfo(scap.getAccessPath(), scap.getStmt());
+	}
+	
+	private static <K> AtomicInteger getCounter(ConcurrentMap<K, AtomicInteger> counters,
+			K key) {
+		AtomicInteger counter = counters.get(key);
+		if (counter == null) {
+			AtomicInteger newCounter = new AtomicInteger();
+			counter = counters.putIfAbsent(key, newCounter);
+			if (counter == null)
+				counter = newCounter;
+		}
+		return counter;
+	}
+	
 	@Override
 	public void computeTaintPaths(final Set<AbstractionAtSink> res) {
 		logger.info("Context-sensitive path reconstructor started");
@@ -200,6 +276,9 @@ public class ContextSensitivePathBuilder extends AbstractAbstractionPathBuilder
     	
     	logger.info("Path processing took {} seconds in total",
     			(System.nanoTime() - beforePathTracking) / 1E9);
+    	if (results.hasTruncatedResults())
+    		logger.warn("Path processing hit its limits for {} sinks, their results are "
+    				+ "incomplete", results.getTruncatedSinks().size());
 	}
 	
 	/**
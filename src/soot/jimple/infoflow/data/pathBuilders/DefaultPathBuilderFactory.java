@@ -11,6 +11,10 @@ public class DefaultPathBuilderFactory implements IPathBuilderFactory {
 	
 	private final boolean reconstructPaths;
 	
+	private int maxPathsPerSink = 0;
+	private int maxPathsPerSourceSinkPair = 0;
+	private int maxPathLength = 0;
+	
 	/**
 	 * Enumeration containing the supported path builders
 	 */
@@ -36,6 +40,19 @@ public class DefaultPathBuilderFactory implements IPathBuilderFactory {
 		 * source-to-sink connections, but no paths.
 		 */
 		ContextInsensitiveSourceFinder,
+		/**
+		 * Finds the source-to-sink connections without building any paths up
+		 * front. If path reconstruction is enabled, the path of a result is
+		 * only computed when it is requested from the result object. Useful
+		 * if only few of the paths are ever looked at.
+		 */
+		OnDemand,
+		/**
+		 * Context-sensitive path reconstruction that processes the sinks in
+		 * parallel on a frozen copy of the abstraction graph. Only reports
+		 * the shortest path for every pair of source and sink.
+		 */
+		Parallel,
 		/**
 		 * An empty implementation that not reconstruct any paths and always
 		 * returns an empty set. For internal use only.
@@ -65,6 +82,39 @@ public class DefaultPathBuilderFactory implements IPathBuilderFactory {
 		this.reconstructPaths = reconstructPaths;
 	}
 	
+	/**
+	 * Sets the maximum number of distinct partial paths that the
+	 * context-sensitive path builder explores for a single sink. Sinks that
+	 * hit this limit are reported as truncated in the results.
+	 * @param maxPathsPerSink The maximum number of paths per sink, or 0 for
+	 * no limit
+	 */
+	public void setMaxPathsPerSink(int maxPathsPerSink) {
+		this.maxPathsPerSink = maxPathsPerSink;
+	}
+	
+	/**
+	 * Sets the maximum number of paths that the context-sensitive path builder
+	 * reports for a single pair of source and sink. Sinks that hit this limit
+	 * are reported as truncated in the results.
+	 * @param maxPathsPerSourceSinkPair The maximum number of paths per pair of
+	 * source and sink, or 0 for no limit
+	 */
+	public void setMaxPathsPerSourceSinkPair(int maxPathsPerSourceSinkPair) {
+		this.maxPathsPerSourceSinkPair = maxPathsPerSourceSinkPair;
+	}
+	
+	/**
+	 * Sets the maximum length of the paths that the context-sensitive path
+	 * builder reconstructs. Sinks that hit this limit are reported as
+	 * truncated in the results.
+	 * @param maxPathLength The maximum number of abstractions on a path, or 0
+	 * for no limit
+	 */
+	public void setMaxPathLength(int maxPathLength) {
+		this.maxPathLength = maxPathLength;
+	}
+	
 	@Override
 	public IAbstractionPathBuilder createPathBuilder(int maxThreadNum,
 			IInfoflowCFG icfg) {
@@ -73,13 +123,21 @@ public class DefaultPathBuilderFactory implements IPathBuilderFactory {
 			return new RecursivePathBuilder(icfg, maxThreadNum,
 					reconstructPaths);
 		case ContextSensitive :
-			return new ContextSensitivePathBuilder(icfg, maxThreadNum,
-					reconstructPaths);
+			ContextSensitivePathBuilder builder = new ContextSensitivePathBuilder(
+					icfg, maxThreadNum, reconstructPaths);
+			builder.setMaxPathsPerSink(maxPathsPerSink);
+			builder.setMaxPathsPerSourceSinkPair(maxPathsPerSourceSinkPair);
+			builder.setMaxPathLength(maxPathLength);
+			return builder;
 		case ContextInsensitive :
 			return new ContextInsensitivePathBuilder(icfg, maxThreadNum,
 					reconstructPaths);
 		case ContextInsensitiveSourceFinder :
 			return new ContextInsensitiveSourceFinder(icfg, maxThreadNum);
+		case OnDemand :
+			return new OnDemandPathBuilder(icfg, reconstructPaths);
+		case Parallel :
+			return new ParallelPathBuilder(icfg, maxThreadNum, reconstructPaths);
 		case None:
 			return new EmptyPathBuilder();
 		}
@@ -92,6 +150,8 @@ public class DefaultPathBuilderFactory implements IPathBuilderFactory {
 		case Recursive :
 		case ContextSensitive :
 		case ContextInsensitive :
+		case OnDemand :
+		case Parallel :
 			return reconstructPaths;
 		case ContextInsensitiveSourceFinder :
 		case None:
@@ -102,7 +162,9 @@ public class DefaultPathBuilderFactory implements IPathBuilderFactory {
 
 	@Override
 	public boolean isContextSensitive() {
-		return pathBuilder == PathBuilder.ContextSensitive;
+		return pathBuilder == PathBuilder.ContextSensitive
+				|| pathBuilder == PathBuilder.OnDemand
+				|| pathBuilder == PathBuilder.Parallel;
 	}
 	
 }
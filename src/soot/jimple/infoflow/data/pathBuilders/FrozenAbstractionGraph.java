@@ -0,0 +1,267 @@
+package soot.jimple.infoflow.data.pathBuilders;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import soot.jimple.Stmt;
+import soot.jimple.infoflow.data.Abstraction;
+import soot.jimple.infoflow.data.AbstractionAtSink;
+import soot.jimple.infoflow.data.AccessPath;
+import soot.jimple.infoflow.data.SourceContext;
+
+/**
+ * Read-only snapshot of the part of the abstraction graph that is reachable
+ * from the abstractions at the sinks. Every abstraction gets a dense integer
+ * id. The successors of an abstraction are its predecessor and the neighbors
+ * of this predecessor, i.e., the abstractions that the path builders visit
+ * when walking from the sink back to the source. They are stored in flat
+ * arrays, so that path builders can work on the graph without any further
+ * allocations or synchronization.
+ *
+ * The roots of the graph are the abstractions at the sinks and their
+ * neighbors, each together with the sink statement it reached.
+ *
+ * The graph does not keep the abstractions themselves, but only the data that
+ * the path builders read: the current statement, the call site and the access
+ * path of every node, and the source context of every source. Results that
+ * refer to the graph thus do not keep the solvers' abstractions alive.
+ */
+public class FrozenAbstractionGraph {
+
+	private final Stmt[] stmts;
+	private final Stmt[] callSites;
+	private final AccessPath[] accessPaths;
+	private final BitSet sources;
+	private final SourceContext[] sourceContexts;
+	private final int[] successorOffsets;
+	private final int[] successors;
+	private final int[] rootNodes;
+	private final Stmt[] rootSinks;
+
+	private FrozenAbstractionGraph(Stmt[] stmts, Stmt[] callSites,
+			AccessPath[] accessPaths, BitSet sources, SourceContext[] sourceContexts,
+			int[] successorOffsets, int[] successors, int[] rootNodes, Stmt[] rootSinks) {
+		this.stmts = stmts;
+		this.callSites = callSites;
+		this.accessPaths = accessPaths;
+		this.sources = sources;
+		this.sourceContexts = sourceContexts;
+		this.successorOffsets = successorOffsets;
+		this.successors = successors;
+		this.rootNodes = rootNodes;
+		this.rootSinks = rootSinks;
+	}
+
+	/**
+	 * Freezes the abstraction graph that is reachable from the given results.
+	 * The solvers must have finished before the graph can be frozen.
+	 * @param res The abstractions at the sinks
+	 * @return The frozen abstraction graph
+	 */
+	public static FrozenAbstractionGraph build(Set<AbstractionAtSink> res) {
+		Builder builder = new Builder();
+		for (AbstractionAtSink abs : res) {
+			builder.addRoot(abs.getAbstraction(), abs.getSinkStmt());
+			if (abs.getAbstraction().getNeighbors() != null)
+				for (Abstraction neighbor : abs.getAbstraction().getNeighbors())
+					builder.addRoot(neighbor, abs.getSinkStmt());
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Gets the number of abstractions in this graph
+	 * @return The number of abstractions in this graph
+	 */
+	public int size() {
+		return stmts.length;
+	}
+
+	/**
+	 * Gets the current statement of the abstraction with the given id
+	 * @param node The id of the abstraction
+	 * @return The statement at which the abstraction was created, or null if
+	 * the abstraction does not have one
+	 */
+	public Stmt getStmt(int node) {
+		return stmts[node];
+	}
+
+	/**
+	 * Gets the call site of the abstraction with the given id
+	 * @param node The id of the abstraction
+	 * @return The call site through which the abstraction entered a callee,
+	 * or null if it does not have one
+	 */
+	public Stmt getCallSite(int node) {
+		return callSites[node];
+	}
+
+	/**
+	 * Gets the access path of the abstraction with the given id
+	 * @param node The id of the abstraction
+	 * @return The access path of the abstraction
+	 */
+	public AccessPath getAccessPath(int node) {
+		return accessPaths[node];
+	}
+
+	/**
+	 * Gets the source context of the abstraction with the given id
+	 * @param node The id of the abstraction
+	 * @return The source context of the abstraction if it is a source,
+	 * otherwise null
+	 */
+	public SourceContext getSourceContext(int node) {
+		return sourceContexts[node];
+	}
+
+	/**
+	 * Gets whether the abstraction with the given id is a source, i.e., has
+	 * no predecessor
+	 * @param node The id of the abstraction
+	 * @return True if the abstraction is a source, otherwise false
+	 */
+	public boolean isSource(int node) {
+		return sources.get(node);
+	}
+
+	/**
+	 * Gets the number of successors of the given abstraction
+	 * @param node The id of the abstraction
+	 * @return The number of successors of the abstraction
+	 */
+	public int getSuccessorCount(int node) {
+		return successorOffsets[node + 1] - successorOffsets[node];
+	}
+
+	/**
+	 * Gets a successor of the given abstraction
+	 * @param node The id of the abstraction
+	 * @param idx The index of the successor, must be less than
+	 * {@link #getSuccessorCount(int)}
+	 * @return The id of the successor
+	 */
+	public int getSuccessor(int node, int idx) {
+		return successors[successorOffsets[node] + idx];
+	}
+
+	/**
+	 * Gets the number of roots, i.e., abstractions at sinks, in this graph
+	 * @return The number of roots in this graph
+	 */
+	public int getRootCount() {
+		return rootNodes.length;
+	}
+
+	/**
+	 * Gets the id of the abstraction at the given root
+	 * @param root The index of the root
+	 * @return The id of the abstraction that reached the sink
+	 */
+	public int getRootNode(int root) {
+		return rootNodes[root];
+	}
+
+	/**
+	 * Gets the sink statement of the given root
+	 * @param root The index of the root
+	 * @return The sink statement reached by the root's abstraction
+	 */
+	public Stmt getRootSinkStmt(int root) {
+		return rootSinks[root];
+	}
+
+	/**
+	 * Class for collecting the abstractions before the graph is frozen
+	 */
+	private static class Builder {
+
+		private final IdentityHashMap<Abstraction, Integer> ids =
+				new IdentityHashMap<Abstraction, Integer>();
+		private final List<Abstraction> nodes = new ArrayList<Abstraction>();
+		private final List<Stmt> rootSinks = new ArrayList<Stmt>();
+		private int[] rootNodes = new int[16];
+
+		private void addRoot(Abstraction abs, Stmt sinkStmt) {
+			if (rootSinks.size() == rootNodes.length)
+				rootNodes = Arrays.copyOf(rootNodes, rootNodes.length * 2);
+			rootNodes[rootSinks.size()] = getId(abs);
+			rootSinks.add(sinkStmt);
+		}
+
+		private int getId(Abstraction abs) {
+			Integer id = ids.get(abs);
+			if (id == null) {
+				id = nodes.size();
+				ids.put(abs, id);
+				nodes.add(abs);
+			}
+			return id;
+		}
+
+		private FrozenAbstractionGraph build() {
+			// New abstractions are appended to the list while we walk over
+			// it, so we explore the graph and build the successor arrays in
+			// a single pass
+			int[] offsets = new int[16];
+			int[] successors = new int[16];
+			int numSuccessors = 0;
+			for (int node = 0; node < nodes.size(); node++) {
+				if (node + 1 >= offsets.length)
+					offsets = Arrays.copyOf(offsets, offsets.length * 2);
+				offsets[node] = numSuccessors;
+
+				Abstraction pred = nodes.get(node).getPredecessor();
+				if (pred == null)
+					continue;
+				Set<Abstraction> neighbors = pred.getNeighbors();
+				int required = numSuccessors + 1 + (neighbors == null ? 0 : neighbors.size());
+				if (required > successors.length)
+					successors = Arrays.copyOf(successors, Math.max(required, successors.length * 2));
+
+				successors[numSuccessors++] = getId(pred);
+				if (neighbors != null)
+					for (Abstraction neighbor : neighbors) {
+						// Concurrent sets only give an estimate of their size
+						if (numSuccessors == successors.length)
+							successors = Arrays.copyOf(successors, successors.length * 2);
+						successors[numSuccessors++] = getId(neighbor);
+					}
+			}
+			offsets[nodes.size()] = numSuccessors;
+
+			// Only keep the data that the path builders need, not the
+			// abstractions themselves
+			int size = nodes.size();
+			Stmt[] stmts = new Stmt[size];
+			Stmt[] callSites = new Stmt[size];
+			AccessPath[] accessPaths = new AccessPath[size];
+			BitSet sources = new BitSet(size);
+			SourceContext[] sourceContexts = new SourceContext[size];
+			for (int node = 0; node < size; node++) {
+				Abstraction abs = nodes.get(node);
+				stmts[node] = abs.getCurrentStmt();
+				callSites[node] = abs.getCorrespondingCallSite();
+				accessPaths[node] = abs.getAccessPath();
+				if (abs.getPredecessor() == null) {
+					sources.set(node);
+					sourceContexts[node] = abs.getSourceContext();
+				}
+			}
+
+			return new FrozenAbstractionGraph(stmts, callSites, accessPaths,
+					sources, sourceContexts,
+					Arrays.copyOf(offsets, size + 1),
+					Arrays.copyOf(successors, numSuccessors),
+					Arrays.copyOf(rootNodes, rootSinks.size()),
+					rootSinks.toArray(new Stmt[rootSinks.size()]));
+		}
+
+	}
+
+}
@@ -0,0 +1,142 @@
+package soot.jimple.infoflow.data.pathBuilders;
+
+import heros.solver.CountingThreadPoolExecutor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import soot.jimple.infoflow.data.Abstraction;
+import soot.jimple.infoflow.data.AbstractionAtSink;
+import soot.jimple.infoflow.data.SourceContext;
+import soot.jimple.infoflow.handlers.IncrementalResultsHandler;
+import soot.jimple.infoflow.problems.TaintPropagationResults.OnTaintPropagationResultAdded;
+import soot.jimple.infoflow.results.ResultSinkInfo;
+import soot.jimple.infoflow.results.ResultSourceInfo;
+import soot.jimple.infoflow.solver.cfg.IInfoflowCFG;
+
+/**
+ * Class that looks up the sources of every new result while the data flow
+ * solver is still running and passes them on to a set of incremental results
+ * handlers. The lookup runs on a separate daemon thread, so that the solver
+ * is not slowed down and a failed analysis cannot keep the JVM alive.
+ */
+public class IncrementalSourceFinder implements OnTaintPropagationResultAdded {
+	
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    
+	private final IInfoflowCFG icfg;
+	private final Collection<IncrementalResultsHandler> handlers;
+	private final CountingThreadPoolExecutor executor;
+	
+	/**
+	 * Creates a new instance of the {@link IncrementalSourceFinder} class
+	 * @param icfg The interprocedural control flow graph
+	 * @param handlers The handlers to notify about new results
+	 */
+	public IncrementalSourceFinder(IInfoflowCFG icfg,
+			Collection<IncrementalResultsHandler> handlers) {
+		this.icfg = icfg;
+		this.handlers = new ArrayList<IncrementalResultsHandler>(handlers);
+		this.executor = new CountingThreadPoolExecutor
+				(1, Integer.MAX_VALUE, 30, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>());
+		this.executor.setThreadFactory(new ThreadFactory() {
+			
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "IncrementalSourceFinder");
+				thread.setDaemon(true);
+				return thread;
+			}
+			
+		});
+	}
+	
+	@Override
+	public void onResultAdded(final AbstractionAtSink result) {
+		executor.execute(new Runnable() {
+			
+			@Override
+			public void run() {
+				ResultSinkInfo sink = new ResultSinkInfo(
+						result.getAbstraction().getAccessPath(), result.getSinkStmt());
+				Set<ResultSourceInfo> sources = findSources(result.getAbstraction());
+				for (IncrementalResultsHandler handler : handlers) {
+					// A failing handler must not stop the delivery of further
+					// results
+					try {
+						handler.onResultAvailable(icfg, sink, sources);
+					}
+					catch (RuntimeException ex) {
+						logger.error("Incremental results handler failed", ex);
+					}
+				}
+			}
+			
+		});
+	}
+	
+	/**
+	 * Walks back along the predecessors and neighbors of the given abstraction
+	 * and collects all sources it encounters. Since the solver may still be
+	 * adding neighbors, sources that are only found later are missed.
+	 * @param abs The abstraction at the sink
+	 * @return The sources from which the given abstraction was derived
+	 */
+	private Set<ResultSourceInfo> findSources(Abstraction abs) {
+		Set<ResultSourceInfo> sources = new HashSet<ResultSourceInfo>();
+		Set<Abstraction> seen = Collections.newSetFromMap(new IdentityHashMap<Abstraction, Boolean>());
+		List<Abstraction> abstractionQueue = new ArrayList<Abstraction>();
+		seen.add(abs);
+		abstractionQueue.add(abs);
+		while (!abstractionQueue.isEmpty()) {
+			Abstraction curAbs = abstractionQueue.remove(abstractionQueue.size() - 1);
+			
+			SourceContext sourceContext = curAbs.getSourceContext();
+			if (sourceContext != null)
+				sources.add(new ResultSourceInfo(sourceContext.getAccessPath(),
+						sourceContext.getStmt(), sourceContext.getUserData(), null, null));
+			else if (curAbs.getPredecessor() != null && seen.add(curAbs.getPredecessor()))
+				abstractionQueue.add(curAbs.getPredecessor());
+			
+			if (curAbs.getNeighbors() != null)
+				for (Abstraction nb : curAbs.getNeighbors())
+					if (seen.add(nb))
+						abstractionQueue.add(nb);
+		}
+		return sources;
+	}
+	
+	/**
+	 * Waits until all pending results have been passed to the handlers and
+	 * then shuts down the worker thread
+	 */
+	public void shutdown() {
+		try {
+			executor.awaitCompletion();
+		} catch (InterruptedException ex) {
+			logger.error("Could not wait for incremental results to be delivered", ex);
+		}
+		executor.shutdown();
+	}
+	
+	/**
+	 * Shuts down the worker thread without delivering the pending results.
+	 * This is used when the analysis has failed.
+	 */
+	public void shutdownNow() {
+		executor.shutdownNow();
+	}
+
+}
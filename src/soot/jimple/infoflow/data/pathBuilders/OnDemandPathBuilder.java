@@ -0,0 +1,165 @@
+package soot.jimple.infoflow.data.pathBuilders;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import soot.jimple.Stmt;
+import soot.jimple.infoflow.data.AbstractionAtSink;
+import soot.jimple.infoflow.data.AccessPath;
+import soot.jimple.infoflow.data.SourceContext;
+import soot.jimple.infoflow.results.IPathHandle;
+import soot.jimple.infoflow.results.InfoflowResults;
+import soot.jimple.infoflow.results.ResultSinkInfo;
+import soot.jimple.infoflow.results.ResultSourceInfo;
+import soot.jimple.infoflow.solver.cfg.IInfoflowCFG;
+
+/**
+ * Path builder that only finds the source-to-sink connections up front. The
+ * abstraction graph is kept in a {@link FrozenAbstractionGraph}, and the
+ * propagation path of a result is only reconstructed when
+ * {@link ResultSourceInfo#getPath()} is called for it. In contrast to the
+ * other path builders, no paths are cached in the abstractions.
+ *
+ * The source-to-sink connections are computed context-sensitively, just
+ * like in the {@link ContextSensitivePathBuilder}, but only the call stacks
+ * are tracked, and only while the respective sink is processed.
+ */
+public class OnDemandPathBuilder extends AbstractAbstractionPathBuilder {
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final InfoflowResults results = new InfoflowResults();
+
+	/**
+	 * Creates a new instance of the {@link OnDemandPathBuilder} class
+	 * @param icfg The interprocedural control flow graph
+	 * @param reconstructPaths True if the results shall carry handles from
+	 * which the exact propagation paths can be reconstructed on demand
+	 */
+	public OnDemandPathBuilder(IInfoflowCFG icfg, boolean reconstructPaths) {
+		super(icfg, reconstructPaths);
+	}
+
+	@Override
+	public void computeTaintPaths(Set<AbstractionAtSink> res) {
+		if (res.isEmpty())
+			return;
+
+		long beforePathTracking = System.nanoTime();
+		FrozenAbstractionGraph graph = FrozenAbstractionGraph.build(res);
+		logger.info("Froze {} abstractions reachable from {} sinks", graph.size(),
+				graph.getRootCount());
+
+		// Find the sources that are reachable from each sink. We only track
+		// the call stacks here, the paths are left to the path handles.
+		CallStackSearch search = new CallStackSearch(graph);
+		BitSet foundSources = new BitSet(graph.size());
+		for (int root = 0; root < graph.getRootCount(); root++)
+			findSources(graph, search, foundSources, root);
+
+		logger.info("Source finding took {} seconds in total",
+				(System.nanoTime() - beforePathTracking) / 1E9);
+	}
+
+	/**
+	 * Finds the sources from which the abstraction at the given root can be
+	 * reached on a valid path
+	 * @param graph The frozen abstraction graph
+	 * @param search The search to use on the graph
+	 * @param foundSources The set to use for collecting the ids of the sources
+	 * @param root The index of the root at which to start
+	 */
+	private void findSources(FrozenAbstractionGraph graph, CallStackSearch search,
+			BitSet foundSources, int root) {
+		foundSources.clear();
+		search.run(graph.getRootNode(root), -1, foundSources);
+		for (int source = foundSources.nextSetBit(0); source >= 0;
+				source = foundSources.nextSetBit(source + 1))
+			registerSource(graph, root, source);
+	}
+
+	/**
+	 * Registers a connection between the given sink and source
+	 * @param graph The frozen abstraction graph
+	 * @param root The index of the root at which the sink was reached
+	 * @param sourceNode The id of the source abstraction
+	 */
+	private void registerSource(FrozenAbstractionGraph graph, int root, int sourceNode) {
+		AccessPath sinkAP = graph.getAccessPath(graph.getRootNode(root));
+		Stmt sinkStmt = graph.getRootSinkStmt(root);
+		SourceContext sourceContext = graph.getSourceContext(sourceNode);
+		assert sourceContext != null;
+
+		ResultSourceInfo sourceInfo;
+		if (reconstructPaths)
+			sourceInfo = new ResultSourceInfo(sourceContext.getAccessPath(),
+					sourceContext.getStmt(), sourceContext.getUserData(),
+					new PathHandle(graph, graph.getRootNode(root), sourceNode));
+		else
+			sourceInfo = new ResultSourceInfo(sourceContext.getAccessPath(),
+					sourceContext.getStmt(), sourceContext.getUserData(), null, null);
+		results.addResult(new ResultSinkInfo(sinkAP, sinkStmt), sourceInfo);
+	}
+
+	@Override
+	public InfoflowResults getResults() {
+		return this.results;
+	}
+
+	@Override
+	public void shutdown() {
+		// We do not have any threads
+	}
+
+	/**
+	 * Handle for reconstructing the path between one sink and one source in
+	 * the frozen abstraction graph. Handles are identified by their sink and
+	 * source nodes, so that results that are not path-agnostic can be put
+	 * into sets without reconstructing their paths.
+	 */
+	private static class PathHandle implements IPathHandle {
+
+		private final FrozenAbstractionGraph graph;
+		private final int sinkNode;
+		private final int sourceNode;
+
+		public PathHandle(FrozenAbstractionGraph graph, int sinkNode, int sourceNode) {
+			this.graph = graph;
+			this.sinkNode = sinkNode;
+			this.sourceNode = sourceNode;
+		}
+
+		@Override
+		public boolean reconstructPath(List<Stmt> path, List<AccessPath> pathAPs) {
+			CallStackSearch search = new CallStackSearch(graph);
+			int state = search.run(sinkNode, sourceNode, new BitSet(graph.size()));
+			if (state < 0)
+				return false;
+			search.getPath(state, path, pathAPs);
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * System.identityHashCode(graph) + sinkNode) + sourceNode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null || getClass() != obj.getClass())
+				return false;
+			PathHandle other = (PathHandle) obj;
+			return graph == other.graph
+					&& sinkNode == other.sinkNode
+					&& sourceNode == other.sourceNode;
+		}
+
+	}
+
+}
@@ -0,0 +1,167 @@
+package soot.jimple.infoflow.data.pathBuilders;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import soot.jimple.Stmt;
+import soot.jimple.infoflow.data.AbstractionAtSink;
+import soot.jimple.infoflow.data.AccessPath;
+import soot.jimple.infoflow.data.SourceContext;
+import soot.jimple.infoflow.results.InfoflowResults;
+import soot.jimple.infoflow.solver.cfg.IInfoflowCFG;
+
+/**
+ * Context-sensitive path builder that processes the sinks in parallel. The
+ * abstraction graph is frozen into a {@link FrozenAbstractionGraph} first.
+ * Every worker thread then takes sinks from a shared counter and searches
+ * them with its own {@link CallStackSearch}, i.e., with its own visited sets,
+ * and collects its results in its own {@link InfoflowResults} object. The
+ * results of all workers are merged once all sinks have been processed.
+ *
+ * In contrast to the {@link ContextSensitivePathBuilder}, this path builder
+ * does not write anything into the abstractions. It reports the shortest
+ * valid path for every pair of source and sink, not all of them.
+ */
+public class ParallelPathBuilder extends AbstractAbstractionPathBuilder {
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final int numThreads;
+	private final InfoflowResults results = new InfoflowResults();
+
+	/**
+	 * Creates a new instance of the {@link ParallelPathBuilder} class
+	 * @param icfg The interprocedural control flow graph
+	 * @param maxThreadNum The maximum number of threads to use
+	 * @param reconstructPaths True if the exact propagation path between
+	 * source and sink shall be reconstructed.
+	 */
+	public ParallelPathBuilder(IInfoflowCFG icfg, int maxThreadNum,
+			boolean reconstructPaths) {
+		super(icfg, reconstructPaths);
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		this.numThreads = maxThreadNum == -1 ? numThreads
+				: Math.min(maxThreadNum, numThreads);
+	}
+
+	@Override
+	public void computeTaintPaths(Set<AbstractionAtSink> res) {
+		if (res.isEmpty())
+			return;
+
+		long beforePathTracking = System.nanoTime();
+		FrozenAbstractionGraph graph = FrozenAbstractionGraph.build(res);
+		logger.info("Froze {} abstractions reachable from {} sinks", graph.size(),
+				graph.getRootCount());
+
+		AtomicInteger nextRoot = new AtomicInteger();
+		int threadNum = Math.max(1, Math.min(numThreads, graph.getRootCount()));
+		if (threadNum == 1)
+			results.addAll(new SinkWorker(graph, nextRoot).call());
+		else {
+			ExecutorService executor = Executors.newFixedThreadPool(threadNum);
+			try {
+				List<Future<InfoflowResults>> futures =
+						new ArrayList<Future<InfoflowResults>>(threadNum);
+				for (int i = 0; i < threadNum; i++)
+					futures.add(executor.submit(new SinkWorker(graph, nextRoot)));
+				for (Future<InfoflowResults> future : futures)
+					results.addAll(future.get());
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			catch (ExecutionException e) {
+				throw new RuntimeException("Could not build the taint paths", e.getCause());
+			}
+			finally {
+				executor.shutdownNow();
+			}
+		}
+
+		logger.info("Path building with {} threads took {} seconds in total",
+				threadNum, (System.nanoTime() - beforePathTracking) / 1E9);
+	}
+
+	/**
+	 * Registers a connection between the given sink and source
+	 * @param workerResults The results of the current worker
+	 * @param graph The frozen abstraction graph
+	 * @param search The search that has found the source
+	 * @param root The index of the root at which the sink was reached
+	 * @param sourceNode The id of the source abstraction
+	 */
+	private void registerSource(InfoflowResults workerResults, FrozenAbstractionGraph graph,
+			CallStackSearch search, int root, int sourceNode) {
+		AccessPath sinkAP = graph.getAccessPath(graph.getRootNode(root));
+		Stmt sinkStmt = graph.getRootSinkStmt(root);
+		SourceContext sourceContext = graph.getSourceContext(sourceNode);
+		assert sourceContext != null;
+
+		List<Stmt> path = null;
+		List<AccessPath> pathAPs = null;
+		if (reconstructPaths) {
+			path = new ArrayList<Stmt>();
+			pathAPs = new ArrayList<AccessPath>();
+			search.getPath(search.getSourceState(sourceNode), path, pathAPs);
+		}
+		workerResults.addResult(sinkAP, sinkStmt,
+				sourceContext.getAccessPath(), sourceContext.getStmt(),
+				sourceContext.getUserData(), path, pathAPs);
+	}
+
+	/**
+	 * Worker that takes sinks from a shared counter until all sinks have been
+	 * processed. Every thread runs its own instance, so the workers only
+	 * share the read-only graph and the counter.
+	 */
+	private class SinkWorker implements Callable<InfoflowResults> {
+
+		private final FrozenAbstractionGraph graph;
+		private final AtomicInteger nextRoot;
+
+		public SinkWorker(FrozenAbstractionGraph graph, AtomicInteger nextRoot) {
+			this.graph = graph;
+			this.nextRoot = nextRoot;
+		}
+
+		@Override
+		public InfoflowResults call() {
+			InfoflowResults workerResults = new InfoflowResults();
+			CallStackSearch search = new CallStackSearch(graph);
+			BitSet foundSources = new BitSet(graph.size());
+			int root;
+			while ((root = nextRoot.getAndIncrement()) < graph.getRootCount()) {
+				foundSources.clear();
+				search.run(graph.getRootNode(root), -1, foundSources);
+				for (int source = foundSources.nextSetBit(0); source >= 0;
+						source = foundSources.nextSetBit(source + 1))
+					registerSource(workerResults, graph, search, root, source);
+			}
+			return workerResults;
+		}
+
+	}
+
+	@Override
+	public InfoflowResults getResults() {
+		return this.results;
+	}
+
+	@Override
+	public void shutdown() {
+		// Our threads only live while the paths are computed
+	}
+
+}
@@ -0,0 +1,28 @@
+package soot.jimple.infoflow.handlers;
+
+import java.util.Set;
+
+import soot.jimple.infoflow.results.ResultSinkInfo;
+import soot.jimple.infoflow.results.ResultSourceInfo;
+import soot.jimple.infoflow.solver.cfg.IInfoflowCFG;
+
+/**
+ * Handler that is called for every new connection between a sink and its
+ * sources while the data flow solver is still running. The results passed to
+ * this handler do not contain propagation paths and may later be pruned or
+ * extended with further sources. The final results are delivered to the
+ * {@link ResultsAvailableHandler} as usual.
+ */
+public interface IncrementalResultsHandler {
+
+	/**
+	 * Callback that is invoked when a tainted value has reached a sink
+	 * @param cfg The program graph
+	 * @param sink The sink that was reached
+	 * @param sources The sources from which the tainted value at the sink was
+	 * derived, as far as they are known when the sink is reached
+	 */
+	public void onResultAvailable(IInfoflowCFG cfg, ResultSinkInfo sink,
+			Set<ResultSourceInfo> sources);
+
+}
@@ -965,4 +965,12 @@ public class InfoflowProblem extends AbstractInfoflowProblem {
    		return this.results.getResults();
 	}
     
+	/**
+	 * Gets the data object that collects the results of the data flow analysis
+	 * @return The data object that collects the results
+	 */
+	public TaintPropagationResults getTaintPropagationResults() {
+		return this.results;
+	}
+    
 }
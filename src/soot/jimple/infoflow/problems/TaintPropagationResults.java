@@ -1,11 +1,26 @@
 package soot.jimple.infoflow.problems;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import soot.jimple.Stmt;
 import soot.jimple.infoflow.InfoflowManager;
 import soot.jimple.infoflow.collect.MyConcurrentHashMap;
 import soot.jimple.infoflow.data.Abstraction;
 import soot.jimple.infoflow.data.AbstractionAtSink;
+import soot.jimple.infoflow.data.SourceContext;
 import soot.jimple.infoflow.solver.IMemoryManager;
 import soot.jimple.infoflow.util.SystemClassHandler;
 
@@ -17,9 +32,66 @@ import soot.jimple.infoflow.util.SystemClassHandler;
  */
 public class TaintPropagationResults {
 	
+	/**
+	 * Handler that is notified whenever a new result is recorded
+	 */
+	public interface OnTaintPropagationResultAdded {
+		
+		/**
+		 * Called when a new result has been recorded. This method is invoked
+		 * on the solver's worker threads and should return quickly.
+		 * @param result The new result
+		 */
+		public void onResultAdded(AbstractionAtSink result);
+		
+	}
+	
+	/**
+	 * Key for grouping results that may entail each other. Only results at the
+	 * same sink with the same source context and the same implicit flag are
+	 * compared.
+	 */
+	private static class ResultGroupKey {
+		
+		private final Stmt sinkStmt;
+		private final SourceContext sourceContext;
+		private final boolean isImplicit;
+		
+		public ResultGroupKey(AbstractionAtSink absAtSink) {
+			this.sinkStmt = absAtSink.getSinkStmt();
+			this.sourceContext = absAtSink.getAbstraction().getSourceContext();
+			this.isImplicit = absAtSink.getAbstraction().isImplicit();
+		}
+		
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + System.identityHashCode(sinkStmt);
+			result = prime * result + System.identityHashCode(sourceContext);
+			result = prime * result + (isImplicit ? 1231 : 1237);
+			return result;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null || getClass() != obj.getClass())
+				return false;
+			ResultGroupKey other = (ResultGroupKey) obj;
+			return this.sinkStmt == other.sinkStmt
+					&& this.sourceContext == other.sourceContext
+					&& this.isImplicit == other.isImplicit;
+		}
+		
+	}
+	
 	protected final InfoflowManager manager;
 	protected final MyConcurrentHashMap<AbstractionAtSink, Abstraction> results =
 			new MyConcurrentHashMap<AbstractionAtSink, Abstraction>();
+	protected final Set<OnTaintPropagationResultAdded> resultAddedHandlers =
+			new CopyOnWriteArraySet<OnTaintPropagationResultAdded>();
 
 	/**
 	 * Creates a new instance of the TaintPropagationResults class
@@ -63,6 +135,18 @@ public class TaintPropagationResults {
 				(resultAbs, resultAbs.getAbstraction());
 		if (newAbs != resultAbs.getAbstraction())
 			newAbs.addNeighbor(resultAbs.getAbstraction());
+		else
+			for (OnTaintPropagationResultAdded handler : resultAddedHandlers)
+				handler.onResultAdded(resultAbs);
+	}
+	
+	/**
+	 * Adds a handler that is notified whenever a new result is recorded.
+	 * Results that are merged into an existing one do not trigger the handler.
+	 * @param handler The handler to add
+	 */
+	public void addResultAvailableHandler(OnTaintPropagationResultAdded handler) {
+		this.resultAddedHandlers.add(handler);
 	}
 	
 	/**
@@ -82,5 +166,106 @@ public class TaintPropagationResults {
 	public Set<AbstractionAtSink> getResults() {
 		return this.results.keySet();
 	}
+	
+	/**
+	 * Removes all results whose access path is entailed by the access path of
+	 * another result at the same sink with the same source context. The
+	 * results are grouped first, and the groups are then pruned in parallel.
+	 * This method must not be called while results are still being added.
+	 * @param numThreads The number of threads to use for pruning
+	 * @return The number of results that have been removed
+	 */
+	public int removeEntailedResults(int numThreads) {
+		// Group the results. Groups with a single result need no pruning.
+		Map<ResultGroupKey, List<AbstractionAtSink>> groupMap =
+				new HashMap<ResultGroupKey, List<AbstractionAtSink>>();
+		for (AbstractionAtSink absAtSink : results.keySet()) {
+			ResultGroupKey key = new ResultGroupKey(absAtSink);
+			List<AbstractionAtSink> group = groupMap.get(key);
+			if (group == null) {
+				group = new ArrayList<AbstractionAtSink>();
+				groupMap.put(key, group);
+			}
+			group.add(absAtSink);
+		}
+		final List<List<AbstractionAtSink>> groups = new ArrayList<List<AbstractionAtSink>>();
+		for (List<AbstractionAtSink> group : groupMap.values())
+			if (group.size() > 1)
+				groups.add(group);
+		if (groups.isEmpty())
+			return 0;
+		
+		// Start with the largest groups, so that no thread is left with a big
+		// group at the end
+		Collections.sort(groups, new Comparator<List<AbstractionAtSink>>() {
+			
+			@Override
+			public int compare(List<AbstractionAtSink> o1, List<AbstractionAtSink> o2) {
+				return Integer.compare(o2.size(), o1.size());
+			}
+			
+		});
+		
+		final AtomicInteger nextGroup = new AtomicInteger();
+		final AtomicInteger removedCount = new AtomicInteger();
+		Runnable worker = new Runnable() {
+			
+			@Override
+			public void run() {
+				int idx;
+				while ((idx = nextGroup.getAndIncrement()) < groups.size())
+					removedCount.addAndGet(removeEntailedResults(groups.get(idx)));
+			}
+			
+		};
+		
+		int threadNum = Math.max(1, Math.min(numThreads, groups.size()));
+		if (threadNum == 1)
+			worker.run();
+		else {
+			ExecutorService executor = Executors.newFixedThreadPool(threadNum);
+			try {
+				List<Future<?>> futures = new ArrayList<Future<?>>(threadNum);
+				for (int i = 0; i < threadNum; i++)
+					futures.add(executor.submit(worker));
+				for (Future<?> future : futures)
+					future.get();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			catch (ExecutionException e) {
+				throw new RuntimeException("Could not prune entailed results", e.getCause());
+			}
+			finally {
+				executor.shutdownNow();
+			}
+		}
+		return removedCount.get();
+	}
+	
+	/**
+	 * Removes all results from the given group whose access path is entailed
+	 * by the access path of another result in the group that has not been
+	 * removed yet
+	 * @param group The group of results to prune
+	 * @return The number of results that have been removed
+	 */
+	private int removeEntailedResults(List<AbstractionAtSink> group) {
+		int removedCount = 0;
+		for (Iterator<AbstractionAtSink> absAtSinkIt = group.iterator(); absAtSinkIt.hasNext(); ) {
+			AbstractionAtSink curAbs = absAtSinkIt.next();
+			for (AbstractionAtSink checkAbs : group)
+				if (checkAbs != curAbs
+						&& checkAbs.getAbstraction().getAccessPath().entails(
+								curAbs.getAbstraction().getAccessPath())) {
+					absAtSinkIt.remove();
+					results.remove(curAbs);
+					removedCount++;
+					break;
+				}
+		}
+		return removedCount;
+	}
 
 }
@@ -0,0 +1,25 @@
+package soot.jimple.infoflow.results;
+
+import java.util.List;
+
+import soot.jimple.Stmt;
+import soot.jimple.infoflow.data.AccessPath;
+
+/**
+ * Opaque handle to a propagation path that has not been reconstructed yet.
+ * Path builders that compute paths on demand attach such a handle to the
+ * {@link ResultSourceInfo} objects they create.
+ */
+public interface IPathHandle {
+
+	/**
+	 * Reconstructs the propagation path this handle refers to
+	 * @param path The list to which to add the statements on the path from
+	 * the source to the sink
+	 * @param pathAPs The list to which to add the access paths at these
+	 * statements
+	 * @return True if the path could be reconstructed, otherwise false
+	 */
+	public boolean reconstructPath(List<Stmt> path, List<AccessPath> pathAPs);
+
+}
@@ -14,8 +14,10 @@ import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,15 +36,105 @@ import soot.util.MultiMap;
  */
 public class InfoflowResults {
 	
+	/**
+	 * Enumeration containing the reasons why the data flow analysis can stop
+	 */
+	public enum TerminationReason {
+		/**
+		 * The data flow analysis ran to completion
+		 */
+		Completed,
+		/**
+		 * The data flow analysis was aborted because it exceeded its time
+		 * budget
+		 */
+		DataFlowTimeout,
+		/**
+		 * The data flow analysis was aborted because it exceeded its memory
+		 * budget
+		 */
+		MemoryExhausted
+	}
+	
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 		
 	private final MultiMap<ResultSinkInfo, ResultSourceInfo> results =
 			new ConcurrentHashMultiMap<ResultSinkInfo, ResultSourceInfo>();
 	
+	private final Set<ResultSinkInfo> truncatedSinks = Collections.newSetFromMap(
+			new ConcurrentHashMap<ResultSinkInfo, Boolean>());
+	
+	private TerminationReason terminationReason = TerminationReason.Completed;
+	
 	public InfoflowResults() {
 		
 	}
 	
+	/**
+	 * Gets whether this result object is incomplete because the data flow
+	 * analysis was aborted before it could finish
+	 * @return True if there may be flows that are missing from this result
+	 * object, false if the data flow analysis ran to completion
+	 */
+	public boolean isPartial() {
+		return this.terminationReason != TerminationReason.Completed;
+	}
+	
+	/**
+	 * Gets the reason why the data flow analysis that produced these results
+	 * terminated
+	 * @return The reason why the data flow analysis terminated
+	 */
+	public TerminationReason getTerminationReason() {
+		return this.terminationReason;
+	}
+	
+	/**
+	 * Sets the reason why the data flow analysis that produced these results
+	 * terminated
+	 * @param terminationReason The reason why the data flow analysis
+	 * terminated
+	 */
+	public void setTerminationReason(TerminationReason terminationReason) {
+		this.terminationReason = terminationReason;
+	}
+	
+	/**
+	 * Marks the results for the given sink as truncated, i.e., the path builder
+	 * stopped looking for further sources or paths for this sink because it
+	 * hit one of its limits
+	 * @param sink The sink whose results are incomplete
+	 */
+	public void markTruncated(ResultSinkInfo sink) {
+		this.truncatedSinks.add(sink);
+	}
+	
+	/**
+	 * Gets whether the results for the given sink are truncated
+	 * @param sink The sink to check
+	 * @return True if there may be sources or paths for the given sink that
+	 * are missing from this result object, otherwise false
+	 */
+	public boolean isTruncated(ResultSinkInfo sink) {
+		return this.truncatedSinks.contains(sink);
+	}
+	
+	/**
+	 * Gets all sinks whose results are truncated
+	 * @return The sinks whose results are truncated
+	 */
+	public Set<ResultSinkInfo> getTruncatedSinks() {
+		return Collections.unmodifiableSet(this.truncatedSinks);
+	}
+	
+	/**
+	 * Gets whether the results for at least one sink are truncated
+	 * @return True if at least one sink has truncated results, otherwise false
+	 */
+	public boolean hasTruncatedResults() {
+		return !this.truncatedSinks.isEmpty();
+	}
+	
 	/**
 	 * Gets the number of entries in this result object
 	 * @return The number of entries in this result object
@@ -108,6 +200,22 @@ public class InfoflowResults {
 			AccessPath source, Stmt sourceStmt,
 			Object userData,
 			List<Abstraction> propagationPath) {
+		addResult(new ResultSinkInfo(sink, sinkStmt), createSourceInfo(source,
+				sourceStmt, userData, propagationPath));
+	}
+	
+	/**
+	 * Creates the source information for a result
+	 * @param source The access path that was tainted at the source
+	 * @param sourceStmt The source statement
+	 * @param userData Additional user data for the source
+	 * @param propagationPath The abstractions on the path from the source to
+	 * the sink, or null if no path is known
+	 * @return The source information with the statements and access paths
+	 * taken from the given abstractions
+	 */
+	public static ResultSourceInfo createSourceInfo(AccessPath source, Stmt sourceStmt,
+			Object userData, List<Abstraction> propagationPath) {
 		// Get the statements and the access paths from the abstractions
 		List<Stmt> stmtPath = null;
 		List<AccessPath> apPath = null;
@@ -121,9 +229,7 @@ public class InfoflowResults {
 				}
 			}
 		}
-		
-		// Add the result
-		addResult(sink, sinkStmt, source, sourceStmt, userData, stmtPath, apPath);
+		return new ResultSourceInfo(source, sourceStmt, userData, stmtPath, apPath);
 	}
 	
 	public void addResult(AccessPath sink, Stmt sinkStmt,
@@ -150,7 +256,12 @@ public class InfoflowResults {
 	 * @param results The data structure from which to copy the results
 	 */
 	public void addAll(InfoflowResults results) {
-		if (results == null || results.isEmpty())
+		if (results == null)
+			return;
+		if (results.isPartial() && !isPartial())
+			this.terminationReason = results.getTerminationReason();
+		this.truncatedSinks.addAll(results.getTruncatedSinks());
+		if (results.isEmpty())
 			return;
 		
 		for (ResultSinkInfo sink : results.getResults().keySet())
@@ -254,6 +365,8 @@ public class InfoflowResults {
 	public void printResults() {
 		for (ResultSinkInfo sink : this.results.keySet()) {
 			logger.info("Found a flow to sink {}, from the following sources:", sink);
+			if (isTruncated(sink))
+				logger.info("\t(results for this sink are truncated)");
 			for (ResultSourceInfo source : this.results.get(sink)) {
 				logger.info("\t- {}", source.getSource());
 				if (source.getPath() != null)
@@ -270,6 +383,8 @@ public class InfoflowResults {
 	public void printResults(Writer wr) throws IOException {
 		for (ResultSinkInfo sink : this.results.keySet()) {
 			wr.write("Found a flow to sink " + sink + ", from the following sources:\n");
+			if (isTruncated(sink))
+				wr.write("\t(results for this sink are truncated)\n");
 			for (ResultSourceInfo source : this.results.get(sink)) {
 				wr.write("\t- " + source.getSource() + "\n");
 				if (source.getPath() != null)
@@ -283,6 +398,8 @@ public class InfoflowResults {
 	 */
 	public void clear() {
 		this.results.clear();
+		this.truncatedSinks.clear();
+		this.terminationReason = TerminationReason.Completed;
 	}
 	
 	@Override
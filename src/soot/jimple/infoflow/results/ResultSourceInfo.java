@@ -1,5 +1,6 @@
 package soot.jimple.infoflow.results;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import soot.jimple.Stmt;
@@ -16,8 +17,10 @@ public class ResultSourceInfo {
 	private final AccessPath accessPath;
 	private final Stmt source;
 	private final Object userData;
-	private final Stmt[] path;
-	private final AccessPath[] pathAPs;
+	private Stmt[] path;
+	private AccessPath[] pathAPs;
+	private volatile IPathHandle pathHandle = null;
+	private final IPathHandle pathKey;
 	
 	public ResultSourceInfo(AccessPath source, Stmt context) {
 		assert source != null;
@@ -27,6 +30,7 @@ public class ResultSourceInfo {
 		this.userData = null;
 		this.path = null;
 		this.pathAPs = null;
+		this.pathKey = null;
 	}
 	
 	public ResultSourceInfo(AccessPath source, Stmt context, Object userData,
@@ -40,6 +44,30 @@ public class ResultSourceInfo {
 			path.toArray(new Stmt[path.size()]);
 		this.pathAPs = pathAPs == null || pathAPs.isEmpty() ? null :
 			pathAPs.toArray(new AccessPath[pathAPs.size()]);
+		this.pathKey = null;
+	}
+	
+	/**
+	 * Creates a new source info whose propagation path is only reconstructed
+	 * when it is requested for the first time. If path-agnostic results are
+	 * disabled, the handle takes the place of the path in {@link #hashCode()}
+	 * and {@link #equals(Object)}, so the path is not reconstructed when the
+	 * source is added to a set. Path handles must therefore be equal if and
+	 * only if they refer to the same path.
+	 * @param source The access path that was tainted at the source
+	 * @param context The source statement
+	 * @param userData Additional user data associated with the source
+	 * @param pathHandle The handle from which to reconstruct the path
+	 */
+	public ResultSourceInfo(AccessPath source, Stmt context, Object userData,
+			IPathHandle pathHandle) {
+		assert source != null;
+		
+		this.accessPath = source;
+		this.source = context;
+		this.userData = userData;
+		this.pathHandle = pathHandle;
+		this.pathKey = pathHandle;
 	}
 
 	public AccessPath getAccessPath() {
@@ -55,12 +83,47 @@ public class ResultSourceInfo {
 	}
 	
 	public Stmt[] getPath() {
+		resolvePath();
 		return this.path;
 	}
 	
 	public AccessPath[] getPathAccessPaths() {
+		resolvePath();
 		return this.pathAPs;
 	}
+	
+	/**
+	 * Gets whether the propagation path of this source has not been
+	 * reconstructed yet. In that case, the next call to {@link #getPath()}
+	 * will reconstruct it.
+	 * @return True if the path of this source is still pending, otherwise
+	 * false
+	 */
+	public boolean hasPendingPath() {
+		return this.pathHandle != null;
+	}
+	
+	/**
+	 * Reconstructs the propagation path from the path handle if this has not
+	 * been done yet
+	 */
+	private void resolvePath() {
+		if (pathHandle == null)
+			return;
+		synchronized (this) {
+			IPathHandle handle = pathHandle;
+			if (handle == null)
+				return;
+			
+			List<Stmt> stmtPath = new ArrayList<Stmt>();
+			List<AccessPath> apPath = new ArrayList<AccessPath>();
+			if (handle.reconstructPath(stmtPath, apPath) && !stmtPath.isEmpty()) {
+				this.path = stmtPath.toArray(new Stmt[stmtPath.size()]);
+				this.pathAPs = apPath.toArray(new AccessPath[apPath.size()]);
+			}
+			pathHandle = null;
+		}
+	}
 
     @Override
     public String toString(){
@@ -72,8 +135,19 @@ public class ResultSourceInfo {
         return sb.toString();
     }
 
+	/**
+	 * Computes the hash code of this source. If path-agnostic results are
+	 * disabled, the path is part of the hash code. For sources with a path
+	 * handle, the handle is used instead, so that the path is not
+	 * reconstructed.
+	 */
 	@Override
 	public int hashCode() {
+		if (pathKey != null && !InfoflowConfiguration.getPathAgnosticResults())
+			return 31 * this.pathKey.hashCode()
+					+ (InfoflowConfiguration.getOneResultPerAccessPath() ?
+							31 * this.accessPath.hashCode() : 0)
+					+ 7 * (this.source == null ? 0 : this.source.hashCode());
 		return (path != null && !InfoflowConfiguration.getPathAgnosticResults() ? 31 * this.path.hashCode() : 0)
 				+ (pathAPs != null && !InfoflowConfiguration.getPathAgnosticResults() ? 31 * this.pathAPs.hashCode() : 0)
 				+ (InfoflowConfiguration.getOneResultPerAccessPath() ?
@@ -81,6 +155,12 @@ public class ResultSourceInfo {
 				+ 7 * (this.source == null ? 0 : this.source.hashCode());
 	}
 	
+	/**
+	 * Checks whether this source is equal to the given object. If path-agnostic
+	 * results are disabled, the paths are compared as well. Sources with a
+	 * path handle are only equal to sources with an equal path handle, so
+	 * pending paths are not reconstructed.
+	 */
 	@Override
 	public boolean equals(Object o) {
 		if (super.equals(o))
@@ -90,19 +170,25 @@ public class ResultSourceInfo {
 		ResultSourceInfo si = (ResultSourceInfo) o;
 		
 		if (!InfoflowConfiguration.getPathAgnosticResults()) {
-			if (this.path == null) {
-				if (si.path != null)
+			if (this.pathKey != null || si.pathKey != null) {
+				if (this.pathKey == null || !this.pathKey.equals(si.pathKey))
 					return false;
 			}
-			else if (!this.path.equals(si.path))
-				return false;
-			
-			if (this.pathAPs == null) {
-				if (si.pathAPs != null)
+			else {
+				if (this.path == null) {
+					if (si.path != null)
+						return false;
+				}
+				else if (!this.path.equals(si.path))
+					return false;
+				
+				if (this.pathAPs == null) {
+					if (si.pathAPs != null)
+						return false;
+				}
+				else if (!pathAPs.equals(si.pathAPs))
 					return false;
 			}
-			else if (!pathAPs.equals(si.pathAPs))
-				return false;
 		}
 		
 		if (this.source == null) {
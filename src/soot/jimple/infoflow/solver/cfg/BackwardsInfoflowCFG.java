@@ -13,7 +13,7 @@ public class BackwardsInfoflowCFG extends InfoflowCFG {
 	private final IInfoflowCFG baseCFG;
 	
 	public BackwardsInfoflowCFG(IInfoflowCFG baseCFG) {
-		super(new BackwardsInterproceduralCFG(baseCFG));
+		super(new BackwardsInterproceduralCFG(baseCFG), baseCFG);
 		this.baseCFG = baseCFG;
 	}
 	
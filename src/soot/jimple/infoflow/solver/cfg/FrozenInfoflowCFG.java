@@ -0,0 +1,456 @@
+package soot.jimple.infoflow.solver.cfg;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import soot.MethodOrMethodContext;
+import soot.Scene;
+import soot.SootMethod;
+import soot.Unit;
+import soot.jimple.toolkits.ide.icfg.BiDiInterproceduralCFG;
+import soot.toolkits.graph.DirectedGraph;
+
+/**
+ * Interprocedural control flow graph that copies the structure of another
+ * control flow graph into flat arrays once the callgraph has been built. All
+ * units and methods get dense integer ids. Successors, predecessors, callees,
+ * return sites, start points and end points are stored in compressed sparse
+ * row form, and call statements, exit statements and start points are marked
+ * in bit sets.
+ *
+ * Units and methods are mapped to their ids in open-addressing tables over
+ * their identity hash codes, and the list views on the rows are created once
+ * and then cached.
+ *
+ * Queries for units and methods that were not part of the graph when it was
+ * frozen, or that have changed since, are passed on to the original graph.
+ */
+public class FrozenInfoflowCFG extends InfoflowCFG {
+
+	private static final Logger logger = LoggerFactory.getLogger(FrozenInfoflowCFG.class);
+
+	private final Unit[] units;
+	private final SootMethod[] methods;
+	private final IdentityIdTable unitIds;
+	private final IdentityIdTable methodIds;
+	private final int[] unitMethods;
+
+	private final Rows<Unit> succs;
+	private final Rows<Unit> preds;
+	private final Rows<SootMethod> callees;
+	private final Rows<Unit> returnSites;
+	private final Rows<Unit> startPoints;
+	private final Rows<Unit> endPoints;
+
+	private final BitSet callStmts = new BitSet();
+	private final BitSet exitStmts = new BitSet();
+	private final BitSet startStmts = new BitSet();
+
+	/**
+	 * Methods for which we must ask the original graph, because they have
+	 * changed since the graph was frozen. The solver threads read this set
+	 * on every query, so it is never modified, but replaced by a modified
+	 * copy in {@link #notifyMethodChanged(SootMethod)}.
+	 */
+	private volatile BitSet staleMethods;
+
+	/**
+	 * Freezes the given control flow graph. All methods that are reachable in
+	 * the callgraph are included.
+	 * @param delegate The control flow graph to freeze
+	 */
+	public FrozenInfoflowCFG(BiDiInterproceduralCFG<Unit, SootMethod> delegate) {
+		super(delegate);
+		long beforeFreezing = System.nanoTime();
+
+		// Number the units in the order of their methods
+		List<Unit> unitList = new ArrayList<Unit>();
+		List<SootMethod> methodList = new ArrayList<SootMethod>();
+		this.unitIds = new IdentityIdTable();
+		this.methodIds = new IdentityIdTable();
+		BitSet staleMethods = new BitSet();
+		int[] unitMethods = new int[16];
+		for (Iterator<MethodOrMethodContext> methodIt = Scene.v().getReachableMethods().listener();
+				methodIt.hasNext(); ) {
+			SootMethod method = methodIt.next().method();
+			if (!method.hasActiveBody())
+				continue;
+			int methodId = getOrCreateMethodId(method, methodList);
+			DirectedGraph<Unit> graph = delegate.getOrCreateUnitGraph(method);
+			for (Unit u : graph) {
+				if (unitIds.get(u) >= 0)
+					continue;
+				if (unitList.size() == unitMethods.length)
+					unitMethods = Arrays.copyOf(unitMethods, unitMethods.length * 2);
+				unitMethods[unitList.size()] = methodId;
+				unitIds.put(u, unitList.size());
+				unitList.add(u);
+			}
+		}
+		this.units = unitList.toArray(new Unit[unitList.size()]);
+		this.unitMethods = Arrays.copyOf(unitMethods, units.length);
+
+		// Copy the intraprocedural and interprocedural edges
+		RowBuilder succBuilder = new RowBuilder(units.length);
+		RowBuilder predBuilder = new RowBuilder(units.length);
+		RowBuilder calleeBuilder = new RowBuilder(units.length);
+		RowBuilder returnSiteBuilder = new RowBuilder(units.length);
+		for (int id = 0; id < units.length; id++) {
+			Unit u = units[id];
+			boolean complete = addUnits(succBuilder, delegate.getSuccsOf(u))
+					& addUnits(predBuilder, delegate.getPredsOf(u));
+			if (delegate.isCallStmt(u)) {
+				callStmts.set(id);
+				for (SootMethod callee : delegate.getCalleesOfCallAt(u))
+					calleeBuilder.add(getOrCreateMethodId(callee, methodList));
+				complete &= addUnits(returnSiteBuilder, delegate.getReturnSitesOfCallAt(u));
+			}
+			if (delegate.isExitStmt(u))
+				exitStmts.set(id);
+			if (delegate.isStartPoint(u))
+				startStmts.set(id);
+			if (!complete)
+				staleMethods.set(unitMethods[id]);
+
+			succBuilder.endRow();
+			predBuilder.endRow();
+			calleeBuilder.endRow();
+			returnSiteBuilder.endRow();
+		}
+		this.methods = methodList.toArray(new SootMethod[methodList.size()]);
+
+		// Copy the start and end points of the methods
+		RowBuilder startPointBuilder = new RowBuilder(methods.length);
+		RowBuilder endPointBuilder = new RowBuilder(methods.length);
+		for (int id = 0; id < methods.length; id++) {
+			if (methods[id].hasActiveBody()) {
+				boolean complete = addUnits(startPointBuilder, delegate.getStartPointsOf(methods[id]))
+						& addUnits(endPointBuilder, delegate.getEndPointsOf(methods[id]));
+				if (!complete)
+					staleMethods.set(id);
+			}
+			startPointBuilder.endRow();
+			endPointBuilder.endRow();
+		}
+
+		this.succs = succBuilder.build(units);
+		this.preds = predBuilder.build(units);
+		this.callees = calleeBuilder.build(methods);
+		this.returnSites = returnSiteBuilder.build(units);
+		this.startPoints = startPointBuilder.build(units);
+		this.endPoints = endPointBuilder.build(units);
+		this.staleMethods = staleMethods;
+
+		logger.info("Froze the interprocedural CFG with {} units in {} methods in {} seconds",
+				units.length, methods.length, (System.nanoTime() - beforeFreezing) / 1E9);
+	}
+
+	private int getOrCreateMethodId(SootMethod method, List<SootMethod> methodList) {
+		int id = methodIds.get(method);
+		if (id < 0) {
+			id = methodList.size();
+			methodIds.put(method, id);
+			methodList.add(method);
+		}
+		return id;
+	}
+
+	/**
+	 * Adds the ids of the given units to the current row
+	 * @param builder The builder for the rows
+	 * @param rowUnits The units to add
+	 * @return True if all units have an id, false if some units were skipped
+	 */
+	private boolean addUnits(RowBuilder builder, Collection<Unit> rowUnits) {
+		boolean complete = true;
+		for (Unit u : rowUnits) {
+			int id = unitIds.get(u);
+			if (id < 0)
+				complete = false;
+			else
+				builder.add(id);
+		}
+		return complete;
+	}
+
+	/**
+	 * Gets the id of the given unit
+	 * @param u The unit for which to get the id
+	 * @return The id of the given unit, or -1 if the unit is unknown or its
+	 * method has changed since the graph was frozen
+	 */
+	private int getUnitId(Unit u) {
+		int id = unitIds.get(u);
+		if (id < 0 || staleMethods.get(unitMethods[id]))
+			return -1;
+		return id;
+	}
+
+	/**
+	 * Gets the id of the given method
+	 * @param m The method for which to get the id
+	 * @return The id of the given method, or -1 if the method is unknown or
+	 * has changed since the graph was frozen
+	 */
+	private int getMethodId(SootMethod m) {
+		int id = methodIds.get(m);
+		if (id < 0 || staleMethods.get(id))
+			return -1;
+		return id;
+	}
+
+	@Override
+	public SootMethod getMethodOf(Unit u) {
+		int id = unitIds.get(u);
+		return id < 0 ? super.getMethodOf(u) : methods[unitMethods[id]];
+	}
+
+	@Override
+	public List<Unit> getSuccsOf(Unit u) {
+		int id = getUnitId(u);
+		return id < 0 ? super.getSuccsOf(u) : succs.getRow(id);
+	}
+
+	@Override
+	public List<Unit> getPredsOf(Unit u) {
+		int id = getUnitId(u);
+		return id < 0 ? super.getPredsOf(u) : preds.getRow(id);
+	}
+
+	@Override
+	public List<Unit> getPredsOfCallAt(Unit u) {
+		return getPredsOf(u);
+	}
+
+	@Override
+	public boolean isCallStmt(Unit u) {
+		int id = getUnitId(u);
+		return id < 0 ? super.isCallStmt(u) : callStmts.get(id);
+	}
+
+	@Override
+	public boolean isExitStmt(Unit u) {
+		int id = getUnitId(u);
+		return id < 0 ? super.isExitStmt(u) : exitStmts.get(id);
+	}
+
+	@Override
+	public boolean isStartPoint(Unit u) {
+		int id = getUnitId(u);
+		return id < 0 ? super.isStartPoint(u) : startStmts.get(id);
+	}
+
+	@Override
+	public Collection<SootMethod> getCalleesOfCallAt(Unit u) {
+		int id = getUnitId(u);
+		if (id < 0 || !callStmts.get(id))
+			return super.getCalleesOfCallAt(u);
+		return callees.getRow(id);
+	}
+
+	@Override
+	public Collection<Unit> getReturnSitesOfCallAt(Unit u) {
+		int id = getUnitId(u);
+		if (id < 0 || !callStmts.get(id))
+			return super.getReturnSitesOfCallAt(u);
+		return returnSites.getRow(id);
+	}
+
+	@Override
+	public Collection<Unit> getStartPointsOf(SootMethod m) {
+		int id = getMethodId(m);
+		if (id < 0 || !m.hasActiveBody())
+			return super.getStartPointsOf(m);
+		return startPoints.getRow(id);
+	}
+
+	@Override
+	public Collection<Unit> getEndPointsOf(SootMethod m) {
+		int id = getMethodId(m);
+		if (id < 0 || !m.hasActiveBody())
+			return super.getEndPointsOf(m);
+		return endPoints.getRow(id);
+	}
+
+	@Override
+	public void notifyMethodChanged(SootMethod m) {
+		super.notifyMethodChanged(m);
+		int id = methodIds.get(m);
+		if (id >= 0) {
+			synchronized (this) {
+				BitSet newStaleMethods = (BitSet) staleMethods.clone();
+				newStaleMethods.set(id);
+				staleMethods = newStaleMethods;
+			}
+		}
+	}
+
+	/**
+	 * Hash table from objects to their ids. Keys are compared by identity and
+	 * looked up with linear probing over their identity hash codes. The table
+	 * is only modified while the graph is frozen and is read-only afterwards.
+	 */
+	private static class IdentityIdTable {
+
+		private Object[] keys = new Object[64];
+		private int[] ids = new int[64];
+		private int size = 0;
+
+		/**
+		 * Finds the slot of the given key
+		 * @param key The key to look for
+		 * @return The slot that contains the key, or the empty slot at which
+		 * the key would have to be inserted
+		 */
+		private int findSlot(Object key) {
+			int mask = keys.length - 1;
+			int slot = System.identityHashCode(key) & mask;
+			while (keys[slot] != null && keys[slot] != key)
+				slot = (slot + 1) & mask;
+			return slot;
+		}
+
+		/**
+		 * Gets the id of the given key
+		 * @param key The key for which to get the id
+		 * @return The id of the given key, or -1 if the key is not in the table
+		 */
+		public int get(Object key) {
+			int slot = findSlot(key);
+			return keys[slot] == null ? -1 : ids[slot];
+		}
+
+		/**
+		 * Adds the given key with the given id. The key must not be in the
+		 * table yet.
+		 * @param key The key to add
+		 * @param id The id of the key
+		 */
+		public void put(Object key, int id) {
+			if (++size * 2 > keys.length) {
+				Object[] oldKeys = keys;
+				int[] oldIds = ids;
+				keys = new Object[oldKeys.length * 2];
+				ids = new int[oldKeys.length * 2];
+				for (int i = 0; i < oldKeys.length; i++)
+					if (oldKeys[i] != null) {
+						int slot = findSlot(oldKeys[i]);
+						keys[slot] = oldKeys[i];
+						ids[slot] = oldIds[i];
+					}
+			}
+			int slot = findSlot(key);
+			keys[slot] = key;
+			ids[slot] = id;
+		}
+
+	}
+
+	/**
+	 * Builder for the offset and value arrays of a table in compressed sparse
+	 * row form. Rows must be filled in the order of their ids.
+	 */
+	private static class RowBuilder {
+
+		private final int[] offsets;
+		private int[] values = new int[16];
+		private int numRows = 0;
+		private int numValues = 0;
+
+		public RowBuilder(int rowCount) {
+			this.offsets = new int[rowCount + 1];
+		}
+
+		public void add(int value) {
+			if (numValues == values.length)
+				values = Arrays.copyOf(values, values.length * 2);
+			values[numValues++] = value;
+		}
+
+		public void endRow() {
+			offsets[++numRows] = numValues;
+		}
+
+		public <E> Rows<E> build(E[] elements) {
+			return new Rows<E>(elements, offsets, Arrays.copyOf(values, numValues));
+		}
+
+	}
+
+	/**
+	 * Table in compressed sparse row form whose values are the ids of the
+	 * given elements. The list view on a row is created when the row is
+	 * requested for the first time. The views are immutable, so threads that
+	 * race on the creation of the same view at worst create it twice.
+	 */
+	private static class Rows<E> {
+
+		private final E[] elements;
+		private final int[] offsets;
+		private final int[] ids;
+		private final List<E>[] views;
+
+		@SuppressWarnings("unchecked")
+		public Rows(E[] elements, int[] offsets, int[] ids) {
+			this.elements = elements;
+			this.offsets = offsets;
+			this.ids = ids;
+			this.views = new List[offsets.length - 1];
+		}
+
+		public List<E> getRow(int row) {
+			List<E> view = views[row];
+			if (view == null) {
+				int from = offsets[row];
+				int to = offsets[row + 1];
+				view = from == to ? Collections.<E>emptyList()
+						: new Slice<E>(elements, ids, from, to);
+				views[row] = view;
+			}
+			return view;
+		}
+
+	}
+
+	/**
+	 * Read-only list view on one row of a table in compressed sparse row form
+	 */
+	private static class Slice<E> extends AbstractList<E> implements RandomAccess {
+
+		private final E[] elements;
+		private final int[] ids;
+		private final int from;
+		private final int to;
+
+		public Slice(E[] elements, int[] ids, int from, int to) {
+			this.elements = elements;
+			this.ids = ids;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public E get(int index) {
+			if (index < 0 || from + index >= to)
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+			return elements[ids[from + index]];
+		}
+
+		@Override
+		public int size() {
+			return to - from;
+		}
+
+	}
+
+}
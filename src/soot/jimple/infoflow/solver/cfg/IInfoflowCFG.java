@@ -123,7 +123,7 @@ public interface IInfoflowCFG extends BiDiInterproceduralCFG<Unit,SootMethod> {
     
     /**
      * Re-initializes the mapping betwween statements and owning methods after a
-     * method has changed.
+     * method has changed, and drops all information cached for the method.
      * @param m The method for which to re-initialize the mapping
      */
 	public void notifyMethodChanged(SootMethod m);
@@ -14,25 +14,15 @@ import heros.solver.IDESolver;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 import soot.Local;
-import soot.Scene;
 import soot.SootField;
 import soot.SootMethod;
 import soot.Unit;
 import soot.Value;
 import soot.ValueBox;
-import soot.jimple.AssignStmt;
-import soot.jimple.FieldRef;
-import soot.jimple.StaticFieldRef;
-import soot.jimple.Stmt;
-import soot.jimple.toolkits.callgraph.Edge;
 import soot.jimple.toolkits.ide.icfg.BiDiInterproceduralCFG;
 import soot.jimple.toolkits.ide.icfg.JimpleBasedInterproceduralCFG;
 import soot.toolkits.graph.DirectedGraph;
@@ -49,33 +39,15 @@ import com.google.common.cache.LoadingCache;
  */
 public class InfoflowCFG implements IInfoflowCFG {
 	
-	private static enum StaticFieldUse {
-		Unknown,
-		Unused,
-		Read,
-		Write,
-		ReadWrite
-	}
-	
-	protected final Map<SootMethod, Map<SootField, StaticFieldUse>> staticFieldUses =
-			new ConcurrentHashMap<SootMethod, Map<SootField,StaticFieldUse>>();
-	protected final Map<SootMethod, Boolean> methodSideEffects =
-			new ConcurrentHashMap<SootMethod, Boolean>();
+	protected final MethodSummaries methodSummaries;
 	
 	protected final BiDiInterproceduralCFG<Unit, SootMethod> delegate; 
 	
-	protected final LoadingCache<Unit,UnitContainer> unitToPostdominator =
-			IDESolver.DEFAULT_CACHE_BUILDER.build( new CacheLoader<Unit,UnitContainer>() {
+	protected final LoadingCache<SootMethod,PostdominatorTree> methodToPostdominators =
+			IDESolver.DEFAULT_CACHE_BUILDER.build( new CacheLoader<SootMethod,PostdominatorTree>() {
 				@Override
-				public UnitContainer load(Unit unit) throws Exception {
-					SootMethod method = getMethodOf(unit);
-					DirectedGraph<Unit> graph = delegate.getOrCreateUnitGraph(method);
-					MHGPostDominatorsFinder<Unit> postdominatorFinder = new MHGPostDominatorsFinder<Unit>(graph);
-					Unit postdom = postdominatorFinder.getImmediateDominator(unit);
-					if (postdom == null)
-						return new UnitContainer(method);
-					else
-						return new UnitContainer(postdom);
+				public PostdominatorTree load(SootMethod method) throws Exception {
+					return new PostdominatorTree(method, delegate.getOrCreateUnitGraph(method));
 				}
 			});
 	
@@ -112,12 +84,174 @@ public class InfoflowCFG implements IInfoflowCFG {
 	}
 	
 	public InfoflowCFG(BiDiInterproceduralCFG<Unit, SootMethod> delegate) {
+		this(delegate, delegate);
+	}
+	
+	/**
+	 * Creates a new control flow graph that shares its method summaries with
+	 * the given graph if that graph is also an {@link InfoflowCFG}. The
+	 * summaries do not depend on the direction of the graph, so they only need
+	 * to be computed once for all graphs that wrap each other.
+	 * @param delegate The control flow graph to which to delegate
+	 * @param summarySource The graph whose method summaries to share
+	 */
+	protected InfoflowCFG(BiDiInterproceduralCFG<Unit, SootMethod> delegate,
+			BiDiInterproceduralCFG<Unit, SootMethod> summarySource) {
 		this.delegate = delegate;
+		this.methodSummaries = summarySource instanceof InfoflowCFG
+				? ((InfoflowCFG) summarySource).methodSummaries : new MethodSummaries(-1);
+	}
+	
+	/**
+	 * Sets the maximum number of threads to use for computing the static field
+	 * and side effect summaries of the methods
+	 * @param maxThreadNum The maximum number of threads, or -1 to use one
+	 * thread per core
+	 */
+	public void setMaxThreadNum(int maxThreadNum) {
+		methodSummaries.setMaxThreadNum(maxThreadNum);
+	}
+	
+	/**
+	 * Immediate postdominators of all units in a method. The units are numbered
+	 * in the order of the method's unit graph, and for every unit, we store the
+	 * number of its immediate postdominator, or -1 if the unit is only
+	 * postdominated by the end of the method. The number of a unit is looked
+	 * up in an open-addressing table over the identity hash codes of the
+	 * units, so that the tree only consists of a few flat arrays.
+	 */
+	protected static final class PostdominatorTree {
+		
+		private final SootMethod method;
+		private final Unit[] units;
+		private final int[] postdominators;
+		
+		/**
+		 * Hash table from units to their numbers. Every slot holds the unit's
+		 * number plus one, or zero if it is empty.
+		 */
+		private final int[] unitSlots;
+		
+		/**
+		 * The number of units in the method's body when this tree was built
+		 */
+		private final int bodySize;
+		
+		public PostdominatorTree(SootMethod method, DirectedGraph<Unit> graph) {
+			this.method = method;
+			this.bodySize = getBodySize(method);
+			
+			List<Unit> unitList = new ArrayList<Unit>(graph.size());
+			for (Unit u : graph)
+				unitList.add(u);
+			this.units = unitList.toArray(new Unit[unitList.size()]);
+			this.unitSlots = new int[Integer.highestOneBit(Math.max(units.length, 1)) * 4];
+			for (int i = 0; i < units.length; i++) {
+				int slot = findSlot(units[i]);
+				if (unitSlots[slot] == 0)
+					unitSlots[slot] = i + 1;
+			}
+			
+			MHGPostDominatorsFinder<Unit> postdominatorFinder = new MHGPostDominatorsFinder<Unit>(graph);
+			this.postdominators = new int[units.length];
+			for (int i = 0; i < units.length; i++) {
+				Unit postdom = postdominatorFinder.getImmediateDominator(units[i]);
+				postdominators[i] = postdom == null ? -1 : getNumber(postdom);
+			}
+		}
+		
+		/**
+		 * Finds the slot of the given unit in the hash table
+		 * @param u The unit to look for
+		 * @return The slot that contains the unit, or the empty slot at which
+		 * the unit would have to be inserted
+		 */
+		private int findSlot(Unit u) {
+			int mask = unitSlots.length - 1;
+			int slot = System.identityHashCode(u) & mask;
+			while (unitSlots[slot] != 0 && units[unitSlots[slot] - 1] != u)
+				slot = (slot + 1) & mask;
+			return slot;
+		}
+		
+		/**
+		 * Gets the number of the given unit
+		 * @param u The unit for which to get the number
+		 * @return The number of the given unit, or -1 if the unit was not part
+		 * of the method when this tree was built
+		 */
+		private int getNumber(Unit u) {
+			return unitSlots[findSlot(u)] - 1;
+		}
+		
+		/**
+		 * Gets the number of units in the body of the given method
+		 * @param method The method for which to get the number of units
+		 * @return The number of units in the body of the given method, or -1
+		 * if the method has no active body
+		 */
+		private static int getBodySize(SootMethod method) {
+			return method.hasActiveBody() ? method.getActiveBody().getUnits().size() : -1;
+		}
+		
+		/**
+		 * Gets whether the method had a different number of units when this
+		 * tree was built
+		 * @return True if this tree is outdated, otherwise false
+		 */
+		public boolean isOutdated() {
+			return bodySize != getBodySize(method);
+		}
+		
+		/**
+		 * Gets whether the given unit was part of the method when this tree
+		 * was built
+		 * @param u The unit to check
+		 * @return True if this tree knows the postdominator of the given unit,
+		 * otherwise false
+		 */
+		public boolean containsUnit(Unit u) {
+			return getNumber(u) >= 0;
+		}
+		
+		/**
+		 * Gets the immediate postdominator of the given unit
+		 * @param u The unit for which to get the postdominator
+		 * @return The immediate postdominator of the given unit, or the method
+		 * if the unit has no postdominator inside the method
+		 */
+		public UnitContainer getPostdominatorOf(Unit u) {
+			int number = getNumber(u);
+			assert number >= 0;
+			if (postdominators[number] < 0)
+				return new UnitContainer(method);
+			return new UnitContainer(units[postdominators[number]]);
+		}
+		
 	}
 	
 	@Override
 	public UnitContainer getPostdominatorOf(Unit u) {
-		return unitToPostdominator.getUnchecked(u);
+		SootMethod method = getMethodOf(u);
+		PostdominatorTree tree = methodToPostdominators.getUnchecked(method);
+		if (tree.containsUnit(u))
+			return tree.getPostdominatorOf(u);
+		
+		// The method has changed since we built the tree. If units have been
+		// added or removed, we rebuild the tree.
+		if (tree.isOutdated()) {
+			tree = new PostdominatorTree(method, delegate.getOrCreateUnitGraph(method));
+			methodToPostdominators.put(method, tree);
+			if (tree.containsUnit(u))
+				return tree.getPostdominatorOf(u);
+		}
+		
+		// The unit has replaced another one, so we compute its postdominator
+		// on the current unit graph without caching it
+		DirectedGraph<Unit> graph = delegate.getOrCreateUnitGraph(method);
+		MHGPostDominatorsFinder<Unit> postdominatorFinder = new MHGPostDominatorsFinder<Unit>(graph);
+		Unit postdom = postdominatorFinder.getImmediateDominator(u);
+		return postdom == null ? new UnitContainer(method) : new UnitContainer(postdom);
 	}
 	
 	//delegate methods follow
@@ -224,155 +358,28 @@ public class InfoflowCFG implements IInfoflowCFG {
 	
 	@Override
 	public boolean isStaticFieldRead(SootMethod method, SootField variable) {
-		return isStaticFieldUsed(method, variable, new HashSet<SootMethod>(), true);
+		return methodSummaries.isStaticFieldRead(method, variable);
 	}
 	
 	@Override
 	public boolean isStaticFieldUsed(SootMethod method, SootField variable) {
-		return isStaticFieldUsed(method, variable, new HashSet<SootMethod>(), false);
+		return methodSummaries.isStaticFieldUsed(method, variable);
 	}
 	
-	private boolean isStaticFieldUsed(SootMethod method, SootField variable,
-			Set<SootMethod> runList, boolean readOnly) {
-		// Without a body, we cannot say much
-		if (!method.hasActiveBody())
-			return false;
-		
-		// Do not process the same method twice
-		if (!runList.add(method))
-			return false;
-		
-		// Do we already have an entry?
-		Map<SootField, StaticFieldUse> entry = staticFieldUses.get(method);
-		if (entry != null) {
-			StaticFieldUse b = entry.get(variable);
-			if (b != null && b != StaticFieldUse.Unknown) {
-				if (readOnly)
-					return b == StaticFieldUse.Read || b == StaticFieldUse.ReadWrite;
-				else
-					return b != StaticFieldUse.Unused;
-			}
-		}
-		
-		// Scan for references to this variable
-		for (Unit u : method.getActiveBody().getUnits()) {
-			if (u instanceof AssignStmt) {
-				AssignStmt assign = (AssignStmt) u;
-				
-				if (assign.getLeftOp() instanceof StaticFieldRef) {
-					SootField sf = ((StaticFieldRef) assign.getLeftOp()).getField();
-					registerStaticVariableUse(method, sf, StaticFieldUse.Write);
-					if (!readOnly && variable.equals(sf))
-						return true;
-				}
-				
-				if (assign.getRightOp() instanceof StaticFieldRef) {
-					SootField sf = ((StaticFieldRef) assign.getRightOp()).getField();
-					registerStaticVariableUse(method, sf, StaticFieldUse.Read);
-					if (variable.equals(sf))
-						return true;
-				}
-			}
-			
-			if (((Stmt) u).containsInvokeExpr())
-				for (Iterator<Edge> edgeIt = Scene.v().getCallGraph().edgesOutOf(u); edgeIt.hasNext(); ) {
-					Edge e = edgeIt.next();
-					if (isStaticFieldUsed(e.getTgt().method(), variable, runList, readOnly))
-						return true;
-				}
-		}
-		
-		// Variable is not read
-		registerStaticVariableUse(method, variable, StaticFieldUse.Unused);
-		return false;
-	}
-
-	private void registerStaticVariableUse(SootMethod method,
-			SootField variable, StaticFieldUse fieldUse) {
-		Map<SootField, StaticFieldUse> entry = staticFieldUses.get(method);
-		StaticFieldUse oldUse;
-		synchronized (staticFieldUses) {
-			if (entry == null) {
-				entry = new ConcurrentHashMap<SootField, StaticFieldUse>();
-				staticFieldUses.put(method, entry);
-				entry.put(variable, fieldUse);
-				return;
-			}
-			
-			oldUse = entry.get(variable);
-			if (oldUse == null) {
-				entry.put(variable, fieldUse);
-				return;
-			}
-		}
-		
-		// This part is monotonic, so no need for synchronization
-		StaticFieldUse newUse;
-		switch (oldUse) {
-			case Unknown :
-			case Unused :
-			case ReadWrite :
-				newUse = fieldUse;
-				break;
-			case Read :
-				newUse = (fieldUse == StaticFieldUse.Read) ? oldUse : StaticFieldUse.ReadWrite;
-				break;
-			case Write :
-				newUse = (fieldUse == StaticFieldUse.Write) ? oldUse : StaticFieldUse.ReadWrite;
-				break;
-			default:
-				throw new RuntimeException("Invalid field use");
-			}
-		entry.put(variable, newUse);
-	}
-
 	@Override
 	public boolean hasSideEffects(SootMethod method) {
-		return hasSideEffects(method, new HashSet<SootMethod>());
-	}
-	
-	private boolean hasSideEffects(SootMethod method, Set<SootMethod> runList) {
-		// Without a body, we cannot say much
-		if (!method.hasActiveBody())
-			return false;
-		
-		// Do not process the same method twice
-		if (!runList.add(method))
-			return false;
-		
-		// Do we already have an entry?
-		Boolean hasSideEffects = methodSideEffects.get(method);
-		if (hasSideEffects != null)
-			return hasSideEffects;
-		
-		// Scan for references to this variable
-		for (Unit u : method.getActiveBody().getUnits()) {
-			if (u instanceof AssignStmt) {
-				AssignStmt assign = (AssignStmt) u;
-				
-				if (assign.getLeftOp() instanceof FieldRef) {
-					methodSideEffects.put(method, true);
-					return true;
-				}
-			}
-			
-			if (((Stmt) u).containsInvokeExpr())
-				for (Iterator<Edge> edgeIt = Scene.v().getCallGraph().edgesOutOf(u); edgeIt.hasNext(); ) {
-					Edge e = edgeIt.next();
-					if (hasSideEffects(e.getTgt().method(), runList))
-						return true;
-				}
-		}
-		
-		// Variable is not read
-		methodSideEffects.put(method, false);
-		return false;
+		return methodSummaries.hasSideEffects(method);
 	}
 	
 	@Override
 	public void notifyMethodChanged(SootMethod m) {
 		if (delegate instanceof JimpleBasedInterproceduralCFG)
 			((JimpleBasedInterproceduralCFG) delegate).initializeUnitToOwner(m);
+		methodToPostdominators.invalidate(m);
+		methodToUsedLocals.invalidate(m);
+		
+		// The change may affect the summaries of all transitive callers
+		methodSummaries.clear();
 	}
 	
 	@Override
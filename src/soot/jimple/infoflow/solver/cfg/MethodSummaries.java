@@ -0,0 +1,422 @@
+package soot.jimple.infoflow.solver.cfg;
+
+import heros.solver.CountingThreadPoolExecutor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import soot.MethodOrMethodContext;
+import soot.Scene;
+import soot.SootField;
+import soot.SootMethod;
+import soot.Unit;
+import soot.jimple.AssignStmt;
+import soot.jimple.FieldRef;
+import soot.jimple.StaticFieldRef;
+import soot.jimple.Stmt;
+import soot.jimple.toolkits.callgraph.Edge;
+
+/**
+ * Transitive static field and side effect summaries for the methods in the
+ * call graph. The summaries are computed bottom-up over the strongly connected
+ * components of the call graph, so every method body is only scanned once, and
+ * all methods in the same component share one summary. Components that do not
+ * depend on each other are summarized in parallel.
+ *
+ * The first query summarizes all reachable methods. Methods that are not
+ * reachable are summarized together with their callees when they are first
+ * queried.
+ */
+public class MethodSummaries {
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	/**
+	 * The static fields read and written by the methods in a strongly connected
+	 * component and their transitive callees. Summaries are not modified after
+	 * they have been published.
+	 */
+	private static class Summary {
+
+		private final BitSet readFields = new BitSet();
+		private final BitSet writtenFields = new BitSet();
+		private boolean hasSideEffects = false;
+
+		private void addAll(Summary summary) {
+			readFields.or(summary.readFields);
+			writtenFields.or(summary.writtenFields);
+			hasSideEffects |= summary.hasSideEffects;
+		}
+
+	}
+
+	/**
+	 * A method in the call graph while the strongly connected components are
+	 * computed
+	 */
+	private static class Node {
+
+		private final SootMethod method;
+		private final List<SootMethod> callees;
+		private final int index;
+		private int lowLink;
+		private boolean onStack = true;
+		private Component component = null;
+
+		private Node(SootMethod method, List<SootMethod> callees, int index) {
+			this.method = method;
+			this.callees = callees;
+			this.index = index;
+			this.lowLink = index;
+		}
+
+	}
+
+	/**
+	 * A strongly connected component of the call graph
+	 */
+	private static class Component {
+
+		private final List<Node> nodes = new ArrayList<Node>();
+		private final List<Component> callers = new ArrayList<Component>();
+		private final AtomicInteger pendingCallees = new AtomicInteger();
+
+	}
+
+	private volatile int numThreads;
+	private final Map<SootMethod, Summary> summaries =
+			new ConcurrentHashMap<SootMethod, Summary>();
+	private final Map<SootField, Integer> fieldIds =
+			new ConcurrentHashMap<SootField, Integer>();
+	private boolean reachableMethodsDone = false;
+
+	/**
+	 * Creates a new instance of the {@link MethodSummaries} class
+	 * @param maxThreadNum The maximum number of threads to use for computing
+	 * the summaries, or -1 to use one thread per core
+	 */
+	public MethodSummaries(int maxThreadNum) {
+		setMaxThreadNum(maxThreadNum);
+	}
+
+	/**
+	 * Sets the maximum number of threads to use for computing the summaries.
+	 * This only affects summaries that have not been computed yet.
+	 * @param maxThreadNum The maximum number of threads, or -1 to use one
+	 * thread per core
+	 */
+	public void setMaxThreadNum(int maxThreadNum) {
+		int numThreads = maxThreadNum == -1
+				? Runtime.getRuntime().availableProcessors() : maxThreadNum;
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	/**
+	 * Checks whether the given static field is read inside the given method or
+	 * one of its transitive callees.
+	 * @param method The method to check
+	 * @param variable The static field to check
+	 * @return True if the given static field is read inside the given method,
+	 * otherwise false
+	 */
+	public boolean isStaticFieldRead(SootMethod method, SootField variable) {
+		Summary summary = getSummary(method);
+		Integer fieldId = fieldIds.get(variable);
+		return fieldId != null && summary.readFields.get(fieldId);
+	}
+
+	/**
+	 * Checks whether the given static field is read or written inside the
+	 * given method or one of its transitive callees.
+	 * @param method The method to check
+	 * @param variable The static field to check
+	 * @return True if the given static field is used inside the given method,
+	 * otherwise false
+	 */
+	public boolean isStaticFieldUsed(SootMethod method, SootField variable) {
+		Summary summary = getSummary(method);
+		Integer fieldId = fieldIds.get(variable);
+		return fieldId != null && (summary.readFields.get(fieldId)
+				|| summary.writtenFields.get(fieldId));
+	}
+
+	/**
+	 * Checks whether the given method or any of its transitive callees writes
+	 * to a field
+	 * @param method The method to check
+	 * @return True if the given method or one of its transitive callees has
+	 * side effects, otherwise false
+	 */
+	public boolean hasSideEffects(SootMethod method) {
+		return getSummary(method).hasSideEffects;
+	}
+
+	/**
+	 * Drops all summaries. They are recomputed on the next query.
+	 */
+	public synchronized void clear() {
+		summaries.clear();
+		reachableMethodsDone = false;
+	}
+
+	private Summary getSummary(SootMethod method) {
+		Summary summary = summaries.get(method);
+		if (summary != null)
+			return summary;
+
+		synchronized (this) {
+			if (!reachableMethodsDone) {
+				reachableMethodsDone = true;
+				if (Scene.v().hasCallGraph()) {
+					long beforeSummaries = System.nanoTime();
+					computeSummaries(Scene.v().getReachableMethods().listener());
+					logger.info("Summarized {} methods in {} seconds", summaries.size(),
+							(System.nanoTime() - beforeSummaries) / 1E9);
+				}
+			}
+			if (!summaries.containsKey(method))
+				computeSummaries(Collections.singletonList(method).iterator());
+			return summaries.get(method);
+		}
+	}
+
+	/**
+	 * Computes the summaries for all methods that are transitively called by
+	 * the given methods and that have not been summarized yet
+	 * @param roots The methods at which to start
+	 */
+	private void computeSummaries(Iterator<? extends MethodOrMethodContext> roots) {
+		Map<SootMethod, Node> nodes = new HashMap<SootMethod, Node>();
+		List<Component> components = findComponents(roots, nodes);
+		if (components.isEmpty())
+			return;
+
+		// Connect the components. The callees of a component must be
+		// summarized before the component itself.
+		for (Component component : components) {
+			Set<Component> calleeComponents = new HashSet<Component>();
+			for (Node node : component.nodes)
+				for (SootMethod callee : node.callees) {
+					Node calleeNode = nodes.get(callee);
+					if (calleeNode != null && calleeNode.component != component
+							&& calleeComponents.add(calleeNode.component))
+						calleeNode.component.callers.add(component);
+				}
+			component.pendingCallees.set(calleeComponents.size());
+		}
+
+		// Tarjan's algorithm finds the callees before their callers
+		if (numThreads == 1 || components.size() == 1) {
+			for (Component component : components)
+				summarize(component);
+			return;
+		}
+
+		// Find the leaves first, the running tasks already schedule their
+		// callers
+		List<Component> leaves = new ArrayList<Component>();
+		for (Component component : components)
+			if (component.pendingCallees.get() == 0)
+				leaves.add(component);
+
+		CountingThreadPoolExecutor executor = new CountingThreadPoolExecutor(
+				numThreads, Integer.MAX_VALUE, 30, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>());
+		try {
+			for (Component component : leaves)
+				executor.execute(new SummaryTask(executor, component));
+			executor.awaitCompletion();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			executor.shutdown();
+		}
+		if (executor.getException() != null)
+			throw new RuntimeException("Could not compute the method summaries",
+					executor.getException());
+	}
+
+	/**
+	 * Finds the strongly connected components in the part of the call graph
+	 * that is reachable from the given methods and has not been summarized
+	 * yet, using an iterative version of Tarjan's algorithm
+	 * @param roots The methods at which to start
+	 * @param nodes The map to which to add the nodes of all methods that have
+	 * been visited
+	 * @return The components in reverse topological order, i.e., callees come
+	 * before their callers
+	 */
+	private List<Component> findComponents(Iterator<? extends MethodOrMethodContext> roots,
+			Map<SootMethod, Node> nodes) {
+		List<Component> components = new ArrayList<Component>();
+		Deque<Node> stack = new ArrayDeque<Node>();
+		Deque<Node> dfsNodes = new ArrayDeque<Node>();
+		Deque<Iterator<SootMethod>> dfsCallees = new ArrayDeque<Iterator<SootMethod>>();
+
+		while (roots.hasNext()) {
+			SootMethod root = roots.next().method();
+			if (summaries.containsKey(root) || nodes.containsKey(root))
+				continue;
+
+			Node rootNode = createNode(root, nodes, stack);
+			dfsNodes.push(rootNode);
+			dfsCallees.push(rootNode.callees.iterator());
+			while (!dfsNodes.isEmpty()) {
+				Node node = dfsNodes.peek();
+				Iterator<SootMethod> calleeIt = dfsCallees.peek();
+				if (calleeIt.hasNext()) {
+					SootMethod callee = calleeIt.next();
+					if (summaries.containsKey(callee))
+						continue;
+					Node calleeNode = nodes.get(callee);
+					if (calleeNode == null) {
+						calleeNode = createNode(callee, nodes, stack);
+						dfsNodes.push(calleeNode);
+						dfsCallees.push(calleeNode.callees.iterator());
+					}
+					else if (calleeNode.onStack)
+						node.lowLink = Math.min(node.lowLink, calleeNode.index);
+					continue;
+				}
+
+				// All callees have been visited
+				dfsNodes.pop();
+				dfsCallees.pop();
+				if (node.lowLink == node.index) {
+					Component component = new Component();
+					Node member;
+					do {
+						member = stack.pop();
+						member.onStack = false;
+						member.component = component;
+						component.nodes.add(member);
+					} while (member != node);
+					components.add(component);
+				}
+				if (!dfsNodes.isEmpty()) {
+					Node caller = dfsNodes.peek();
+					caller.lowLink = Math.min(caller.lowLink, node.lowLink);
+				}
+			}
+		}
+
+		return components;
+	}
+
+	private Node createNode(SootMethod method, Map<SootMethod, Node> nodes, Deque<Node> stack) {
+		Node node = new Node(method, getCallees(method), nodes.size());
+		nodes.put(method, node);
+		stack.push(node);
+		return node;
+	}
+
+	/**
+	 * Gets the methods that are called from within the given method
+	 * @param method The method for which to get the callees
+	 * @return The methods called by the given method
+	 */
+	private List<SootMethod> getCallees(SootMethod method) {
+		// Without a body, we cannot say much
+		if (!method.hasActiveBody() || !Scene.v().hasCallGraph())
+			return Collections.emptyList();
+
+		List<SootMethod> callees = new ArrayList<SootMethod>();
+		for (Unit u : method.getActiveBody().getUnits())
+			if (((Stmt) u).containsInvokeExpr())
+				for (Iterator<Edge> edgeIt = Scene.v().getCallGraph().edgesOutOf(u); edgeIt.hasNext(); )
+					callees.add(edgeIt.next().tgt());
+		return callees;
+	}
+
+	/**
+	 * Computes the summary of the given component. The summaries of all
+	 * callees outside of the component must already be available.
+	 * @param component The component to summarize
+	 */
+	private void summarize(Component component) {
+		Summary summary = new Summary();
+		for (Node node : component.nodes) {
+			if (node.method.hasActiveBody())
+				for (Unit u : node.method.getActiveBody().getUnits()) {
+					if (!(u instanceof AssignStmt))
+						continue;
+					AssignStmt assign = (AssignStmt) u;
+					if (assign.getLeftOp() instanceof FieldRef) {
+						summary.hasSideEffects = true;
+						if (assign.getLeftOp() instanceof StaticFieldRef)
+							summary.writtenFields.set(getFieldId(
+									((StaticFieldRef) assign.getLeftOp()).getField()));
+					}
+					if (assign.getRightOp() instanceof StaticFieldRef)
+						summary.readFields.set(getFieldId(
+								((StaticFieldRef) assign.getRightOp()).getField()));
+				}
+
+			for (SootMethod callee : node.callees) {
+				Summary calleeSummary = summaries.get(callee);
+				if (calleeSummary != null)
+					summary.addAll(calleeSummary);
+			}
+		}
+
+		for (Node node : component.nodes)
+			summaries.put(node.method, summary);
+	}
+
+	private int getFieldId(SootField field) {
+		Integer id = fieldIds.get(field);
+		if (id == null) {
+			synchronized (fieldIds) {
+				id = fieldIds.get(field);
+				if (id == null) {
+					id = fieldIds.size();
+					fieldIds.put(field, id);
+				}
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * Task that summarizes a component and then schedules all callers whose
+	 * callees have all been summarized
+	 */
+	private class SummaryTask implements Runnable {
+
+		private final CountingThreadPoolExecutor executor;
+		private final Component component;
+
+		public SummaryTask(CountingThreadPoolExecutor executor, Component component) {
+			this.executor = executor;
+			this.component = component;
+		}
+
+		@Override
+		public void run() {
+			summarize(component);
+			for (Component caller : component.callers)
+				if (caller.pendingCallees.decrementAndGet() == 0)
+					executor.execute(new SummaryTask(executor, caller));
+		}
+
+	}
+
+}
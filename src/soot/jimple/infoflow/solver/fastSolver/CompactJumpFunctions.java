@@ -0,0 +1,238 @@
+package soot.jimple.infoflow.solver.fastSolver;
+
+import heros.solver.PathEdge;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Memory-efficient variant of the {@link JumpFunctions}. Statements and facts
+ * are interned to integer IDs, so that every edge becomes a (long, int) key
+ * in a striped open-addressing table. No {@link PathEdge} objects, map nodes
+ * or boxed integers are kept per edge or per interned object. For every edge,
+ * we still keep a reference to the target fact under which it was first
+ * registered, because the solver attaches neighbors to exactly that object.
+ */
+public class CompactJumpFunctions<N,D> implements IJumpFunctions<N,D> {
+
+	private static final int NUM_SEGMENTS = 64;
+	private static final int INITIAL_SEGMENT_CAPACITY = 64;
+
+	private volatile IdInterner<N> nodeIds = new IdInterner<N>();
+	private volatile IdInterner<D> factIds = new IdInterner<D>();
+	private volatile Segment[] segments = createSegments();
+
+	/**
+	 * Assigns dense integer IDs to objects based on their equality. The
+	 * objects are kept in a striped open-addressing table with the IDs in a
+	 * parallel int array. New IDs are only drawn while holding the lock of
+	 * the stripe, so an ID is never wasted on a lost race.
+	 */
+	private static class IdInterner<T> {
+
+		private final IdSegment[] segments = new IdSegment[NUM_SEGMENTS];
+		private final AtomicInteger nextId = new AtomicInteger(1);
+
+		public IdInterner() {
+			for (int i = 0; i < segments.length; i++)
+				segments[i] = new IdSegment();
+		}
+
+		/**
+		 * Gets the ID of the given object, creating a new one if necessary
+		 * @param obj The object for which to get the ID
+		 * @return The ID of the given object
+		 */
+		public int getId(T obj) {
+			int hash = spread(obj.hashCode());
+			return segments[(hash >>> 26) & (NUM_SEGMENTS - 1)].getId(obj, hash, nextId);
+		}
+
+	}
+
+	/**
+	 * One stripe of an {@link IdInterner}. The objects, their hash codes and
+	 * their IDs are kept in three parallel arrays.
+	 */
+	private static class IdSegment {
+
+		private Object[] objects = new Object[INITIAL_SEGMENT_CAPACITY];
+		private int[] hashes = new int[INITIAL_SEGMENT_CAPACITY];
+		private int[] ids = new int[INITIAL_SEGMENT_CAPACITY];
+		private int size = 0;
+
+		/**
+		 * Gets the ID of the given object, creating a new one if necessary
+		 * @param obj The object for which to get the ID
+		 * @param hash The spread hash code of the given object
+		 * @param nextId The counter from which to draw new IDs
+		 * @return The ID of the given object
+		 */
+		public synchronized int getId(Object obj, int hash, AtomicInteger nextId) {
+			int mask = objects.length - 1;
+			int idx = hash & mask;
+			while (true) {
+				Object curObj = objects[idx];
+				if (curObj == null)
+					break;
+				if (hashes[idx] == hash && (curObj == obj || curObj.equals(obj)))
+					return ids[idx];
+				idx = (idx + 1) & mask;
+			}
+
+			int id = nextId.getAndIncrement();
+			objects[idx] = obj;
+			hashes[idx] = hash;
+			ids[idx] = id;
+			if (++size * 4 > objects.length * 3)
+				rehash();
+			return id;
+		}
+
+		/**
+		 * Doubles the capacity of this segment
+		 */
+		private void rehash() {
+			Object[] oldObjects = objects;
+			int[] oldHashes = hashes;
+			int[] oldIds = ids;
+
+			objects = new Object[oldObjects.length * 2];
+			hashes = new int[oldObjects.length * 2];
+			ids = new int[oldObjects.length * 2];
+
+			int mask = objects.length - 1;
+			for (int i = 0; i < oldObjects.length; i++) {
+				if (oldObjects[i] == null)
+					continue;
+				int idx = oldHashes[i] & mask;
+				while (objects[idx] != null)
+					idx = (idx + 1) & mask;
+				objects[idx] = oldObjects[i];
+				hashes[idx] = oldHashes[i];
+				ids[idx] = oldIds[i];
+			}
+		}
+
+	}
+
+	/**
+	 * One stripe of the edge table. Every segment is a linear-probing hash
+	 * table over three parallel arrays.
+	 */
+	private static class Segment {
+
+		private long[] keys = new long[INITIAL_SEGMENT_CAPACITY];
+		private int[] sources = new int[INITIAL_SEGMENT_CAPACITY];
+		private Object[] values = new Object[INITIAL_SEGMENT_CAPACITY];
+		private int size = 0;
+
+		/**
+		 * Adds the given edge to this segment if no equal edge exists yet
+		 * @param hash The hash code of the edge
+		 * @param key The target node and target fact IDs of the edge
+		 * @param source The source fact ID of the edge
+		 * @param value The target fact to store with the edge
+		 * @return The fact of the existing equal edge if there is one,
+		 * otherwise null
+		 */
+		public synchronized Object putIfAbsent(int hash, long key, int source, Object value) {
+			if ((size + 1) * 4 > values.length * 3)
+				rehash();
+
+			int mask = values.length - 1;
+			int idx = hash & mask;
+			while (true) {
+				Object oldValue = values[idx];
+				if (oldValue == null) {
+					keys[idx] = key;
+					sources[idx] = source;
+					values[idx] = value;
+					size++;
+					return null;
+				}
+				if (keys[idx] == key && sources[idx] == source)
+					return oldValue;
+				idx = (idx + 1) & mask;
+			}
+		}
+
+		/**
+		 * Doubles the capacity of this segment
+		 */
+		private void rehash() {
+			long[] oldKeys = keys;
+			int[] oldSources = sources;
+			Object[] oldValues = values;
+
+			keys = new long[oldValues.length * 2];
+			sources = new int[oldValues.length * 2];
+			values = new Object[oldValues.length * 2];
+
+			int mask = values.length - 1;
+			for (int i = 0; i < oldValues.length; i++) {
+				if (oldValues[i] == null)
+					continue;
+				int idx = hash(oldKeys[i], oldSources[i]) & mask;
+				while (values[idx] != null)
+					idx = (idx + 1) & mask;
+				keys[idx] = oldKeys[i];
+				sources[idx] = oldSources[i];
+				values[idx] = oldValues[i];
+			}
+		}
+
+	}
+
+	/**
+	 * Computes the hash code for an edge key
+	 * @param key The target node and target fact IDs of the edge
+	 * @param source The source fact ID of the edge
+	 * @return The hash code for the given edge key
+	 */
+	private static int hash(long key, int source) {
+		long h = key * 0x9E3779B97F4A7C15L + source * 0xC2B2AE3D27D4EB4FL;
+		h ^= (h >>> 29);
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * Spreads the bits of the given hash code, so that both the stripe and
+	 * the slot within the stripe can be taken from it
+	 * @param h The original hash code
+	 * @return The spread hash code
+	 */
+	private static int spread(int h) {
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static Segment[] createSegments() {
+		Segment[] segments = new Segment[NUM_SEGMENTS];
+		for (int i = 0; i < segments.length; i++)
+			segments[i] = new Segment();
+		return segments;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public D addFunction(PathEdge<N, D> edge) {
+		long key = ((long) nodeIds.getId(edge.getTarget()) << 32)
+				| (factIds.getId(edge.factAtTarget()) & 0xFFFFFFFFL);
+		int source = factIds.getId(edge.factAtSource());
+
+		int hash = hash(key, source);
+		Segment segment = segments[(hash >>> 26) & (NUM_SEGMENTS - 1)];
+		return (D) segment.putIfAbsent(hash, key, source, edge.factAtTarget());
+	}
+
+	/**
+	 * Removes all jump functions
+	 */
+	@Override
+	public synchronized void clear() {
+		this.nodeIds = new IdInterner<N>();
+		this.factIds = new IdInterner<D>();
+		this.segments = createSegments();
+	}
+
+}
@@ -0,0 +1,18 @@
+package soot.jimple.infoflow.solver.fastSolver;
+
+/**
+ * Common interface for all tasks that can tell the executor to which group of
+ * related work they belong. Executors such as the {@link MethodAffineExecutor}
+ * use this key to run all tasks of the same group on the same worker thread.
+ */
+public interface IAffinityTask extends Runnable {
+
+	/**
+	 * Gets the key that identifies the group of related tasks this task
+	 * belongs to
+	 * @return The affinity key of this task, or null if the task can be run
+	 * on any worker thread
+	 */
+	public Object getAffinityKey();
+
+}
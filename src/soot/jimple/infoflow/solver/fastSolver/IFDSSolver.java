@@ -25,6 +25,7 @@ import heros.solver.CountingThreadPoolExecutor;
 import heros.solver.Pair;
 import heros.solver.PathEdge;
 
+import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -34,6 +35,8 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,6 +50,8 @@ import soot.jimple.infoflow.solver.IMemoryManager;
 import soot.jimple.toolkits.ide.icfg.BiDiInterproceduralCFG;
 
 import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 
 
 /**
@@ -68,6 +73,8 @@ public class IFDSSolver<N,D extends FastSolverLinkedNode<D, N>,M,I extends BiDiI
 
     //enable with -Dorg.slf4j.simpleLogger.defaultLogLevel=trace
     public static final boolean DEBUG = logger.isDebugEnabled();
+    
+    private static final long DEFAULT_COMPACTION_INTERVAL = 10000;
 
 	protected CountingThreadPoolExecutor executor;
 	
@@ -75,7 +82,7 @@ public class IFDSSolver<N,D extends FastSolverLinkedNode<D, N>,M,I extends BiDiI
 	protected int numThreads;
 	
 	@SynchronizedBy("thread safe data structure, consistent locking when used")
-	protected final JumpFunctions<N,D> jumpFn;
+	protected IJumpFunctions<N,D> jumpFn;
 	
 	@SynchronizedBy("thread safe data structure, only modified internally")
 	protected final I icfg;
@@ -89,8 +96,8 @@ public class IFDSSolver<N,D extends FastSolverLinkedNode<D, N>,M,I extends BiDiI
 	//edges going along calls
 	//see CC 2010 paper by Naeem, Lhotak and Rodriguez
 	@SynchronizedBy("consistent lock on field")
-	protected final MyConcurrentHashMap<Pair<M,D>,MyConcurrentHashMap<N,Map<D, D>>> incoming =
-			new MyConcurrentHashMap<Pair<M,D>,MyConcurrentHashMap<N,Map<D, D>>>();
+	protected final MyConcurrentHashMap<Pair<M,D>,Map<N,Map<D, D>>> incoming =
+			new MyConcurrentHashMap<Pair<M,D>,Map<N,Map<D, D>>>();
 	
 	@DontSynchronize("stateless")
 	protected final FlowFunctions<N, D, M> flowFunctions;
@@ -101,6 +108,12 @@ public class IFDSSolver<N,D extends FastSolverLinkedNode<D, N>,M,I extends BiDiI
 	@DontSynchronize("benign races")
 	public long propagationCount;
 	
+	@SynchronizedBy("atomic counter")
+	private final AtomicLong queueWaitTime = new AtomicLong();
+	
+	@SynchronizedBy("atomic counter")
+	private final AtomicLong taskCount = new AtomicLong();
+	
 	@DontSynchronize("stateless")
 	protected final D zeroValue;
 	
@@ -119,6 +132,39 @@ public class IFDSSolver<N,D extends FastSolverLinkedNode<D, N>,M,I extends BiDiI
 	@DontSynchronize("readOnly")
 	private IMemoryManager<D> memoryManager = null;
 	
+	@DontSynchronize("readOnly")
+	private int maxEdgeBatchSize = 0;
+	
+	@DontSynchronize("readOnly")
+	private boolean measureQueueWaitTime = false;
+	
+	@DontSynchronize("readOnly")
+	protected SpillingSolverStore<N,D,M> spillingStore = null;
+	
+	@DontSynchronize("readOnly")
+	private MethodWorkTracker<N,M> workTracker = null;
+	
+	@SynchronizedBy("atomic counter")
+	private final AtomicLong edgesSinceCompaction = new AtomicLong();
+	
+	@DontSynchronize("readOnly")
+	private long minCompactionInterval = DEFAULT_COMPACTION_INTERVAL;
+	
+	@DontSynchronize("only written while compacting")
+	private volatile long compactionInterval = DEFAULT_COMPACTION_INTERVAL;
+	
+	@SynchronizedBy("atomic flag")
+	private final AtomicBoolean compacting = new AtomicBoolean(false);
+	
+	@DontSynchronize("benign races")
+	public long compactedSummaryCount;
+	
+	@SynchronizedBy("atomic counter")
+	private final AtomicLong revivedSummaryCount = new AtomicLong();
+	
+	@DontSynchronize("thread-local")
+	private final ThreadLocal<EdgeBatch> currentBatch = new ThreadLocal<EdgeBatch>();
+	
 	/**
 	 * Creates a solver for the given problem, which caches flow functions and edge functions.
 	 * The solver must then be started by calling {@link #solve()}.
@@ -201,7 +247,9 @@ public class IFDSSolver<N,D extends FastSolverLinkedNode<D, N>,M,I extends BiDiI
 			try {
 				Thread.sleep(100);
 			} catch (InterruptedException e) {
-				e.printStackTrace();
+				// When the executor is stopped from the outside, the waiting
+				// thread may receive more than one interrupt. We simply
+				// keep on waiting.
 			}
 		}
 	}
@@ -213,7 +261,10 @@ public class IFDSSolver<N,D extends FastSolverLinkedNode<D, N>,M,I extends BiDiI
 		try {
 			executor.awaitCompletion();
 		} catch (InterruptedException e) {
-			e.printStackTrace();
+			// If the executor has been stopped from the outside, we just
+			// continue with what we have
+			if (!executor.isShutdown())
+				e.printStackTrace();
 		}
 		Throwable exception = executor.getException();
 		if(exception!=null) {
@@ -231,7 +282,29 @@ public class IFDSSolver<N,D extends FastSolverLinkedNode<D, N>,M,I extends BiDiI
     	if (executor.isTerminating())
     		return;
     	
-    	executor.execute(new PathEdgeProcessingTask(edge));
+    	if (workTracker != null)
+    		workTracker.edgeScheduled(icfg.getMethodOf(edge.getTarget()));
+    	
+    	// If we are inside a batch and the edge stays within the batch's
+    	// method, we process it on the current thread
+    	if (maxEdgeBatchSize > 1) {
+    		EdgeBatch batch = currentBatch.get();
+    		if (batch != null && batch.offer(edge)) {
+    			propagationCount++;
+    			return;
+    		}
+    	}
+    	
+    	PathEdgeProcessingTask task = new PathEdgeProcessingTask(edge);
+    	if (executor instanceof SetPoolExecutor) {
+    		// An equal task that is already waiting replaces ours. We must
+    		// not count our edge as outstanding, because it is never processed.
+    		if (!((SetPoolExecutor) executor).executeIfNotWaiting(task)
+    				&& workTracker != null)
+    			workTracker.edgeProcessed(icfg.getMethodOf(edge.getTarget()));
+    	}
+    	else
+    		executor.execute(task);
     	propagationCount++;
     }
 	
@@ -577,6 +650,8 @@ public class IFDSSolver<N,D extends FastSolverLinkedNode<D, N>,M,I extends BiDiI
 	}
 
 	protected Set<Pair<N, D>> endSummary(M m, D d3) {
+		if (spillingStore != null)
+			return spillingStore.endSummary(m, d3);
 		Set<Pair<N, D>> map = endSummary.get(new Pair<M, D>(m, d3));
 		return map;
 	}
@@ -584,21 +659,84 @@ public class IFDSSolver<N,D extends FastSolverLinkedNode<D, N>,M,I extends BiDiI
 	private boolean addEndSummary(M m, D d1, N eP, D d2) {
 		if (d1 == zeroValue)
 			return true;
+		if (spillingStore != null)
+			return spillingStore.addEndSummary(m, d1, eP, d2);
+		
+		Pair<M, D> key = new Pair<M, D>(m, d1);
+		Pair<N, D> summary = new Pair<N, D>(eP, d2);
+		if (workTracker == null) {
+			Set<Pair<N, D>> summaries = endSummary.putIfAbsentElseGet
+					(key, new ConcurrentHashSet<Pair<N, D>>());
+			return summaries.add(summary);
+		}
 		
-		Set<Pair<N, D>> summaries = endSummary.putIfAbsentElseGet
-				(new Pair<M, D>(m, d1), new ConcurrentHashSet<Pair<N, D>>());
-		return summaries.add(new Pair<N, D>(eP, d2));
+		// The summaries might be compacted concurrently, so we need to make
+		// sure that we write into the current set
+		while (true) {
+			Set<Pair<N, D>> summaries = endSummary.putIfAbsentElseGet
+					(key, new ConcurrentHashSet<Pair<N, D>>());
+			if (summaries instanceof ImmutableSet) {
+				if (summaries.contains(summary))
+					return false;
+				Set<Pair<N, D>> mutable = new ConcurrentHashSet<Pair<N, D>>();
+				mutable.addAll(summaries);
+				if (endSummary.replace(key, summaries, mutable))
+					revivedSummaryCount.incrementAndGet();
+				continue;
+			}
+			synchronized (summaries) {
+				if (endSummary.get(key) == summaries)
+					return summaries.add(summary);
+			}
+		}
 	}
 	
 	protected Map<N, Map<D, D>> incoming(D d1, M m) {
+		if (spillingStore != null)
+			return spillingStore.incoming(d1, m);
 		Map<N, Map<D, D>> map = incoming.get(new Pair<M, D>(m, d1));
 		return map;
 	}
 	
 	protected boolean addIncoming(M m, D d3, N n, D d1, D d2) {
-		MyConcurrentHashMap<N, Map<D, D>> summaries = incoming.putIfAbsentElseGet
-				(new Pair<M, D>(m, d3), new MyConcurrentHashMap<N, Map<D, D>>());
-		Map<D, D> set = summaries.putIfAbsentElseGet(n, new ConcurrentHashMap<D, D>());
+		if (spillingStore != null)
+			return spillingStore.addIncoming(m, d3, n, d1, d2);
+		Pair<M, D> key = new Pair<M, D>(m, d3);
+		if (workTracker == null)
+			return addIncoming(incoming.putIfAbsentElseGet(key,
+					new MyConcurrentHashMap<N, Map<D, D>>()), n, d1, d2);
+		
+		// The incoming edges might be compacted concurrently, so we need to
+		// make sure that we write into the current map
+		while (true) {
+			Map<N, Map<D, D>> summaries = incoming.putIfAbsentElseGet
+					(key, new MyConcurrentHashMap<N, Map<D, D>>());
+			if (summaries instanceof ImmutableMap) {
+				MyConcurrentHashMap<N, Map<D, D>> mutable = new MyConcurrentHashMap<N, Map<D, D>>();
+				for (Entry<N, Map<D, D>> entry : summaries.entrySet())
+					mutable.put(entry.getKey(), new ConcurrentHashMap<D, D>(entry.getValue()));
+				if (incoming.replace(key, summaries, mutable))
+					revivedSummaryCount.incrementAndGet();
+				continue;
+			}
+			synchronized (summaries) {
+				if (incoming.get(key) == summaries)
+					return addIncoming(summaries, n, d1, d2);
+			}
+		}
+	}
+	
+	/**
+	 * Adds an incoming edge to the given mutable map of incoming edges
+	 * @param summaries The map of incoming edges to extend
+	 * @param n The call site
+	 * @param d1 The abstraction at the caller's start node
+	 * @param d2 The abstraction at the call site
+	 * @return True if the incoming edge is new, otherwise false
+	 */
+	private boolean addIncoming(Map<N, Map<D, D>> summaries, N n, D d1, D d2) {
+		Map<D, D> set = ((MyConcurrentHashMap<N, Map<D, D>>) summaries)
+				.putIfAbsentElseGet(n, new ConcurrentHashMap<D, D>());
 		return set.put(d1, d2) == null;
 	}
 	
@@ -626,24 +764,184 @@ public class IFDSSolver<N,D extends FastSolverLinkedNode<D, N>,M,I extends BiDiI
 		}
 	}
 	
-	private class PathEdgeProcessingTask implements Runnable {
+	/**
+	 * Processes the given edge on the current thread
+	 * @param edge The edge to process
+	 */
+	private void executeEdge(PathEdge<N,D> edge) {
+		if(icfg.isCallStmt(edge.getTarget())) {
+			processCall(edge);
+		} else {
+			//note that some statements, such as "throw" may be
+			//both an exit statement and a "normal" statement
+			if(icfg.isExitStmt(edge.getTarget()))
+				processExit(edge);
+			if(!icfg.getSuccsOf(edge.getTarget()).isEmpty())
+				processNormalFlow(edge);
+		}
+		
+		if (workTracker != null) {
+			// With a single entry point, every method is in the call tree of
+			// a busy method's caller until the solver runs out of edges, so
+			// we always compact at that point
+			boolean idle = workTracker.edgeProcessed(icfg.getMethodOf(edge.getTarget()));
+			if (edgesSinceCompaction.incrementAndGet() > compactionInterval || idle)
+				compactFinishedMethods();
+		}
+	}
+	
+	/**
+	 * Replaces the end summaries and incoming edges of all methods that are
+	 * finished with compact read-only copies. If a finished method receives
+	 * new edges later on, its entries are copied back into mutable maps on
+	 * the next write, so the results are not affected.
+	 */
+	private void compactFinishedMethods() {
+		// Only one thread compacts at a time, the others just carry on
+		if (!compacting.compareAndSet(false, true))
+			return;
+		try {
+			edgesSinceCompaction.set(0);
+			Set<M> finished = workTracker.pollFinishedMethods();
+			if (finished.isEmpty())
+				return;
+			
+			for (Entry<Pair<M, D>, Set<Pair<N, D>>> entry : endSummary.entrySet()) {
+				Set<Pair<N, D>> summaries = entry.getValue();
+				if (summaries instanceof ImmutableSet
+						|| !finished.contains(entry.getKey().getO1()))
+					continue;
+				synchronized (summaries) {
+					if (endSummary.replace(entry.getKey(), summaries,
+							ImmutableSet.copyOf(summaries)))
+						compactedSummaryCount++;
+				}
+			}
+			
+			for (Entry<Pair<M, D>, Map<N, Map<D, D>>> entry : incoming.entrySet()) {
+				Map<N, Map<D, D>> inc = entry.getValue();
+				if (inc instanceof ImmutableMap
+						|| !finished.contains(entry.getKey().getO1()))
+					continue;
+				synchronized (inc) {
+					ImmutableMap.Builder<N, Map<D, D>> builder = ImmutableMap.builder();
+					for (Entry<N, Map<D, D>> callSite : inc.entrySet())
+						builder.put(callSite.getKey(), ImmutableMap.copyOf(callSite.getValue()));
+					if (incoming.replace(entry.getKey(), inc, builder.build()))
+						compactedSummaryCount++;
+				}
+			}
+			
+			// Make sure that the cost of the compaction is amortized over the
+			// edges processed until the next one
+			compactionInterval = Math.max(minCompactionInterval,
+					endSummary.size() + incoming.size());
+		}
+		finally {
+			compacting.set(false);
+		}
+	}
+	
+	/**
+	 * Local worklist of edges inside a single method that are processed by one
+	 * worker thread without being handed to the executor
+	 */
+	private class EdgeBatch {
+		
+		private final M method;
+		private final ArrayDeque<PathEdge<N,D>> worklist = new ArrayDeque<PathEdge<N,D>>();
+		private int size = 1;
+		
+		public EdgeBatch(M method) {
+			this.method = method;
+		}
+		
+		/**
+		 * Adds the given edge to this batch if it is a purely intra-procedural
+		 * edge inside the batch's method and the batch is not yet full
+		 * @param edge The edge to add
+		 * @return True if the edge has been added to this batch, false if it
+		 * must be scheduled on the executor instead
+		 */
+		public boolean offer(PathEdge<N,D> edge) {
+			if (size >= maxEdgeBatchSize)
+				return false;
+			N target = edge.getTarget();
+			if (icfg.isCallStmt(target) || icfg.isExitStmt(target))
+				return false;
+			if (icfg.getMethodOf(target) != method)
+				return false;
+			
+			worklist.add(edge);
+			size++;
+			return true;
+		}
+		
+		public PathEdge<N,D> poll() {
+			return worklist.poll();
+		}
+		
+	}
+	
+	/**
+	 * Gets the total time in nanoseconds that the edges of this solver have
+	 * spent in the executor's queue before being processed. The time is only
+	 * measured if this has been enabled using
+	 * {@link #setMeasureQueueWaitTime(boolean)}.
+	 * @return The accumulated queue waiting time in nanoseconds
+	 */
+	public long getQueueWaitTime() {
+		return this.queueWaitTime.get();
+	}
+	
+	/**
+	 * Sets whether the solver shall measure how long its edges wait in the
+	 * executor's queue. This requires two calls to {@link System#nanoTime()}
+	 * per task.
+	 * @param measureQueueWaitTime True if the queue waiting time shall be
+	 * measured, otherwise false
+	 */
+	public void setMeasureQueueWaitTime(boolean measureQueueWaitTime) {
+		this.measureQueueWaitTime = measureQueueWaitTime;
+	}
+	
+	private class PathEdgeProcessingTask implements IAffinityTask {
 		
 		private final PathEdge<N,D> edge;
+		private final long scheduleTime;
 
 		public PathEdgeProcessingTask(PathEdge<N,D> edge) {
 			this.edge = edge;
+			this.scheduleTime = measureQueueWaitTime ? System.nanoTime() : 0;
+		}
+
+		@Override
+		public Object getAffinityKey() {
+			return icfg.getMethodOf(edge.getTarget());
 		}
 
 		public void run() {
-			if(icfg.isCallStmt(edge.getTarget())) {
-				processCall(edge);
-			} else {
-				//note that some statements, such as "throw" may be
-				//both an exit statement and a "normal" statement
-				if(icfg.isExitStmt(edge.getTarget()))
-					processExit(edge);
-				if(!icfg.getSuccsOf(edge.getTarget()).isEmpty())
-					processNormalFlow(edge);
+			if (measureQueueWaitTime)
+				queueWaitTime.addAndGet(System.nanoTime() - scheduleTime);
+			taskCount.incrementAndGet();
+			
+			if (maxEdgeBatchSize <= 1) {
+				executeEdge(edge);
+				return;
+			}
+			
+			// Process the edge together with all intra-procedural edges
+			// derived from it without going through the executor
+			EdgeBatch batch = new EdgeBatch(icfg.getMethodOf(edge.getTarget()));
+			currentBatch.set(batch);
+			try {
+				executeEdge(edge);
+				PathEdge<N,D> nextEdge;
+				while (!executor.isTerminating() && (nextEdge = batch.poll()) != null)
+					executeEdge(nextEdge);
+			}
+			finally {
+				currentBatch.remove();
 			}
 		}
 
@@ -693,6 +991,91 @@ public class IFDSSolver<N,D extends FastSolverLinkedNode<D, N>,M,I extends BiDiI
 		this.enableMergePointChecking = enableMergePointChecking;
 	}
 	
+	/**
+	 * Sets the data structure in which this solver records its jump functions.
+	 * This must be called before the solver is started.
+	 * @param jumpFunctions The jump function store to be used by this solver
+	 */
+	public void setJumpFunctions(IJumpFunctions<N,D> jumpFunctions) {
+		this.jumpFn = jumpFunctions;
+	}
+	
+	/**
+	 * Sets the store that shall hold the jump functions, end summaries and
+	 * incoming edges of this solver instead of the default in-memory maps.
+	 * This must be called before the solver is started.
+	 * @param spillingStore The store that can spill the solver's data to disk
+	 */
+	public void setSpillingStore(SpillingSolverStore<N,D,M> spillingStore) {
+		this.spillingStore = spillingStore;
+		this.jumpFn = spillingStore.getJumpFunctions();
+	}
+	
+	/**
+	 * Sets whether the end summaries and incoming edges of methods that have
+	 * no more outstanding work shall be compacted into read-only copies to
+	 * reduce the memory consumption. This must be called before the solver is
+	 * started and has no effect if a spilling store is used.
+	 * @param enableSummaryCompaction True if the summaries of finished
+	 * methods shall be compacted, otherwise false
+	 */
+	public void setEnableSummaryCompaction(boolean enableSummaryCompaction) {
+		this.workTracker = enableSummaryCompaction
+				? new MethodWorkTracker<N,M>(icfg) : null;
+	}
+	
+	/**
+	 * Sets the minimum number of processed edges between two compactions of
+	 * the summaries of finished methods. The actual interval grows with the
+	 * number of summary sets so that the cost of a compaction is amortized.
+	 * This must be called before the solver is started.
+	 * @param summaryCompactionInterval The minimum number of edges between
+	 * two compactions
+	 */
+	public void setSummaryCompactionInterval(long summaryCompactionInterval) {
+		this.minCompactionInterval = summaryCompactionInterval;
+		this.compactionInterval = summaryCompactionInterval;
+	}
+	
+	/**
+	 * Gets the number of end summary and incoming edge sets that this solver
+	 * has compacted so far
+	 * @return The number of compacted summary sets
+	 */
+	public long getCompactedSummaryCount() {
+		return this.compactedSummaryCount;
+	}
+	
+	/**
+	 * Gets the number of compacted end summary and incoming edge sets that
+	 * this solver had to copy back into mutable sets, because their method
+	 * received new edges after it had been considered finished
+	 * @return The number of revived summary sets
+	 */
+	public long getRevivedSummaryCount() {
+		return this.revivedSummaryCount.get();
+	}
+	
+	/**
+	 * Sets the maximum number of intra-procedural edges that a worker thread
+	 * processes in one batch before handing new edges to the executor. Edges
+	 * that cross a call or return boundary are always handed to the executor.
+	 * @param maxEdgeBatchSize The maximum number of edges per batch. Values of
+	 * one or less disable batching.
+	 */
+	public void setMaxEdgeBatchSize(int maxEdgeBatchSize) {
+		this.maxEdgeBatchSize = maxEdgeBatchSize;
+	}
+	
+	/**
+	 * Gets the number of executor tasks this solver has run so far. When edge
+	 * batching is enabled, one task can process multiple edges.
+	 * @return The number of executor tasks run by this solver
+	 */
+	public long getTaskCount() {
+		return this.taskCount.get();
+	}
+	
 	/**
 	 * Sets the memory manager that shall be used to manage the abstractions
 	 * @param memoryManager The memory manager that shall be used to manage the
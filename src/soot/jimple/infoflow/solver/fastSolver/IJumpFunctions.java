@@ -0,0 +1,25 @@
+package soot.jimple.infoflow.solver.fastSolver;
+
+import heros.solver.PathEdge;
+
+/**
+ * Common interface for all data structures in which the solver records its
+ * jump functions
+ */
+public interface IJumpFunctions<N,D> {
+
+	/**
+	 * Records a jump function. The source statement is implicit.
+	 * @param edge The edge to record
+	 * @return The target fact of an equal edge that has already been recorded
+	 * before, or null if the given edge is new
+	 * @see PathEdge
+	 */
+	public D addFunction(PathEdge<N, D> edge);
+
+	/**
+	 * Removes all jump functions
+	 */
+	public void clear();
+
+}
@@ -0,0 +1,73 @@
+package soot.jimple.infoflow.solver.fastSolver;
+
+import heros.solver.CountingThreadPoolExecutor;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor that can be stopped from the outside while the solver is still
+ * waiting for it to complete. Once the executor has been interrupted, new
+ * tasks are silently dropped and failures of the tasks that are still running
+ * are not reported, so that the solver returns normally with the results it
+ * has computed so far.
+ */
+public class InterruptableExecutor extends CountingThreadPoolExecutor {
+
+	private volatile boolean interrupted = false;
+
+	public InterruptableExecutor(int corePoolSize, int maximumPoolSize,
+			long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue) {
+		super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue);
+	}
+
+	/**
+	 * Stops this executor. Pending tasks are discarded, running tasks are
+	 * interrupted, and all threads waiting for the completion of this executor
+	 * are released.
+	 */
+	public void interrupt() {
+		interrupted = true;
+		shutdownNow();
+		numRunningTasks.resetAndInterrupt();
+	}
+
+	/**
+	 * Gets whether this executor has been stopped using {@link #interrupt()}
+	 * @return True if this executor has been interrupted, otherwise false
+	 */
+	public boolean isInterrupted() {
+		return interrupted;
+	}
+
+	/**
+	 * Gets the number of tasks that have been submitted, but not yet started
+	 * @return The number of pending tasks
+	 */
+	public int getPendingTaskCount() {
+		return getQueue().size();
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		if (interrupted)
+			return;
+		try {
+			super.execute(command);
+		}
+		catch (RejectedExecutionException ex) {
+			// We may have been interrupted in the meantime
+			if (!interrupted)
+				throw ex;
+		}
+	}
+
+	@Override
+	protected void afterExecute(Runnable r, Throwable t) {
+		// Tasks that were interrupted or whose successors were rejected
+		// are no errors
+		super.afterExecute(r, interrupted ? null : t);
+	}
+
+}
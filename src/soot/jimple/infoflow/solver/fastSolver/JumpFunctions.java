@@ -22,7 +22,7 @@ import soot.jimple.infoflow.collect.MyConcurrentHashMap;
  * elements from the list through three different indices.
  */
 @ThreadSafe
-public class JumpFunctions<N,D> {
+public class JumpFunctions<N,D> implements IJumpFunctions<N,D> {
 		
 	//mapping from target node and value to a list of all source values and associated functions
 	//where the list is implemented as a mapping from the source value to the function
@@ -34,17 +34,12 @@ public class JumpFunctions<N,D> {
 	public JumpFunctions() {
 	}
 
-	/**
-	 * Records a jump function. The source statement is implicit.
-	 * @see PathEdge
-	 */
+	@Override
 	public D addFunction(PathEdge<N, D> edge) {
 		return nonEmptyReverseLookup.putIfAbsent(edge, edge.factAtTarget());
 	}
 	
-	/**
-	 * Removes all jump functions
-	 */
+	@Override
 	public synchronized void clear() {
 		this.nonEmptyReverseLookup = new MyConcurrentHashMap<PathEdge<N,D>, D>();
 	}
@@ -0,0 +1,270 @@
+package soot.jimple.infoflow.solver.fastSolver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Executor that gives every worker thread its own task deque instead of using
+ * one shared queue. Tasks implementing {@link IAffinityTask} are always routed
+ * to the same worker for the same affinity key, e.g., all edges of one method
+ * end up on the same core. Workers that run out of work steal tasks from the
+ * tail of the other workers' deques.
+ *
+ * The thread pool of the parent class is never used for running tasks, it
+ * only keeps track of the executor's lifecycle. The task counting for
+ * {@link #awaitCompletion()} is shared with the parent class.
+ */
+public class MethodAffineExecutor extends InterruptableExecutor {
+
+	/**
+	 * Maximum time an idle worker sleeps before it looks for work to steal
+	 * again
+	 */
+	private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+	private final Worker[] workers;
+	private final ConcurrentLinkedQueue<Worker> idleWorkers = new ConcurrentLinkedQueue<Worker>();
+
+	private final AtomicBoolean started = new AtomicBoolean(false);
+	private final AtomicInteger liveWorkers = new AtomicInteger(0);
+	private final AtomicInteger activeCount = new AtomicInteger(0);
+	private final AtomicInteger nextWorker = new AtomicInteger(0);
+	private final AtomicLong stealCount = new AtomicLong(0);
+
+	private volatile boolean shutdown = false;
+
+	/**
+	 * Creates a new instance of the MethodAffineExecutor class
+	 * @param numThreads The number of worker threads to use
+	 */
+	public MethodAffineExecutor(int numThreads) {
+		super(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+		this.workers = new Worker[Math.max(1, numThreads)];
+		for (int i = 0; i < workers.length; i++)
+			workers[i] = new Worker(i);
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		if (isInterrupted())
+			return;
+		if (shutdown)
+			throw new RejectedExecutionException("Executor has already been shut down");
+
+		// We only create our threads once there is something to do
+		if (started.compareAndSet(false, true))
+			for (Worker w : workers) {
+				liveWorkers.incrementAndGet();
+				w.start();
+			}
+
+		numRunningTasks.increment();
+		Worker target = selectWorker(command);
+		target.tasks.offerFirst(command);
+
+		// Wake up the owner of the task if it is sleeping. Otherwise, give an
+		// idle worker the chance to steal some work.
+		if (target.idle.get())
+			LockSupport.unpark(target);
+		else {
+			Worker thief = idleWorkers.poll();
+			if (thief != null && thief.idle.compareAndSet(true, false))
+				LockSupport.unpark(thief);
+		}
+	}
+
+	/**
+	 * Selects the worker on which the given task shall be run
+	 * @param command The task to be scheduled
+	 * @return The worker that shall run the given task
+	 */
+	private Worker selectWorker(Runnable command) {
+		if (command instanceof IAffinityTask) {
+			Object key = ((IAffinityTask) command).getAffinityKey();
+			if (key != null) {
+				int h = key.hashCode();
+				h ^= (h >>> 16);
+				return workers[(h & 0x7fffffff) % workers.length];
+			}
+		}
+
+		// Tasks without affinity stay on the current worker if possible
+		Thread curThread = Thread.currentThread();
+		if (curThread instanceof Worker && ((Worker) curThread).getExecutor() == this)
+			return (Worker) curThread;
+		return workers[(nextWorker.getAndIncrement() & 0x7fffffff) % workers.length];
+	}
+
+	@Override
+	public void shutdown() {
+		shutdown = true;
+		super.shutdown();
+		for (Worker w : workers)
+			LockSupport.unpark(w);
+	}
+
+	@Override
+	public List<Runnable> shutdownNow() {
+		shutdown = true;
+		List<Runnable> pending = new ArrayList<Runnable>();
+		for (Worker w : workers) {
+			Runnable task;
+			while ((task = w.tasks.pollFirst()) != null)
+				pending.add(task);
+		}
+		pending.addAll(super.shutdownNow());
+		for (Worker w : workers)
+			w.interrupt();
+		return pending;
+	}
+
+	@Override
+	public boolean isTerminating() {
+		return shutdown && !isTerminated();
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return shutdown && liveWorkers.get() == 0 && super.isTerminated();
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (Worker w : workers) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0)
+				return isTerminated();
+			TimeUnit.NANOSECONDS.timedJoin(w, remaining);
+		}
+		return super.awaitTermination(Math.max(0, deadline - System.nanoTime()),
+				TimeUnit.NANOSECONDS) && isTerminated();
+	}
+
+	@Override
+	public int getPendingTaskCount() {
+		int count = 0;
+		for (Worker w : workers)
+			count += w.tasks.size();
+		return count;
+	}
+
+	@Override
+	public int getActiveCount() {
+		return activeCount.get();
+	}
+
+	/**
+	 * Gets the number of tasks that were not run by the worker they were
+	 * routed to, but stolen by another worker
+	 * @return The number of stolen tasks
+	 */
+	public long getStealCount() {
+		return stealCount.get();
+	}
+
+	/**
+	 * Worker thread that primarily runs the tasks from its own deque and steals
+	 * from the other workers when it runs out of work
+	 */
+	private class Worker extends Thread {
+
+		private final int index;
+		private final ConcurrentLinkedDeque<Runnable> tasks = new ConcurrentLinkedDeque<Runnable>();
+		private final AtomicBoolean idle = new AtomicBoolean(false);
+
+		public Worker(int index) {
+			super("MethodAffineExecutor-worker-" + index);
+			this.index = index;
+			setDaemon(true);
+		}
+
+		public MethodAffineExecutor getExecutor() {
+			return MethodAffineExecutor.this;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					Runnable task = nextTask();
+					if (task == null) {
+						if (shutdown)
+							break;
+
+						// Tell the others that we are idle and look again,
+						// so that we don't miss tasks scheduled in between
+						if (idle.compareAndSet(false, true))
+							idleWorkers.offer(this);
+						task = nextTask();
+						if (task == null) {
+							if (shutdown)
+								break;
+							LockSupport.parkNanos(this, PARK_NANOS);
+							continue;
+						}
+					}
+
+					if (idle.compareAndSet(true, false))
+						idleWorkers.remove(this);
+					runTask(task);
+				}
+			}
+			finally {
+				liveWorkers.decrementAndGet();
+			}
+		}
+
+		/**
+		 * Gets the next task to run, either from this worker's own deque or
+		 * stolen from another worker
+		 * @return The next task to run, or null if there is no more work
+		 */
+		private Runnable nextTask() {
+			Runnable task = tasks.pollFirst();
+			if (task != null)
+				return task;
+
+			for (int i = 1; i < workers.length; i++) {
+				Worker victim = workers[(index + i) % workers.length];
+				task = victim.tasks.pollLast();
+				if (task != null) {
+					stealCount.incrementAndGet();
+					return task;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Runs the given task and updates the task counters
+		 * @param task The task to run
+		 */
+		private void runTask(Runnable task) {
+			Throwable thrown = null;
+			activeCount.incrementAndGet();
+			try {
+				task.run();
+			}
+			catch (Throwable t) {
+				thrown = t;
+			}
+			finally {
+				activeCount.decrementAndGet();
+				afterExecute(task, thrown);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,163 @@
+package soot.jimple.infoflow.solver.fastSolver;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import soot.jimple.toolkits.ide.icfg.BiDiInterproceduralCFG;
+
+/**
+ * Class for keeping track of the number of path edges that are still waiting
+ * to be processed in each method. A method is considered finished if no
+ * method in the call trees of its transitive callers has outstanding edges.
+ * It is not enough to only look at the callers themselves: an idle caller
+ * becomes active again as soon as one of its busy callees returns into it, and
+ * may then call the method again. If all of these call trees are idle, no new
+ * incoming calls into the method are to be expected.
+ *
+ * Only methods whose last outstanding edge has been processed since the
+ * previous query, and methods that were still active at that time, are
+ * candidates. The active methods are computed once per query, so a query is
+ * linear in the size of the call graph.
+ */
+public class MethodWorkTracker<N,M> {
+
+	private final BiDiInterproceduralCFG<N, M> icfg;
+	private final ConcurrentMap<M, AtomicInteger> pendingEdges = new ConcurrentHashMap<M, AtomicInteger>();
+	private final AtomicInteger totalPendingEdges = new AtomicInteger();
+
+	/**
+	 * Methods whose last outstanding edge has been processed
+	 */
+	private final ConcurrentLinkedQueue<M> drainedMethods = new ConcurrentLinkedQueue<M>();
+
+	/**
+	 * Methods without outstanding edges that may still receive new edges. Only
+	 * accessed by the thread that queries the finished methods.
+	 */
+	private final Set<M> waitingMethods = new HashSet<M>();
+
+	/**
+	 * Creates a new instance of the MethodWorkTracker class
+	 * @param icfg The interprocedural control flow graph
+	 */
+	public MethodWorkTracker(BiDiInterproceduralCFG<N, M> icfg) {
+		this.icfg = icfg;
+	}
+
+	/**
+	 * Records that a new edge has been scheduled in the given method
+	 * @param method The method in which the edge has been scheduled
+	 */
+	public void edgeScheduled(M method) {
+		AtomicInteger counter = pendingEdges.get(method);
+		if (counter == null) {
+			counter = new AtomicInteger();
+			AtomicInteger oldCounter = pendingEdges.putIfAbsent(method, counter);
+			if (oldCounter != null)
+				counter = oldCounter;
+		}
+		counter.incrementAndGet();
+		totalPendingEdges.incrementAndGet();
+	}
+
+	/**
+	 * Records that an edge in the given method has been processed
+	 * @param method The method in which the edge has been processed
+	 * @return True if no method has outstanding edges anymore, i.e., all
+	 * waiting methods are finished now, otherwise false
+	 */
+	public boolean edgeProcessed(M method) {
+		AtomicInteger counter = pendingEdges.get(method);
+		if (counter == null)
+			return false;
+		if (counter.decrementAndGet() == 0)
+			drainedMethods.add(method);
+		return totalPendingEdges.decrementAndGet() == 0;
+	}
+
+	/**
+	 * Computes the methods that have become finished since the last call.
+	 * Every method in the returned set is finished at the time of the call,
+	 * but may be revived by edges injected from outside the solver. In that
+	 * case, it is reported again once it is finished again. This method must
+	 * not be called by multiple threads concurrently.
+	 * @return The set of methods that have become finished since the last
+	 * call. It may also contain idle callers of these methods that have been
+	 * reported before.
+	 */
+	public Set<M> pollFinishedMethods() {
+		M drained;
+		while ((drained = drainedMethods.poll()) != null)
+			waitingMethods.add(drained);
+		if (waitingMethods.isEmpty())
+			return Collections.emptySet();
+
+		// A method is finished if it is not in the call tree of any transitive
+		// caller of a busy method. The callers of a finished method are
+		// finished as well.
+		Set<M> active = getActiveMethods();
+		Set<M> finished = new HashSet<M>();
+		for (Iterator<M> it = waitingMethods.iterator(); it.hasNext(); ) {
+			M method = it.next();
+			if (active.contains(method))
+				continue;
+			it.remove();
+			addTransitiveCallers(method, finished);
+		}
+		return finished;
+	}
+
+	/**
+	 * Computes the methods that may still receive new edges, i.e., all
+	 * methods in the call trees of the busy methods and their transitive
+	 * callers
+	 * @return The methods that may still receive new edges
+	 */
+	private Set<M> getActiveMethods() {
+		Set<M> active = new HashSet<M>();
+		for (Entry<M, AtomicInteger> entry : pendingEdges.entrySet())
+			if (entry.getValue().get() > 0)
+				addTransitiveCallers(entry.getKey(), active);
+
+		ArrayDeque<M> worklist = new ArrayDeque<M>(active);
+		while (!worklist.isEmpty()) {
+			M curMethod = worklist.poll();
+			for (N callSite : icfg.getCallsFromWithin(curMethod))
+				for (M callee : icfg.getCalleesOfCallAt(callSite))
+					if (active.add(callee))
+						worklist.add(callee);
+		}
+		return active;
+	}
+
+	/**
+	 * Walks up the call graph and adds the given method and its transitive
+	 * callers to the given set. The walk does not continue beyond methods that
+	 * are already in the set.
+	 * @param method The method at which to start
+	 * @param methods The set to which to add the methods
+	 */
+	private void addTransitiveCallers(M method, Set<M> methods) {
+		if (!methods.add(method))
+			return;
+		ArrayDeque<M> worklist = new ArrayDeque<M>();
+		worklist.add(method);
+		while (!worklist.isEmpty()) {
+			M curMethod = worklist.poll();
+			for (N callSite : icfg.getCallersOf(curMethod)) {
+				M caller = icfg.getMethodOf(callSite);
+				if (methods.add(caller))
+					worklist.add(caller);
+			}
+		}
+	}
+
+}
@@ -11,7 +11,15 @@ import java.util.concurrent.TimeUnit;
 /**
  * Executor class that ensures that no two equal tasks are in the queue at the
  * same time
- * 
+ *
+ * This executor is only the fallback of {@link IFDSSolver#getExecutor()}. The
+ * solvers that Infoflow creates always use executors without a set of waiting
+ * tasks. For edges that are registered in the jump functions, propagate()
+ * already schedules every edge only once. The other edges are left out of the
+ * jump functions to save memory, so processing one of them twice is cheaper
+ * than keeping a set of them. The set therefore only costs something for
+ * solvers that run with this executor.
+ *
  * @author Steven Arzt
  *
  */
@@ -26,10 +34,23 @@ public class SetPoolExecutor extends CountingThreadPoolExecutor {
 	
 	@Override
 	public void execute(Runnable command) {
+		executeIfNotWaiting(command);
+	}
+	
+	/**
+	 * Schedules the given task for execution unless an equal task is already
+	 * waiting or running
+	 * @param command The task to schedule
+	 * @return True if the task has been scheduled, false if it has been
+	 * dropped in favor of the equal task
+	 */
+	public boolean executeIfNotWaiting(Runnable command) {
 		// Make sure that we don't schedule a task for execution that is already
 		// in the queue
-		if (waiting.add(command))
-			super.execute(command);
+		if (!waiting.add(command))
+			return false;
+		super.execute(command);
+		return true;
 	}
 	
 	@Override
@@ -0,0 +1,200 @@
+package soot.jimple.infoflow.solver.fastSolver;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import soot.jimple.infoflow.results.InfoflowResults.TerminationReason;
+
+/**
+ * Thread that watches the data flow solvers while they are running. If the
+ * solvers exceed their time or memory budget, the watchdog interrupts their
+ * executor, so that the analysis can continue with the results that have been
+ * found so far.
+ *
+ * The memory budget applies to the live set. If the heap is over the budget,
+ * the watchdog first looks at the heap usage after the last garbage
+ * collection, and only forces a collection of its own at most every
+ * {@link #MIN_GC_INTERVAL_NANOS} nanoseconds.
+ */
+public class SolverWatchdog implements Runnable {
+
+	private static final Logger logger = LoggerFactory.getLogger(SolverWatchdog.class);
+
+	private static final long CHECK_INTERVAL_MILLIS = 200;
+	private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+	private static final long MIN_GC_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+	private final InterruptableExecutor executor;
+	private final List<IFDSSolver<?, ?, ?, ?>> solvers = new ArrayList<IFDSSolver<?, ?, ?, ?>>();
+	private final long timeoutNanos;
+	private final long maxMemory;
+
+	private Thread thread = null;
+	private long startTime = 0;
+	private long lastForcedGC = 0;
+	private boolean stopped = false;
+	private volatile TerminationReason terminationReason = TerminationReason.Completed;
+
+	/**
+	 * Creates a new instance of the SolverWatchdog class
+	 * @param executor The executor to interrupt when a budget is exceeded
+	 * @param timeout The maximum running time in seconds, or 0 for no limit
+	 * @param maxMemory The maximum heap usage in megabytes, or 0 for no limit
+	 */
+	public SolverWatchdog(InterruptableExecutor executor, long timeout, long maxMemory) {
+		this.executor = executor;
+		this.timeoutNanos = TimeUnit.SECONDS.toNanos(timeout);
+		this.maxMemory = maxMemory * 1024 * 1024;
+	}
+
+	/**
+	 * Adds a solver whose progress shall be reported by this watchdog
+	 * @param solver The solver to watch
+	 */
+	public void addSolver(IFDSSolver<?, ?, ?, ?> solver) {
+		this.solvers.add(solver);
+	}
+
+	/**
+	 * Starts watching the solvers
+	 */
+	public synchronized void start() {
+		if (thread != null)
+			throw new IllegalStateException("Watchdog has already been started");
+		startTime = System.nanoTime();
+		thread = new Thread(this, "SolverWatchdog");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops watching the solvers. After this method has returned, the watchdog
+	 * will no longer interrupt the executor.
+	 */
+	public void stop() {
+		Thread t;
+		synchronized (this) {
+			stopped = true;
+			t = thread;
+		}
+		if (t != null) {
+			t.interrupt();
+			try {
+				t.join();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Gets why the solvers terminated
+	 * @return {@link TerminationReason#Completed} if the solvers stayed within
+	 * their budgets, otherwise the budget that was exceeded
+	 */
+	public TerminationReason getTerminationReason() {
+		return this.terminationReason;
+	}
+
+	@Override
+	public void run() {
+		long lastReport = startTime;
+		while (true) {
+			try {
+				Thread.sleep(CHECK_INTERVAL_MILLIS);
+			}
+			catch (InterruptedException e) {
+				// We have been stopped
+			}
+			synchronized (this) {
+				if (stopped || executor.isTerminated())
+					return;
+			}
+
+			long now = System.nanoTime();
+			if (timeoutNanos > 0 && now - startTime > timeoutNanos) {
+				abort(TerminationReason.DataFlowTimeout);
+				return;
+			}
+			if (maxMemory > 0 && getUsedMemory() > maxMemory) {
+				// Make sure that we do not count garbage. The usage after the
+				// last collection may be outdated, so we confirm it with a
+				// collection of our own from time to time.
+				if (getCollectionUsage() > maxMemory) {
+					abort(TerminationReason.MemoryExhausted);
+					return;
+				}
+				if (lastForcedGC == 0 || now - lastForcedGC >= MIN_GC_INTERVAL_NANOS) {
+					System.gc();
+					lastForcedGC = System.nanoTime();
+					if (getUsedMemory() > maxMemory) {
+						abort(TerminationReason.MemoryExhausted);
+						return;
+					}
+				}
+			}
+
+			if (now - lastReport >= REPORT_INTERVAL_NANOS) {
+				logger.info("Solvers have processed {} edges in {} seconds, {} tasks "
+						+ "are pending, {} MB of memory are in use",
+						getPropagationCount(), (now - startTime) / 1E9,
+						executor.getPendingTaskCount(), getUsedMemory() / (1024 * 1024));
+				lastReport = now;
+			}
+		}
+	}
+
+	/**
+	 * Stops the solvers because they have exceeded one of their budgets
+	 * @param reason The budget that was exceeded
+	 */
+	private synchronized void abort(TerminationReason reason) {
+		if (stopped)
+			return;
+		logger.warn("Data flow analysis exceeded its budget ({}) after {} edges with "
+				+ "{} pending tasks and {} MB of used memory, stopping the solvers",
+				reason, getPropagationCount(), executor.getPendingTaskCount(),
+				getUsedMemory() / (1024 * 1024));
+		terminationReason = reason;
+		executor.interrupt();
+	}
+
+	private long getPropagationCount() {
+		long count = 0;
+		for (IFDSSolver<?, ?, ?, ?> solver : solvers)
+			count += solver.propagationCount;
+		return count;
+	}
+
+	private static long getUsedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Gets the heap usage right after the most recent garbage collection of
+	 * each heap memory pool
+	 * @return The heap usage after the last garbage collections in bytes
+	 */
+	private static long getCollectionUsage() {
+		long used = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() != MemoryType.HEAP)
+				continue;
+			MemoryUsage usage = pool.getCollectionUsage();
+			if (usage != null)
+				used += usage.getUsed();
+		}
+		return used;
+	}
+
+}
@@ -0,0 +1,1118 @@
+package soot.jimple.infoflow.solver.fastSolver;
+
+import heros.solver.Pair;
+import heros.solver.PathEdge;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import soot.jimple.toolkits.ide.icfg.BiDiInterproceduralCFG;
+
+/**
+ * Storage backend for the jump functions, end summaries and incoming call
+ * edges of the {@link IFDSSolver} that can move data of cold methods out of
+ * the heap. All entries are partitioned by method and encoded as tuples of
+ * integer IDs. When the number of entries kept on the heap exceeds a given
+ * limit, the partitions of the methods that have not been accessed for the
+ * longest time are written to memory-mapped files. A spilled partition is
+ * loaded again as soon as the solver touches its method.
+ *
+ * Every fact receives an ID that remains stable for the whole solver run, so
+ * the store never mistakes a known edge for a new one. The IDs are assigned by
+ * an interner that holds a detached copy of every distinct fact without its
+ * predecessor, so it does not keep any predecessor chains alive.
+ *
+ * The fact objects themselves cannot be written to disk, because the solver
+ * relies on their object identity, e.g., for predecessors and neighbors. The
+ * tuples instead refer to the objects through handles into a weak identity
+ * table, and these handles are spilled together with the tuples. A resident
+ * partition keeps the facts of its end summaries and incoming edges alive,
+ * since the solver derives new facts from them. A spilled partition does not
+ * keep any facts alive. If a fact has been garbage-collected when its
+ * partition is reloaded, the store falls back to the detached copy for the
+ * same ID. The analysis results are the same, but a reconstructed path may
+ * then end at the detached copy. The target facts of jump functions are never
+ * kept alive by the store. If such a fact has been collected, an equal new
+ * fact takes its place.
+ */
+public class SpillingSolverStore<N,D,M> {
+
+	protected static final Logger logger = LoggerFactory.getLogger(SpillingSolverStore.class);
+
+	private final BiDiInterproceduralCFG<N, M> icfg;
+	private final File spillDirectory;
+	private final long maxResidentEntries;
+
+	private volatile Interner<N> nodeIds = new Interner<N>();
+	private volatile Interner<D> factIds = newFactInterner();
+	private volatile HandleTable<D> handles = new HandleTable<D>();
+
+	private final ConcurrentMap<M, Partition> partitions = new ConcurrentHashMap<M, Partition>();
+	private final AtomicLong residentEntries = new AtomicLong(0);
+	private final AtomicBoolean evicting = new AtomicBoolean(false);
+
+	private final AtomicLong spillCount = new AtomicLong(0);
+	private final AtomicLong reloadCount = new AtomicLong(0);
+
+	private final AtomicLong accessClock = new AtomicLong(0);
+
+	private final IJumpFunctions<N,D> jumpFunctions = new IJumpFunctions<N,D>() {
+
+		@Override
+		public D addFunction(PathEdge<N, D> edge) {
+			return SpillingSolverStore.this.addFunction(edge);
+		}
+
+		@Override
+		public void clear() {
+			SpillingSolverStore.this.clear();
+		}
+
+	};
+
+	/**
+	 * Creates a new instance of the SpillingSolverStore class
+	 * @param icfg The interprocedural control flow graph used to find the
+	 * method of a statement
+	 * @param spillDirectory The directory in which to create the spill files.
+	 * Pass null to use the system's temporary directory.
+	 * @param maxResidentEntries The maximum number of entries to keep on the
+	 * heap before partitions are spilled to disk
+	 */
+	public SpillingSolverStore(BiDiInterproceduralCFG<N, M> icfg,
+			String spillDirectory, long maxResidentEntries) {
+		this.icfg = icfg;
+		this.spillDirectory = spillDirectory == null ? null : new File(spillDirectory);
+		this.maxResidentEntries = maxResidentEntries;
+		if (this.spillDirectory != null)
+			this.spillDirectory.mkdirs();
+	}
+
+	/**
+	 * Append-only table of objects that can be accessed by index without
+	 * locking
+	 */
+	private static class ObjectTable<T> {
+
+		private static final int CHUNK_BITS = 14;
+		private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+		private volatile Object[][] chunks = new Object[16][];
+		private final AtomicInteger size = new AtomicInteger(0);
+
+		/**
+		 * Adds the given object to this table
+		 * @param obj The object to add
+		 * @return The index of the new entry
+		 */
+		public int add(T obj) {
+			int idx = size.getAndIncrement();
+			Object[] chunk = getChunk(idx >>> CHUNK_BITS);
+			chunk[idx & (CHUNK_SIZE - 1)] = obj;
+			return idx;
+		}
+
+		/**
+		 * Replaces the object at the given index
+		 * @param idx The index of the entry to replace
+		 * @param obj The new object
+		 */
+		public void set(int idx, T obj) {
+			chunks[idx >>> CHUNK_BITS][idx & (CHUNK_SIZE - 1)] = obj;
+		}
+
+		@SuppressWarnings("unchecked")
+		public T get(int idx) {
+			return (T) chunks[idx >>> CHUNK_BITS][idx & (CHUNK_SIZE - 1)];
+		}
+
+		public int size() {
+			return size.get();
+		}
+
+		/**
+		 * Gets the chunk with the given index, creating it if necessary
+		 * @param chunkIdx The index of the chunk
+		 * @return The chunk with the given index
+		 */
+		private Object[] getChunk(int chunkIdx) {
+			Object[][] curChunks = chunks;
+			if (chunkIdx < curChunks.length && curChunks[chunkIdx] != null)
+				return curChunks[chunkIdx];
+
+			synchronized (this) {
+				curChunks = chunks;
+				if (chunkIdx >= curChunks.length) {
+					Object[][] newChunks = new Object[Math.max(curChunks.length * 2,
+							chunkIdx + 1)][];
+					System.arraycopy(curChunks, 0, newChunks, 0, curChunks.length);
+					curChunks = newChunks;
+				}
+				if (curChunks[chunkIdx] == null)
+					curChunks[chunkIdx] = new Object[CHUNK_SIZE];
+				chunks = curChunks;
+				return curChunks[chunkIdx];
+			}
+		}
+
+	}
+
+	/**
+	 * Assigns dense integer IDs to objects based on their equality and allows
+	 * for looking up the object registered for an ID. IDs are never reused.
+	 */
+	private static class Interner<T> {
+
+		private final ConcurrentMap<T, Integer> ids = new ConcurrentHashMap<T, Integer>();
+		private final ObjectTable<T> objects = new ObjectTable<T>();
+
+		/**
+		 * Gets the ID of the given object, creating a new one if necessary
+		 * @param obj The object for which to get the ID
+		 * @return The ID of the given object
+		 */
+		public int getId(T obj) {
+			Integer id = ids.get(obj);
+			if (id != null)
+				return id;
+
+			synchronized (this) {
+				id = ids.get(obj);
+				if (id == null) {
+					T canonical = canonicalize(obj);
+					id = objects.add(canonical);
+					ids.put(canonical, id);
+				}
+				return id;
+			}
+		}
+
+		/**
+		 * Gets the ID of the given object without creating a new one
+		 * @param obj The object for which to get the ID
+		 * @return The ID of the given object, or -1 if it has no ID yet
+		 */
+		public int find(T obj) {
+			Integer id = ids.get(obj);
+			return id == null ? -1 : id;
+		}
+
+		public T get(int id) {
+			return objects.get(id);
+		}
+
+		/**
+		 * Gets the object to store for a new ID. It must be equal to the
+		 * given object.
+		 * @param obj The object for which a new ID is created
+		 * @return The object to store for the new ID
+		 */
+		protected T canonicalize(T obj) {
+			return obj;
+		}
+
+	}
+
+	/**
+	 * Creates the interner for facts. For facts that are linked to their
+	 * predecessors, the interner stores a copy without a predecessor, so that
+	 * it does not keep the predecessor chain alive.
+	 * @return The new interner for facts
+	 */
+	private static <D> Interner<D> newFactInterner() {
+		return new Interner<D>() {
+
+			@Override
+			protected D canonicalize(D fact) {
+				if (!(fact instanceof FastSolverLinkedNode))
+					return fact;
+				@SuppressWarnings("unchecked")
+				FastSolverLinkedNode<D, ?> node = (FastSolverLinkedNode<D, ?>) fact;
+				D copy = node.clone();
+				@SuppressWarnings("unchecked")
+				FastSolverLinkedNode<D, ?> copyNode = (FastSolverLinkedNode<D, ?>) copy;
+				copyNode.setPredecessor(null);
+				return copy;
+			}
+
+		};
+	}
+
+	/**
+	 * Weak identity table that assigns integer handles to objects without
+	 * keeping them alive. The slot of an object that has been
+	 * garbage-collected is reused for another object. Every reuse increments
+	 * the generation of the slot, so that a stale handle cannot resolve to the
+	 * new object. The table is striped into a number of independently locked
+	 * shards like the {@link soot.jimple.infoflow.collect.WeakInterner}.
+	 */
+	private static class HandleTable<T> {
+
+		/**
+		 * Weak reference to a registered object that also serves as the entry
+		 * in the hash chain of its shard
+		 */
+		private static class Ref<T> extends WeakReference<T> {
+
+			private final int hash;
+			private final int handle;
+			private final int generation;
+			private Ref<T> next;
+
+			public Ref(T referent, int hash, int handle, int generation,
+					Ref<T> next, ReferenceQueue<T> queue) {
+				super(referent, queue);
+				this.hash = hash;
+				this.handle = handle;
+				this.generation = generation;
+				this.next = next;
+			}
+
+		}
+
+		/**
+		 * One independently locked part of the table
+		 */
+		private class Shard {
+
+			private final ReferenceQueue<T> queue = new ReferenceQueue<T>();
+			private Ref<T>[] table = newTable(16);
+			private int size = 0;
+
+			synchronized Ref<T> register(T obj, int hash) {
+				expungeStaleEntries();
+
+				int idx = hash & (table.length - 1);
+				for (Ref<T> ref = table[idx]; ref != null; ref = ref.next)
+					if (ref.hash == hash && ref.get() == obj)
+						return ref;
+
+				// Take a free slot if there is one
+				Ref<T> stale;
+				synchronized (freeSlots) {
+					stale = freeSlots.poll();
+				}
+				Ref<T> ref;
+				if (stale == null)
+					ref = new Ref<T>(obj, hash, refs.add(null), 0, table[idx], queue);
+				else
+					ref = new Ref<T>(obj, hash, stale.handle, stale.generation + 1,
+							table[idx], queue);
+				refs.set(ref.handle, ref);
+				table[idx] = ref;
+				if (++size > table.length / 4 * 3)
+					resize();
+				return ref;
+			}
+
+			/**
+			 * Removes all entries whose referents have been garbage-collected
+			 * and releases their slots
+			 */
+			private void expungeStaleEntries() {
+				Object stale;
+				while ((stale = queue.poll()) != null) {
+					@SuppressWarnings("unchecked")
+					Ref<T> staleRef = (Ref<T>) stale;
+					int idx = staleRef.hash & (table.length - 1);
+					Ref<T> prev = null;
+					for (Ref<T> ref = table[idx]; ref != null; ref = ref.next) {
+						if (ref == staleRef) {
+							if (prev == null)
+								table[idx] = ref.next;
+							else
+								prev.next = ref.next;
+							ref.next = null;
+							size--;
+							synchronized (freeSlots) {
+								freeSlots.add(ref);
+							}
+							break;
+						}
+						prev = ref;
+					}
+				}
+			}
+
+			/**
+			 * Doubles the size of the hash table
+			 */
+			private void resize() {
+				Ref<T>[] newTable = newTable(table.length * 2);
+				for (Ref<T> head : table) {
+					Ref<T> ref = head;
+					while (ref != null) {
+						Ref<T> next = ref.next;
+						int idx = ref.hash & (newTable.length - 1);
+						ref.next = newTable[idx];
+						newTable[idx] = ref;
+						ref = next;
+					}
+				}
+				table = newTable;
+			}
+
+		}
+
+		private final Shard[] shards;
+		private final int shardShift;
+		private final ObjectTable<Ref<T>> refs = new ObjectTable<Ref<T>>();
+
+		/**
+		 * Cleared references whose slots can be reused. A cleared reference
+		 * stays in its slot until the slot is reused, so the free list does not
+		 * retain any additional objects.
+		 */
+		private final ArrayDeque<Ref<T>> freeSlots = new ArrayDeque<Ref<T>>();
+
+		@SuppressWarnings("unchecked")
+		public HandleTable() {
+			// Use at least two shards per core, rounded up to a power of two
+			int numShards = 2;
+			while (numShards < Runtime.getRuntime().availableProcessors() * 2)
+				numShards <<= 1;
+			this.shards = (Shard[]) Array.newInstance(Shard.class, numShards);
+			for (int i = 0; i < numShards; i++)
+				this.shards[i] = new Shard();
+			this.shardShift = 32 - Integer.numberOfTrailingZeros(numShards);
+		}
+
+		@SuppressWarnings("unchecked")
+		private static <T> Ref<T>[] newTable(int size) {
+			return (Ref<T>[]) new Ref<?>[size];
+		}
+
+		/**
+		 * Gets the reference through which the given object is registered
+		 * in this table, registering it if necessary
+		 * @param obj The object to look up
+		 * @return The reference to the given object
+		 */
+		public Ref<T> register(T obj) {
+			int hash = System.identityHashCode(obj);
+			int shardIdx = (hash * 0x9E3779B9) >>> shardShift;
+			return shards[shardIdx].register(obj, hash);
+		}
+
+		/**
+		 * Gets the object registered with the given handle
+		 * @param handle The handle of the object
+		 * @param generation The generation of the handle's slot at the time
+		 * the object was registered
+		 * @return The object registered with the given handle, or null if
+		 * it has been garbage-collected
+		 */
+		public T get(int handle, int generation) {
+			Ref<T> ref = refs.get(handle);
+			return ref == null || ref.generation != generation ? null : ref.get();
+		}
+
+		/**
+		 * Gets the number of slots in this table, i.e., the maximum number of
+		 * objects that have been alive at the same time
+		 * @return The number of slots in this table
+		 */
+		public int size() {
+			return refs.size();
+		}
+
+	}
+
+	/**
+	 * Log of integer tuples with a hash index over the first three fields and
+	 * a chain of all tuples that share the same first field. Every tuple can
+	 * additionally pin a fixed number of objects on the heap. Only the tuple
+	 * data needs to be written to disk, the indices are rebuilt on reload and
+	 * the pins are dropped.
+	 */
+	private static class TupleLog {
+
+		private static final int STRIDE = 9;
+		private static final int NEXT = 8;
+
+		private final int pinsPerTuple;
+
+		private int[] data = new int[STRIDE * 4];
+		private Object[] pins;
+		private int size = 0;
+
+		private int[] keyIndex = new int[8];
+		private int[] headKeys = new int[8];
+		private int[] headValues = new int[8];
+		private int numHeads = 0;
+
+		/**
+		 * Creates a new tuple log
+		 * @param pinsPerTuple The number of objects each tuple can pin
+		 */
+		public TupleLog(int pinsPerTuple) {
+			this.pinsPerTuple = pinsPerTuple;
+			this.pins = new Object[pinsPerTuple * 4];
+		}
+
+		/**
+		 * Finds the tuple with the given key
+		 * @return The index of the tuple if it exists, otherwise -1
+		 */
+		public int find(int k1, int k2, int k3) {
+			int mask = keyIndex.length - 1;
+			int idx = hash(k1, k2, k3) & mask;
+			while (keyIndex[idx] != 0) {
+				int pos = (keyIndex[idx] - 1) * STRIDE;
+				if (data[pos] == k1 && data[pos + 1] == k2 && data[pos + 2] == k3)
+					return keyIndex[idx] - 1;
+				idx = (idx + 1) & mask;
+			}
+			return -1;
+		}
+
+		/**
+		 * Adds a new tuple to this log. The caller must make sure that no
+		 * tuple with the same key exists yet.
+		 * @return The index of the new tuple
+		 */
+		public int add(int k1, int k2, int k3) {
+			if ((size + 1) * STRIDE > data.length) {
+				int[] newData = new int[data.length * 2];
+				System.arraycopy(data, 0, newData, 0, size * STRIDE);
+				data = newData;
+				Object[] newPins = new Object[pins.length * 2];
+				System.arraycopy(pins, 0, newPins, 0, size * pinsPerTuple);
+				pins = newPins;
+			}
+			int tuple = size++;
+			int pos = tuple * STRIDE;
+			data[pos] = k1;
+			data[pos + 1] = k2;
+			data[pos + 2] = k3;
+			data[pos + NEXT] = -1;
+			index(tuple);
+			return tuple;
+		}
+
+		public int get(int tuple, int field) {
+			return data[tuple * STRIDE + field];
+		}
+
+		public void set(int tuple, int field, int value) {
+			data[tuple * STRIDE + field] = value;
+		}
+
+		/**
+		 * Keeps the given object alive as long as this log is on the heap
+		 * @param tuple The tuple that references the object
+		 * @param pin The index of the pin within the tuple
+		 * @param obj The object to keep alive
+		 */
+		public void pin(int tuple, int pin, Object obj) {
+			pins[tuple * pinsPerTuple + pin] = obj;
+		}
+
+		/**
+		 * Gets the most recently added tuple with the given first field
+		 * @return The index of the tuple if it exists, otherwise -1
+		 */
+		public int first(int k1) {
+			int mask = headKeys.length - 1;
+			int idx = hash(k1, 0, 0) & mask;
+			while (headValues[idx] != 0) {
+				if (headKeys[idx] == k1)
+					return headValues[idx] - 1;
+				idx = (idx + 1) & mask;
+			}
+			return -1;
+		}
+
+		/**
+		 * Gets the next tuple with the same first field as the given one
+		 * @return The index of the next tuple if it exists, otherwise -1
+		 */
+		public int next(int tuple) {
+			return data[tuple * STRIDE + NEXT];
+		}
+
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Adds the given tuple to the key index and the chain of its first
+		 * field
+		 * @param tuple The index of the tuple to add
+		 */
+		private void index(int tuple) {
+			if (size * 4 > keyIndex.length * 3)
+				rebuildKeyIndex(keyIndex.length * 2);
+			else
+				insertKey(keyIndex, tuple);
+
+			if ((numHeads + 1) * 4 > headKeys.length * 3)
+				rebuildHeads(headKeys.length * 2);
+			int k1 = data[tuple * STRIDE];
+			int mask = headKeys.length - 1;
+			int idx = hash(k1, 0, 0) & mask;
+			while (headValues[idx] != 0) {
+				if (headKeys[idx] == k1) {
+					data[tuple * STRIDE + NEXT] = headValues[idx] - 1;
+					headValues[idx] = tuple + 1;
+					return;
+				}
+				idx = (idx + 1) & mask;
+			}
+			headKeys[idx] = k1;
+			headValues[idx] = tuple + 1;
+			numHeads++;
+		}
+
+		private void insertKey(int[] index, int tuple) {
+			int pos = tuple * STRIDE;
+			int mask = index.length - 1;
+			int idx = hash(data[pos], data[pos + 1], data[pos + 2]) & mask;
+			while (index[idx] != 0)
+				idx = (idx + 1) & mask;
+			index[idx] = tuple + 1;
+		}
+
+		private void rebuildKeyIndex(int capacity) {
+			keyIndex = new int[capacity];
+			for (int i = 0; i < size; i++)
+				insertKey(keyIndex, i);
+		}
+
+		/**
+		 * Rebuilds the chain heads. The chains themselves are stored in the
+		 * tuples and remain valid.
+		 */
+		private void rebuildHeads(int capacity) {
+			int[] oldKeys = headKeys;
+			int[] oldValues = headValues;
+			headKeys = new int[capacity];
+			headValues = new int[capacity];
+			int mask = capacity - 1;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldValues[i] == 0)
+					continue;
+				int idx = hash(oldKeys[i], 0, 0) & mask;
+				while (headValues[idx] != 0)
+					idx = (idx + 1) & mask;
+				headKeys[idx] = oldKeys[i];
+				headValues[idx] = oldValues[i];
+			}
+		}
+
+		/**
+		 * Writes the tuples of this log to the given buffer
+		 * @param buffer The buffer to write to
+		 */
+		public void write(IntBuffer buffer) {
+			buffer.put(size);
+			buffer.put(data, 0, size * STRIDE);
+		}
+
+		/**
+		 * Replaces the contents of this log with the tuples from the given
+		 * buffer and rebuilds the indices
+		 * @param buffer The buffer to read from
+		 */
+		public void read(IntBuffer buffer) {
+			size = buffer.get();
+			data = new int[Math.max(STRIDE * 4, size * STRIDE)];
+			buffer.get(data, 0, size * STRIDE);
+			pins = new Object[Math.max(4, size) * pinsPerTuple];
+
+			int capacity = 8;
+			while (size * 4 > capacity * 3)
+				capacity *= 2;
+			rebuildKeyIndex(capacity);
+
+			// Rebuild the heads. Since the chains point backwards, the last
+			// tuple with a given first field is the head.
+			headKeys = new int[8];
+			headValues = new int[8];
+			numHeads = 0;
+			for (int i = 0; i < size; i++) {
+				int k1 = data[i * STRIDE];
+				if ((numHeads + 1) * 4 > headKeys.length * 3)
+					rebuildHeads(headKeys.length * 2);
+				int mask = headKeys.length - 1;
+				int idx = hash(k1, 0, 0) & mask;
+				while (headValues[idx] != 0 && headKeys[idx] != k1)
+					idx = (idx + 1) & mask;
+				if (headValues[idx] == 0)
+					numHeads++;
+				headKeys[idx] = k1;
+				headValues[idx] = i + 1;
+			}
+		}
+
+		/**
+		 * Gets the number of integers required to write this log
+		 */
+		public int writeSize() {
+			return 1 + size * STRIDE;
+		}
+
+		/**
+		 * Releases all data held by this log
+		 */
+		public void release() {
+			data = null;
+			pins = null;
+			keyIndex = null;
+			headKeys = null;
+			headValues = null;
+		}
+
+	}
+
+	private static int hash(int k1, int k2, int k3) {
+		int h = k1 * 0x9E3779B9 + k2 * 0x85EBCA6B + k3 * 0xC2B2AE35;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * All data stored for a single method. The jump functions are keyed by
+	 * target statement, source fact and target fact. The end summaries are
+	 * keyed by the callee's start fact, the exit statement and the exit fact.
+	 * The incoming edges are keyed by the callee's start fact, the call site
+	 * and the caller's start fact. The facts are referenced through handles
+	 * that take two fields each, the slot and its generation. Jump functions
+	 * and end summaries store the handle of the target or exit fact in fields
+	 * 3 and 4. Incoming edges store the handle of the caller's start fact in
+	 * fields 3 and 4 and the handle and ID of the call-site fact in fields 5
+	 * to 7.
+	 */
+	private class Partition {
+
+		private final TupleLog jumpFunctions = new TupleLog(0);
+		private final TupleLog endSummaries = new TupleLog(1);
+		private final TupleLog incoming = new TupleLog(2);
+
+		private File spillFile = null;
+		private volatile long lastAccess;
+
+		/**
+		 * Makes sure that the data of this partition is on the heap. Callers
+		 * must hold the lock on this partition.
+		 */
+		private void load() {
+			lastAccess = accessClock.getAndIncrement();
+			if (spillFile == null)
+				return;
+
+			try {
+				RandomAccessFile raf = new RandomAccessFile(spillFile, "r");
+				try {
+					FileChannel channel = raf.getChannel();
+					MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+					IntBuffer ints = buffer.asIntBuffer();
+					jumpFunctions.read(ints);
+					endSummaries.read(ints);
+					incoming.read(ints);
+				}
+				finally {
+					raf.close();
+				}
+			}
+			catch (IOException ex) {
+				throw new RuntimeException("Could not reload solver data from " + spillFile, ex);
+			}
+			if (!spillFile.delete())
+				spillFile.deleteOnExit();
+			spillFile = null;
+
+			// Keep the facts that are still alive from now on
+			for (int tuple = 0; tuple < endSummaries.size(); tuple++)
+				resolve(endSummaries, tuple, 0, 3, endSummaries.get(tuple, 2));
+			for (int tuple = 0; tuple < incoming.size(); tuple++) {
+				resolve(incoming, tuple, 0, 3, incoming.get(tuple, 2));
+				resolve(incoming, tuple, 1, 5, incoming.get(tuple, 7));
+			}
+			residentEntries.addAndGet(size());
+			reloadCount.incrementAndGet();
+		}
+
+		/**
+		 * Writes the data of this partition to disk and removes it from the
+		 * heap. Callers must hold the lock on this partition.
+		 */
+		private void spill() {
+			if (spillFile != null)
+				return;
+
+			int numInts = jumpFunctions.writeSize() + endSummaries.writeSize()
+					+ incoming.writeSize();
+			try {
+				File file = File.createTempFile("ifds", ".spill", spillDirectory);
+				RandomAccessFile raf = new RandomAccessFile(file, "rw");
+				try {
+					FileChannel channel = raf.getChannel();
+					MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, numInts * 4L);
+					IntBuffer ints = buffer.asIntBuffer();
+					jumpFunctions.write(ints);
+					endSummaries.write(ints);
+					incoming.write(ints);
+					buffer.force();
+				}
+				finally {
+					raf.close();
+				}
+				spillFile = file;
+			}
+			catch (IOException ex) {
+				// We can keep the data on the heap and try again later
+				logger.error("Could not spill solver data to disk", ex);
+				return;
+			}
+
+			residentEntries.addAndGet(-size());
+			jumpFunctions.release();
+			endSummaries.release();
+			incoming.release();
+			spillCount.incrementAndGet();
+		}
+
+		private long size() {
+			return jumpFunctions.size() + endSummaries.size() + incoming.size();
+		}
+
+		/**
+		 * Deletes the spill file of this partition if there is one
+		 */
+		private void delete() {
+			if (spillFile != null && !spillFile.delete())
+				spillFile.deleteOnExit();
+		}
+
+	}
+
+	/**
+	 * Gets the partition for the given method, creating it if necessary
+	 * @param method The method for which to get the partition
+	 * @return The partition for the given method
+	 */
+	private Partition getPartition(M method) {
+		Partition partition = partitions.get(method);
+		if (partition == null) {
+			partition = new Partition();
+			Partition oldPartition = partitions.putIfAbsent(method, partition);
+			if (oldPartition != null)
+				partition = oldPartition;
+		}
+		return partition;
+	}
+
+	/**
+	 * Stores a handle to the given fact in the given tuple and pins the fact
+	 * @param log The log that contains the tuple
+	 * @param tuple The tuple in which to store the handle
+	 * @param pin The index of the pin within the tuple, or -1 if the fact
+	 * shall not be pinned
+	 * @param field The first of the two fields that hold the handle
+	 * @param fact The fact to store
+	 */
+	private void store(TupleLog log, int tuple, int pin, int field, D fact) {
+		HandleTable.Ref<D> ref = handles.register(fact);
+		log.set(tuple, field, ref.handle);
+		log.set(tuple, field + 1, ref.generation);
+		if (pin >= 0)
+			log.pin(tuple, pin, fact);
+	}
+
+	/**
+	 * Gets the fact referenced from the given tuple and pins it. If the fact
+	 * has been garbage-collected, the detached copy with the same ID takes its
+	 * place.
+	 * @param log The log that contains the tuple
+	 * @param tuple The tuple that references the fact
+	 * @param pin The index of the pin within the tuple
+	 * @param field The first of the two fields that hold the handle
+	 * @param factId The ID of the fact
+	 * @return The fact referenced from the given tuple
+	 */
+	private D resolve(TupleLog log, int tuple, int pin, int field, int factId) {
+		D fact = handles.get(log.get(tuple, field), log.get(tuple, field + 1));
+		if (fact == null) {
+			fact = factIds.get(factId);
+			store(log, tuple, pin, field, fact);
+		}
+		else
+			log.pin(tuple, pin, fact);
+		return fact;
+	}
+
+	/**
+	 * Records a jump function with the same semantics as
+	 * {@link JumpFunctions#addFunction(PathEdge)}
+	 * @param edge The edge to record
+	 * @return The target fact under which an equal edge has been recorded
+	 * before, or null if the edge is new
+	 */
+	private D addFunction(PathEdge<N, D> edge) {
+		int n = nodeIds.getId(edge.getTarget());
+		int d1 = factIds.getId(edge.factAtSource());
+		int d2 = factIds.getId(edge.factAtTarget());
+
+		Partition partition = getPartition(icfg.getMethodOf(edge.getTarget()));
+		synchronized (partition) {
+			partition.load();
+			TupleLog log = partition.jumpFunctions;
+			int tuple = log.find(n, d1, d2);
+			if (tuple >= 0) {
+				D existingFact = handles.get(log.get(tuple, 3), log.get(tuple, 4));
+				if (existingFact != null)
+					return existingFact;
+
+				// The fact under which the edge has been recorded is no longer
+				// reachable, so the new one takes its place. The edge itself
+				// is still known and must not be processed again.
+				store(log, tuple, -1, 3, edge.factAtTarget());
+				return edge.factAtTarget();
+			}
+			store(log, log.add(n, d1, d2), -1, 3, edge.factAtTarget());
+		}
+		added();
+		return null;
+	}
+
+	/**
+	 * Registers an end summary for the given method
+	 * @return True if the end summary is new, otherwise false
+	 */
+	public boolean addEndSummary(M m, D d1, N eP, D d2) {
+		int f1 = factIds.getId(d1);
+		int n = nodeIds.getId(eP);
+		int f2 = factIds.getId(d2);
+
+		Partition partition = getPartition(m);
+		synchronized (partition) {
+			partition.load();
+			TupleLog log = partition.endSummaries;
+			if (log.find(f1, n, f2) >= 0)
+				return false;
+			store(log, log.add(f1, n, f2), 0, 3, d2);
+		}
+		added();
+		return true;
+	}
+
+	/**
+	 * Gets the end summaries for the given method and start fact
+	 * @return The set of exit statements and exit facts, or null if there are
+	 * no end summaries
+	 */
+	public Set<Pair<N, D>> endSummary(M m, D d3) {
+		Partition partition = partitions.get(m);
+		if (partition == null)
+			return null;
+		int f3 = factIds.find(d3);
+		if (f3 < 0)
+			return null;
+
+		Set<Pair<N, D>> summaries = null;
+		synchronized (partition) {
+			partition.load();
+			TupleLog log = partition.endSummaries;
+			for (int tuple = log.first(f3); tuple >= 0; tuple = log.next(tuple)) {
+				if (summaries == null)
+					summaries = new HashSet<Pair<N, D>>();
+				summaries.add(new Pair<N, D>(nodeIds.get(log.get(tuple, 1)),
+						resolve(log, tuple, 0, 3, log.get(tuple, 2))));
+			}
+		}
+		return summaries;
+	}
+
+	/**
+	 * Registers an incoming edge into the given method. If there already is
+	 * an incoming edge for the same call site and caller-side start fact, the
+	 * call-site fact is replaced.
+	 * @return True if the incoming edge is new, otherwise false
+	 */
+	public boolean addIncoming(M m, D d3, N n, D d1, D d2) {
+		int f3 = factIds.getId(d3);
+		int c = nodeIds.getId(n);
+		int f1 = factIds.getId(d1);
+		int f2 = factIds.getId(d2);
+
+		Partition partition = getPartition(m);
+		synchronized (partition) {
+			partition.load();
+			TupleLog log = partition.incoming;
+			int tuple = log.find(f3, c, f1);
+			boolean isNew = tuple < 0;
+			if (isNew) {
+				tuple = log.add(f3, c, f1);
+				store(log, tuple, 0, 3, d1);
+			}
+			store(log, tuple, 1, 5, d2);
+			log.set(tuple, 7, f2);
+			if (!isNew)
+				return false;
+		}
+		added();
+		return true;
+	}
+
+	/**
+	 * Gets the incoming edges for the given method and start fact
+	 * @return A map from call site to caller-side start fact to call-site
+	 * fact, or null if there are no incoming edges
+	 */
+	public Map<N, Map<D, D>> incoming(D d1, M m) {
+		Partition partition = partitions.get(m);
+		if (partition == null)
+			return null;
+		int f1 = factIds.find(d1);
+		if (f1 < 0)
+			return null;
+
+		Map<N, Map<D, D>> inc = null;
+		synchronized (partition) {
+			partition.load();
+			TupleLog log = partition.incoming;
+			for (int tuple = log.first(f1); tuple >= 0; tuple = log.next(tuple)) {
+				if (inc == null)
+					inc = new HashMap<N, Map<D, D>>();
+				N callSite = nodeIds.get(log.get(tuple, 1));
+				Map<D, D> facts = inc.get(callSite);
+				if (facts == null) {
+					facts = new HashMap<D, D>();
+					inc.put(callSite, facts);
+				}
+				facts.put(resolve(log, tuple, 0, 3, log.get(tuple, 2)),
+						resolve(log, tuple, 1, 5, log.get(tuple, 7)));
+			}
+		}
+		return inc;
+	}
+
+	/**
+	 * Accounts for a new entry and spills partitions if there are too many
+	 * entries on the heap
+	 */
+	private void added() {
+		if (residentEntries.incrementAndGet() > maxResidentEntries)
+			evict();
+	}
+
+	/**
+	 * Spills the least recently used partitions to disk until only three
+	 * quarters of the maximum number of entries remain on the heap
+	 */
+	private void evict() {
+		// Only one thread evicts at a time, the others just carry on
+		if (!evicting.compareAndSet(false, true))
+			return;
+		try {
+			// Other threads keep touching the partitions while we sort, so we
+			// sort on a snapshot of the access times
+			List<Partition> candidates = new ArrayList<Partition>(partitions.values());
+			final long[] accessTimes = new long[candidates.size()];
+			Integer[] order = new Integer[candidates.size()];
+			for (int i = 0; i < order.length; i++) {
+				accessTimes[i] = candidates.get(i).lastAccess;
+				order[i] = i;
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+
+				@Override
+				public int compare(Integer o1, Integer o2) {
+					return Long.compare(accessTimes[o1], accessTimes[o2]);
+				}
+
+			});
+
+			long target = maxResidentEntries / 4 * 3;
+			for (int idx : order) {
+				if (residentEntries.get() <= target)
+					break;
+				Partition partition = candidates.get(idx);
+				synchronized (partition) {
+					if (partition.spillFile == null && partition.size() > 0)
+						partition.spill();
+				}
+			}
+		}
+		finally {
+			evicting.set(false);
+		}
+	}
+
+	/**
+	 * Gets the jump functions backed by this store
+	 * @return The jump functions backed by this store
+	 */
+	public IJumpFunctions<N,D> getJumpFunctions() {
+		return this.jumpFunctions;
+	}
+
+	/**
+	 * Gets the number of times a method partition has been written to disk
+	 * @return The number of times a method partition has been written to disk
+	 */
+	public long getSpillCount() {
+		return spillCount.get();
+	}
+
+	/**
+	 * Gets the number of times a method partition has been loaded from disk
+	 * @return The number of times a method partition has been loaded from disk
+	 */
+	public long getReloadCount() {
+		return reloadCount.get();
+	}
+
+	/**
+	 * Gets the number of handles through which this store references facts.
+	 * Handles of facts that have been garbage-collected are reused, so this is
+	 * the maximum number of referenced facts that have been alive at the same
+	 * time.
+	 * @return The number of handles through which this store references facts
+	 */
+	public int getHandleCount() {
+		return handles.size();
+	}
+
+	/**
+	 * Removes all data from this store and deletes the spill files
+	 */
+	public void clear() {
+		for (Partition partition : partitions.values())
+			synchronized (partition) {
+				partition.delete();
+			}
+		partitions.clear();
+		residentEntries.set(0);
+
+		nodeIds = new Interner<N>();
+		factIds = newFactInterner();
+		handles = new HandleTable<D>();
+	}
+
+}
@@ -131,4 +131,44 @@ public class StaticTestCode {
 		cm.publish(t);
 	}
 
+	private static String recursionField;
+	private static String recursionField2;
+	
+	public void recursionStaticReadTest() {
+		recursionField = TelephonyManager.getDeviceId();
+		recursionReadA(3);
+	}
+	
+	private void recursionReadA(int n) {
+		if (n > 0)
+			recursionReadB(n - 1);
+	}
+	
+	private void recursionReadB(int n) {
+		if (n > 0)
+			recursionReadA(n - 1);
+		else {
+			ConnectionManager cm = new ConnectionManager();
+			cm.publish(recursionField);
+		}
+	}
+	
+	public void recursionStaticWriteTest() {
+		recursionWriteA(3, TelephonyManager.getDeviceId());
+		ConnectionManager cm = new ConnectionManager();
+		cm.publish(recursionField2);
+	}
+	
+	private void recursionWriteA(int n, String s) {
+		if (n > 0)
+			recursionWriteB(n - 1, s);
+	}
+	
+	private void recursionWriteB(int n, String s) {
+		if (n > 0)
+			recursionWriteA(n - 1, s);
+		else
+			recursionField2 = s;
+	}
+
 }
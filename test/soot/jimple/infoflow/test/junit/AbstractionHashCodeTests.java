@@ -0,0 +1,192 @@
+package soot.jimple.infoflow.test.junit;
+
+import java.lang.reflect.Field;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import soot.IntType;
+import soot.Local;
+import soot.jimple.Jimple;
+import soot.jimple.Stmt;
+import soot.jimple.infoflow.data.Abstraction;
+import soot.jimple.infoflow.data.AccessPath;
+import soot.jimple.infoflow.data.AccessPathFactory;
+import soot.jimple.infoflow.data.SourceContext;
+import soot.jimple.infoflow.solver.cfg.IInfoflowCFG.UnitContainer;
+
+/**
+ * Tests for the incrementally maintained hash codes of abstractions. Every
+ * cached hash code must be the same as the one computed from scratch.
+ */
+public class AbstractionHashCodeTests {
+
+	private int localCounter = 0;
+
+	private AccessPath createAccessPath() {
+		Local local = Jimple.v().newLocal("l" + localCounter++, IntType.v());
+		return AccessPathFactory.v().createAccessPath(local, true);
+	}
+
+	private Abstraction createSource() {
+		Abstraction abs = new Abstraction(createAccessPath(),
+				Jimple.v().newNopStmt(), null, false, false);
+		abs.hashCode();
+		return abs;
+	}
+
+	/**
+	 * Checks that the cached hash code of the given abstraction is the same
+	 * as the one computed from scratch
+	 * @param abs The abstraction to check
+	 */
+	private static void assertHashCodeConsistent(Abstraction abs) throws Exception {
+		Field field = Abstraction.class.getDeclaredField("hashCode");
+		field.setAccessible(true);
+		int cachedHash = field.getInt(abs);
+		Assert.assertNotEquals("Hash code has not been derived", 0, cachedHash);
+		int hash = abs.hashCode();
+
+		field.setInt(abs, 0);
+		Assert.assertEquals(hash, abs.hashCode());
+		Assert.assertEquals(field.getInt(abs), cachedHash);
+	}
+
+	@Test
+	public void copyConstructorTest() throws Exception {
+		Abstraction source = createSource();
+		Abstraction derived = source.deriveNewAbstraction(createAccessPath(),
+				Jimple.v().newNopStmt());
+		assertHashCodeConsistent(derived);
+
+		Abstraction cloned = derived.clone();
+		assertHashCodeConsistent(cloned);
+		Assert.assertEquals(derived, cloned);
+		Assert.assertEquals(derived.hashCode(), cloned.hashCode());
+
+		Abstraction implicit = derived.deriveNewAbstraction(derived.getAccessPath(),
+				Jimple.v().newNopStmt(), true);
+		assertHashCodeConsistent(implicit);
+	}
+
+	@Test
+	public void setterTest() throws Exception {
+		Abstraction abs = createSource().deriveNewAbstraction(createAccessPath(),
+				Jimple.v().newNopStmt());
+
+		abs.setSourceContext(new SourceContext(createAccessPath(), Jimple.v().newNopStmt()));
+		assertHashCodeConsistent(abs);
+		abs.setSourceContext(null);
+		assertHashCodeConsistent(abs);
+
+		abs.setConditionRespected(true);
+		assertHashCodeConsistent(abs);
+		abs.setConditionRespected(false);
+		assertHashCodeConsistent(abs);
+
+		// The compaction marker is not part of the hash code
+		abs.setPredecessor(createSource());
+		assertHashCodeConsistent(abs);
+	}
+
+	@Test
+	public void flagsAfterHashingTest() throws Exception {
+		Abstraction abs = createSource().deriveNewAbstraction(createAccessPath(),
+				Jimple.v().newNopStmt());
+		Abstraction copy = abs.clone();
+		Assert.assertEquals(abs.hashCode(), copy.hashCode());
+
+		// The condition flag is set on abstractions that are already in use
+		abs.setConditionRespected(true);
+		Assert.assertNotEquals(abs, copy);
+		copy.setConditionRespected(true);
+		Assert.assertEquals(abs, copy);
+		Assert.assertEquals(abs.hashCode(), copy.hashCode());
+		assertHashCodeConsistent(abs);
+	}
+
+	@Test(timeout = 300000)
+	public void concurrentFlagsTest() throws Exception {
+		for (int round = 0; round < 1000; round++) {
+			final Abstraction abs = createSource().deriveNewAbstraction(createAccessPath(),
+					Jimple.v().newNopStmt());
+			Thread setter = new Thread() {
+
+				@Override
+				public void run() {
+					abs.setConditionRespected(true);
+				}
+
+			};
+			setter.start();
+			abs.hashCode();
+			setter.join();
+
+			Abstraction expected = abs.clone();
+			Assert.assertTrue(expected.isConditionRespected());
+			Assert.assertEquals(expected.hashCode(), abs.hashCode());
+			assertHashCodeConsistent(abs);
+		}
+	}
+
+	@Test
+	public void activationTest() throws Exception {
+		Abstraction source = createSource();
+		Abstraction inactive = source.deriveInactiveAbstraction(Jimple.v().newNopStmt());
+		assertHashCodeConsistent(inactive);
+		Assert.assertFalse(inactive.isAbstractionActive());
+
+		Abstraction active = inactive.getActiveCopy();
+		assertHashCodeConsistent(active);
+		Assert.assertTrue(active.isAbstractionActive());
+	}
+
+	@Test
+	public void exceptionTest() throws Exception {
+		Abstraction source = createSource();
+		Abstraction thrown = source.deriveNewAbstractionOnThrow(Jimple.v().newNopStmt());
+		assertHashCodeConsistent(thrown);
+
+		Abstraction caught = thrown.deriveNewAbstractionOnCatch(
+				Jimple.v().newLocal("e", IntType.v()));
+		assertHashCodeConsistent(caught);
+		Assert.assertFalse(caught.getExceptionThrown());
+	}
+
+	@Test
+	public void postdominatorTest() throws Exception {
+		Abstraction source = createSource();
+		Stmt postdom1 = Jimple.v().newNopStmt();
+		Stmt postdom2 = Jimple.v().newNopStmt();
+
+		Abstraction outer = source.deriveConditionalAbstractionEnter(
+				new UnitContainer(postdom1), Jimple.v().newNopStmt());
+		assertHashCodeConsistent(outer);
+
+		// The inner abstraction copies the postdominator list and extends it
+		Abstraction inner = outer.deriveConditionalAbstractionEnter(
+				new UnitContainer(postdom2), Jimple.v().newNopStmt());
+		assertHashCodeConsistent(inner);
+		assertHashCodeConsistent(outer);
+		Assert.assertTrue(inner.isTopPostdominator(postdom2));
+
+		Abstraction dropped = inner.dropTopPostdominator();
+		assertHashCodeConsistent(dropped);
+		assertHashCodeConsistent(inner);
+		Assert.assertTrue(dropped.isTopPostdominator(postdom1));
+
+		Abstraction call = inner.deriveConditionalAbstractionCall(Jimple.v().newNopStmt());
+		assertHashCodeConsistent(call);
+		Assert.assertNull(call.getTopPostdominator());
+	}
+
+	@Test
+	public void injectSourceContextTest() throws Exception {
+		Abstraction abs = createSource().deriveNewAbstraction(createAccessPath(),
+				Jimple.v().newNopStmt());
+		Abstraction injected = abs.injectSourceContext(new SourceContext(
+				createAccessPath(), Jimple.v().newNopStmt()));
+		assertHashCodeConsistent(injected);
+	}
+
+}
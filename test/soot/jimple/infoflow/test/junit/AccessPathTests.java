@@ -0,0 +1,124 @@
+package soot.jimple.infoflow.test.junit;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import soot.G;
+import soot.IntType;
+import soot.Local;
+import soot.RefType;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootField;
+import soot.Type;
+import soot.jimple.Jimple;
+import soot.jimple.infoflow.InfoflowConfiguration;
+import soot.jimple.infoflow.data.AccessPath;
+import soot.jimple.infoflow.data.AccessPathFactory;
+import soot.jimple.infoflow.data.AccessPath.ArrayTaintType;
+
+/**
+ * Tests for the access path operations that work on the field tries. Their
+ * results must be the same as those of the array-based access path factory.
+ */
+public class AccessPathTests {
+
+	private final SootClass classA = new SootClass("AccessPathTestsA");
+	private final SootClass classB = new SootClass("AccessPathTestsB");
+	private final SootClass classC = new SootClass("AccessPathTestsC");
+
+	private final SootField fieldF = new SootField("f", classB.getType());
+	private final SootField fieldG = new SootField("g", classC.getType());
+	private final SootField fieldH = new SootField("h", IntType.v());
+	private final SootField fieldNext = new SootField("next", classA.getType());
+
+	private final Local base = Jimple.v().newLocal("a", classA.getType());
+
+	@BeforeClass
+	public static void setUp() {
+		// The type checks in the factory need java.lang.Object
+		G.reset();
+		Scene.v().addClass(new SootClass("java.lang.Object"));
+	}
+
+	public AccessPathTests() {
+		// A.f -> B, B.g -> C, C.h -> int, A.next -> A
+		classA.addField(fieldF);
+		classA.addField(fieldNext);
+		classB.addField(fieldG);
+		classC.addField(fieldH);
+	}
+
+	private AccessPath createAccessPath(Local value, RefType baseType, SootField... fields) {
+		Type[] fieldTypes = new Type[fields.length];
+		for (int i = 0; i < fields.length; i++)
+			fieldTypes[i] = fields[i].getType();
+		return AccessPathFactory.v().createAccessPath(value, fields, baseType,
+				fieldTypes, true, false, true, ArrayTaintType.ContentsAndLength);
+	}
+
+	@Test
+	public void appendFieldsTest() {
+		AccessPath ap = createAccessPath(base, classA.getType(), fieldF);
+		AccessPath appended = ap.appendFields(new SootField[] { fieldG, fieldH },
+				new Type[] { fieldG.getType(), fieldH.getType() }, true);
+		Assert.assertEquals(createAccessPath(base, classA.getType(), fieldF, fieldG, fieldH),
+				appended);
+
+		AccessPath merged = createAccessPath(base, classA.getType()).merge(
+				createAccessPath(base, classA.getType(), fieldF, fieldG));
+		Assert.assertEquals(createAccessPath(base, classA.getType(), fieldF, fieldG), merged);
+	}
+
+	@Test
+	public void appendRecursiveFieldTest() {
+		// a.next.f must be normalized the same way on both paths
+		AccessPath ap = createAccessPath(base, classA.getType());
+		AccessPath appended = ap.appendFields(new SootField[] { fieldNext, fieldF },
+				new Type[] { fieldNext.getType(), fieldF.getType() }, true);
+		Assert.assertEquals(createAccessPath(base, classA.getType(), fieldNext, fieldF),
+				appended);
+	}
+
+	@Test
+	public void appendBeyondMaximumLengthTest() {
+		int oldLength = InfoflowConfiguration.getAccessPathLength();
+		try {
+			InfoflowConfiguration.setAccessPathLength(2);
+			AccessPath ap = createAccessPath(base, classA.getType(), fieldF);
+			AccessPath appended = ap.appendFields(new SootField[] { fieldG, fieldH },
+					new Type[] { fieldG.getType(), fieldH.getType() }, false);
+			Assert.assertEquals(2, appended.getFieldCount());
+			Assert.assertTrue(appended.getTaintSubFields());
+			Assert.assertTrue(appended.isCutOffApproximation());
+			Assert.assertEquals(createAccessPath(base, classA.getType(), fieldF, fieldG, fieldH),
+					appended);
+		}
+		finally {
+			InfoflowConfiguration.setAccessPathLength(oldLength);
+		}
+	}
+
+	@Test
+	public void dropFirstFieldTest() {
+		// The new base type differs from the type of the base local. We do not
+		// load a class hierarchy in which the types could be compared.
+		boolean oldTypeTightening = InfoflowConfiguration.getUseTypeTightening();
+		try {
+			InfoflowConfiguration.setUseTypeTightening(false);
+			AccessPath ap = createAccessPath(base, classA.getType(), fieldF, fieldG, fieldH);
+			AccessPath dropped = ap.dropFirstField();
+			Assert.assertEquals(createAccessPath(base, classB.getType(), fieldG, fieldH), dropped);
+			Assert.assertEquals(classB.getType(), dropped.getBaseType());
+
+			AccessPath droppedAll = dropped.dropFirstField().dropFirstField();
+			Assert.assertEquals(0, droppedAll.getFieldCount());
+			Assert.assertEquals(IntType.v(), droppedAll.getBaseType());
+		}
+		finally {
+			InfoflowConfiguration.setUseTypeTightening(oldTypeTightening);
+		}
+	}
+
+}
@@ -0,0 +1,120 @@
+package soot.jimple.infoflow.test.junit;
+
+import heros.solver.PathEdge;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import soot.jimple.infoflow.solver.fastSolver.CompactJumpFunctions;
+import soot.jimple.infoflow.solver.fastSolver.JumpFunctions;
+
+/**
+ * Tests for the jump function table that interns statements and facts to
+ * integer IDs
+ */
+public class CompactJumpFunctionsTests {
+
+	private static final int NUM_THREADS = 8;
+
+	/**
+	 * Creates a random edge. The strings are created anew every time, so
+	 * equal edges never share their facts.
+	 */
+	private static PathEdge<String, String> createEdge(Random random) {
+		return new PathEdge<String, String>(new String("s" + random.nextInt(20)),
+				new String("n" + random.nextInt(200)), new String("t" + random.nextInt(20)));
+	}
+
+	@Test
+	public void sameAsJumpFunctionsTest() {
+		JumpFunctions<String, String> expected = new JumpFunctions<String, String>();
+		CompactJumpFunctions<String, String> actual = new CompactJumpFunctions<String, String>();
+
+		// There are 80000 different edges, so the segments have to grow
+		Random random = new Random(42);
+		int newEdges = 0;
+		for (int i = 0; i < 200000; i++) {
+			PathEdge<String, String> edge = createEdge(random);
+			String expectedFact = expected.addFunction(edge);
+			String actualFact = actual.addFunction(edge);
+
+			// For a known edge, we must get the fact under which it was
+			// registered first
+			Assert.assertSame(expectedFact, actualFact);
+			if (actualFact == null)
+				newEdges++;
+		}
+		Assert.assertTrue(newEdges > 50000);
+	}
+
+	@Test
+	public void clearTest() {
+		CompactJumpFunctions<String, String> jumpFunctions =
+				new CompactJumpFunctions<String, String>();
+		PathEdge<String, String> edge = new PathEdge<String, String>("s", "n", "t");
+		Assert.assertNull(jumpFunctions.addFunction(edge));
+		Assert.assertSame(edge.factAtTarget(), jumpFunctions.addFunction(
+				new PathEdge<String, String>("s", "n", new String("t"))));
+
+		jumpFunctions.clear();
+		Assert.assertNull(jumpFunctions.addFunction(edge));
+	}
+
+	@Test(timeout = 300000)
+	public void concurrentAddTest() throws Exception {
+		final List<PathEdge<String, String>> edges = new ArrayList<PathEdge<String, String>>();
+		for (int i = 0; i < 5000; i++)
+			edges.add(new PathEdge<String, String>("s" + (i % 7), "n" + i, "t" + (i % 13)));
+
+		ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+		try {
+			for (int round = 0; round < 20; round++) {
+				final CompactJumpFunctions<String, String> jumpFunctions =
+						new CompactJumpFunctions<String, String>();
+				final CyclicBarrier barrier = new CyclicBarrier(NUM_THREADS);
+
+				// All threads add all edges in different orders
+				List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+				for (int t = 0; t < NUM_THREADS; t++) {
+					final long seed = round * NUM_THREADS + t;
+					futures.add(executor.submit(new Callable<Integer>() {
+
+						@Override
+						public Integer call() throws Exception {
+							List<PathEdge<String, String>> order =
+									new ArrayList<PathEdge<String, String>>(edges);
+							Collections.shuffle(order, new Random(seed));
+							barrier.await();
+							int added = 0;
+							for (PathEdge<String, String> edge : order)
+								if (jumpFunctions.addFunction(edge) == null)
+									added++;
+							return added;
+						}
+
+					}));
+				}
+
+				// Every edge must have been added exactly once
+				int added = 0;
+				for (Future<Integer> future : futures)
+					added += future.get();
+				Assert.assertEquals(edges.size(), added);
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+}
@@ -0,0 +1,111 @@
+package soot.jimple.infoflow.test.junit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import soot.jimple.infoflow.collect.ConcurrentAppendOnlyIdentitySet;
+
+/**
+ * Tests for the lock-free set that stores the neighbors of abstractions
+ */
+public class ConcurrentAppendOnlyIdentitySetTests {
+
+	private static final int NUM_THREADS = 8;
+
+	@Test
+	public void identitySemanticsTest() {
+		ConcurrentAppendOnlyIdentitySet<String> set = new ConcurrentAppendOnlyIdentitySet<String>();
+		Assert.assertTrue(set.isEmpty());
+
+		// Equal strings are different elements
+		List<String> elements = new ArrayList<String>();
+		for (int i = 0; i < 1000; i++) {
+			String element = new String("element");
+			elements.add(element);
+			Assert.assertTrue(set.add(element));
+			Assert.assertEquals(i + 1, set.size());
+		}
+		Assert.assertFalse(set.contains(new String("element")));
+
+		// The elements are indexed, but must still be found and not be added
+		// twice
+		for (String element : elements) {
+			Assert.assertTrue(set.contains(element));
+			Assert.assertFalse(set.add(element));
+		}
+		Assert.assertEquals(elements.size(), set.size());
+
+		// The iteration order is the insertion order
+		Iterator<String> it = set.iterator();
+		for (String element : elements)
+			Assert.assertSame(element, it.next());
+		Assert.assertFalse(it.hasNext());
+	}
+
+	@Test(timeout = 300000)
+	public void concurrentAddTest() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+		try {
+			for (int round = 0; round < 200; round++) {
+				final List<Object> elements = new ArrayList<Object>();
+				for (int i = 0; i < 500; i++)
+					elements.add(new Object());
+				final ConcurrentAppendOnlyIdentitySet<Object> set =
+						new ConcurrentAppendOnlyIdentitySet<Object>();
+				final CyclicBarrier barrier = new CyclicBarrier(NUM_THREADS);
+
+				// All threads add all elements in different orders
+				List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+				for (int t = 0; t < NUM_THREADS; t++) {
+					final long seed = round * NUM_THREADS + t;
+					futures.add(executor.submit(new Callable<Integer>() {
+
+						@Override
+						public Integer call() throws Exception {
+							List<Object> order = new ArrayList<Object>(elements);
+							Collections.shuffle(order, new Random(seed));
+							barrier.await();
+							int added = 0;
+							for (Object element : order)
+								if (set.add(element))
+									added++;
+							return added;
+						}
+
+					}));
+				}
+
+				int added = 0;
+				for (Future<Integer> future : futures)
+					added += future.get();
+
+				// Every element must have been added exactly once
+				Assert.assertEquals(elements.size(), added);
+				Assert.assertEquals(elements.size(), set.size());
+				Map<Object, Boolean> seen = new IdentityHashMap<Object, Boolean>();
+				for (Object element : set)
+					Assert.assertNull(seen.put(element, true));
+				Assert.assertEquals(elements.size(), seen.size());
+				for (Object element : elements)
+					Assert.assertTrue(set.contains(element));
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+}
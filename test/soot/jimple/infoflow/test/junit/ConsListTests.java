@@ -0,0 +1,117 @@
+package soot.jimple.infoflow.test.junit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import soot.jimple.infoflow.collect.ConsList;
+
+/**
+ * Tests for the immutable list that stores propagation paths and call stacks
+ */
+public class ConsListTests {
+
+	/**
+	 * Creates a list with the given elements
+	 * @param elements The elements of the new list, starting at the head
+	 * @return The new list
+	 */
+	private static <E> ConsList<E> create(List<E> elements) {
+		ConsList<E> list = ConsList.empty();
+		for (int i = elements.size() - 1; i >= 0; i--)
+			list = list.prepend(elements.get(i));
+		return list;
+	}
+
+	@Test
+	public void listContractTest() {
+		Random random = new Random(42);
+		for (int round = 0; round < 500; round++) {
+			List<Integer> expected = new ArrayList<Integer>();
+			int size = random.nextInt(40);
+			for (int i = 0; i < size; i++)
+				expected.add(random.nextInt(10) == 0 ? null : random.nextInt(100));
+			ConsList<Integer> list = create(expected);
+
+			Assert.assertEquals(expected.size(), list.size());
+			Assert.assertEquals(expected.isEmpty(), list.isEmpty());
+			Assert.assertEquals(expected.hashCode(), list.hashCode());
+			Assert.assertEquals(expected, list);
+			Assert.assertEquals(list, expected);
+			Assert.assertEquals(list, new ArrayList<Integer>(list));
+			for (int i = 0; i < expected.size(); i++)
+				Assert.assertEquals(expected.get(i), list.get(i));
+
+			// Removing the head must give the tail of the ArrayList
+			ConsList<Integer> tail = list;
+			for (int i = 0; i < expected.size(); i++) {
+				Assert.assertEquals(expected.get(i), tail.getHead());
+				tail = tail.getTail();
+				List<Integer> expectedTail = expected.subList(i + 1, expected.size());
+				Assert.assertEquals(expectedTail.hashCode(), tail.hashCode());
+				Assert.assertEquals(expectedTail, tail);
+			}
+			Assert.assertTrue(tail.isEmpty());
+		}
+	}
+
+	@Test
+	public void equalsTest() {
+		List<String> elements = new ArrayList<String>();
+		for (int i = 0; i < 20; i++)
+			elements.add("e" + i);
+
+		// Equal lists that do not share any nodes
+		ConsList<String> list1 = create(elements);
+		ConsList<String> list2 = create(new ArrayList<String>(elements));
+		Assert.assertEquals(list1, list2);
+		Assert.assertEquals(list1.hashCode(), list2.hashCode());
+
+		// Lists that share their tail, but differ in the head
+		Assert.assertNotEquals(list1.prepend("a"), list1.prepend("b"));
+		Assert.assertEquals(list1.prepend("a"), list2.prepend("a"));
+
+		// Lists with the same elements in different orders
+		List<String> reversed = new ArrayList<String>(elements);
+		Collections.reverse(reversed);
+		Assert.assertNotEquals(list1, create(reversed));
+		Assert.assertNotEquals(reversed, list1);
+
+		// Prefixes are not equal to the full list
+		Assert.assertNotEquals(list1, list1.getTail());
+		Assert.assertNotEquals(list1, elements.subList(0, elements.size() - 1));
+		Assert.assertNotEquals(list1, ConsList.empty());
+		Assert.assertEquals(ConsList.empty(), new ArrayList<String>());
+	}
+
+	@Test
+	public void mightContainTest() {
+		Random random = new Random(4711);
+		List<Object> elements = new ArrayList<Object>();
+		ConsList<Object> list = ConsList.empty();
+		for (int i = 0; i < 1000; i++) {
+			Object element = random.nextInt(5) == 0 ? new Object() : "s" + random.nextInt();
+			elements.add(element);
+			list = list.prepend(element);
+
+			// There must never be any false negatives
+			for (Object e : elements)
+				Assert.assertTrue(list.mightContain(e));
+		}
+		for (Object e : elements)
+			Assert.assertTrue(list.contains(e));
+		list = list.prepend(null);
+		Assert.assertTrue(list.mightContain(null));
+		Assert.assertTrue(list.contains(null));
+
+		// Elements that are not in the list must not be found
+		for (int i = 0; i < 1000; i++)
+			Assert.assertFalse(list.contains("t" + i));
+		Assert.assertFalse(ConsList.empty().mightContain("a"));
+	}
+
+}
@@ -0,0 +1,74 @@
+package soot.jimple.infoflow.test.junit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import soot.IntType;
+import soot.Local;
+import soot.jimple.Jimple;
+import soot.jimple.infoflow.data.Abstraction;
+import soot.jimple.infoflow.data.AccessPath;
+import soot.jimple.infoflow.data.AccessPathFactory;
+import soot.jimple.infoflow.data.FlowDroidMemoryManager;
+import soot.jimple.infoflow.data.SourceContext;
+
+/**
+ * Tests for the compaction of predecessor chains in the
+ * {@link FlowDroidMemoryManager}
+ */
+public class FlowDroidMemoryManagerTests {
+
+	private int localCounter = 0;
+
+	private AccessPath createAccessPath() {
+		Local local = Jimple.v().newLocal("l" + localCounter++, IntType.v());
+		return AccessPathFactory.v().createAccessPath(local, true);
+	}
+
+	private Abstraction createSource() {
+		AccessPath ap = createAccessPath();
+		Abstraction abs = new Abstraction(ap, Jimple.v().newNopStmt(), null, false, false);
+		abs.setSourceContext(new SourceContext(ap, Jimple.v().newNopStmt()));
+		return abs;
+	}
+
+	/**
+	 * An equal ancestor above an abstraction whose chain has already been
+	 * compacted must still be found
+	 */
+	@Test
+	public void equalAncestorAboveCompactedTest() {
+		FlowDroidMemoryManager manager = new FlowDroidMemoryManager();
+		AccessPath apX = createAccessPath();
+
+		Abstraction source = createSource();
+		Abstraction a = source.deriveNewAbstraction(apX, Jimple.v().newNopStmt());
+		Abstraction p = a.deriveNewAbstraction(createAccessPath(), Jimple.v().newNopStmt());
+		Abstraction b = p.deriveNewAbstraction(createAccessPath(), Jimple.v().newNopStmt());
+		Assert.assertSame(b, manager.handleMemoryObject(b));
+
+		Abstraction c = b.deriveNewAbstraction(createAccessPath(), Jimple.v().newNopStmt());
+		Abstraction d = c.deriveNewAbstraction(apX, Jimple.v().newNopStmt());
+		Assert.assertEquals(a, d);
+		Assert.assertSame(a, manager.handleMemoryObject(d));
+	}
+
+	/**
+	 * The walk stops at an equal ancestor that has already been compacted,
+	 * because there is no other equal abstraction above it
+	 */
+	@Test
+	public void equalCompactedAncestorTest() {
+		FlowDroidMemoryManager manager = new FlowDroidMemoryManager();
+		AccessPath apX = createAccessPath();
+
+		Abstraction source = createSource();
+		Abstraction a = source.deriveNewAbstraction(apX, Jimple.v().newNopStmt());
+		Assert.assertSame(a, manager.handleMemoryObject(a));
+
+		Abstraction b = a.deriveNewAbstraction(createAccessPath(), Jimple.v().newNopStmt());
+		Abstraction c = b.deriveNewAbstraction(apX, Jimple.v().newNopStmt());
+		Assert.assertSame(a, manager.handleMemoryObject(c));
+	}
+
+}
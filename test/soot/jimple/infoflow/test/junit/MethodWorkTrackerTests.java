@@ -0,0 +1,118 @@
+package soot.jimple.infoflow.test.junit;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import soot.jimple.infoflow.solver.fastSolver.MethodWorkTracker;
+import soot.jimple.toolkits.ide.icfg.BiDiInterproceduralCFG;
+
+/**
+ * Tests for the tracker that finds the methods whose summaries can be
+ * compacted. Methods are plain strings, call sites are strings of the form
+ * "caller:callee".
+ */
+public class MethodWorkTrackerTests {
+
+	/**
+	 * Creates an ICFG that only knows the given calls
+	 * @param calls The calls as pairs of caller and callee
+	 */
+	@SuppressWarnings("unchecked")
+	private static BiDiInterproceduralCFG<String, String> createICFG(String... calls) {
+		final Map<String, List<String>> callsFromWithin = new HashMap<String, List<String>>();
+		final Map<String, List<String>> callersOf = new HashMap<String, List<String>>();
+		for (int i = 0; i < calls.length; i += 2) {
+			String callSite = calls[i] + ":" + calls[i + 1];
+			add(callsFromWithin, calls[i], callSite);
+			add(callersOf, calls[i + 1], callSite);
+		}
+
+		return (BiDiInterproceduralCFG<String, String>) Proxy.newProxyInstance(
+				MethodWorkTrackerTests.class.getClassLoader(),
+				new Class<?>[] { BiDiInterproceduralCFG.class },
+				new InvocationHandler() {
+
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						String arg = (String) args[0];
+						if (method.getName().equals("getMethodOf"))
+							return arg.substring(0, arg.indexOf(':'));
+						if (method.getName().equals("getCalleesOfCallAt"))
+							return Collections.singleton(arg.substring(arg.indexOf(':') + 1));
+						if (method.getName().equals("getCallsFromWithin"))
+							return new HashSet<String>(get(callsFromWithin, arg));
+						if (method.getName().equals("getCallersOf"))
+							return get(callersOf, arg);
+						throw new UnsupportedOperationException(method.getName());
+					}
+
+				});
+	}
+
+	private static void add(Map<String, List<String>> map, String key, String value) {
+		List<String> values = map.get(key);
+		if (values == null) {
+			values = new ArrayList<String>();
+			map.put(key, values);
+		}
+		values.add(value);
+	}
+
+	private static List<String> get(Map<String, List<String>> map, String key) {
+		List<String> values = map.get(key);
+		return values == null ? Collections.<String>emptyList() : values;
+	}
+
+	@Test
+	public void busySiblingTest() {
+		// main calls a and b, b calls c
+		MethodWorkTracker<String, String> tracker = new MethodWorkTracker<String, String>(
+				createICFG("main", "a", "main", "b", "b", "c"));
+		tracker.edgeScheduled("main");
+		tracker.edgeScheduled("a");
+		tracker.edgeScheduled("b");
+		tracker.edgeScheduled("c");
+		Assert.assertFalse(tracker.edgeProcessed("main"));
+		Assert.assertFalse(tracker.edgeProcessed("b"));
+		Assert.assertFalse(tracker.edgeProcessed("c"));
+
+		// The callers of c are idle, but a may still return into main, which
+		// can then call b and c again
+		Assert.assertTrue(tracker.pollFinishedMethods().isEmpty());
+
+		// The solver has run out of edges
+		Assert.assertTrue(tracker.edgeProcessed("a"));
+		Set<String> finished = tracker.pollFinishedMethods();
+		Assert.assertEquals(new HashSet<String>(Arrays.asList(
+				"main", "a", "b", "c")), finished);
+		Assert.assertTrue(tracker.pollFinishedMethods().isEmpty());
+	}
+
+	@Test
+	public void unrelatedBusyMethodTest() {
+		// main calls b, b calls c, and x calls a. Nothing calls main or x.
+		MethodWorkTracker<String, String> tracker = new MethodWorkTracker<String, String>(
+				createICFG("main", "b", "b", "c", "x", "a"));
+		tracker.edgeScheduled("a");
+		tracker.edgeScheduled("c");
+		tracker.edgeProcessed("c");
+
+		// a cannot reach c, so c and its callers are finished
+		Set<String> finished = tracker.pollFinishedMethods();
+		Assert.assertEquals(new HashSet<String>(Arrays.asList(
+				"main", "b", "c")), finished);
+	}
+
+}
@@ -10,17 +10,44 @@
  ******************************************************************************/
 package soot.jimple.infoflow.test.junit;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Assert;
 import org.junit.Test;
 
+import soot.MethodOrMethodContext;
+import soot.Scene;
+import soot.SootMethod;
+import soot.Unit;
+import soot.jimple.Stmt;
 import soot.jimple.infoflow.IInfoflow;
+import soot.jimple.infoflow.Infoflow;
 import soot.jimple.infoflow.InfoflowConfiguration;
+import soot.jimple.infoflow.InfoflowConfiguration.EdgeSchedulingStrategy;
 import soot.jimple.infoflow.config.IInfoflowConfig;
+import soot.jimple.infoflow.data.Abstraction;
 import soot.jimple.infoflow.data.pathBuilders.DefaultPathBuilderFactory;
 import soot.jimple.infoflow.data.pathBuilders.DefaultPathBuilderFactory.PathBuilder;
+import soot.jimple.infoflow.handlers.IncrementalResultsHandler;
+import soot.jimple.infoflow.handlers.ResultsAvailableHandler;
+import soot.jimple.infoflow.handlers.TaintPropagationHandler;
+import soot.jimple.infoflow.results.InfoflowResults;
+import soot.jimple.infoflow.results.InfoflowResults.TerminationReason;
+import soot.jimple.infoflow.results.ResultSinkInfo;
+import soot.jimple.infoflow.results.ResultSourceInfo;
+import soot.jimple.infoflow.solver.cfg.FrozenInfoflowCFG;
+import soot.jimple.infoflow.solver.cfg.IInfoflowCFG;
+import soot.jimple.infoflow.solver.cfg.InfoflowCFG;
+import soot.jimple.toolkits.ide.icfg.JimpleBasedInterproceduralCFG;
 import soot.options.Options;
 
 /**
@@ -409,4 +436,375 @@ public class OtherTests extends JUnitTests{
     	}
 	}
     
+    @Test(timeout=300000)
+    public void onDemandPathTest(){
+    	IInfoflow infoflow = initInfoflow(false, new DefaultPathBuilderFactory(
+    			PathBuilder.OnDemand, true));
+    	List<String> epoints = new ArrayList<String>();
+    	epoints.add("<soot.jimple.infoflow.test.OtherTestCode: void testWithField()>");
+		infoflow.computeInfoflow(appPath, libPath, epoints, sources, sinks);
+		checkInfoflow(infoflow, 2);
+		
+		// The paths must only be computed when they are requested
+		for (ResultSinkInfo sink : infoflow.getResults().getResults().keySet())
+			for (ResultSourceInfo source : infoflow.getResults().getResults().get(sink)) {
+				Assert.assertTrue(source.hasPendingPath());
+				Assert.assertNotNull(source.getPath());
+				Assert.assertFalse(source.hasPendingPath());
+				Assert.assertEquals(source.getSource(), source.getPath()[0]);
+				Assert.assertEquals(source.getPath().length, source.getPathAccessPaths().length);
+			}
+    }
+
+    @Test(timeout=300000)
+    public void onDemandPathSensitiveTest(){
+    	boolean oldPathAgnosticResults = InfoflowConfiguration.getPathAgnosticResults();
+    	try {
+	    	IInfoflow infoflow = initInfoflow(false, new DefaultPathBuilderFactory(
+	    			PathBuilder.OnDemand, true));
+	    	List<String> epoints = new ArrayList<String>();
+	    	epoints.add("<soot.jimple.infoflow.test.OtherTestCode: void testWithField()>");
+	    	InfoflowConfiguration.setPathAgnosticResults(false);
+			infoflow.computeInfoflow(appPath, libPath, epoints, sources, sinks);
+			checkInfoflow(infoflow, 2);
+			
+			// Adding the sources to the result set must not reconstruct
+			// their paths
+			for (ResultSinkInfo sink : infoflow.getResults().getResults().keySet())
+				for (ResultSourceInfo source : infoflow.getResults().getResults().get(sink)) {
+					Assert.assertTrue(source.hasPendingPath());
+					int hashCode = source.hashCode();
+					Assert.assertNotNull(source.getPath());
+					Assert.assertEquals(hashCode, source.hashCode());
+					Assert.assertTrue(infoflow.getResults().getResults().get(sink).contains(source));
+				}
+    	}
+    	finally {
+    		InfoflowConfiguration.setPathAgnosticResults(oldPathAgnosticResults);
+    	}
+    }
+
+    @Test(timeout=300000)
+    public void parallelPathBuilderTest(){
+    	IInfoflow infoflow = initInfoflow(false, new DefaultPathBuilderFactory(
+    			PathBuilder.Parallel, true));
+    	List<String> epoints = new ArrayList<String>();
+    	epoints.add("<soot.jimple.infoflow.test.OtherTestCode: void testWithField()>");
+		infoflow.computeInfoflow(appPath, libPath, epoints, sources, sinks);
+		checkInfoflow(infoflow, 2);
+
+		for (ResultSinkInfo sink : infoflow.getResults().getResults().keySet())
+			for (ResultSourceInfo source : infoflow.getResults().getResults().get(sink)) {
+				Assert.assertNotNull(source.getPath());
+				Assert.assertEquals(source.getSource(), source.getPath()[0]);
+			}
+    }
+
+    @Test(timeout=300000)
+    public void pathLengthLimitTest(){
+    	DefaultPathBuilderFactory factory = new DefaultPathBuilderFactory(
+    			PathBuilder.ContextSensitive, true);
+    	factory.setMaxPathLength(2);
+    	IInfoflow infoflow = initInfoflow(false, factory);
+    	List<String> epoints = new ArrayList<String>();
+    	epoints.add("<soot.jimple.infoflow.test.OtherTestCode: void testWithField()>");
+		infoflow.computeInfoflow(appPath, libPath, epoints, sources, sinks);
+
+		// The paths in this example are longer than the limit. The leaks must
+		// still be reported, but with shortened paths.
+		Assert.assertTrue(infoflow.getResults().hasTruncatedResults());
+		checkInfoflow(infoflow, 2);
+		for (ResultSinkInfo sink : infoflow.getResults().getResults().keySet())
+			for (ResultSourceInfo source : infoflow.getResults().getResults().get(sink))
+				Assert.assertTrue(source.getPath().length <= 2);
+    }
+
+    @Test(timeout=300000)
+    public void pathsPerPairLimitTest(){
+    	boolean oldPathAgnosticResults = InfoflowConfiguration.getPathAgnosticResults();
+    	try {
+	    	InfoflowConfiguration.setPathAgnosticResults(false);
+	    	List<String> epoints = new ArrayList<String>();
+	    	epoints.add("<soot.jimple.infoflow.test.OtherTestCode: void multiSinkTest2()>");
+	    	
+	    	// There are two distinct paths between the source and the sink.
+	    	// Paths that are found more than once must only be counted once.
+	    	for (int limit = 1; limit <= 2; limit++) {
+		    	DefaultPathBuilderFactory factory = new DefaultPathBuilderFactory(
+		    			PathBuilder.ContextSensitive, true);
+		    	factory.setMaxPathsPerSourceSinkPair(limit);
+		    	IInfoflow infoflow = initInfoflow(false, factory);
+				infoflow.computeInfoflow(appPath, libPath, epoints, sources, sinks);
+				Assert.assertEquals(limit, infoflow.getResults().numConnections());
+				Assert.assertEquals(limit == 1, infoflow.getResults().hasTruncatedResults());
+	    	}
+    	}
+    	finally {
+    		InfoflowConfiguration.setPathAgnosticResults(oldPathAgnosticResults);
+    	}
+    }
+
+    @Test(timeout=300000)
+    public void methodAffineSchedulingTest(){
+    	Infoflow infoflow = (Infoflow) initInfoflow();
+    	infoflow.getConfig().setEdgeSchedulingStrategy(EdgeSchedulingStrategy.MethodAffine);
+    	
+    	// Record the threads on which the solver processes its edges
+    	final Set<String> threadNames = Collections.synchronizedSet(new HashSet<String>());
+    	infoflow.setTaintPropagationHandler(new TaintPropagationHandler() {
+			
+			@Override
+			public void notifyFlowIn(Unit stmt, Abstraction taint, IInfoflowCFG cfg,
+					FlowFunctionType type) {
+				threadNames.add(Thread.currentThread().getName());
+			}
+			
+			@Override
+			public Set<Abstraction> notifyFlowOut(Unit stmt, Abstraction d1,
+					Abstraction incoming, Set<Abstraction> outgoing, IInfoflowCFG cfg,
+					FlowFunctionType type) {
+				return outgoing;
+			}
+			
+		});
+    	List<String> epoints = new ArrayList<String>();
+    	epoints.add("<soot.jimple.infoflow.test.OtherTestCode: void testWithField()>");
+		infoflow.computeInfoflow(appPath, libPath, epoints, sources, sinks);
+		checkInfoflow(infoflow, 2);
+		
+		// All edges must have been run by the workers of the method-affine
+		// executor
+		Assert.assertFalse(threadNames.isEmpty());
+		for (String threadName : threadNames)
+			Assert.assertTrue(threadName, threadName.startsWith("MethodAffineExecutor-worker-"));
+    }
+    
+    @Test(timeout=300000)
+    public void frozenICFGTest(){
+    	Infoflow infoflow = (Infoflow) initInfoflow();
+    	infoflow.getConfig().setFreezeICFG(true);
+    	final AtomicReference<IInfoflowCFG> usedCFG = new AtomicReference<IInfoflowCFG>();
+    	infoflow.addResultsAvailableHandler(new ResultsAvailableHandler() {
+			
+			@Override
+			public void onResultsAvailable(IInfoflowCFG cfg, InfoflowResults results) {
+				usedCFG.set(cfg);
+			}
+			
+		});
+    	List<String> epoints = new ArrayList<String>();
+    	epoints.add("<soot.jimple.infoflow.test.OtherTestCode: void testWithField()>");
+		infoflow.computeInfoflow(appPath, libPath, epoints, sources, sinks);
+		checkInfoflow(infoflow, 2);
+		
+		// The frozen graph must give the same answers as the original one for
+		// every unit that it has frozen
+		Assert.assertTrue(usedCFG.get() instanceof FrozenInfoflowCFG);
+		IInfoflowCFG frozen = usedCFG.get();
+		IInfoflowCFG original = new InfoflowCFG(new JimpleBasedInterproceduralCFG(
+				infoflow.getConfig().getEnableExceptionTracking()));
+		int numUnits = 0;
+		for (Iterator<MethodOrMethodContext> methodIt = Scene.v().getReachableMethods().listener();
+				methodIt.hasNext(); ) {
+			SootMethod method = methodIt.next().method();
+			if (!method.hasActiveBody())
+				continue;
+			Assert.assertEquals(new HashSet<Unit>(original.getStartPointsOf(method)),
+					new HashSet<Unit>(frozen.getStartPointsOf(method)));
+			Assert.assertEquals(new HashSet<Unit>(original.getEndPointsOf(method)),
+					new HashSet<Unit>(frozen.getEndPointsOf(method)));
+			for (Unit u : method.getActiveBody().getUnits()) {
+				Assert.assertEquals(original.getMethodOf(u), frozen.getMethodOf(u));
+				Assert.assertEquals(original.getSuccsOf(u), frozen.getSuccsOf(u));
+				Assert.assertEquals(original.getPredsOf(u), frozen.getPredsOf(u));
+				Assert.assertEquals(original.isCallStmt(u), frozen.isCallStmt(u));
+				Assert.assertEquals(original.isExitStmt(u), frozen.isExitStmt(u));
+				Assert.assertEquals(original.isStartPoint(u), frozen.isStartPoint(u));
+				if (original.isCallStmt(u)) {
+					Assert.assertEquals(new HashSet<SootMethod>(original.getCalleesOfCallAt(u)),
+							new HashSet<SootMethod>(frozen.getCalleesOfCallAt(u)));
+					Assert.assertEquals(new HashSet<Unit>(original.getReturnSitesOfCallAt(u)),
+							new HashSet<Unit>(frozen.getReturnSitesOfCallAt(u)));
+				}
+				numUnits++;
+			}
+		}
+		Assert.assertTrue(numUnits > 0);
+    }
+
+    @Test(timeout=300000)
+    public void callgraphSnapshotTest() throws IOException {
+    	File snapshotDir = File.createTempFile("callgraph", "");
+    	Assert.assertTrue(snapshotDir.delete() && snapshotDir.mkdir());
+    	try {
+	    	List<String> epoints = new ArrayList<String>();
+	    	epoints.add("<soot.jimple.infoflow.test.OtherTestCode: void testWithField()>");
+	    	
+	    	// The first run writes the snapshot, the second one loads it. If
+	    	// the second run could not use the snapshot, it would write a new
+	    	// file.
+	    	long timestamp = 0;
+	    	for (int i = 0; i < 2; i++) {
+		    	IInfoflow infoflow = initInfoflow();
+		    	infoflow.getConfig().setCallgraphSnapshotDirectory(snapshotDir.getPath());
+				infoflow.computeInfoflow(appPath, libPath, epoints, sources, sinks);
+				checkInfoflow(infoflow, 2);
+				
+				File[] snapshots = snapshotDir.listFiles();
+				Assert.assertEquals(1, snapshots.length);
+				if (i == 0) {
+					timestamp = snapshots[0].lastModified() - 60000;
+					Assert.assertTrue(snapshots[0].setLastModified(timestamp));
+				}
+				else
+					Assert.assertEquals(timestamp, snapshots[0].lastModified());
+	    	}
+    	}
+    	finally {
+    		for (File f : snapshotDir.listFiles())
+    			f.delete();
+    		snapshotDir.delete();
+    	}
+    }
+
+    @Test(timeout=300000)
+    public void edgeBatchingTest(){
+    	Infoflow infoflow = (Infoflow) initInfoflow();
+    	List<String> epoints = new ArrayList<String>();
+    	epoints.add("<soot.jimple.infoflow.test.OtherTestCode: void testWithField()>");
+		infoflow.computeInfoflow(appPath, libPath, epoints, sources, sinks);
+		checkInfoflow(infoflow, 2);
+		long unbatchedTasks = infoflow.getSolverTaskCount();
+		Assert.assertTrue(unbatchedTasks > 0);
+		
+		// With batching, the intra-procedural edges do not need tasks of
+		// their own
+    	infoflow.getConfig().setMaxEdgeBatchSize(64);
+		infoflow.computeInfoflow(appPath, libPath, epoints, sources, sinks);
+		checkInfoflow(infoflow, 2);
+		Assert.assertTrue(infoflow.getSolverTaskCount() > 0);
+		Assert.assertTrue(infoflow.getSolverTaskCount() < infoflow.getSolverEdgeCount());
+		Assert.assertTrue(infoflow.getSolverTaskCount() < unbatchedTasks);
+    }
+    
+    @Test(timeout=300000)
+    public void compactJumpFunctionsTest(){
+    	Infoflow infoflow = (Infoflow) initInfoflow();
+    	List<String> epoints = new ArrayList<String>();
+    	epoints.add("<soot.jimple.infoflow.test.OtherTestCode: void testWithField()>");
+		infoflow.computeInfoflow(appPath, libPath, epoints, sources, sinks);
+		checkInfoflow(infoflow, 2);
+		long edgeCount = infoflow.getSolverEdgeCount();
+		
+		// The compact table must recognize exactly the same edges as known
+		infoflow.getConfig().setUseCompactJumpFunctions(true);
+		infoflow.computeInfoflow(appPath, libPath, epoints, sources, sinks);
+		checkInfoflow(infoflow, 2);
+		Assert.assertEquals(edgeCount, infoflow.getSolverEdgeCount());
+    }
+    
+    @Test(timeout=300000)
+    public void spillSolverDataTest(){
+    	Infoflow infoflow = (Infoflow) initInfoflow();
+    	infoflow.getConfig().setSpillSolverData(true);
+    	infoflow.getConfig().setMaxResidentSolverEntries(16);
+    	List<String> epoints = new ArrayList<String>();
+    	epoints.add("<soot.jimple.infoflow.test.OtherTestCode: void multiCallTest()>");
+		infoflow.computeInfoflow(appPath, libPath, epoints, sources, sinks);
+		checkInfoflow(infoflow, 2);
+		
+		// The solvers must have worked on data that came back from disk
+		Assert.assertTrue(infoflow.getSolverSpillCount() > 0);
+		Assert.assertTrue(infoflow.getSolverReloadCount() > 0);
+    }
+    
+    @Test(timeout=300000)
+    public void summaryCompactionTest(){
+    	Infoflow infoflow = (Infoflow) initInfoflow();
+    	infoflow.getConfig().setEnableSummaryCompaction(true);
+    	infoflow.getConfig().setSummaryCompactionInterval(1);
+    	List<String> epoints = new ArrayList<String>();
+    	epoints.add("<soot.jimple.infoflow.test.OtherTestCode: void multiCallTest()>");
+		infoflow.computeInfoflow(appPath, libPath, epoints, sources, sinks);
+		checkInfoflow(infoflow, 2);
+		
+		// Compacting after every edge must not change the results
+		Assert.assertTrue(infoflow.getCompactedSummaryCount() > 0);
+    }
+    
+    @Test(timeout=300000)
+    public void incrementalResultsTest(){
+    	Infoflow infoflow = (Infoflow) initInfoflow();
+    	final List<Stmt> streamedSinks = Collections.synchronizedList(new ArrayList<Stmt>());
+    	final List<Set<ResultSourceInfo>> streamedSources =
+    			Collections.synchronizedList(new ArrayList<Set<ResultSourceInfo>>());
+    	infoflow.addIncrementalResultsHandler(new IncrementalResultsHandler() {
+			
+			@Override
+			public void onResultAvailable(IInfoflowCFG cfg, ResultSinkInfo sink,
+					Set<ResultSourceInfo> sources) {
+				streamedSinks.add(sink.getSink());
+				streamedSources.add(sources);
+			}
+			
+		});
+    	List<String> epoints = new ArrayList<String>();
+    	epoints.add("<soot.jimple.infoflow.test.OtherTestCode: void testWithField()>");
+		infoflow.computeInfoflow(appPath, libPath, epoints, sources, sinks);
+		checkInfoflow(infoflow, 2);
+		
+		// Every sink in the final results must have been streamed before
+		Assert.assertFalse(streamedSinks.isEmpty());
+		for (ResultSinkInfo sink : infoflow.getResults().getResults().keySet())
+			Assert.assertTrue(streamedSinks.contains(sink.getSink()));
+		for (Set<ResultSourceInfo> sources : streamedSources)
+			Assert.assertFalse(sources.isEmpty());
+
+		// The worker thread must not keep the JVM alive
+		for (Thread thread : Thread.getAllStackTraces().keySet())
+			if (thread.getName().equals("IncrementalSourceFinder"))
+				Assert.assertTrue(thread.isDaemon());
+    }
+    
+    @Test(timeout=300000)
+    public void dataFlowTimeoutTest(){
+    	Infoflow infoflow = (Infoflow) initInfoflow();
+    	infoflow.getConfig().setDataFlowTimeout(1);
+    	
+    	// Block the solver on the first edge until the watchdog stops it
+    	final AtomicBoolean interrupted = new AtomicBoolean(false);
+    	infoflow.setTaintPropagationHandler(new TaintPropagationHandler() {
+			
+			@Override
+			public void notifyFlowIn(Unit stmt, Abstraction taint, IInfoflowCFG cfg,
+					FlowFunctionType type) {
+				if (interrupted.get())
+					return;
+				try {
+					Thread.sleep(120000);
+				}
+				catch (InterruptedException e) {
+					interrupted.set(true);
+				}
+			}
+			
+			@Override
+			public Set<Abstraction> notifyFlowOut(Unit stmt, Abstraction d1,
+					Abstraction incoming, Set<Abstraction> outgoing, IInfoflowCFG cfg,
+					FlowFunctionType type) {
+				return outgoing;
+			}
+			
+		});
+    	List<String> epoints = new ArrayList<String>();
+    	epoints.add("<soot.jimple.infoflow.test.OtherTestCode: void testWithField()>");
+		infoflow.computeInfoflow(appPath, libPath, epoints, sources, sinks);
+		
+		Assert.assertTrue(interrupted.get());
+		Assert.assertNotNull(infoflow.getResults());
+		Assert.assertTrue(infoflow.getResults().isPartial());
+		Assert.assertEquals(TerminationReason.DataFlowTimeout,
+				infoflow.getResults().getTerminationReason());
+    }
+    
 }
@@ -0,0 +1,256 @@
+package soot.jimple.infoflow.test.junit;
+
+import heros.solver.Pair;
+import heros.solver.PathEdge;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import soot.jimple.infoflow.solver.fastSolver.IJumpFunctions;
+import soot.jimple.infoflow.solver.fastSolver.SpillingSolverStore;
+import soot.jimple.toolkits.ide.icfg.BiDiInterproceduralCFG;
+
+/**
+ * Tests for the solver store that moves the data of cold methods to disk.
+ * Statements are strings of the form "method:statement", facts are plain
+ * strings.
+ */
+public class SpillingSolverStoreTests {
+
+	private static final int NUM_METHODS = 20;
+	private static final int ENTRIES_PER_METHOD = 10;
+
+	private File spillDirectory;
+
+	@Before
+	public void createSpillDirectory() throws IOException {
+		spillDirectory = File.createTempFile("spill", "");
+		Assert.assertTrue(spillDirectory.delete() && spillDirectory.mkdir());
+	}
+
+	@After
+	public void deleteSpillDirectory() {
+		File[] files = spillDirectory.listFiles();
+		if (files != null)
+			for (File file : files)
+				file.delete();
+		spillDirectory.delete();
+	}
+
+	/**
+	 * Creates an ICFG that only knows the method of each statement
+	 */
+	@SuppressWarnings("unchecked")
+	private static BiDiInterproceduralCFG<String, String> createICFG() {
+		return (BiDiInterproceduralCFG<String, String>) Proxy.newProxyInstance(
+				SpillingSolverStoreTests.class.getClassLoader(),
+				new Class<?>[] { BiDiInterproceduralCFG.class },
+				new InvocationHandler() {
+
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if (method.getName().equals("getMethodOf")) {
+							String stmt = (String) args[0];
+							return stmt.substring(0, stmt.indexOf(':'));
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+
+				});
+	}
+
+	private static String stmt(int method, int idx) {
+		return "m" + method + ":s" + idx;
+	}
+
+	private int countSpillFiles() {
+		int count = 0;
+		for (File file : spillDirectory.listFiles())
+			if (file.getName().endsWith(".spill"))
+				count++;
+		return count;
+	}
+
+	@Test
+	public void spillAndReloadTest() {
+		SpillingSolverStore<String, String, String> store =
+				new SpillingSolverStore<String, String, String>(createICFG(),
+						spillDirectory.getAbsolutePath(), 16);
+		IJumpFunctions<String, String> jumpFunctions = store.getJumpFunctions();
+
+		// Fill all methods, far more than can be kept on the heap
+		Map<PathEdge<String, String>, String> facts = new HashMap<PathEdge<String, String>, String>();
+		for (int m = 0; m < NUM_METHODS; m++) {
+			String method = "m" + m;
+			for (int i = 0; i < ENTRIES_PER_METHOD; i++) {
+				PathEdge<String, String> edge = new PathEdge<String, String>(
+						"d" + m, stmt(m, i), new String("t" + i));
+				Assert.assertNull(jumpFunctions.addFunction(edge));
+				facts.put(edge, edge.factAtTarget());
+
+				Assert.assertTrue(store.addEndSummary(method, "d" + m, stmt(m, i), "e" + i));
+				Assert.assertTrue(store.addIncoming(method, "d" + m, stmt(m + 1, i),
+						"c" + i, "f" + i));
+			}
+		}
+		Assert.assertTrue(store.getSpillCount() > 0);
+		Assert.assertTrue(countSpillFiles() > 0);
+
+		// All data must have survived the trip to disk
+		for (int m = 0; m < NUM_METHODS; m++) {
+			String method = "m" + m;
+			Set<Pair<String, String>> expectedSummaries = new HashSet<Pair<String, String>>();
+			Map<String, Map<String, String>> expectedIncoming = new HashMap<String, Map<String, String>>();
+			for (int i = 0; i < ENTRIES_PER_METHOD; i++) {
+				expectedSummaries.add(new Pair<String, String>(stmt(m, i), "e" + i));
+				Map<String, String> incFacts = new HashMap<String, String>();
+				incFacts.put("c" + i, "f" + i);
+				expectedIncoming.put(stmt(m + 1, i), incFacts);
+			}
+			Assert.assertEquals(expectedSummaries, store.endSummary(method, "d" + m));
+			Assert.assertEquals(expectedIncoming, store.incoming("d" + m, method));
+			Assert.assertNull(store.endSummary(method, "unknown"));
+			Assert.assertNull(store.incoming("unknown", method));
+
+			// Known entries must be recognized, and jump functions must
+			// give us the original target facts
+			for (int i = 0; i < ENTRIES_PER_METHOD; i++) {
+				PathEdge<String, String> edge = new PathEdge<String, String>(
+						"d" + m, stmt(m, i), new String("t" + i));
+				Assert.assertSame(facts.get(edge), jumpFunctions.addFunction(edge));
+				Assert.assertFalse(store.addEndSummary(method, "d" + m, stmt(m, i), "e" + i));
+			}
+		}
+		Assert.assertTrue(store.getReloadCount() > 0);
+
+		store.clear();
+		Assert.assertEquals(0, countSpillFiles());
+		Assert.assertNull(store.endSummary("m0", "d0"));
+	}
+
+	/**
+	 * Adds a jump function whose target fact is not referenced from anywhere
+	 * else
+	 * @return A weak reference to the target fact
+	 */
+	private static WeakReference<String> addUnreferencedFunction(
+			IJumpFunctions<String, String> jumpFunctions, String target, String fact) {
+		String targetFact = new String(fact);
+		Assert.assertNull(jumpFunctions.addFunction(new PathEdge<String, String>(
+				"d", target, targetFact)));
+		return new WeakReference<String>(targetFact);
+	}
+
+	/**
+	 * Runs the garbage collector until the given reference has been cleared
+	 * @param ref The reference to wait for
+	 */
+	private static void awaitCollection(WeakReference<?> ref) throws InterruptedException {
+		for (int i = 0; i < 100 && ref.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+	}
+
+	@Test(timeout = 300000)
+	public void collectFactsTest() throws InterruptedException {
+		SpillingSolverStore<String, String, String> store =
+				new SpillingSolverStore<String, String, String>(createICFG(),
+						spillDirectory.getAbsolutePath(), 4);
+		IJumpFunctions<String, String> jumpFunctions = store.getJumpFunctions();
+
+		// Strings are not linked to predecessors, so the store keeps the first
+		// object of every ID. We make sure that these are constants.
+		Assert.assertNull(jumpFunctions.addFunction(new PathEdge<String, String>("d", "m9:s8", "t")));
+		Assert.assertNull(jumpFunctions.addFunction(new PathEdge<String, String>("d", "m9:s9", "e")));
+
+		// The store must neither keep the target facts of jump functions nor
+		// the facts of spilled end summaries alive
+		WeakReference<String> jumpFact = addUnreferencedFunction(jumpFunctions, "m0:s0", "t");
+		String summaryFact = new String("e");
+		Assert.assertTrue(store.addEndSummary("m0", "d", "m0:exit", summaryFact));
+		WeakReference<String> summaryRef = new WeakReference<String>(summaryFact);
+		summaryFact = null;
+		for (int m = 1; m < 10; m++)
+			Assert.assertTrue(store.addEndSummary("m" + m, "d", stmt(m, 0), "e"));
+		Assert.assertTrue(store.getSpillCount() > 0);
+
+		awaitCollection(jumpFact);
+		awaitCollection(summaryRef);
+		Assert.assertNull(jumpFact.get());
+		Assert.assertNull(summaryRef.get());
+
+		// The edge keeps its ID, so it is still known, and the new fact takes
+		// the place of the collected one
+		String newFact = new String("t");
+		Assert.assertSame(newFact, jumpFunctions.addFunction(new PathEdge<String, String>(
+				"d", "m0:s0", newFact)));
+		Assert.assertSame(newFact, jumpFunctions.addFunction(new PathEdge<String, String>(
+				"d", "m0:s0", new String("t"))));
+
+		// The end summary falls back to an equal fact
+		Set<Pair<String, String>> summaries = store.endSummary("m0", "d");
+		Assert.assertEquals(1, summaries.size());
+		Assert.assertEquals(new Pair<String, String>("m0:exit", "e"), summaries.iterator().next());
+		Assert.assertFalse(store.addEndSummary("m0", "d", "m0:exit", new String("e")));
+		store.clear();
+	}
+
+	@Test(timeout = 300000)
+	public void reuseHandlesTest() throws InterruptedException {
+		final int numFacts = 1000;
+		SpillingSolverStore<String, String, String> store =
+				new SpillingSolverStore<String, String, String>(createICFG(),
+						spillDirectory.getAbsolutePath(), 4 * numFacts);
+		IJumpFunctions<String, String> jumpFunctions = store.getJumpFunctions();
+		Assert.assertNull(jumpFunctions.addFunction(new PathEdge<String, String>("d", "m1:s0", "t")));
+
+		// Once the facts are gone, their handles must be reused instead of
+		// growing the handle table with every registration
+		for (int round = 0; round < 3; round++) {
+			List<WeakReference<String>> refs = new ArrayList<WeakReference<String>>();
+			for (int i = 0; i < numFacts; i++)
+				refs.add(addUnreferencedFunction(jumpFunctions, stmt(0, round * numFacts + i), "t"));
+			for (WeakReference<String> ref : refs)
+				awaitCollection(ref);
+		}
+		Assert.assertTrue(store.getHandleCount() < numFacts * 3 / 2);
+		store.clear();
+	}
+
+	@Test
+	public void replaceIncomingTest() {
+		SpillingSolverStore<String, String, String> store =
+				new SpillingSolverStore<String, String, String>(createICFG(),
+						spillDirectory.getAbsolutePath(), 4);
+		Assert.assertTrue(store.addIncoming("m0", "d", "m1:call", "c", "f1"));
+		Assert.assertFalse(store.addIncoming("m0", "d", "m1:call", "c", "f2"));
+
+		// Push the method out to disk and bring it back
+		for (int m = 1; m < 10; m++)
+			Assert.assertTrue(store.addEndSummary("m" + m, "d", stmt(m, 0), "e"));
+		Assert.assertTrue(store.getSpillCount() > 0);
+
+		Map<String, Map<String, String>> inc = store.incoming("d", "m0");
+		Assert.assertEquals(1, inc.size());
+		Assert.assertEquals("f2", inc.get("m1:call").get("c"));
+		Assert.assertTrue(store.getReloadCount() > 0);
+		store.clear();
+	}
+
+}
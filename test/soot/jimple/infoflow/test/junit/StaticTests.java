@@ -11,11 +11,18 @@
 package soot.jimple.infoflow.test.junit;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
+import org.junit.Assert;
 import org.junit.Test;
 
+import soot.MethodOrMethodContext;
+import soot.Scene;
+import soot.SootField;
+import soot.SootMethod;
 import soot.jimple.infoflow.IInfoflow;
+import soot.jimple.infoflow.solver.cfg.MethodSummaries;
 
 /**
  * contain tests which check taint propagation for static variables
@@ -94,4 +101,66 @@ public class StaticTests extends JUnitTests {
 		checkInfoflow(infoflow, 1);
 	}
 
+	@Test(timeout = 300000)
+	public void recursionStaticReadTest() {
+		IInfoflow infoflow = initInfoflow();
+		List<String> epoints = new ArrayList<String>();
+		epoints.add("<soot.jimple.infoflow.test.StaticTestCode: void recursionStaticReadTest()>");
+		infoflow.computeInfoflow(appPath, libPath, epoints, sources, sinks);
+		checkInfoflow(infoflow, 1);
+	}
+
+	@Test(timeout = 300000)
+	public void recursionStaticWriteTest() {
+		IInfoflow infoflow = initInfoflow();
+		List<String> epoints = new ArrayList<String>();
+		epoints.add("<soot.jimple.infoflow.test.StaticTestCode: void recursionStaticWriteTest()>");
+		infoflow.computeInfoflow(appPath, libPath, epoints, sources, sinks);
+		checkInfoflow(infoflow, 1);
+	}
+
+	@Test(timeout = 300000)
+	public void recursionSummariesTest() {
+		IInfoflow infoflow = initInfoflow();
+		List<String> epoints = new ArrayList<String>();
+		epoints.add("<soot.jimple.infoflow.test.StaticTestCode: void recursionStaticReadTest()>");
+		epoints.add("<soot.jimple.infoflow.test.StaticTestCode: void recursionStaticWriteTest()>");
+		infoflow.computeInfoflow(appPath, libPath, epoints, sources, sinks);
+		checkInfoflow(infoflow, 2);
+
+		SootField readField = Scene.v().getField(
+				"<soot.jimple.infoflow.test.StaticTestCode: java.lang.String recursionField>");
+		SootField writtenField = Scene.v().getField(
+				"<soot.jimple.infoflow.test.StaticTestCode: java.lang.String recursionField2>");
+		SootMethod readA = Scene.v().getMethod(
+				"<soot.jimple.infoflow.test.StaticTestCode: void recursionReadA(int)>");
+		SootMethod writeA = Scene.v().getMethod(
+				"<soot.jimple.infoflow.test.StaticTestCode: void recursionWriteA(int,java.lang.String)>");
+
+		// Only one method in each recursive component accesses the static
+		// field, but the summary is shared by the whole component. The
+		// summaries are computed sequentially and in parallel.
+		MethodSummaries sequential = new MethodSummaries(1);
+		MethodSummaries parallel = new MethodSummaries(4);
+		for (MethodSummaries summaries : new MethodSummaries[] { sequential, parallel }) {
+			Assert.assertTrue(summaries.isStaticFieldRead(readA, readField));
+			Assert.assertFalse(summaries.isStaticFieldUsed(readA, writtenField));
+			Assert.assertTrue(summaries.isStaticFieldUsed(writeA, writtenField));
+			Assert.assertFalse(summaries.isStaticFieldRead(writeA, writtenField));
+			Assert.assertFalse(summaries.isStaticFieldUsed(writeA, readField));
+		}
+
+		for (Iterator<MethodOrMethodContext> methodIt = Scene.v().getReachableMethods().listener();
+				methodIt.hasNext(); ) {
+			SootMethod method = methodIt.next().method();
+			Assert.assertEquals(sequential.hasSideEffects(method), parallel.hasSideEffects(method));
+			for (SootField field : new SootField[] { readField, writtenField }) {
+				Assert.assertEquals(sequential.isStaticFieldRead(method, field),
+						parallel.isStaticFieldRead(method, field));
+				Assert.assertEquals(sequential.isStaticFieldUsed(method, field),
+						parallel.isStaticFieldUsed(method, field));
+			}
+		}
+	}
+
 }